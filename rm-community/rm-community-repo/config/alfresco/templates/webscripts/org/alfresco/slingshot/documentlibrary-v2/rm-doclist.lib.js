@@ -183,6 +183,9 @@ function rm_doclist_main()
          logger.log("rm-doclist.lib.js - will match results using regex: " + pathMatch);
    }
 
+   // Load the nodes in bulk before they are sorted, evaluated and converted one by one
+   rmService.prefetch(allNodes);
+
    // Ensure folders and folderlinks appear at the top of the list
    var folderNodes = [],
       documentNodes = [];
@@ -62,6 +62,14 @@ public interface RMCaveatConfigComponent
      */
     boolean hasAccess(NodeRef nodeRef);
 
+    /**
+     * Indicates whether a node has any caveat aspects, and so whether access to it can be vetoed by caveats
+     *
+     * @param nodeRef
+     * @return true, if the node has at least one caveat aspect, false otherwise
+     */
+    boolean hasCaveats(NodeRef nodeRef);
+
     /**
      * Get RM constraint list
      *
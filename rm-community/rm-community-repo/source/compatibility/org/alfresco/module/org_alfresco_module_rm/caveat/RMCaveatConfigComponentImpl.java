@@ -40,6 +40,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -73,6 +74,7 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.PersonService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
@@ -91,6 +93,8 @@ import org.json.JSONObject;
 public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnContentUpdatePolicy,
                                                     NodeServicePolicies.BeforeDeleteNodePolicy,
                                                     NodeServicePolicies.OnCreateNodePolicy,
+                                                    NodeServicePolicies.OnCreateChildAssociationPolicy,
+                                                    NodeServicePolicies.OnDeleteChildAssociationPolicy,
                                                     RMCaveatConfigComponent
 {
     private static Log logger = LogFactory.getLog(RMCaveatConfigComponentImpl.class);
@@ -130,11 +134,30 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
      */
     private SimpleCache<String, Map<String, List<String>>> caveatConfig;
 
+    /*
+     * Allowed values per user (shared) cache
+     * key is user name
+     * value maps each constraint name to the values the user (directly or via their groups) may see
+     */
+    private SimpleCache<String, Map<String, Set<String>>> userAllowedValues;
+
+    /** caveat list of values constraints keyed by the property they apply to */
+    private final Map<QName, CaveatProperty> caveatProperties = new ConcurrentHashMap<>();
+
     public void setCaveatConfig(SimpleCache<String, Map<String, List<String>>> caveatConfig)
     {
         this.caveatConfig = caveatConfig;
     }
 
+    /**
+     * @param userAllowedValues cache of the allowed values for each user
+     * @since 3.4
+     */
+    public void setUserAllowedValues(SimpleCache<String, Map<String, Set<String>>> userAllowedValues)
+    {
+        this.userAllowedValues = userAllowedValues;
+    }
+
     public void setNodeService(NodeService nodeService)
     {
         this.nodeService = nodeService;
@@ -276,6 +299,80 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
         validateAndReset(childAssocRef.getChildRef());
     }
 
+    /**
+     * Clears the allowed values of the users affected when an authority is added to a group, as the allowed values
+     * depend on the groups a user is in, directly or through other groups.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnCreateChildAssociationPolicy#onCreateChildAssociation(org.alfresco.service.cmr.repository.ChildAssociationRef, boolean)
+     * @since 3.4
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.ASSOCIATION,
+            type = "cm:authorityContainer",
+            assocType = "cm:member"
+    )
+    public void onCreateChildAssociation(ChildAssociationRef childAssocRef, boolean isNewNode)
+    {
+        clearUserAllowedValues(childAssocRef.getChildRef());
+    }
+
+    /**
+     * Clears the allowed values of the users affected when an authority is removed from a group.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnDeleteChildAssociationPolicy#onDeleteChildAssociation(org.alfresco.service.cmr.repository.ChildAssociationRef)
+     * @since 3.4
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.ASSOCIATION,
+            type = "cm:authorityContainer",
+            assocType = "cm:member"
+    )
+    public void onDeleteChildAssociation(ChildAssociationRef childAssocRef)
+    {
+        clearUserAllowedValues(childAssocRef.getChildRef());
+    }
+
+    /**
+     * Clears the allowed values of the users whose groups change with the membership of an authority, that is the
+     * user itself or every user in the group, directly or through other groups.
+     * <p>
+     * The allowed values of every user are cleared if the authority can't be resolved.
+     *
+     * @param authorityRef  node of the user or group whose membership changed
+     */
+    private void clearUserAllowedValues(NodeRef authorityRef)
+    {
+        String authorityName = null;
+        if (nodeService.exists(authorityRef))
+        {
+            authorityName = (String)nodeService.getProperty(authorityRef, ContentModel.PROP_USERNAME);
+            if (authorityName == null)
+            {
+                authorityName = (String)nodeService.getProperty(authorityRef, ContentModel.PROP_AUTHORITY_NAME);
+            }
+        }
+
+        if (authorityName == null)
+        {
+            userAllowedValues.clear();
+        }
+        else if (AuthorityType.getAuthorityType(authorityName) == AuthorityType.USER)
+        {
+            userAllowedValues.remove(authorityName);
+        }
+        else
+        {
+            for (String userName : authorityService.getContainedAuthorities(AuthorityType.USER, authorityName, false))
+            {
+                userAllowedValues.remove(userName);
+            }
+        }
+    }
+
     /**
      * Validate the caveat config and optionally update the cache.
      *
@@ -453,6 +550,9 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
                                 caveatConfig.put(conStr, caveatMap);
                             }
                         }
+
+                        // allowed values are derived from the config
+                        userAllowedValues.clear();
                     }
                     finally
                     {
@@ -557,53 +657,126 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
         String userName = AuthenticationUtil.getRunAsUser();
         if (userName != null && !(AuthenticationUtil.isMtEnabled() && AuthenticationUtil.isRunAsUserTheSystemUser()))
         {
-            // note: userName and userGroupNames must not be null
-            caveatConfig.get(constraintName);
-
-            Set<String> userGroupFullNames = authorityService.getAuthoritiesForUser(userName);
-            allowedValues = getRMAllowedValues(userName, userGroupFullNames, constraintName);
+            Set<String> values = getUserAllowedValues(userName).get(constraintName);
+            if (values != null)
+            {
+                allowedValues = Collections.unmodifiableList(new ArrayList<>(values));
+            }
         }
 
         return allowedValues;
     }
 
-    private List<String> getRMAllowedValues(String userName, Set<String> userGroupFullNames, String constraintName)
+    /**
+     * Get the allowed values of every caveat list for the given user.
+     * <p>
+     * The user's authorities are resolved once and the result is cached until the caveat config or the user's group
+     * membership changes.
+     *
+     * @param userName  user name, must not be null
+     * @return map of constraint name to the values allowed for the user
+     */
+    private Map<String, Set<String>> getUserAllowedValues(String userName)
     {
-        Set<String>allowedValues = new HashSet<>();
-
-        // note: userName and userGroupNames must not be null
-        Map<String, List<String>> caveatConstraintDef = null;
-        try
+        Map<String, Set<String>> result = userAllowedValues.get(userName);
+        if (result == null)
         {
-            readLock.lock();
-            caveatConstraintDef = caveatConfig.get(constraintName);
+            Set<String> userGroupFullNames = authorityService.getAuthoritiesForUser(userName);
+
+            result = new HashMap<>();
+            try
+            {
+                readLock.lock();
+                for (String constraintName : caveatConfig.getKeys())
+                {
+                    Map<String, List<String>> caveatConstraintDef = caveatConfig.get(constraintName);
+                    if (caveatConstraintDef != null)
+                    {
+                        Set<String> allowedValues = new HashSet<>();
+
+                        List<String> direct = caveatConstraintDef.get(userName);
+                        if(direct != null)
+                        {
+                            allowedValues.addAll(direct);
+                        }
+
+                        for (String group :  userGroupFullNames)
+                        {
+                            List<String> values = caveatConstraintDef.get(group);
+                            if(values != null)
+                            {
+                                allowedValues.addAll(values);
+                            }
+                        }
+
+                        result.put(constraintName, Collections.unmodifiableSet(allowedValues));
+                    }
+                }
+            }
+            finally
+            {
+                readLock.unlock();
+            }
+
+            result = Collections.unmodifiableMap(result);
+            userAllowedValues.put(userName, result);
         }
-        finally
+        return result;
+    }
+
+    /**
+     * Get the caveat list of values constraints that apply to a property.
+     * <p>
+     * The constraints are worked out once per property definition, so a model reload is picked up
+     * as soon as the dictionary returns a new definition.
+     *
+     * @param propName  property name
+     * @return list of caveat constraints, empty if the property isn't a caveat-bearing text property
+     */
+    private List<RMListOfValuesConstraint> getCaveatConstraints(QName propName)
+    {
+        PropertyDefinition propDef = dictionaryService.getProperty(propName);
+        if (propDef == null)
         {
-            readLock.unlock();
+            return Collections.emptyList();
         }
 
-        if (caveatConstraintDef != null)
+        CaveatProperty caveatProperty = caveatProperties.get(propName);
+        if (caveatProperty == null || caveatProperty.propDef != propDef)
         {
-            List<String> direct = caveatConstraintDef.get(userName);
-            if(direct != null)
-            {
-                allowedValues.addAll(direct);
-            }
-
-            for (String group :  userGroupFullNames)
+            List<RMListOfValuesConstraint> constraints = new ArrayList<>(1);
+            if (propDef.getDataType().getName().equals(DATATYPE_TEXT))
             {
-                List<String> values = caveatConstraintDef.get(group);
-                if(values != null)
+                for (ConstraintDefinition conDef : propDef.getConstraints())
                 {
-                    allowedValues.addAll(values);
+                    Constraint con = conDef.getConstraint();
+                    if (con instanceof RMListOfValuesConstraint)
+                    {
+                        constraints.add((RMListOfValuesConstraint)con);
+                    }
                 }
             }
+
+            caveatProperty = new CaveatProperty(propDef, constraints.isEmpty() ?
+                        Collections.<RMListOfValuesConstraint>emptyList() : Collections.unmodifiableList(constraints));
+            caveatProperties.put(propName, caveatProperty);
         }
+        return caveatProperty.constraints;
+    }
+
+    /**
+     * Caveat constraints compiled for a property definition.
+     */
+    private static final class CaveatProperty
+    {
+        private final PropertyDefinition propDef;
+        private final List<RMListOfValuesConstraint> constraints;
 
-        List<String>ret = new ArrayList<>();
-        ret.addAll(allowedValues);
-        return Collections.unmodifiableList(ret);
+        private CaveatProperty(PropertyDefinition propDef, List<RMListOfValuesConstraint> constraints)
+        {
+            this.propDef = propDef;
+            this.constraints = constraints;
+        }
     }
 
     /**
@@ -617,22 +790,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
     {
         try
         {
-            if ((! nodeService.exists(nodeRef)) || (caveatAspectQNames.size() == 0))
-            {
-                return true;
-            }
-
-            boolean found = false;
-            for (QName caveatAspectQName : caveatAspectQNames)
-            {
-                if (nodeService.hasAspect(nodeRef, caveatAspectQName))
-                {
-                    found = true;
-                    break;
-                }
-            }
-
-            if (! found)
+            if (! hasCaveats(nodeRef))
             {
                 // no caveat aspect
                 return true;
@@ -643,56 +801,51 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
                 String userName = AuthenticationUtil.getRunAsUser();
                 if (userName != null)
                 {
-                    // check all text properties
+                    // resolved lazily, only once a caveat-bearing property is found
+                    Map<String, Set<String>> userValues = null;
+
+                    // check all caveat-bearing text properties
                     Map<QName, Serializable> props = nodeService.getProperties(nodeRef);
                     for (Map.Entry<QName, Serializable> entry : props.entrySet())
                     {
                         QName propName = entry.getKey();
-                        PropertyDefinition propDef = dictionaryService.getProperty(propName);
-
-                        if ((propDef != null) && (propDef.getDataType().getName().equals(DATATYPE_TEXT)))
+                        for (RMListOfValuesConstraint rmCon : getCaveatConstraints(propName))
                         {
-                            List<ConstraintDefinition> conDefs = propDef.getConstraints();
-                            for (ConstraintDefinition conDef : conDefs)
+                            String conName = rmCon.getShortName();
+                            MatchLogic matchLogic = rmCon.getMatchLogicEnum();
+                            if (caveatConfig.get(conName) == null)
                             {
-                                Constraint con = conDef.getConstraint();
-                                if (con instanceof RMListOfValuesConstraint)
-                                {
-                                    RMListOfValuesConstraint rmCon = ((RMListOfValuesConstraint)con);
-                                    String conName = rmCon.getShortName();
-                                    MatchLogic matchLogic = rmCon.getMatchLogicEnum();
-                                    Map<String, List<String>> caveatConstraintDef = caveatConfig.get(conName);
-                                    if (caveatConstraintDef == null)
-                                    {
-                                        continue;
-                                    }
-                                    else
-                                    {
-                                        Set<String> userGroupNames = authorityService.getAuthoritiesForUser(userName);
-                                        List<String> allowedValues = getRMAllowedValues(userName, userGroupNames, conName);
+                                continue;
+                            }
 
-                                        List<String> propValues = null;
-                                        Object val = entry.getValue();
-                                        if (val instanceof String)
-                                        {
-                                            propValues = new ArrayList<>(1);
-                                            propValues.add((String)val);
-                                        }
-                                        else if (val instanceof List)
-                                        {
-                                            propValues = (List<String>)val;
-                                        }
+                            if (userValues == null)
+                            {
+                                userValues = getUserAllowedValues(userName);
+                            }
+                            Set<String> allowedValues = userValues.get(conName);
+                            if (allowedValues == null)
+                            {
+                                allowedValues = Collections.emptySet();
+                            }
 
-                                        if (propValues != null && !isAllowed(propValues, allowedValues, matchLogic))
-                                        {
-                                            if (logger.isDebugEnabled())
-                                            {
-                                                logger.debug("Veto access: caveat="+conName+", userName="+userName+", nodeRef="+nodeRef+", propName="+propName+", propValues="+propValues+", allowedValues="+allowedValues);
-                                            }
-                                            return false;
-                                        }
-                                    }
+                            List<String> propValues = null;
+                            Object val = entry.getValue();
+                            if (val instanceof String)
+                            {
+                                propValues = Collections.singletonList((String)val);
+                            }
+                            else if (val instanceof List)
+                            {
+                                propValues = (List<String>)val;
+                            }
+
+                            if (propValues != null && !isAllowed(propValues, allowedValues, matchLogic))
+                            {
+                                if (logger.isDebugEnabled())
+                                {
+                                    logger.debug("Veto access: caveat="+conName+", userName="+userName+", nodeRef="+nodeRef+", propName="+propName+", propValues="+propValues+", allowedValues="+allowedValues);
                                 }
+                                return false;
                             }
                         }
                     }
@@ -707,7 +860,30 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
         }
     }
 
-    private boolean isAllowed(List<String> propValues, List<String> userGroupValues, MatchLogic matchLogic)
+    /**
+     * Indicates whether a node has any caveat aspects, and so whether access to it can be vetoed by caveats
+     *
+     * @param nodeRef
+     * @return true, if the node has at least one caveat aspect, false otherwise
+     */
+    public boolean hasCaveats(NodeRef nodeRef)
+    {
+        if ((caveatAspectQNames.size() == 0) || (! nodeService.exists(nodeRef)))
+        {
+            return false;
+        }
+
+        for (QName caveatAspectQName : caveatAspectQNames)
+        {
+            if (nodeService.hasAspect(nodeRef, caveatAspectQName))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAllowed(List<String> propValues, Set<String> userGroupValues, MatchLogic matchLogic)
     {
         if (matchLogic.equals(MatchLogic.AND))
         {
@@ -790,6 +966,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
 
                 caveatConfig.put(listName, members);
                 updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+                userAllowedValues.clear();
             }
             finally
             {
@@ -867,6 +1044,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
 
             caveatConfig.put(listName, members);
             updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+            userAllowedValues.clear();
         }
         finally
         {
@@ -924,6 +1102,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
             }
             caveatConfig.put(listName, members);
             updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+            userAllowedValues.clear();
         }
         finally
         {
@@ -967,6 +1146,8 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
                     }
 
                     updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+
+                    userAllowedValues.clear();
                 }
                 finally
                 {
@@ -1001,6 +1182,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
 
             caveatConfig.put(listName, members);
             updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+            userAllowedValues.clear();
 
         }
         finally
@@ -1120,6 +1302,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
             writeLock.lock();
             caveatConfig.remove(listName);
             updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+            userAllowedValues.clear();
         }
         finally
         {
@@ -1135,6 +1318,7 @@ public class RMCaveatConfigComponentImpl implements ContentServicePolicies.OnCon
             Map<String, List<String>> emptyConstraint = new HashMap<>(0);
             caveatConfig.put(listName, emptyConstraint);
             updateOrCreateCaveatConfig(convertToJSONString(caveatConfig));
+            userAllowedValues.clear();
         }
         finally
         {
@@ -35,29 +35,46 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.module.org_alfresco_module_rm.action.RMActionExecuterAbstractBase;
+import org.alfresco.module.org_alfresco_module_rm.disposition.DisposableItemIndex;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionAction;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionActionDefinition;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionSchedule;
 import org.alfresco.module.org_alfresco_module_rm.event.EventCompletionDetails;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
 import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ParameterDefinition;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.Period;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 
 /**
  * Action to implement the consequences of a change to the value of the DispositionActionDefinition
  * properties. When these properties are changed on a disposition schedule, then any associated
  * disposition actions may need to be updated as a consequence.
+ * <p>
+ * When a schedule has more disposable items than fit into a single batch the items are processed in
+ * batches, each committed in its own transaction, by a pool of worker threads.  The items are read from the
+ * disposable item index a page at a time, and each is marked with the identifier of the change once updated, so
+ * that an interrupted broadcast resumes where it stopped the next time it is published.
  *
  * @author Neil McErlean
  */
 public class BroadcastDispositionActionDefinitionUpdateAction extends RMActionExecuterAbstractBase
+                                                              implements ApplicationEventPublisherAware
 {
     /** Logger */
     private static Log logger = LogFactory.getLog(BroadcastDispositionActionDefinitionUpdateAction.class);
@@ -65,13 +82,75 @@ public class BroadcastDispositionActionDefinitionUpdateAction extends RMActionEx
     public static final String NAME = "broadcastDispositionActionDefinitionUpdate";
     public static final String CHANGED_PROPERTIES = "changedProperties";
 
+    /**
+     * attribute context used to store the identifier of the change being broadcast, by disposition action
+     * definition, removed when a new change is made to the definition
+     */
+    public static final String CHANGE_CONTEXT = "rm.broadcastDispositionActionDefinitionUpdate.change";
+
     private BehaviourFilter behaviourFilter;
 
+    /** attribute service */
+    private AttributeService attributeService;
+
+    /** disposable item index */
+    private DisposableItemIndex disposableItemIndex;
+
+    /** application event publisher */
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /** number of disposable items updated in each transaction */
+    private int batchSize = 100;
+
+    /** number of worker threads used to process the batches */
+    private int workerThreads = 2;
+
     public void setBehaviourFilter(BehaviourFilter behaviourFilter)
     {
         this.behaviourFilter = behaviourFilter;
     }
 
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param disposableItemIndex   disposable item index
+     */
+    public void setDisposableItemIndex(DisposableItemIndex disposableItemIndex)
+    {
+        this.disposableItemIndex = disposableItemIndex;
+    }
+
+    /**
+     * @see org.springframework.context.ApplicationEventPublisherAware#setApplicationEventPublisher(org.springframework.context.ApplicationEventPublisher)
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * @param batchSize number of disposable items updated in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param workerThreads number of worker threads used to process the batches
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action,
      *      org.alfresco.service.cmr.repository.NodeRef)
@@ -92,13 +171,63 @@ public class BroadcastDispositionActionDefinitionUpdateAction extends RMActionEx
         NodeRef rmContainer = getNodeService().getPrimaryParent(dispositionScheduleNode).getParentRef();
         DispositionSchedule dispositionSchedule = getDispositionService().getAssociatedDispositionSchedule(rmContainer);
 
+        if (batchSize > 0 && disposableItemIndex != null)
+        {
+            NodeRef dsNodeRef = dispositionSchedule.getNodeRef();
+            if (!disposableItemIndex.isBuilt(dsNodeRef))
+            {
+                getDispositionService().indexDisposableItems(dispositionSchedule);
+            }
+
+            if (disposableItemIndex.isBuilt(dsNodeRef))
+            {
+                List<NodeRef> firstItems = disposableItemIndex.getItems(dsNodeRef, batchSize + 1);
+                if (firstItems.size() <= batchSize)
+                {
+                    updateDisposableItems(dispositionSchedule, firstItems, actionedUponNodeRef, changedProps);
+                }
+                else
+                {
+                    broadcastFromIndex(dispositionSchedule, actionedUponNodeRef, changedProps);
+                }
+                return;
+            }
+        }
+
+        // the disposable items are not indexed, or the index was discarded while it was being built
+        List<NodeRef> disposableItems = getDispositionService().getDisposableItems(dispositionSchedule);
+        if (batchSize <= 0 || disposableItems.size() <= batchSize)
+        {
+            updateDisposableItems(dispositionSchedule, disposableItems, actionedUponNodeRef, changedProps);
+        }
+        else
+        {
+            int chunkSize = batchSize * Math.max(workerThreads, 1);
+            for (int index = 0; index < disposableItems.size(); index += chunkSize)
+            {
+                List<NodeRef> chunk = disposableItems.subList(index, Math.min(index + chunkSize, disposableItems.size()));
+                updateInBatches(dispositionSchedule, chunk, actionedUponNodeRef, changedProps, null);
+            }
+        }
+    }
+
+    /**
+     * Update disposable items in the current transaction.
+     *
+     * @param ds                            disposition schedule
+     * @param disposableItems               disposable items
+     * @param dispositionActionDefinition   disposition action definition
+     * @param changedProps                  changed properties
+     */
+    private void updateDisposableItems(DispositionSchedule ds, List<NodeRef> disposableItems,
+                NodeRef dispositionActionDefinition, List<QName> changedProps)
+    {
         behaviourFilter.disableBehaviour();
         try
         {
-            List<NodeRef> disposableItems = getDispositionService().getDisposableItems(dispositionSchedule);
             for (NodeRef disposableItem : disposableItems)
             {
-                updateDisposableItem(dispositionSchedule, disposableItem, actionedUponNodeRef, changedProps);
+                updateDisposableItem(ds, disposableItem, dispositionActionDefinition, changedProps);
             }
         }
         finally
@@ -107,6 +236,176 @@ public class BroadcastDispositionActionDefinitionUpdateAction extends RMActionEx
         }
     }
 
+    /**
+     * Update the disposable items of the schedule's index in batches, each committed in its own transaction.
+     * <p>
+     * The index is read one page of batches at a time, so the disposable items are never all held in memory, and each
+     * page is read before it is updated, so no query of the index is open while the worker transactions write to it.
+     * Each item is marked in the index with the identifier of the change as it is updated, in the same transaction,
+     * so the next page, and a broadcast that fails or is interrupted when it is next executed, passes over the items
+     * already updated for the change.  A new change to the definition gets a new identifier, so its broadcast updates
+     * every item.
+     *
+     * @param ds                            disposition schedule
+     * @param dispositionActionDefinition   disposition action definition
+     * @param changedProps                  changed properties
+     */
+    private void broadcastFromIndex(final DispositionSchedule ds, final NodeRef dispositionActionDefinition,
+                final List<QName> changedProps)
+    {
+        final RetryingTransactionHelper txnHelper = getTransactionService().getRetryingTransactionHelper();
+        final String changeId = getChangeId(txnHelper, dispositionActionDefinition);
+        final int pageSize = batchSize * Math.max(workerThreads, 1);
+        final long startTime = System.currentTimeMillis();
+        long updated = 0;
+
+        List<NodeRef> page;
+        do
+        {
+            page = disposableItemIndex.getUnmarkedEntries(ds.getNodeRef(), changeId, pageSize);
+            if (!page.isEmpty())
+            {
+                updateInBatches(ds, page, dispositionActionDefinition, changedProps, changeId);
+                updated += page.size();
+
+                if (logger.isInfoEnabled())
+                {
+                    long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+                    logger.info("Broadcast disposition action definition update (" + ds.getNodeRef() + "): " +
+                                updated + " disposable items updated (" + (updated * 1000L / elapsed) + " items/sec).");
+                }
+            }
+        }
+        while (page.size() >= pageSize);
+
+        // the broadcast is complete
+        removeChangeId(txnHelper, dispositionActionDefinition);
+    }
+
+    /**
+     * Update disposable items in batches, each committed in its own transaction, by the worker threads.
+     *
+     * @param ds                            disposition schedule
+     * @param disposableItems               disposable items
+     * @param dispositionActionDefinition   disposition action definition
+     * @param changedProps                  changed properties
+     * @param changeId                      identifier of the change, marked against each item updated in the index,
+     *                                      null if the items do not come from the index
+     */
+    private void updateInBatches(final DispositionSchedule ds, List<NodeRef> disposableItems,
+                final NodeRef dispositionActionDefinition, final List<QName> changedProps, final String changeId)
+    {
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+        BatchProcessWorkerAdaptor<NodeRef> worker = new BatchProcessWorkerAdaptor<NodeRef>()
+        {
+            @Override
+            public void beforeProcess()
+            {
+                AuthenticationUtil.setRunAsUser(runAsUser);
+            }
+
+            @Override
+            public void process(NodeRef disposableItem)
+            {
+                behaviourFilter.disableBehaviour();
+                try
+                {
+                    updateDisposableItem(ds, disposableItem, dispositionActionDefinition, changedProps);
+                    if (changeId != null)
+                    {
+                        disposableItemIndex.markEntry(ds.getNodeRef(), disposableItem, changeId);
+                    }
+                }
+                finally
+                {
+                    behaviourFilter.enableBehaviour();
+                }
+            }
+
+            @Override
+            public void afterProcess()
+            {
+                AuthenticationUtil.clearCurrentSecurityContext();
+            }
+        };
+
+        BatchProcessor<NodeRef> batchProcessor = createBatchProcessor(
+                    "Broadcast disposition action definition update (" + ds.getNodeRef() + ")", disposableItems);
+        batchProcessor.process(worker, true);
+
+        if (batchProcessor.getTotalErrors() > 0)
+        {
+            throw new AlfrescoRuntimeException("Unable to broadcast disposition action definition update to " +
+                        batchProcessor.getTotalErrors() + " disposable items, last error: " + batchProcessor.getLastError());
+        }
+    }
+
+    /**
+     * Create the batch processor that updates the disposable items, each batch in its own transaction.
+     *
+     * @param processName       name of the process
+     * @param disposableItems   disposable items
+     * @return {@link BatchProcessor}&lt;{@link NodeRef}&gt;  batch processor
+     */
+    protected BatchProcessor<NodeRef> createBatchProcessor(String processName, List<NodeRef> disposableItems)
+    {
+        return new BatchProcessor<>(
+                    processName,
+                    getTransactionService().getRetryingTransactionHelper(),
+                    disposableItems,
+                    workerThreads,
+                    batchSize,
+                    applicationEventPublisher,
+                    logger,
+                    disposableItems.size());
+    }
+
+    /**
+     * Get the identifier of the change being broadcast for a disposition action definition, starting a new one if
+     * none is in progress.
+     *
+     * @param txnHelper                     retrying transaction helper
+     * @param dispositionActionDefinition   disposition action definition
+     * @return String                       change identifier
+     */
+    private String getChangeId(RetryingTransactionHelper txnHelper, final NodeRef dispositionActionDefinition)
+    {
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<String>()
+        {
+            @Override
+            public String execute()
+            {
+                String changeId = (String) attributeService.getAttribute(CHANGE_CONTEXT, dispositionActionDefinition.toString());
+                if (changeId == null)
+                {
+                    changeId = GUID.generate();
+                    attributeService.setAttribute(changeId, CHANGE_CONTEXT, dispositionActionDefinition.toString());
+                }
+                return changeId;
+            }
+        }, false, true);
+    }
+
+    /**
+     * Remove the identifier of the change broadcast for a disposition action definition, once the broadcast is
+     * complete.
+     *
+     * @param txnHelper                     retrying transaction helper
+     * @param dispositionActionDefinition   disposition action definition
+     */
+    private void removeChangeId(RetryingTransactionHelper txnHelper, final NodeRef dispositionActionDefinition)
+    {
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute()
+            {
+                attributeService.removeAttribute(CHANGE_CONTEXT, dispositionActionDefinition.toString());
+                return null;
+            }
+        }, false, true);
+    }
+
     /**
      *
      * @param ds
@@ -29,6 +29,7 @@ package org.alfresco.module.org_alfresco_module_rm.action.impl;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
@@ -38,12 +39,13 @@ import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.repo.action.ParameterDefinitionImpl;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
-import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ParameterDefinition;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.model.FileExistsException;
 import org.alfresco.service.cmr.model.FileFolderService;
 import org.alfresco.service.cmr.model.FileNotFoundException;
+import org.alfresco.service.cmr.repository.DuplicateChildNodeNameException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
 import org.apache.commons.logging.Log;
@@ -67,6 +69,23 @@ public abstract class CopyMoveLinkFileToBaseAction extends RMActionExecuterAbstr
     public static final String ACTION_FILETO = "fileTo";
     public static final String ACTION_LINKTO = "linkTo";
 
+    /** number of locks used to serialise the creation of path elements */
+    private static final int PATH_LOCK_STRIPES = 64;
+
+    /**
+     * Locks used to serialise the creation of path elements, shared by all the copy, move, link and file to actions.
+     * A path element takes the lock selected by its parent and name, so only filings that create the same element
+     * (or one that shares its lock) wait for each other.
+     */
+    private static final Object[] PATH_LOCKS = new Object[PATH_LOCK_STRIPES];
+    static
+    {
+        for (int i = 0; i < PATH_LOCK_STRIPES; i++)
+        {
+            PATH_LOCKS[i] = new Object();
+        }
+    }
+
     /** file folder service */
     private FileFolderService fileFolderService;
 
@@ -130,7 +149,7 @@ public abstract class CopyMoveLinkFileToBaseAction extends RMActionExecuterAbstr
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
     @Override
-    protected synchronized void executeImpl(final Action action, final NodeRef actionedUponNodeRef)
+    protected void executeImpl(final Action action, final NodeRef actionedUponNodeRef)
     {
         String actionName = action.getActionDefinitionName();
         if (isOkToProceedWithAction(actionedUponNodeRef, actionName))
@@ -269,6 +288,9 @@ public abstract class CopyMoveLinkFileToBaseAction extends RMActionExecuterAbstr
 
     /**
      * Create or resolve the path specified in the action's path parameter
+     * <p>
+     * Any missing path elements are created in the transaction of the caller, so they are rolled back with it if
+     * the action fails.
      *
      * @param action
      * @param actionedUponNodeRef
@@ -291,13 +313,7 @@ public abstract class CopyMoveLinkFileToBaseAction extends RMActionExecuterAbstr
             final boolean create = createValue == null ? false : createValue.booleanValue();
 
             // create or resolve the specified path
-            path = getTransactionService().getRetryingTransactionHelper().doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<NodeRef>()
-            {
-                public NodeRef execute() throws Throwable
-                {
-                    return createOrResolvePath(action, context, actionedUponNodeRef, Arrays.asList(pathElementsArray), targetisUnfiledRecords, create, false);
-                }
-            }, false, true);
+            path = createOrResolvePath(action, context, actionedUponNodeRef, Arrays.asList(pathElementsArray), targetisUnfiledRecords, create, false);
         }
         return path;
     }
@@ -366,7 +382,14 @@ public abstract class CopyMoveLinkFileToBaseAction extends RMActionExecuterAbstr
     }
 
     /**
-     * Create the specified child of the specified parent
+     * Create the specified child of the specified parent, or get it if it has been created concurrently.
+     * <p>
+     * The child is created in the current transaction, so it is only visible to other transactions, and only stays
+     * created, once that transaction commits.  Creating the same child in this JVM is serialised by a lock so that
+     * only one filing inserts it while the others wait on the repository.  Once the child has been committed by
+     * another transaction, here or on another cluster node, creating it fails with a duplicate name and that child
+     * is looked up and used instead.  The repository rolls a failed create back to a savepoint, so the current
+     * transaction can carry on.
      *
      * @param action  Action to use for reporting if anything goes wrong
      * @param parent  Parent of the child to be created
@@ -377,40 +400,84 @@ public abstract class CopyMoveLinkFileToBaseAction extends RMActionExecuterAbstr
      */
     private NodeRef createChild(final Action action, final NodeRef parent, final String childName, final boolean targetisUnfiledRecords, final boolean lastAsFolder)
     {
-        return AuthenticationUtil.runAsSystem(new RunAsWork<NodeRef>()
+        synchronized (getPathLock(parent, childName))
         {
-            @Override
-            public NodeRef doWork()
+            try
             {
-                // double check that the child hasn't been created by another thread
-                NodeRef child = getChild(parent, childName);
-                if (child == null)
+                return AuthenticationUtil.runAsSystem(new RunAsWork<NodeRef>()
                 {
-                    if (targetisUnfiledRecords)
+                    @Override
+                    public NodeRef doWork()
                     {
-                        // create unfiled folder
-                        child = fileFolderService.create(parent, childName, RecordsManagementModel.TYPE_UNFILED_RECORD_FOLDER).getNodeRef();
+                        // double check that the child hasn't been created by another thread
+                        NodeRef child = getChild(parent, childName);
+                        if (child == null)
+                        {
+                            if (targetisUnfiledRecords)
+                            {
+                                // create unfiled folder
+                                child = fileFolderService.create(parent, childName, RecordsManagementModel.TYPE_UNFILED_RECORD_FOLDER).getNodeRef();
+                            }
+                            else if(lastAsFolder)
+                            {
+                                // create record folder
+                                child = getRecordFolderService().createRecordFolder(parent, childName);
+                            }
+                            else
+                            {
+                                // ensure we are not trying to create a record categtory in a record folder
+                                if(RecordsManagementModel.TYPE_RECORD_FOLDER.equals(getNodeService().getType(parent)))
+                                {
+                                    throw new AlfrescoRuntimeException("Unable to execute " + action.getActionDefinitionName() + " action, because the destination path has a record category within a record folder.");
+                                }
+
+                                // create record category
+                                child = filePlanService.createRecordCategory(parent, childName);
+                            }
+                        }
+                        return child;
                     }
-                    else if(lastAsFolder)
+                });
+            }
+            catch (FileExistsException | DuplicateChildNodeNameException exception)
+            {
+                // the child has been created by another transaction in the meantime, so use that one
+                NodeRef child = AuthenticationUtil.runAsSystem(new RunAsWork<NodeRef>()
+                {
+                    @Override
+                    public NodeRef doWork()
                     {
-                        // create record folder
-                        child = getRecordFolderService().createRecordFolder(parent, childName);
+                        return getChild(parent, childName);
                     }
-                    else
-                    {
-                        // ensure we are not trying to create a record categtory in a record folder
-                        if(RecordsManagementModel.TYPE_RECORD_FOLDER.equals(getNodeService().getType(parent)))
-                        {
-                            throw new AlfrescoRuntimeException("Unable to execute " + action.getActionDefinitionName() + " action, because the destination path has a record category within a record folder.");
-                        }
+                });
 
-                        // create record category
-                        child = filePlanService.createRecordCategory(parent, childName);
-                    }
+                if (child == null)
+                {
+                    throw exception;
+                }
+
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Path element " + childName + " was created concurrently, so the existing node " + child + " is used.");
                 }
                 return child;
             }
-        });
+        }
+    }
+
+    /**
+     * Get the lock that serialises the creation of the specified child of the specified parent.
+     * <p>
+     * Names are compared ignoring case, as they are by the repository.
+     *
+     * @param parent  Parent of the child to be created
+     * @param childName  The name of the child to be created
+     * @return Object  lock
+     */
+    private static Object getPathLock(NodeRef parent, String childName)
+    {
+        int hash = Objects.hash(parent, childName.toLowerCase());
+        return PATH_LOCKS[Math.floorMod(hash, PATH_LOCK_STRIPES)];
     }
 
     /**
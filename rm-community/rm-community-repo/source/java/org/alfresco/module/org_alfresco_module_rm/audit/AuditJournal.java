@@ -0,0 +1,592 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.GUID;
+
+/**
+ * Append-only file journal of audit events waiting to be written to the audit log.
+ * <p>
+ * Events are numbered in the order they are appended and are forced to disk before {@link #append(List)} returns.
+ * The journal is split into segment files named after the number of their first event, so segments whose events
+ * have all been written can be deleted.  Each event is stored with its length, number and checksum, so a partly
+ * written event at the end of the journal, left by a crash, is discarded when the journal is opened.
+ * <p>
+ * The journal doesn't record which events have been written; the caller passes the number of the last event written
+ * when reading and releasing, and should keep it against the {@link #getJournalId() journal id}.  A new id is
+ * generated whenever the journal is started without any segments, so a record of the events written from a journal
+ * whose files were deleted doesn't apply to the new events numbered from one.  Events may be appended by any thread,
+ * but are read by a single thread.
+ *
+ * @since 3.4
+ */
+public class AuditJournal implements Closeable
+{
+    /** File holding the identity of the journal */
+    private static final String ID_FILE = "journal.id";
+
+    /** Segment file name suffix */
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /** Size of the header of each event: length, number and checksum */
+    private static final int HEADER_SIZE = 4 + 8 + 8;
+
+    /** Largest event accepted, anything larger is taken to be a corrupt header */
+    private static final int MAX_EVENT_SIZE = 64 * 1024 * 1024;
+
+    /** Journal directory */
+    private final File directory;
+
+    /** Size above which a new segment is started */
+    private final long segmentSize;
+
+    /** Identity of the journal */
+    private final String journalId;
+
+    /** Segment files, by the number of their first event */
+    private final NavigableMap<Long, File> segments = new TreeMap<>();
+
+    /** Segment being appended to */
+    private FileChannel output;
+
+    /** Number of the last event appended */
+    private volatile long lastId;
+
+    /** Where the last read stopped, so the next read needn't scan the segment from the start */
+    private long readHintId = -1;
+    private long readHintSegment;
+    private long readHintPosition;
+
+    /**
+     * Opens the journal in the given directory, creating it if necessary.
+     *
+     * @param directory     journal directory
+     * @param segmentSize   size above which a new segment is started
+     */
+    public AuditJournal(File directory, long segmentSize)
+    {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new AlfrescoRuntimeException("Unable to create audit journal directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX))
+                {
+                    segments.put(Long.valueOf(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            }
+        }
+
+        try
+        {
+            File idFile = new File(directory, ID_FILE);
+            if (segments.isEmpty())
+            {
+                // the journal is new, or its files were deleted, so it starts again with a new identity
+                journalId = writeJournalId(idFile);
+                startSegment(1);
+                lastId = 0;
+            }
+            else
+            {
+                // without its identity the events left in the journal are taken to be unwritten
+                journalId = idFile.exists() ? readJournalId(idFile) : writeJournalId(idFile);
+                recover();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Unable to open audit journal " + directory, e);
+        }
+    }
+
+    /**
+     * @return String   identity of the journal, which changes whenever the journal starts again from event one
+     */
+    public String getJournalId()
+    {
+        return journalId;
+    }
+
+    /**
+     * @return long number of the last event appended, or zero if there are none
+     */
+    public long getLastId()
+    {
+        return lastId;
+    }
+
+    /**
+     * Appends events to the journal and forces them to disk.
+     *
+     * @param entries   events to append, numbered as they are appended
+     * @return long number of the last event appended
+     */
+    public synchronized long append(List<Entry> entries)
+    {
+        long start = -1;
+        try
+        {
+            start = output.position();
+            long id = lastId;
+            for (Entry entry : entries)
+            {
+                id++;
+                byte[] payload = serialize(entry);
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+                buffer.putInt(payload.length);
+                buffer.putLong(id);
+                buffer.putLong(checksum(id, payload));
+                buffer.put(payload);
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    output.write(buffer);
+                }
+                entry.id = id;
+            }
+            output.force(false);
+            lastId = id;
+        }
+        catch (IOException e)
+        {
+            // discard anything written, so the events aren't written by both the journal and the caller
+            discard(start);
+            throw new AlfrescoRuntimeException("Unable to append to audit journal " + directory, e);
+        }
+
+        // the events are safely appended, so a segment that can't be started now is retried on the next append
+        try
+        {
+            if (output.size() >= segmentSize)
+            {
+                FileChannel previous = output;
+                startSegment(lastId + 1);
+                previous.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // keep appending to the current segment
+        }
+        return lastId;
+    }
+
+    /**
+     * Helper method to discard a failed append.  If that fails too the journal is closed, so no more events can be
+     * appended to it.
+     *
+     * @param position  position of the segment before the append
+     */
+    private void discard(long position)
+    {
+        try
+        {
+            if (position >= 0)
+            {
+                output.truncate(position);
+                output.position(position);
+                output.force(false);
+            }
+        }
+        catch (IOException e)
+        {
+            try
+            {
+                output.close();
+            }
+            catch (IOException closeException)
+            {
+                e.addSuppressed(closeException);
+            }
+            throw new AlfrescoRuntimeException("Unable to discard failed append to audit journal " + directory, e);
+        }
+    }
+
+    /**
+     * Reads the events that follow a given event.
+     *
+     * @param afterId       number of the event to read after
+     * @param maxEntries    maximum number of events to read
+     * @return List<Entry>  the events read, in order
+     */
+    public List<Entry> read(long afterId, int maxEntries)
+    {
+        long last;
+        NavigableMap<Long, File> snapshot;
+        synchronized (this)
+        {
+            last = lastId;
+            Long start = segments.floorKey(afterId + 1);
+            snapshot = new TreeMap<>(start == null ? segments : segments.tailMap(start, true));
+        }
+
+        List<Entry> entries = new ArrayList<>(Math.min(maxEntries, 1024));
+        if (afterId >= last)
+        {
+            return entries;
+        }
+
+        try
+        {
+            for (Map.Entry<Long, File> segment : snapshot.entrySet())
+            {
+                long position = 0;
+                if (readHintId == afterId && readHintSegment == segment.getKey())
+                {
+                    position = readHintPosition;
+                }
+
+                try (FileChannel input = FileChannel.open(segment.getValue().toPath(), StandardOpenOption.READ))
+                {
+                    Entry entry;
+                    while (entries.size() < maxEntries && afterId < last && (entry = readEntry(input, position)) != null)
+                    {
+                        position += HEADER_SIZE + entry.size;
+                        if (entry.id > afterId)
+                        {
+                            entries.add(entry);
+                            afterId = entry.id;
+                        }
+                    }
+                    if (position < input.size() && afterId < last && entries.size() < maxEntries)
+                    {
+                        throw new AlfrescoRuntimeException("Audit journal segment " + segment.getValue() +
+                                    " is corrupt at position " + position);
+                    }
+                }
+
+                readHintId = afterId;
+                readHintSegment = segment.getKey();
+                readHintPosition = position;
+                if (entries.size() >= maxEntries || afterId >= last)
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Unable to read audit journal " + directory, e);
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes the segments whose events have all been written.  The segment being appended to is never deleted.
+     *
+     * @param writtenId number of the last event written
+     */
+    public synchronized void release(long writtenId)
+    {
+        while (segments.size() > 1)
+        {
+            Map.Entry<Long, File> first = segments.firstEntry();
+            Long next = segments.higherKey(first.getKey());
+            if (next > writtenId + 1 || !first.getValue().delete())
+            {
+                break;
+            }
+            segments.remove(first.getKey());
+        }
+    }
+
+    /**
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close()
+    {
+        try
+        {
+            output.close();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Unable to close audit journal " + directory, e);
+        }
+    }
+
+    /**
+     * Helper method to start a new segment.
+     *
+     * @param firstId   number of the first event of the segment
+     */
+    private void startSegment(long firstId) throws IOException
+    {
+        File file = new File(directory, String.format("%020d", firstId) + SEGMENT_SUFFIX);
+        output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segments.put(firstId, file);
+    }
+
+    /**
+     * Helper method to generate and store a new identity for the journal.
+     *
+     * @param file      identity file
+     * @return String   identity of the journal
+     */
+    private static String writeJournalId(File file) throws IOException
+    {
+        String id = GUID.generate();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(id.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        return id;
+    }
+
+    /**
+     * Helper method to read the stored identity of the journal.
+     *
+     * @param file      identity file
+     * @return String   identity of the journal
+     */
+    private static String readJournalId(File file) throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Helper method to find the last event of the journal, discarding anything after it.
+     */
+    private void recover() throws IOException
+    {
+        Map.Entry<Long, File> tail = segments.lastEntry();
+        output = FileChannel.open(tail.getValue().toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+
+        long position = 0;
+        long id = tail.getKey() - 1;
+        Entry entry;
+        while ((entry = readEntry(output, position)) != null)
+        {
+            position += HEADER_SIZE + entry.size;
+            id = entry.id;
+        }
+        output.truncate(position);
+        output.position(position);
+        output.force(false);
+        lastId = id;
+    }
+
+    /**
+     * Helper method to read the event at a given position.
+     *
+     * @param input     segment
+     * @param position  position of the event
+     * @return Entry    the event, or null if there is no complete, valid event at the position
+     */
+    private Entry readEntry(FileChannel input, long position) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (!readFully(input, header, position))
+        {
+            return null;
+        }
+        int length = header.getInt(0);
+        long id = header.getLong(4);
+        long checksum = header.getLong(12);
+        if (length < 0 || length > MAX_EVENT_SIZE)
+        {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(input, payload, position + HEADER_SIZE) || checksum(id, payload.array()) != checksum)
+        {
+            return null;
+        }
+
+        Entry entry = deserialize(payload.array());
+        entry.id = id;
+        entry.size = length;
+        return entry;
+    }
+
+    /**
+     * Helper method to fill a buffer from a given position.
+     *
+     * @return boolean  true if the buffer was filled, false if the end of the segment was reached first
+     */
+    private static boolean readFully(FileChannel input, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (input.read(buffer, position + buffer.position()) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long checksum(long id, byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, id).array());
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    private static byte[] serialize(Entry entry) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(entry);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry deserialize(byte[] payload) throws IOException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload)))
+        {
+            return (Entry) in.readObject();
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Unable to read audit journal entry", e);
+        }
+    }
+
+    /**
+     * An audit event of a committed transaction.
+     */
+    public static class Entry implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** Number of the event in the journal, assigned when it is appended */
+        private transient long id;
+
+        /** Size of the event in the journal */
+        private transient int size;
+
+        private final long time;
+        private final String user;
+        private final NodeRef nodeRef;
+        private final HashMap<String, Serializable> auditMap;
+
+        /** Audit values of the node, captured when the event was journalled */
+        private HashMap<String, Serializable> nodeValues;
+
+        /**
+         * @param time      time the event's transaction committed
+         * @param user      user that made the change
+         * @param nodeRef   node the event is about, or null
+         * @param auditMap  audit values
+         */
+        public Entry(long time, String user, NodeRef nodeRef, Map<String, Serializable> auditMap)
+        {
+            this.time = time;
+            this.user = user;
+            this.nodeRef = nodeRef;
+            this.auditMap = new HashMap<>(auditMap);
+        }
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public long getTime()
+        {
+            return time;
+        }
+
+        public String getUser()
+        {
+            return user;
+        }
+
+        public NodeRef getNodeRef()
+        {
+            return nodeRef;
+        }
+
+        public Map<String, Serializable> getAuditMap()
+        {
+            return auditMap;
+        }
+
+        /**
+         * @return Map<String, Serializable>    audit values of the node captured when the event was journalled, or
+         *                                      null if none were captured
+         */
+        public Map<String, Serializable> getNodeValues()
+        {
+            return nodeValues;
+        }
+
+        /**
+         * @param nodeValues    audit values of the node, captured when the event is journalled
+         */
+        public void setNodeValues(Map<String, Serializable> nodeValues)
+        {
+            this.nodeValues = new HashMap<>(nodeValues);
+        }
+    }
+}
@@ -0,0 +1,977 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.module.org_alfresco_module_rm.audit.extractor.CapturedDataExtractor;
+import org.alfresco.repo.audit.AuditComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Writes the audit events of committed transactions to the audit log in the background.
+ * <p>
+ * Events are appended to a journal in a spool directory local to the server, which is locked while the server runs,
+ * and are written to the audit log in batches, one transaction per batch, by background writers.  Events are spread
+ * over one journal per writer by node, so the events of a node are written in the order they were committed.  The
+ * values the audit extractors read from the node are captured when the event is journalled, so the audit entry
+ * describes the node as it was when the event's transaction committed.
+ * <p>
+ * The number of the last event written from each journal is stored with the attribute service, against the identity
+ * of the journal, in the same transaction as the batch, so an event is written exactly once even if the server stops
+ * between writing a batch and learning that it committed.  Journals are drained when the server starts.
+ * <p>
+ * A batch that still fails after the maximum number of attempts is written one event at a time, and events that
+ * still can't be written are moved to a dead letter journal in the spool directory, so they don't hold up the events
+ * behind them.  Dead lettered events are kept, and reported by the management interface, until a replay is requested
+ * once the cause has been fixed.  They are then written in order, exactly once as for the other journals, and the
+ * replay stops at the first event that still can't be written.
+ * <p>
+ * When a journal holds the maximum number of pending events, callers wait for the writers for up to the back pressure
+ * timeout, and events that can't be journalled are handed back to the caller to write itself.
+ *
+ * @since 3.4
+ */
+public class AuditWriteBehind extends AbstractLifecycleBean implements AuditWriteBehindMBean
+{
+    /** Logger */
+    private static Log logger = LogFactory.getLog(AuditWriteBehind.class);
+
+    /** Attribute context of the last event written, keyed by journal identity */
+    private static final String WRITTEN_CONTEXT = "rm.auditWriteBehind.written";
+
+    /** Default spool directory, in the home directory of the user running the server */
+    private static final String DEFAULT_SPOOL_DIRECTORY = "alfresco-rm-audit-spool";
+
+    /** File locked while the spool directory is in use */
+    private static final String SPOOL_LOCK_FILE = "spool.lock";
+
+    /** Directory of the dead letter journal, in the spool directory */
+    private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+
+    /** Size above which a journal starts a new segment */
+    private static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    /** Transaction service */
+    private TransactionService transactionService;
+
+    /** Attribute service */
+    private AttributeService attributeService;
+
+    /** Node service */
+    private NodeService nodeService;
+
+    /** Audit component */
+    private AuditComponent auditComponent;
+
+    /** Executor running the writers */
+    private Executor writerExecutor;
+
+    /** Extractors whose values are captured when events are journalled */
+    private List<CapturedDataExtractor> capturedDataExtractors = Collections.emptyList();
+
+    /** Indicates whether audit events are written behind */
+    private boolean enabled = false;
+
+    /** Spool directory */
+    private String spoolDirectory;
+
+    /** Number of writers, and journals */
+    private int writers = 2;
+
+    /** Maximum number of events written in one transaction */
+    private int batchSize = 200;
+
+    /** Maximum number of events waiting in each journal */
+    private long maxPendingEvents = 100000;
+
+    /** Time, in milliseconds, callers wait for space in a full journal */
+    private long backPressureTimeout = 5000;
+
+    /** Time, in milliseconds, a writer waits before retrying a failed batch */
+    private long retryDelay = 5000;
+
+    /** Number of times a batch, and then each of its events, is attempted before its events are dead lettered */
+    private int maxAttempts = 5;
+
+    /** Lock held on the spool directory */
+    private FileLock spoolLock;
+
+    /** Writer of the journal of the events that couldn't be written, only run when a replay is requested */
+    private volatile Writer deadLetterWriter;
+
+    /** Writers, one per journal */
+    private volatile List<Writer> activeWriters;
+
+    /** Statistics */
+    private final AtomicLong eventsJournalled = new AtomicLong();
+    private final AtomicLong eventsWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong eventsNotJournalled = new AtomicLong();
+    private final AtomicLong eventsDeadLettered = new AtomicLong();
+
+    /**
+     * @param transactionService    transaction service
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param nodeService   node service
+     */
+    public void setNodeService(NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * @param auditComponent    audit component
+     */
+    public void setAuditComponent(AuditComponent auditComponent)
+    {
+        this.auditComponent = auditComponent;
+    }
+
+    /**
+     * @param writerExecutor    executor running the writers
+     */
+    public void setWriterExecutor(Executor writerExecutor)
+    {
+        this.writerExecutor = writerExecutor;
+    }
+
+    /**
+     * @param capturedDataExtractors    extractors whose values are captured when events are journalled
+     */
+    public void setCapturedDataExtractors(List<CapturedDataExtractor> capturedDataExtractors)
+    {
+        this.capturedDataExtractors = capturedDataExtractors;
+    }
+
+    /**
+     * @param enabled   true if audit events are written behind, false otherwise
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param spoolDirectory    spool directory, which must be local to the server, or empty for the default
+     */
+    public void setSpoolDirectory(String spoolDirectory)
+    {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * @param writers   number of writers
+     */
+    public void setWriters(int writers)
+    {
+        this.writers = writers;
+    }
+
+    /**
+     * @param batchSize maximum number of events written in one transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxPendingEvents  maximum number of events waiting in each journal
+     */
+    public void setMaxPendingEvents(long maxPendingEvents)
+    {
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * @param backPressureTimeout   time, in milliseconds, callers wait for space in a full journal
+     */
+    public void setBackPressureTimeout(long backPressureTimeout)
+    {
+        this.backPressureTimeout = backPressureTimeout;
+    }
+
+    /**
+     * @param retryDelay    time, in milliseconds, a writer waits before retrying a failed batch
+     */
+    public void setRetryDelay(long retryDelay)
+    {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @param maxAttempts   number of times a batch, and then each of its events, is attempted before its events are
+     *                      dead lettered
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return boolean  true if events can be journalled, false if the caller must write them itself
+     */
+    public boolean isActive()
+    {
+        return activeWriters != null;
+    }
+
+    /**
+     * Journals the audit events of a committed transaction, to be written to the audit log in the background.
+     * <p>
+     * The audit values of the events' nodes are captured first.  Events about nodes that no longer exist are
+     * dropped, as they are when written by the caller.
+     *
+     * @param entries       audit events
+     * @return List<AuditJournal.Entry> the events that were not journalled and must be written by the caller
+     */
+    public List<AuditJournal.Entry> journal(List<AuditJournal.Entry> entries)
+    {
+        List<Writer> writersNow = activeWriters;
+        if (writersNow == null)
+        {
+            return entries;
+        }
+        entries = capture(entries);
+
+        // group the events by journal
+        List<List<AuditJournal.Entry>> groups = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++)
+        {
+            groups.add(new ArrayList<AuditJournal.Entry>());
+        }
+        for (AuditJournal.Entry entry : entries)
+        {
+            NodeRef nodeRef = entry.getNodeRef();
+            int index = nodeRef == null ? 0 : Math.floorMod(nodeRef.hashCode(), writers);
+            groups.get(index).add(entry);
+        }
+
+        List<AuditJournal.Entry> notJournalled = new ArrayList<>();
+        for (int i = 0; i < writers; i++)
+        {
+            List<AuditJournal.Entry> group = groups.get(i);
+            if (!group.isEmpty() && !writersNow.get(i).offer(group))
+            {
+                notJournalled.addAll(group);
+            }
+        }
+        eventsNotJournalled.addAndGet(notJournalled.size());
+        return notJournalled;
+    }
+
+    /**
+     * Helper method to capture the audit values of the nodes of events.
+     *
+     * @param entries   audit events
+     * @return List<AuditJournal.Entry> the events whose nodes still exist, or that aren't about a node
+     */
+    private List<AuditJournal.Entry> capture(final List<AuditJournal.Entry> entries)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<List<AuditJournal.Entry>>()
+        {
+            @Override
+            public List<AuditJournal.Entry> execute()
+            {
+                List<AuditJournal.Entry> captured = new ArrayList<>(entries.size());
+                for (AuditJournal.Entry entry : entries)
+                {
+                    NodeRef nodeRef = entry.getNodeRef();
+                    if (nodeRef == null)
+                    {
+                        captured.add(entry);
+                    }
+                    else if (nodeService.exists(nodeRef))
+                    {
+                        Map<String, Serializable> values = new HashMap<>();
+                        for (CapturedDataExtractor extractor : capturedDataExtractors)
+                        {
+                            extractor.capture(nodeRef, values);
+                        }
+                        entry.setNodeValues(values);
+                        captured.add(entry);
+                    }
+                }
+                return captured;
+            }
+        }, true, true);
+    }
+
+    /**
+     * @see org.springframework.extensions.surf.util.AbstractLifecycleBean#onBootstrap(org.springframework.context.ApplicationEvent)
+     */
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        if (enabled)
+        {
+            File directory = spoolDirectory == null || spoolDirectory.trim().isEmpty() ?
+                        new File(System.getProperty("user.home"), DEFAULT_SPOOL_DIRECTORY) :
+                        new File(spoolDirectory.trim());
+            spoolLock = lockSpool(directory);
+            deadLetterWriter = new Writer(DEAD_LETTER_DIRECTORY,
+                        new AuditJournal(new File(directory, DEAD_LETTER_DIRECTORY), SEGMENT_SIZE), true);
+            if (deadLetterWriter.getPendingEvents() > 0)
+            {
+                logger.error(deadLetterWriter.getPendingEvents() + " audit events are waiting in the dead letter journal " +
+                            "to be replayed.");
+            }
+
+            // drain any journals left by a larger number of writers, as well as the current ones
+            int journals = writers;
+            while (new File(directory, Integer.toString(journals)).isDirectory())
+            {
+                journals++;
+            }
+
+            List<Writer> writersNow = new ArrayList<>(journals);
+            for (int i = 0; i < journals; i++)
+            {
+                writersNow.add(new Writer(Integer.toString(i),
+                            new AuditJournal(new File(directory, Integer.toString(i)), SEGMENT_SIZE), false));
+            }
+            activeWriters = writersNow;
+
+            for (Writer writer : writersNow)
+            {
+                writer.schedule();
+            }
+        }
+    }
+
+    /**
+     * @see org.springframework.extensions.surf.util.AbstractLifecycleBean#onShutdown(org.springframework.context.ApplicationEvent)
+     */
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        List<Writer> writersNow = activeWriters;
+        activeWriters = null;
+        if (writersNow != null)
+        {
+            for (Writer writer : writersNow)
+            {
+                writer.close();
+            }
+        }
+
+        Writer deadLetterWriterNow = deadLetterWriter;
+        deadLetterWriter = null;
+        if (deadLetterWriterNow != null)
+        {
+            deadLetterWriterNow.close();
+        }
+
+        if (spoolLock != null)
+        {
+            try
+            {
+                spoolLock.channel().close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Unable to release the lock on the audit spool directory.", e);
+            }
+            spoolLock = null;
+        }
+    }
+
+    /**
+     * Helper method to lock the spool directory, creating it if necessary.  The server doesn't start if another
+     * process holds the lock, since the journals of a spool directory must only be written by one server.
+     *
+     * @param directory spool directory
+     * @return FileLock lock on the spool directory
+     */
+    private static FileLock lockSpool(File directory)
+    {
+        FileChannel channel = null;
+        try
+        {
+            Files.createDirectories(directory.toPath());
+            channel = FileChannel.open(new File(directory, SPOOL_LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock != null)
+            {
+                return lock;
+            }
+        }
+        catch (IOException e)
+        {
+            closeQuietly(channel);
+            throw new AlfrescoRuntimeException("Unable to lock audit spool directory " + directory, e);
+        }
+        catch (OverlappingFileLockException e)
+        {
+            // locked by this process, which is handled below
+        }
+
+        closeQuietly(channel);
+        throw new AlfrescoRuntimeException("Audit spool directory " + directory + " is in use by another process.  " +
+                    "Set audit.rm.writeBehind.spoolDirectory to a directory local to this server.");
+    }
+
+    private static void closeQuietly(FileChannel channel)
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                // nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#isEnabled()
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getPendingEvents()
+     */
+    @Override
+    public long getPendingEvents()
+    {
+        long pending = 0;
+        List<Writer> writersNow = activeWriters;
+        if (writersNow != null)
+        {
+            for (Writer writer : writersNow)
+            {
+                pending += writer.getPendingEvents();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getLag()
+     */
+    @Override
+    public long getLag()
+    {
+        long oldest = 0;
+        List<Writer> writersNow = activeWriters;
+        if (writersNow != null)
+        {
+            for (Writer writer : writersNow)
+            {
+                long time = writer.oldestPendingTime;
+                if (time != 0 && (oldest == 0 || time < oldest))
+                {
+                    oldest = time;
+                }
+            }
+        }
+        return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getEventsJournalled()
+     */
+    @Override
+    public long getEventsJournalled()
+    {
+        return eventsJournalled.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getEventsWritten()
+     */
+    @Override
+    public long getEventsWritten()
+    {
+        return eventsWritten.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getBatchesWritten()
+     */
+    @Override
+    public long getBatchesWritten()
+    {
+        return batchesWritten.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getFailedBatches()
+     */
+    @Override
+    public long getFailedBatches()
+    {
+        return failedBatches.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getEventsNotJournalled()
+     */
+    @Override
+    public long getEventsNotJournalled()
+    {
+        return eventsNotJournalled.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getEventsDeadLettered()
+     */
+    @Override
+    public long getEventsDeadLettered()
+    {
+        return eventsDeadLettered.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#getDeadLetterEvents()
+     */
+    @Override
+    public long getDeadLetterEvents()
+    {
+        Writer deadLetterWriterNow = deadLetterWriter;
+        return deadLetterWriterNow == null ? 0 : deadLetterWriterNow.getPendingEvents();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#replayDeadLetters()
+     */
+    @Override
+    public void replayDeadLetters()
+    {
+        Writer deadLetterWriterNow = deadLetterWriter;
+        if (deadLetterWriterNow == null)
+        {
+            throw new AlfrescoRuntimeException("Audit write-behind is not running.");
+        }
+        deadLetterWriterNow.schedule();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.audit.AuditWriteBehindMBean#resetStatistics()
+     */
+    @Override
+    public void resetStatistics()
+    {
+        eventsJournalled.set(0);
+        eventsWritten.set(0);
+        batchesWritten.set(0);
+        failedBatches.set(0);
+        eventsNotJournalled.set(0);
+        eventsDeadLettered.set(0);
+    }
+
+    /**
+     * Writes the events of one journal to the audit log.  A writer is scheduled on the executor when events are
+     * journalled and runs until its journal is drained.  The writer of the dead letter journal is only scheduled when
+     * a replay is requested, and stops at the first event it can't write rather than dead lettering it again.
+     */
+    private class Writer implements Runnable
+    {
+        /** Name of the journal */
+        private final String name;
+
+        /** Indicates whether this is the writer of the dead letter journal */
+        private final boolean replay;
+
+        /** Journal */
+        private final AuditJournal journal;
+
+        /** Number of the last event written */
+        private volatile long writtenId;
+
+        /** Time of the oldest event not yet written, zero when the journal is drained */
+        private volatile long oldestPendingTime;
+
+        /** Indicates whether the writer is scheduled or running */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /** Indicates whether the writer has been closed */
+        private volatile boolean closed;
+
+        private Writer(String name, AuditJournal journal, boolean replay)
+        {
+            this.name = name;
+            this.replay = replay;
+            this.journal = journal;
+            this.writtenId = getWrittenId();
+        }
+
+        private long getPendingEvents()
+        {
+            return journal.getLastId() - writtenId;
+        }
+
+        /**
+         * Journals events, waiting for space if the journal is full.
+         *
+         * @return boolean  true if the events were journalled, false otherwise
+         */
+        private boolean offer(List<AuditJournal.Entry> entries)
+        {
+            try
+            {
+                synchronized (this)
+                {
+                    long deadline = System.currentTimeMillis() + backPressureTimeout;
+                    long wait;
+                    while (!closed && getPendingEvents() + entries.size() > maxPendingEvents &&
+                           (wait = deadline - System.currentTimeMillis()) > 0)
+                    {
+                        wait(wait);
+                    }
+                    if (closed || getPendingEvents() + entries.size() > maxPendingEvents)
+                    {
+                        return false;
+                    }
+                    journal.append(entries);
+                }
+                eventsJournalled.addAndGet(entries.size());
+                schedule();
+                return true;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            catch (AlfrescoRuntimeException e)
+            {
+                logger.error("Unable to journal audit events, they will be written by the caller.", e);
+                return false;
+            }
+        }
+
+        private void schedule()
+        {
+            if (!closed && scheduled.compareAndSet(false, true))
+            {
+                writerExecutor.execute(this);
+            }
+        }
+
+        private synchronized void close()
+        {
+            closed = true;
+            notifyAll();
+            journal.close();
+        }
+
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                List<AuditJournal.Entry> batch;
+                int readSize = batchSize;
+                int attempts = 0;
+                while (!closed && !(batch = journal.read(writtenId, readSize)).isEmpty())
+                {
+                    oldestPendingTime = batch.get(0).getTime();
+                    try
+                    {
+                        write(batch);
+                        attempts = 0;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        failedBatches.incrementAndGet();
+                        if (++attempts < maxAttempts)
+                        {
+                            logger.error("Unable to write audit events from journal " + name + ", retrying in " +
+                                        retryDelay + "ms.", e);
+                            Thread.sleep(retryDelay);
+                        }
+                        else if (!replay)
+                        {
+                            logger.error("Unable to write audit events from journal " + name + " after " + attempts +
+                                        " attempts, writing them one at a time.", e);
+                            writeEach(batch);
+                            attempts = 0;
+                        }
+                        else if (batch.size() > 1)
+                        {
+                            // replay the events one at a time, up to the one that fails
+                            readSize = 1;
+                            attempts = 0;
+                        }
+                        else
+                        {
+                            logger.error("Unable to replay audit event " + batch.get(0).getId() + " after " + attempts +
+                                        " attempts, it remains in the dead letter journal with " + getPendingEvents() +
+                                        " events.", e);
+                            break;
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Unable to process audit journal " + name + ".", e);
+            }
+            finally
+            {
+                oldestPendingTime = 0;
+                scheduled.set(false);
+            }
+
+            // pick up events journalled after the last read, the dead letter journal waits for the next replay
+            if (!replay && getPendingEvents() > 0)
+            {
+                schedule();
+            }
+        }
+
+        /**
+         * Writes the events of a batch one at a time, moving any event that still can't be written to the dead
+         * letter journal.
+         */
+        private void writeEach(List<AuditJournal.Entry> batch) throws InterruptedException
+        {
+            for (AuditJournal.Entry entry : batch)
+            {
+                if (entry.getId() <= writtenId)
+                {
+                    continue;
+                }
+
+                for (int attempt = 1; !closed; attempt++)
+                {
+                    try
+                    {
+                        write(Collections.singletonList(entry));
+                        break;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        if (attempt < maxAttempts)
+                        {
+                            Thread.sleep(retryDelay);
+                        }
+                        else
+                        {
+                            logger.error("Unable to write audit event " + entry.getId() + " from journal " + name +
+                                        ", moving it to the dead letter journal.", e);
+                            deadLetter(entry);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves an event to the dead letter journal and records it as written.  The event is forced to the dead
+         * letter journal first, so it is never lost, although it may be dead lettered twice if the server stops.
+         */
+        private void deadLetter(AuditJournal.Entry entry)
+        {
+            Writer deadLetterWriterNow = deadLetterWriter;
+            if (deadLetterWriterNow == null)
+            {
+                throw new AlfrescoRuntimeException("The dead letter journal is closed.");
+            }
+
+            long id = entry.getId();
+            deadLetterWriterNow.journal.append(Collections.singletonList(entry));
+            commit(Collections.<AuditJournal.Entry>emptyList(), id);
+            eventsDeadLettered.incrementAndGet();
+        }
+
+        /**
+         * Writes a batch of events, and the number of the last one, in one transaction.
+         */
+        private void write(List<AuditJournal.Entry> batch)
+        {
+            int written = commit(batch, batch.get(batch.size() - 1).getId());
+            eventsWritten.addAndGet(written);
+            batchesWritten.incrementAndGet();
+        }
+
+        /**
+         * Writes events that haven't been written yet and the number of the last event written, in one transaction,
+         * and then releases the events.
+         *
+         * @param entries   events to write
+         * @param lastId    number of the last event written
+         * @return int      number of events written
+         */
+        private int commit(final List<AuditJournal.Entry> entries, final long lastId)
+        {
+            int written = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Integer>()
+            {
+                @Override
+                public Integer execute()
+                {
+                    // skip any events already written by a transaction whose outcome wasn't known
+                    Long alreadyWrittenId = (Long) attributeService.getAttribute(WRITTEN_CONTEXT, journal.getJournalId());
+                    if (alreadyWrittenId != null && alreadyWrittenId >= lastId)
+                    {
+                        return 0;
+                    }
+                    int count = 0;
+                    for (AuditJournal.Entry entry : entries)
+                    {
+                        if (alreadyWrittenId == null || entry.getId() > alreadyWrittenId)
+                        {
+                            writeEntry(entry);
+                            count++;
+                        }
+                    }
+                    attributeService.setAttribute(lastId, WRITTEN_CONTEXT, journal.getJournalId());
+                    return count;
+                }
+            }, false, true);
+
+            synchronized (this)
+            {
+                writtenId = lastId;
+                notifyAll();
+            }
+            journal.release(lastId);
+            return written;
+        }
+
+        /**
+         * Writes an event as the user that made the change, with the audit values of its node captured when it was
+         * journalled.  Events journalled without captured values are skipped if their node no longer exists.
+         */
+        private void writeEntry(final AuditJournal.Entry entry)
+        {
+            RunAsWork<Void> work = new RunAsWork<Void>()
+            {
+                @Override
+                public Void doWork()
+                {
+                    NodeRef nodeRef = entry.getNodeRef();
+                    Map<String, Serializable> nodeValues = entry.getNodeValues();
+                    if (nodeValues != null)
+                    {
+                        CapturedDataExtractor.bind(nodeValues);
+                        try
+                        {
+                            auditComponent.recordAuditValues(RecordsManagementAuditServiceImpl.RM_AUDIT_PATH_ROOT,
+                                        entry.getAuditMap());
+                        }
+                        finally
+                        {
+                            CapturedDataExtractor.unbind();
+                        }
+                    }
+                    else if (nodeRef == null || nodeService.exists(nodeRef))
+                    {
+                        auditComponent.recordAuditValues(RecordsManagementAuditServiceImpl.RM_AUDIT_PATH_ROOT,
+                                    entry.getAuditMap());
+                    }
+                    return null;
+                }
+            };
+
+            if (entry.getUser() == null)
+            {
+                AuthenticationUtil.runAsSystem(work);
+            }
+            else
+            {
+                AuthenticationUtil.runAs(work, entry.getUser());
+            }
+        }
+
+        /**
+         * Helper method to get the number of the last event written from the journal.
+         */
+        private long getWrittenId()
+        {
+            Serializable written = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Serializable>()
+            {
+                @Override
+                public Serializable execute()
+                {
+                    return attributeService.getAttribute(WRITTEN_CONTEXT, journal.getJournalId());
+                }
+            }, true, true);
+            return written == null ? 0 : (Long) written;
+        }
+    }
+}
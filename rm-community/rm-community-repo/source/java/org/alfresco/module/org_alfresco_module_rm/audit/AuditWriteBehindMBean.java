@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.audit;
+
+/**
+ * Management interface of the audit write-behind.
+ *
+ * @since 3.4
+ */
+public interface AuditWriteBehindMBean
+{
+    /**
+     * @return boolean  true if audit events are written behind, false if they are written by the caller
+     */
+    boolean isEnabled();
+
+    /**
+     * @return long number of journalled audit events not yet written to the audit log
+     */
+    long getPendingEvents();
+
+    /**
+     * @return long age, in milliseconds, of the oldest audit event not yet written to the audit log
+     */
+    long getLag();
+
+    /**
+     * @return long number of audit events journalled
+     */
+    long getEventsJournalled();
+
+    /**
+     * @return long number of audit events written to the audit log
+     */
+    long getEventsWritten();
+
+    /**
+     * @return long number of batches written to the audit log
+     */
+    long getBatchesWritten();
+
+    /**
+     * @return long number of batches that failed and were retried
+     */
+    long getFailedBatches();
+
+    /**
+     * @return long number of audit events written by the caller because the journal was full or unavailable
+     */
+    long getEventsNotJournalled();
+
+    /**
+     * @return long number of audit events moved to the dead letter journal because they couldn't be written
+     */
+    long getEventsDeadLettered();
+
+    /**
+     * @return long number of audit events in the dead letter journal waiting to be replayed
+     */
+    long getDeadLetterEvents();
+
+    /**
+     * Replays the events of the dead letter journal in the background, writing each of them to the audit log exactly
+     * once.  The replay stops at the first event that still can't be written, which is kept for the next replay.
+     */
+    void replayDeadLetters();
+
+    /**
+     * Resets the statistics.
+     */
+    void resetStatistics();
+}
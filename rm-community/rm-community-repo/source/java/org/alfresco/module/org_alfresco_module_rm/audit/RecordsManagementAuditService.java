@@ -29,6 +29,7 @@ package org.alfresco.module.org_alfresco_module_rm.audit;
 
 import java.io.File;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -217,6 +218,26 @@ public interface RecordsManagementAuditService extends RecordsManagementAuditSer
      */
     List<RecordsManagementAuditEntry> getAuditTrail(RecordsManagementAuditQueryParameters params);
 
+    /**
+     * Streams the audit log entries matching the provided parameters to the given writer.
+     * <p>
+     * The audit applications are queried concurrently and their entries are merged into
+     * timestamp order as they are read, so the report is written as it is produced rather
+     * than being collected first.  Entries are always written oldest first.
+     * <p>
+     * When the parameters limit the number of entries a continuation token is returned,
+     * which can be passed to a subsequent call to resume the audit trail directly after
+     * the last entry read.
+     *
+     * @param params            Parameters to use to retrieve audit trail (never <tt>null</tt>)
+     * @param continuationToken Token returned by a previous call, or <tt>null</tt> to start from the beginning
+     * @param writer            Writer to stream the audit trail to
+     * @param format            The format the report should be produced in
+     * @return                  Continuation token, or <tt>null</tt> if there are no more entries
+     * @since 3.4
+     */
+    String writeAuditTrail(RecordsManagementAuditQueryParameters params, String continuationToken, Writer writer, ReportFormat format);
+
     /**
      * Retrieves a list of audit log entries using the provided parameters
      * represented by the RecordsManagementAuditQueryParameters instance and
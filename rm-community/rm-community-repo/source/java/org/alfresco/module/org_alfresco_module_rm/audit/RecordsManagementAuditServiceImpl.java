@@ -48,10 +48,17 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.transaction.SystemException;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -67,6 +74,7 @@ import org.alfresco.repo.audit.AuditComponent;
 import org.alfresco.repo.audit.model.AuditApplication;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
@@ -187,6 +195,10 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
     protected static final String AUDIT_TRAIL_JSON_FILE_SUFFIX = ".json";
     protected static final String AUDIT_TRAIL_HTML_FILE_SUFFIX = ".html";
 
+    /** Streamed audit trail */
+    private static final String CONTINUATION_TOKEN_SEPARATOR = "-";
+    private static final int STREAM_FLUSH_INTERVAL = 100;
+
     /** Audit auditing events */
     private static final String AUDIT_EVENT_START = "audit.start";
     private static final String MSG_AUDIT_START = "rm.audit.audit-start";
@@ -227,6 +239,18 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
     /** Registered and initialised records management auditEvents */
     private Map<String, AuditEvent> auditEvents = new HashMap<>();
 
+    /** Executor used to query the audit applications concurrently when streaming the audit trail */
+    private Executor auditQueryExecutor;
+
+    /** Number of entries buffered for each audit application when streaming the audit trail */
+    private int streamBufferSize = 1000;
+
+    /** Seconds to wait for an audit application to be read, or for its entries to be written, when streaming the audit trail */
+    private long streamTimeout = 300L;
+
+    /** Writes audit events in the background, if enabled */
+    private AuditWriteBehind auditWriteBehind;
+
     /**
      * Set the component used to bind to behaviour callbacks
      */
@@ -349,6 +373,39 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
         this.holdService = holdService;
     }
 
+    /**
+     * @param auditQueryExecutor    executor used to query the audit applications when streaming the audit trail
+     */
+    public void setAuditQueryExecutor(Executor auditQueryExecutor)
+    {
+        this.auditQueryExecutor = auditQueryExecutor;
+    }
+
+    /**
+     * @param streamBufferSize  number of entries buffered for each audit application when streaming the audit trail
+     */
+    public void setStreamBufferSize(int streamBufferSize)
+    {
+        this.streamBufferSize = streamBufferSize;
+    }
+
+    /**
+     * @param streamTimeout seconds to wait for an audit application to be read, or for its entries to be written,
+     *                      before streaming the audit trail fails
+     */
+    public void setStreamTimeout(long streamTimeout)
+    {
+        this.streamTimeout = streamTimeout;
+    }
+
+    /**
+     * @param auditWriteBehind  writes audit events in the background, if enabled
+     */
+    public void setAuditWriteBehind(AuditWriteBehind auditWriteBehind)
+    {
+        this.auditWriteBehind = auditWriteBehind;
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditService#registerAuditEvent(java.lang.String, java.lang.String)
      */
@@ -741,7 +798,11 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
         @Override
         public void afterCommit()
         {
-            final Set<RMAuditNode> auditedNodes = TransactionalResourceHelper.getSet(KEY_RM_AUDIT_NODE_RECORDS);
+            final Set<RMAuditNode> auditedNodes = journal(TransactionalResourceHelper.<RMAuditNode>getSet(KEY_RM_AUDIT_NODE_RECORDS));
+            if (auditedNodes.isEmpty())
+            {
+                return;
+            }
 
             // Start a *new* read-write transaction to audit in
             RetryingTransactionCallback<Void> auditCallback = new RetryingTransactionCallback<Void>()
@@ -756,6 +817,43 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
             transactionService.getRetryingTransactionHelper().doInTransaction(auditCallback, false, true);
         }
 
+        /**
+         * Journal the audit information to be written in the background, if enabled.
+         *
+         * @param auditedNodes  details of the nodes that were modified
+         * @return              details of the nodes that were not journalled and must be audited now
+         */
+        private Set<RMAuditNode> journal(Set<RMAuditNode> auditedNodes)
+        {
+            if (auditWriteBehind == null || !auditWriteBehind.isActive() || auditedNodes.isEmpty())
+            {
+                return auditedNodes;
+            }
+
+            long time = System.currentTimeMillis();
+            String user = AuthenticationUtil.getFullyAuthenticatedUser();
+            Map<AuditJournal.Entry, RMAuditNode> entries = new LinkedHashMap<>();
+            for (RMAuditNode auditedNode : auditedNodes)
+            {
+                Map<String, Serializable> auditMap = buildAuditMap(auditedNode.getNodeRef(),
+                                                                   auditedNode.getEventName(),
+                                                                   auditedNode.getNodePropertiesBefore(),
+                                                                   auditedNode.getNodePropertiesAfter(),
+                                                                   auditedNode.getRemoveIfNoPropertyChanged());
+                if (!auditMap.isEmpty())
+                {
+                    entries.put(new AuditJournal.Entry(time, user, auditedNode.getNodeRef(), auditMap), auditedNode);
+                }
+            }
+
+            Set<RMAuditNode> notJournalled = new LinkedHashSet<>();
+            for (AuditJournal.Entry entry : auditWriteBehind.journal(new ArrayList<>(entries.keySet())))
+            {
+                notJournalled.add(entries.get(entry));
+            }
+            return notJournalled;
+        }
+
         /**
          * Do the actual auditing, assuming the presence of a viable transaction
          *
@@ -883,9 +981,6 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
         // define the callback
         AuditQueryCallback callback = new AuditTrailQueryCallback(results, writer, reportFormat);
 
-        String user = params.getUser();
-        Long fromTime = getFromDateTime(params.getDateFrom());
-        Long toTime = getToDateTime(params.getDateTo());
         NodeRef nodeRef = params.getNodeRef();
         int maxEntries = params.getMaxEntries();
         // Reverse order if the results are limited
@@ -900,27 +995,320 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
         }
 
         // Build audit query parameters
+        AuditQueryParameters dod5015AuditQueryParams = getDOD5015AuditQueryParameters(params, forward);
+        AuditQueryParameters auditQueryParams = getRMAuditQueryParameters(params, forward);
+
+        // Get audit entries
+        if (isDOD5015Site())
+        {
+            auditService.auditQuery(callback, dod5015AuditQueryParams, maxEntries);
+        }
+        // We always need to make the standard query - regardless of the type of RM site (to get events like RM site created).
+        auditService.auditQuery(callback, auditQueryParams, maxEntries);
+
+        // finish off the audit trail report
+        writeAuditTrailFooter(writer, reportFormat);
+
+        // audit that the audit has been view'ed
+        if (nodeRef == null)
+        {
+            // grab the default file plan, but don't fail if it can't be found!
+            nodeRef = filePlanService.getFilePlanBySiteId(FilePlanService.DEFAULT_RM_SITE_ID);
+        }
+        auditEvent(nodeRef, AUDIT_EVENT_VIEW, null, null, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String writeAuditTrail(RecordsManagementAuditQueryParameters params, String continuationToken, Writer writer, ReportFormat format)
+    {
+        ParameterCheck.mandatory("params", params);
+        ParameterCheck.mandatory("writer", writer);
+
+        try
+        {
+            return writeAuditTrailImpl(params, continuationToken, writer, format);
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException(MSG_TRAIL_FILE_FAIL, e);
+        }
+    }
+
+    /**
+     * Stream the audit trail to the given writer, merging the entries of the audit applications into timestamp
+     * order as they are read.
+     *
+     * @param params                the search parameters
+     * @param continuationToken     continuation token from a previous call, <code>null</code> to start at the beginning
+     * @param writer                Writer to write the audit trail
+     * @param reportFormat          Format to write the audit trail in
+     * @return String               continuation token, <code>null</code> if the audit trail has been read in full
+     */
+    protected String writeAuditTrailImpl(
+            final RecordsManagementAuditQueryParameters params,
+            final String continuationToken,
+            final Writer writer,
+            final ReportFormat reportFormat)
+            throws IOException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Streaming audit trail in '" + reportFormat + "' format from '" + continuationToken + "' using parameters: " + params);
+        }
+
+        Pair<Long, Long> lastEntryIds = parseContinuationToken(continuationToken);
+        int maxEntries = params.getMaxEntries();
+
+        // define one producer per audit application, each resuming after the last entry previously read.  Only the
+        // RM application is read on the executor, so an export never waits on two pool threads at once
+        AuditQueryParameters auditQueryParams = getRMAuditQueryParameters(params, true);
+        AuditTrailStreamProducer rmProducer = new AuditTrailStreamProducer(auditQueryParams, lastEntryIds.getFirst(), maxEntries,
+                    auditQueryExecutor != null);
+        AuditTrailStreamProducer dod5015Producer = null;
+        List<AuditTrailStreamProducer> producers = new ArrayList<>(2);
+        producers.add(rmProducer);
+        if (isDOD5015Site())
+        {
+            AuditQueryParameters dod5015AuditQueryParams = getDOD5015AuditQueryParameters(params, true);
+            dod5015Producer = new AuditTrailStreamProducer(dod5015AuditQueryParams, lastEntryIds.getSecond(), maxEntries, false);
+            producers.add(dod5015Producer);
+        }
+
+        // start the audit trail report
+        writeAuditTrailHeader(writer, params, reportFormat);
+
+        boolean exhausted = false;
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try
+        {
+            startProducers(producers);
+
+            AuditTrailQueryCallback callback = new AuditTrailQueryCallback(null, writer, reportFormat);
+            while (true)
+            {
+                // pick the producer with the oldest entry available
+                AuditTrailStreamProducer next = null;
+                boolean truncated = false;
+                boolean finished = true;
+                for (AuditTrailStreamProducer producer : producers)
+                {
+                    AuditTrailStreamEntry head = producer.peek();
+                    if (head == null)
+                    {
+                        // entries beyond a truncated result set are unknown, so nothing later can be merged safely
+                        truncated = truncated || producer.isTruncated();
+                        continue;
+                    }
+                    finished = false;
+                    if (next == null || head.compareTo(next.peek()) < 0)
+                    {
+                        next = producer;
+                    }
+                }
+
+                if (truncated || next == null)
+                {
+                    exhausted = finished && !truncated;
+                    break;
+                }
+
+                AuditTrailStreamEntry entry = next.take();
+                if (!callback.handleAuditEntry(entry.entryId, entry.applicationName, entry.user, entry.time, entry.values))
+                {
+                    // shutting down
+                    break;
+                }
+
+                // push the entries written so far to the client
+                if (++count % STREAM_FLUSH_INTERVAL == 0)
+                {
+                    writer.flush();
+                }
+            }
+        }
+        finally
+        {
+            for (AuditTrailStreamProducer producer : producers)
+            {
+                producer.cancel();
+            }
+        }
+
+        for (AuditTrailStreamProducer producer : producers)
+        {
+            if (producer.getError() != null)
+            {
+                throw new AlfrescoRuntimeException(MSG_TRAIL_FILE_FAIL, producer.getError());
+            }
+        }
+
+        String nextContinuationToken = null;
+        if (!exhausted)
+        {
+            nextContinuationToken = getContinuationToken(rmProducer.getLastEntryId(),
+                        dod5015Producer == null ? lastEntryIds.getSecond() : dod5015Producer.getLastEntryId());
+        }
+
+        // finish off the audit trail report
+        writeAuditTrailFooter(writer, reportFormat, nextContinuationToken);
+        writer.flush();
+
+        if (logger.isDebugEnabled())
+        {
+            long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+            logger.debug("Streamed " + count + " audit trail entries in " + elapsed + "ms (" +
+                        (count * 1000L / elapsed) + " entries/sec), continuation: " + nextContinuationToken);
+        }
+
+        // audit that the audit has been view'ed, once per export
+        if (continuationToken == null)
+        {
+            NodeRef nodeRef = params.getNodeRef();
+            if (nodeRef == null)
+            {
+                // grab the default file plan, but don't fail if it can't be found!
+                nodeRef = filePlanService.getFilePlanBySiteId(FilePlanService.DEFAULT_RM_SITE_ID);
+            }
+            auditEvent(nodeRef, AUDIT_EVENT_VIEW, null, null, true);
+        }
+
+        return nextContinuationToken;
+    }
+
+    /**
+     * Start reading the audit applications.
+     * <p>
+     * Producers that aren't concurrent are read in full on the calling thread first.  The concurrent producer is then
+     * run on the audit query executor, as the current user and in its own read-only transaction, and is drained by the
+     * calling thread as it is read.  As each export holds at most one pool thread, and that thread only ever waits on
+     * the export itself, concurrent exports can't deadlock the pool.
+     *
+     * @param producers audit trail stream producers
+     */
+    private void startProducers(List<AuditTrailStreamProducer> producers)
+    {
+        for (AuditTrailStreamProducer producer : producers)
+        {
+            if (!producer.isConcurrent())
+            {
+                producer.read(null);
+            }
+        }
+
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+        for (final AuditTrailStreamProducer producer : producers)
+        {
+            if (producer.isConcurrent())
+            {
+                auditQueryExecutor.execute(() -> producer.read(runAsUser));
+            }
+        }
+    }
+
+    /**
+     * Parse a continuation token into the id of the last entry read from the RM and DOD 5015 audit applications.
+     * <p>
+     * 'package' scope to help testing.
+     *
+     * @param continuationToken continuation token, may be <code>null</code>
+     * @return {@link Pair}     last RM entry id and last DOD 5015 entry id, <code>null</code> where none have been read
+     * @throws IllegalArgumentException if the continuation token is not valid
+     */
+    /*package*/ static Pair<Long, Long> parseContinuationToken(String continuationToken)
+    {
+        if (continuationToken == null || continuationToken.isEmpty())
+        {
+            return new Pair<>(null, null);
+        }
+
+        String[] ids = continuationToken.split(CONTINUATION_TOKEN_SEPARATOR, -1);
+        if (ids.length != 2)
+        {
+            throw new IllegalArgumentException("Invalid audit trail continuation token: " + continuationToken);
+        }
+
+        try
+        {
+            return new Pair<>(ids[0].isEmpty() ? null : Long.valueOf(ids[0]),
+                              ids[1].isEmpty() ? null : Long.valueOf(ids[1]));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid audit trail continuation token: " + continuationToken, e);
+        }
+    }
+
+    /**
+     * Build a continuation token from the id of the last entry read from the RM and DOD 5015 audit applications.
+     * <p>
+     * 'package' scope to help testing.
+     *
+     * @param lastRMEntryId         id of the last RM audit entry read, <code>null</code> if none
+     * @param lastDOD5015EntryId    id of the last DOD 5015 audit entry read, <code>null</code> if none
+     * @return String               continuation token
+     */
+    /*package*/ static String getContinuationToken(Long lastRMEntryId, Long lastDOD5015EntryId)
+    {
+        return (lastRMEntryId == null ? "" : lastRMEntryId.toString()) + CONTINUATION_TOKEN_SEPARATOR +
+               (lastDOD5015EntryId == null ? "" : lastDOD5015EntryId.toString());
+    }
+
+    /**
+     * Indicates whether the RM site is a DOD 5015 site, in which case the DOD 5015 audit application
+     * also needs to be queried.
+     *
+     * @return boolean  true if the RM site is a DOD 5015 site, false otherwise
+     */
+    private boolean isDOD5015Site()
+    {
+        SiteInfo siteInfo = siteService.getSite(DEFAULT_SITE_NAME);
+        return siteInfo != null && TYPE_DOD_5015_SITE.equals(nodeService.getType(siteInfo.getNodeRef()));
+    }
+
+    /**
+     * Build the query parameters for the DOD 5015 audit application.
+     *
+     * @param params    audit trail parameters
+     * @param forward   true to query oldest entries first, false otherwise
+     * @return {@link AuditQueryParameters}  DOD 5015 audit application query parameters
+     */
+    private AuditQueryParameters getDOD5015AuditQueryParameters(RecordsManagementAuditQueryParameters params, boolean forward)
+    {
         AuditQueryParameters dod5015AuditQueryParams = new AuditQueryParameters();
         dod5015AuditQueryParams.setForward(forward);
         dod5015AuditQueryParams.setApplicationName(DOD5015_AUDIT_APPLICATION_NAME);
-        dod5015AuditQueryParams.setUser(user);
-        dod5015AuditQueryParams.setFromTime(fromTime);
-        dod5015AuditQueryParams.setToTime(toTime);
-        if (nodeRef != null)
+        dod5015AuditQueryParams.setUser(params.getUser());
+        dod5015AuditQueryParams.setFromTime(getFromDateTime(params.getDateFrom()));
+        dod5015AuditQueryParams.setToTime(getToDateTime(params.getDateTo()));
+        if (params.getNodeRef() != null)
         {
-            dod5015AuditQueryParams.addSearchKey(DOD5015_AUDIT_DATA_NODE_NODEREF, nodeRef);
+            dod5015AuditQueryParams.addSearchKey(DOD5015_AUDIT_DATA_NODE_NODEREF, params.getNodeRef());
         }
+        return dod5015AuditQueryParams;
+    }
 
-        //
+    /**
+     * Build the query parameters for the RM audit application.
+     *
+     * @param params    audit trail parameters
+     * @param forward   true to query oldest entries first, false otherwise
+     * @return {@link AuditQueryParameters}  RM audit application query parameters
+     */
+    private AuditQueryParameters getRMAuditQueryParameters(RecordsManagementAuditQueryParameters params, boolean forward)
+    {
         AuditQueryParameters auditQueryParams = new AuditQueryParameters();
         auditQueryParams.setForward(forward);
         auditQueryParams.setApplicationName(RM_AUDIT_APPLICATION_NAME);
-        auditQueryParams.setUser(user);
-        auditQueryParams.setFromTime(fromTime);
-        auditQueryParams.setToTime(toTime);
-        if (nodeRef != null)
+        auditQueryParams.setUser(params.getUser());
+        auditQueryParams.setFromTime(getFromDateTime(params.getDateFrom()));
+        auditQueryParams.setToTime(getToDateTime(params.getDateTo()));
+        if (params.getNodeRef() != null)
         {
-            auditQueryParams.addSearchKey(RM_AUDIT_DATA_NODE_NODEREF, nodeRef);
+            auditQueryParams.addSearchKey(RM_AUDIT_DATA_NODE_NODEREF, params.getNodeRef());
         }
         else if (params.getEvent() != null)
         {
@@ -929,38 +1317,15 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
                 auditQueryParams.addSearchKey(RM_AUDIT_DATA_LOGIN_FULLNAME, null);
             }
             else if (params.getEvent().equalsIgnoreCase(RM_AUDIT_EVENT_LOGIN_FAILURE))
-                {
-                    auditQueryParams.addSearchKey(RM_AUDIT_DATA_LOGIN_ERROR, null);
-                }
-            else
             {
-                auditQueryParams.addSearchKey(RM_AUDIT_DATA_EVENT_NAME, params.getEvent());
+                auditQueryParams.addSearchKey(RM_AUDIT_DATA_LOGIN_ERROR, null);
             }
-        }
-
-        // Get audit entries
-        SiteInfo siteInfo = siteService.getSite(DEFAULT_SITE_NAME);
-        if (siteInfo != null)
-        {
-            QName siteType = nodeService.getType(siteInfo.getNodeRef());
-            if (siteType.equals(TYPE_DOD_5015_SITE))
+            else
             {
-                auditService.auditQuery(callback, dod5015AuditQueryParams, maxEntries);
+                auditQueryParams.addSearchKey(RM_AUDIT_DATA_EVENT_NAME, params.getEvent());
             }
         }
-        // We always need to make the standard query - regardless of the type of RM site (to get events like RM site created).
-        auditService.auditQuery(callback, auditQueryParams, maxEntries);
-
-        // finish off the audit trail report
-        writeAuditTrailFooter(writer, reportFormat);
-
-        // audit that the audit has been view'ed
-        if (nodeRef == null)
-        {
-            // grab the default file plan, but don't fail if it can't be found!
-            nodeRef = filePlanService.getFilePlanBySiteId(FilePlanService.DEFAULT_RM_SITE_ID);
-        }
-        auditEvent(nodeRef, AUDIT_EVENT_VIEW, null, null, true);
+        return auditQueryParams;
     }
 
     /**
@@ -1499,6 +1864,20 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
      * @throws IOException
      */
     private void writeAuditTrailFooter(Writer writer, ReportFormat reportFormat) throws IOException
+    {
+        writeAuditTrailFooter(writer, reportFormat, null);
+    }
+
+    /**
+     * Writes the end of the audit trail stream to the given writer, including the continuation token
+     * if there is one
+     *
+     * @param writer The writer to write to
+     * @param reportFormat The format to write the footer in
+     * @param continuationToken The continuation token, <code>null</code> if none
+     * @throws IOException
+     */
+    private void writeAuditTrailFooter(Writer writer, ReportFormat reportFormat, String continuationToken) throws IOException
     {
         if (writer == null)
         {
@@ -1508,12 +1887,25 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
         if (reportFormat == ReportFormat.HTML)
         {
             // write footer as HTML
+            if (continuationToken != null)
+            {
+                writer.write("\n<div class=\"audit-continuation\" data-continuation=\"");
+                writer.write(escapeHtml4(continuationToken));
+                writer.write("\"></div>");
+            }
             writer.write("\n</body></html>");
         }
         else
         {
             // write footer as JSON
-            writer.write("\n\t\t]\n\t}\n}");
+            writer.write("\n\t\t]");
+            if (continuationToken != null)
+            {
+                writer.write(",\n\t\t\"continuation\": \"");
+                writer.write(continuationToken);
+                writer.write("\"");
+            }
+            writer.write("\n\t}\n}");
         }
     }
 
@@ -1982,4 +2374,287 @@ public class RecordsManagementAuditServiceImpl extends AbstractLifecycleBean
             }
         }
     }
+
+    /**
+     * Audit entry read from an audit application whilst streaming the audit trail.
+     */
+    private static final class AuditTrailStreamEntry implements Comparable<AuditTrailStreamEntry>
+    {
+        private final Long entryId;
+        private final String applicationName;
+        private final String user;
+        private final long time;
+        private final Map<String, Serializable> values;
+
+        private AuditTrailStreamEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+        {
+            this.entryId = entryId;
+            this.applicationName = applicationName;
+            this.user = user;
+            this.time = time;
+            this.values = values;
+        }
+
+        /**
+         * Order by time, then by entry id.
+         */
+        @Override
+        public int compareTo(AuditTrailStreamEntry other)
+        {
+            int result = Long.compare(time, other.time);
+            if (result == 0)
+            {
+                result = Long.compare(entryId, other.entryId);
+            }
+            return result;
+        }
+    }
+
+    /** Marks the end of the entries read from an audit application */
+    private static final AuditTrailStreamEntry END_OF_STREAM = new AuditTrailStreamEntry(null, null, null, 0L, null);
+
+    /**
+     * Reads the entries of an audit application into a buffer, from which they are taken by the thread writing the
+     * audit trail.  The buffer is only bounded when the producer reads concurrently with the writing thread.
+     */
+    private class AuditTrailStreamProducer implements AuditQueryCallback
+    {
+        private final AuditQueryParameters queryParams;
+        private final int maxEntries;
+        private final boolean concurrent;
+        private final BlockingQueue<AuditTrailStreamEntry> buffer;
+
+        private volatile boolean cancelled = false;
+        private volatile boolean truncated = false;
+        private volatile Throwable error;
+
+        /** id of the last entry queued, entries re-read when the query transaction is retried are skipped */
+        private Long lastQueuedEntryId;
+        private int queued = 0;
+
+        /** next entry and id of the last entry taken, only used by the thread writing the audit trail */
+        private AuditTrailStreamEntry head;
+        private Long lastEntryId;
+
+        /**
+         * @param queryParams   audit application query parameters
+         * @param lastEntryId   id of the last entry previously read, <code>null</code> to read from the first entry
+         * @param maxEntries    maximum number of entries to read
+         * @param concurrent    true if the entries are read on the audit query executor, false if they are read up front
+         */
+        public AuditTrailStreamProducer(AuditQueryParameters queryParams, Long lastEntryId, int maxEntries, boolean concurrent)
+        {
+            this.queryParams = queryParams;
+            this.maxEntries = maxEntries;
+            this.concurrent = concurrent;
+            this.lastEntryId = lastEntryId;
+            this.lastQueuedEntryId = lastEntryId;
+            if (lastEntryId != null)
+            {
+                queryParams.setFromId(lastEntryId + 1);
+            }
+
+            // everything is read up front when not reading concurrently
+            buffer = new LinkedBlockingQueue<>(concurrent ? streamBufferSize : Integer.MAX_VALUE);
+        }
+
+        /**
+         * @return boolean  true if the entries are read on the audit query executor, false otherwise
+         */
+        public boolean isConcurrent()
+        {
+            return concurrent;
+        }
+
+        /**
+         * Read the audit application entries into the buffer.
+         *
+         * @param runAsUser user to query the audit application as in a new read-only transaction,
+         *                  <code>null</code> to query in the current context
+         */
+        public void read(String runAsUser)
+        {
+            if (cancelled)
+            {
+                // the export finished, or gave up, before the query was run
+                return;
+            }
+
+            try
+            {
+                if (runAsUser == null)
+                {
+                    auditService.auditQuery(this, queryParams, maxEntries);
+                }
+                else
+                {
+                    AuthenticationUtil.runAs(() ->
+                        transactionService.getRetryingTransactionHelper().doInTransaction(() ->
+                        {
+                            auditService.auditQuery(this, queryParams, maxEntries);
+                            return null;
+                        }, true, true), runAsUser);
+                }
+                truncated = maxEntries > 0 && queued >= maxEntries;
+            }
+            catch (RuntimeException e)
+            {
+                error = e;
+            }
+            finally
+            {
+                offer(END_OF_STREAM);
+            }
+        }
+
+        /**
+         * @return Throwable    error raised reading the audit application, <code>null</code> if none
+         */
+        public Throwable getError()
+        {
+            return error;
+        }
+
+        /**
+         * @return boolean  true if the audit application has more entries than were read, false otherwise
+         */
+        public boolean isTruncated()
+        {
+            return truncated;
+        }
+
+        /**
+         * @return Long id of the last entry taken, <code>null</code> if none
+         */
+        public Long getLastEntryId()
+        {
+            return lastEntryId;
+        }
+
+        /**
+         * Stop reading the audit application.
+         */
+        public void cancel()
+        {
+            cancelled = true;
+            buffer.clear();
+        }
+
+        /**
+         * Get the next entry, waiting for it to be read if necessary.
+         *
+         * @return {@link AuditTrailStreamEntry}    next entry, <code>null</code> if there are no more entries
+         * @throws AlfrescoRuntimeException         if reading the audit application failed or stalled
+         */
+        public AuditTrailStreamEntry peek()
+        {
+            if (head == null)
+            {
+                try
+                {
+                    head = buffer.poll(streamTimeout, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new AlfrescoRuntimeException(MSG_TRAIL_FILE_FAIL, e);
+                }
+
+                if (head == null)
+                {
+                    throw new AlfrescoRuntimeException(MSG_TRAIL_FILE_FAIL, error != null ? error :
+                                new TimeoutException("Timed out reading audit application " + queryParams.getApplicationName()));
+                }
+            }
+            return head == END_OF_STREAM ? null : head;
+        }
+
+        /**
+         * Take the next entry.
+         *
+         * @return {@link AuditTrailStreamEntry}    next entry, <code>null</code> if there are no more entries
+         */
+        public AuditTrailStreamEntry take()
+        {
+            AuditTrailStreamEntry entry = peek();
+            if (entry != null)
+            {
+                head = null;
+                lastEntryId = entry.entryId;
+            }
+            return entry;
+        }
+
+        @Override
+        public boolean valuesRequired()
+        {
+            return true;
+        }
+
+        /**
+         * Just log the error, but continue
+         */
+        @Override
+        public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+        {
+            logger.warn(errorMsg, error);
+            return true;
+        }
+
+        @Override
+        public boolean handleAuditEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+        {
+            if (lastQueuedEntryId != null && entryId <= lastQueuedEntryId)
+            {
+                // already queued
+                return true;
+            }
+
+            if (!offer(new AuditTrailStreamEntry(entryId, applicationName, user, time, values)))
+            {
+                return false;
+            }
+
+            lastQueuedEntryId = entryId;
+            queued++;
+            return true;
+        }
+
+        /**
+         * Add an entry to the buffer, waiting for space to become available.
+         * <p>
+         * If no space becomes available within the stream timeout reading is abandoned, so a stalled export releases
+         * its pool thread.
+         *
+         * @param entry     entry
+         * @return boolean  true if the entry was added, false if reading has been cancelled or timed out
+         */
+        private boolean offer(AuditTrailStreamEntry entry)
+        {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(streamTimeout);
+            try
+            {
+                while (!cancelled)
+                {
+                    if (buffer.offer(entry, 1, TimeUnit.SECONDS))
+                    {
+                        return true;
+                    }
+                    if (System.currentTimeMillis() >= deadline)
+                    {
+                        cancelled = true;
+                        if (error == null)
+                        {
+                            error = new TimeoutException("Timed out writing audit application " + queryParams.getApplicationName());
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
 }
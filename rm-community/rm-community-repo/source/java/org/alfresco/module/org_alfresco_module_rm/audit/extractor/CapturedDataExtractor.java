@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.audit.extractor;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+
+import org.alfresco.repo.audit.extractor.AbstractDataExtractor;
+import org.alfresco.repo.audit.extractor.DataExtractor;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An extractor that delegates to another extractor, unless values captured earlier are bound to the current thread.
+ * <p>
+ * Audit events that are written behind are written some time after their transaction committed, when the node may
+ * have been moved, renamed or deleted.  The values of these extractors are captured when the event is journalled and
+ * are bound to the writer's thread while the event is written, so the audit entry describes the node as it was.
+ *
+ * @since 3.4
+ */
+public final class CapturedDataExtractor extends AbstractDataExtractor
+{
+    /** Logger */
+    private static Log logger = LogFactory.getLog(CapturedDataExtractor.class);
+
+    /** Values captured for the event being written on the current thread, by key */
+    private static final ThreadLocal<Map<String, Serializable>> CAPTURED_VALUES = new ThreadLocal<>();
+
+    /** Key of the captured value */
+    private String key;
+
+    /** Extractor the value is captured from */
+    private DataExtractor extractor;
+
+    /**
+     * @param key   key of the captured value, unique amongst the captured extractors
+     */
+    public void setKey(String key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * @param extractor extractor the value is captured from
+     */
+    public void setExtractor(DataExtractor extractor)
+    {
+        this.extractor = extractor;
+    }
+
+    /**
+     * Captures the value of the extractor for a node, if the extractor supports it.  As when the audit component
+     * extracts a value, a value that can't be extracted is left out of the audit entry.
+     *
+     * @param nodeRef   node reference
+     * @param values    captured values, by key
+     */
+    public void capture(NodeRef nodeRef, Map<String, Serializable> values)
+    {
+        try
+        {
+            if (extractor.isSupported(nodeRef))
+            {
+                values.put(key, extractor.extractData(nodeRef));
+            }
+        }
+        catch (Throwable e)
+        {
+            logger.error("Unable to capture audit value " + key + " of node " + nodeRef, e);
+        }
+    }
+
+    /**
+     * Binds captured values to the current thread, in place of the values of the extractors.
+     *
+     * @param values    captured values, by key
+     */
+    public static void bind(Map<String, Serializable> values)
+    {
+        CAPTURED_VALUES.set(values);
+    }
+
+    /**
+     * Unbinds the captured values from the current thread.
+     */
+    public static void unbind()
+    {
+        CAPTURED_VALUES.remove();
+    }
+
+    /**
+     * @see org.alfresco.repo.audit.extractor.DataExtractor#isSupported(java.io.Serializable)
+     */
+    public boolean isSupported(Serializable data)
+    {
+        Map<String, Serializable> values = CAPTURED_VALUES.get();
+        if (values != null)
+        {
+            return values.containsKey(key);
+        }
+        return extractor.isSupported(data);
+    }
+
+    /**
+     * @see org.alfresco.repo.audit.extractor.DataExtractor#extractData(java.io.Serializable)
+     */
+    public Serializable extractData(Serializable value) throws Throwable
+    {
+        Map<String, Serializable> values = CAPTURED_VALUES.get();
+        if (values != null)
+        {
+            return values.get(key);
+        }
+        return extractor.extractData(value);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass())
+        {
+            return false;
+        }
+        if (!super.equals(o))
+        {
+            return false;
+        }
+        CapturedDataExtractor that = (CapturedDataExtractor) o;
+        return Objects.equals(key, that.key) && Objects.equals(extractor, that.extractor);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(key, extractor);
+    }
+}
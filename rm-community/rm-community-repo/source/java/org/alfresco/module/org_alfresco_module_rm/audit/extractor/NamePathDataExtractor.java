@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Objects;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCache;
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.repo.audit.extractor.AbstractDataExtractor;
@@ -62,6 +63,7 @@ public final class NamePathDataExtractor extends AbstractDataExtractor
     private RuleService ruleService;
     private PermissionService permissionService;
     private DictionaryService dictionaryService;
+    private FilePlanPathCache filePlanPathCache;
 
     /**
      * Used to check that the node in the context is a fileplan component
@@ -103,6 +105,14 @@ public final class NamePathDataExtractor extends AbstractDataExtractor
         this.dictionaryService = dictionaryService;
     }
 
+    /**
+     * @param filePlanPathCache file plan path cache
+     */
+    public void setFilePlanPathCache(FilePlanPathCache filePlanPathCache)
+    {
+        this.filePlanPathCache = filePlanPathCache;
+    }
+
     /**
      * @return  Returns <tt>true</tt> if the data is a NodeRef and it either represents
      *          a fileplan component or is frozen
@@ -139,7 +149,9 @@ public final class NamePathDataExtractor extends AbstractDataExtractor
                 nodeRefPath.add(0, nodeService.getPrimaryParent(filePlan).getParentRef());
                 for (NodeRef pathNodeRef : nodeRefPath)
                 {
-                    String name = (String) nodeService.getProperty(pathNodeRef, ContentModel.PROP_NAME);
+                    String name = filePlanPathCache == null ?
+                                (String) nodeService.getProperty(pathNodeRef, ContentModel.PROP_NAME) :
+                                filePlanPathCache.getName(pathNodeRef);
                     sb.append("/").append(name);
                 }
             }
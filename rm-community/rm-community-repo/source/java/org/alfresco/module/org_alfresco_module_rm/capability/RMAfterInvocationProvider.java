@@ -28,6 +28,7 @@
 package org.alfresco.module.org_alfresco_module_rm.capability;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
@@ -47,6 +48,7 @@ import net.sf.acegisecurity.vote.AccessDecisionVoter;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.util.AuthenticationUtil;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.search.SimpleResultSetMetaData;
 import org.alfresco.repo.search.impl.lucene.PagingLuceneResultSet;
 import org.alfresco.repo.search.impl.querymodel.QueryEngineResults;
@@ -80,9 +82,14 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
 
     private static final String AFTER_RM = "AFTER_RM";
 
+    /** Default number of results pre-fetched and checked together */
+    private static final int DEFAULT_FILTER_BATCH_SIZE = 100;
+
     private AuthenticationUtil authenticationUtil;
     private int maxPermissionChecks;
     private long maxPermissionCheckTimeMillis;
+    private int filterBatchSize;
+    private NodeBulkLoader nodeBulkLoader;
 
     public boolean supports(ConfigAttribute configAttribute)
     {
@@ -109,6 +116,7 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
         super();
         maxPermissionChecks = Integer.MAX_VALUE;
         maxPermissionCheckTimeMillis = Long.MAX_VALUE;
+        filterBatchSize = DEFAULT_FILTER_BATCH_SIZE;
     }
 
     /**
@@ -131,6 +139,27 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
         this.maxPermissionCheckTimeMillis = maxPermissionCheckTimeMillis;
     }
 
+    /**
+     * Set the number of results that are pre-fetched and checked together when filtering result sets, collections
+     * and arrays.  Zero or less checks each result on its own.
+     *
+     * @param filterBatchSize
+     */
+    public void setFilterBatchSize(int filterBatchSize)
+    {
+        this.filterBatchSize = filterBatchSize;
+    }
+
+    /**
+     * Set the loader used to pre-fetch the nodes of each batch of results in bulk
+     *
+     * @param nodeBulkLoader
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
     /**
      * Sets the authentication util
      *
@@ -525,10 +554,14 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
                         PermissionEvaluationMode.EAGER,
                         returnedObject.getResultSetMetaData().getSearchParameters()));
 
+        ReadCheckBatch batch = new ReadCheckBatch();
         for (int i = 0; i < returnedObject.length(); i++)
         {
             long currentTimeMillis = System.currentTimeMillis();
 
+            // pre-fetch the next batch of results
+            batch.prefetch(returnedObject, i);
+
             // All permission checks must pass
             inclusionMask.set(i, true);
 
@@ -538,8 +571,8 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
             }
             else
             {
-	            int parentCheckRead = checkRead(returnedObject.getChildAssocRef(i).getParentRef());
-	            int childCheckRead = checkRead(returnedObject.getNodeRef(i));
+	            int parentCheckRead = batch.checkRead(returnedObject.getChildAssocRef(i).getParentRef());
+	            int childCheckRead = batch.checkRead(returnedObject.getNodeRef(i));
 
 	            for (ConfigAttributeDefintion cad : supportedDefinitions)
 	            {
@@ -655,13 +688,19 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
         // Keep values explicitly
         List<Object> keepValues = new ArrayList<>(returnedObject.size());
 
-        for (Object nextObject : returnedObject)
+        List<Object> values = new ArrayList<>(returnedObject);
+        ReadCheckBatch batch = new ReadCheckBatch();
+        for (int i = 0; i < values.size(); i++)
         {
+            Object nextObject = values.get(i);
+
             // if the maximum result size or time has been exceeded, then we have to remove only
             long currentTimeMillis = System.currentTimeMillis();
 
-            // NOTE: for reference - the "maxPermissionChecks" has never been honoured by this loop (since previously the count was not being incremented)
-            if (count >= targetResultCount)
+            // NOTE: unlike the core ACL provider, which stops once targetResultCount values have been checked, this
+            //       stops once targetResultCount values have been kept, so a page with denied values is still filled.
+            //       The values checked, kept or not, are limited by maxPermissionChecks.
+            if (keepValues.size() >= targetResultCount)
             {
                 // We have enough results.  We stop without cutoff.
                 break;
@@ -687,6 +726,9 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
                 break;
             }
 
+            // pre-fetch the next batch of values
+            batch.prefetch(values, i);
+
             boolean allowed = true;
             for (ConfigAttributeDefintion cad : supportedDefinitions)
             {
@@ -764,7 +806,7 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
 
                     if (allowed &&
                         testNodeRef != null &&
-                        checkRead(testNodeRef) != AccessDecisionVoter.ACCESS_GRANTED)
+                        batch.checkRead(testNodeRef) != AccessDecisionVoter.ACCESS_GRANTED)
                     {
                         allowed = false;
                         // No point evaluating more ConfigAttributeDefintions
@@ -816,12 +858,17 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
             return returnedObject;
         }
 
+        List<Object> values = Arrays.asList(returnedObject);
+        ReadCheckBatch batch = new ReadCheckBatch();
         for (int i = 0, l = returnedObject.length; i < l; i++)
         {
             Object current = returnedObject[i];
 
-            int parentReadCheck = checkRead(getParentReadCheckNode(current));
-            int childReadChek = checkRead(getChildReadCheckNode(current));
+            // pre-fetch the next batch of values
+            batch.prefetch(values, i);
+
+            int parentReadCheck = batch.checkRead(getParentReadCheckNode(current));
+            int childReadChek = batch.checkRead(getChildReadCheckNode(current));
 
             for (ConfigAttributeDefintion cad : supportedDefinitions)
             {
@@ -967,6 +1014,114 @@ public class RMAfterInvocationProvider extends RMSecurityCommon
         return testNodeRef;
     }
 
+    /**
+     * Checks the results of a single invocation in batches.
+     * <p>
+     * The nodes of each batch are loaded together before any of them are checked.  Batches are only loaded as they
+     * are reached, so nothing beyond the batch in which the requested results are filled is loaded.
+     * <p>
+     * Each node is still checked on its own, since the read records permission depends on more than the ACL of the
+     * node (eg owner, lock owner, extended readers and the registered permission processors).
+     */
+    private class ReadCheckBatch
+    {
+        /**
+         * Pre-fetches the batch of results starting at the given index.
+         *
+         * @param resultSet result set
+         * @param index     index of the current result
+         */
+        private void prefetch(ResultSet resultSet, int index)
+        {
+            if (isBatchStart(index))
+            {
+                int end = Math.min(resultSet.length(), index + filterBatchSize);
+                List<NodeRef> nodeRefs = new ArrayList<>((end - index) * 2);
+                for (int i = index; i < end; i++)
+                {
+                    ChildAssociationRef childAssocRef = resultSet.getChildAssocRef(i);
+                    addNodeRef(nodeRefs, childAssocRef.getChildRef());
+                    addNodeRef(nodeRefs, childAssocRef.getParentRef());
+                }
+                prefetch(nodeRefs);
+            }
+        }
+
+        /**
+         * Pre-fetches the batch of values starting at the given index.
+         *
+         * @param values    values
+         * @param index     index of the current value
+         */
+        private void prefetch(List<Object> values, int index)
+        {
+            if (isBatchStart(index))
+            {
+                int end = Math.min(values.size(), index + filterBatchSize);
+                List<NodeRef> nodeRefs = new ArrayList<>((end - index) * 2);
+                for (Object value : values.subList(index, end))
+                {
+                    if (value instanceof NodeRef)
+                    {
+                        addNodeRef(nodeRefs, (NodeRef) value);
+                    }
+                    else if (value instanceof ChildAssociationRef)
+                    {
+                        addNodeRef(nodeRefs, ((ChildAssociationRef) value).getChildRef());
+                        addNodeRef(nodeRefs, ((ChildAssociationRef) value).getParentRef());
+                    }
+                    else if (value instanceof AssociationRef)
+                    {
+                        addNodeRef(nodeRefs, ((AssociationRef) value).getTargetRef());
+                        addNodeRef(nodeRefs, ((AssociationRef) value).getSourceRef());
+                    }
+                    else if (value instanceof PermissionCheckValue)
+                    {
+                        addNodeRef(nodeRefs, ((PermissionCheckValue) value).getNodeRef());
+                    }
+                }
+                prefetch(nodeRefs);
+            }
+        }
+
+        private boolean isBatchStart(int index)
+        {
+            return filterBatchSize > 0 && nodeBulkLoader != null && index % filterBatchSize == 0;
+        }
+
+        private void addNodeRef(List<NodeRef> nodeRefs, NodeRef nodeRef)
+        {
+            if (nodeRef != null)
+            {
+                nodeRefs.add(nodeRef);
+            }
+        }
+
+        private void prefetch(List<NodeRef> nodeRefs)
+        {
+            if (!nodeRefs.isEmpty())
+            {
+                nodeBulkLoader.cacheNodes(nodeRefs);
+            }
+        }
+
+        /**
+         * Check for RM read, see {@link RMSecurityCommon#checkRead(NodeRef)}
+         *
+         * @param nodeRef   node reference
+         * @return int      see {@link AccessDecisionVoter}
+         */
+        private int checkRead(NodeRef nodeRef)
+        {
+            int result = AccessDecisionVoter.ACCESS_ABSTAIN;
+            if (nodeRef != null && nodeService.hasAspect(nodeRef, RecordsManagementModel.ASPECT_FILE_PLAN_COMPONENT))
+            {
+                result = checkRmRead(nodeRef);
+            }
+            return result;
+        }
+    }
+
     private class ConfigAttributeDefintion
     {
 
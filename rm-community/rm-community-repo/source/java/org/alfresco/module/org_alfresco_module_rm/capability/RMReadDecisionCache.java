@@ -0,0 +1,387 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.capability;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.caveat.RMCaveatConfigComponent;
+import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.module.org_alfresco_module_rm.util.TransactionalResourceHelper;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.lock.LockService;
+import org.alfresco.service.cmr.lock.LockStatus;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.OwnableService;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Caches the results of the core records management read check across transactions.
+ * <p>
+ * The read check depends on the authorities of the user, the ACL of the node, the view records capability of the
+ * user on the node's file plan and, through dynamic authorities, whether the user owns or holds the lock on the
+ * node.  Decisions are keyed by a digest of the user's authorities, the ACL id, the file plan, whether the user owns
+ * or holds the lock on the node and whether the node is frozen, so nodes that share an ACL share a cache entry and
+ * group membership or hold changes simply lead to a different key.  Nodes with caveats or that are working copies
+ * are not cached since their decision depends on the caveat values or working copy owner of each node.
+ * <p>
+ * Extended security is set as permissions on the node itself, and setting the permissions of a node in a later
+ * transaction copies its ACL, so extended security changes lead to a different key too.  The whole cache is cleared
+ * whenever permissions or capabilities are changed through the file plan permission or file plan role services, since
+ * those changes can reach every node in the file plan.  The cache should also be given a time to live to bound the
+ * effect of permission changes made elsewhere.
+ *
+ * @since 3.4
+ */
+public class RMReadDecisionCache implements RMReadDecisionCacheMBean
+{
+    /** Transaction resource holding the authority digests of the users seen in the transaction */
+    private static final String KEY_AUTHORITY_DIGESTS = "rm.readDecisionCache.authorityDigests";
+
+    /** Services */
+    private NodeService nodeService;
+    private AuthorityService authorityService;
+    private OwnableService ownableService;
+    private LockService lockService;
+    private RMCaveatConfigComponent caveatConfigComponent;
+    private TransactionalResourceHelper transactionalResourceHelper;
+
+    /** Read decision cache */
+    private SimpleCache<Serializable, Integer> cache;
+
+    /** Indicates whether read decisions are cached across transactions */
+    private boolean enabled = true;
+
+    /** Statistics */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param nodeService   node service
+     */
+    public void setNodeService(NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * @param authorityService  authority service
+     */
+    public void setAuthorityService(AuthorityService authorityService)
+    {
+        this.authorityService = authorityService;
+    }
+
+    /**
+     * @param ownableService    ownable service
+     */
+    public void setOwnableService(OwnableService ownableService)
+    {
+        this.ownableService = ownableService;
+    }
+
+    /**
+     * @param lockService   lock service
+     */
+    public void setLockService(LockService lockService)
+    {
+        this.lockService = lockService;
+    }
+
+    /**
+     * @param caveatConfigComponent caveat config component
+     */
+    public void setCaveatConfigComponent(RMCaveatConfigComponent caveatConfigComponent)
+    {
+        this.caveatConfigComponent = caveatConfigComponent;
+    }
+
+    /**
+     * @param transactionalResourceHelper   transactional resource helper
+     */
+    public void setTransactionalResourceHelper(TransactionalResourceHelper transactionalResourceHelper)
+    {
+        this.transactionalResourceHelper = transactionalResourceHelper;
+    }
+
+    /**
+     * @param cache read decision cache
+     */
+    public void setCache(SimpleCache<Serializable, Integer> cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @param enabled   true if read decisions are cached across transactions, false otherwise
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#isEnabled()
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Gets the cache key of the read decision for a node and the current user.
+     *
+     * @param nodeRef       node reference
+     * @param filePlan      file plan of the node, <code>null</code> if none
+     * @return Serializable cache key, <code>null</code> if the read decision for the node can't be cached
+     */
+    public Serializable getKey(NodeRef nodeRef, NodeRef filePlan)
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+
+        String user = AuthenticationUtil.getRunAsUser();
+        if (user == null || AuthenticationUtil.isRunAsUserTheSystemUser() || !nodeService.exists(nodeRef))
+        {
+            return null;
+        }
+
+        Long aclId = nodeService.getNodeAclId(nodeRef);
+        if (aclId == null ||
+            nodeService.hasAspect(nodeRef, RecordsManagementModel.ASPECT_EXTENDED_SECURITY) ||
+            nodeService.hasAspect(nodeRef, ContentModel.ASPECT_WORKING_COPY) ||
+            caveatConfigComponent.hasCaveats(nodeRef))
+        {
+            return null;
+        }
+
+        return new CacheKey(getAuthorityDigest(user),
+                            aclId,
+                            filePlan,
+                            user.equals(ownableService.getOwner(nodeRef)),
+                            lockService.getLockStatus(nodeRef, user) == LockStatus.LOCK_OWNER,
+                            nodeService.hasAspect(nodeRef, RecordsManagementModel.ASPECT_FROZEN));
+    }
+
+    /**
+     * Gets a cached read decision.
+     *
+     * @param key       cache key, as returned by {@link #getKey(NodeRef, NodeRef)}
+     * @return Integer  cached read decision, <code>null</code> if there isn't one
+     */
+    public Integer get(Serializable key)
+    {
+        Integer result = cache.get(key);
+        if (result == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Caches a read decision.
+     *
+     * @param key       cache key, as returned by {@link #getKey(NodeRef, NodeRef)}
+     * @param result    read decision
+     */
+    public void put(Serializable key, int result)
+    {
+        cache.put(key, result);
+    }
+
+    /**
+     * Gets the digest of the authorities of a user, which is computed once per transaction.
+     *
+     * @param user      user name
+     * @return String   digest of the user name and the sorted authorities of the user
+     */
+    private String getAuthorityDigest(String user)
+    {
+        Map<String, String> digests = transactionalResourceHelper.getMap(KEY_AUTHORITY_DIGESTS);
+        String digest = digests.get(user);
+        if (digest == null)
+        {
+            TreeSet<String> authorities = new TreeSet<>(authorityService.getAuthoritiesForUser(user));
+            authorities.add(user);
+            digest = DigestUtils.sha256Hex(String.join("\n", authorities));
+            digests.put(user, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Clears the cached read decisions because permissions have changed.
+     */
+    public void invalidate()
+    {
+        invalidations.incrementAndGet();
+        evictAll();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#clear()
+     */
+    @Override
+    public void clear()
+    {
+        evictAll();
+    }
+
+    /**
+     * Clears the cache, counting the decisions discarded.
+     */
+    private void evictAll()
+    {
+        evictions.addAndGet(cache.getKeys().size());
+        cache.clear();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#getHits()
+     */
+    @Override
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#getMisses()
+     */
+    @Override
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#getHitRatio()
+     */
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (hitCount * 100.0) / total;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#getInvalidations()
+     */
+    @Override
+    public long getInvalidations()
+    {
+        return invalidations.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#getEvictions()
+     */
+    @Override
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCacheMBean#resetStatistics()
+     */
+    @Override
+    public void resetStatistics()
+    {
+        hits.set(0);
+        misses.set(0);
+        invalidations.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * Cache key.
+     */
+    private static final class CacheKey implements Serializable
+    {
+        private static final long serialVersionUID = -2867052377413602461L;
+
+        private final String authorities;
+        private final long aclId;
+        private final NodeRef filePlan;
+        private final boolean owner;
+        private final boolean lockOwner;
+        private final boolean frozen;
+
+        private CacheKey(String authorities, long aclId, NodeRef filePlan, boolean owner, boolean lockOwner, boolean frozen)
+        {
+            this.authorities = authorities;
+            this.aclId = aclId;
+            this.filePlan = filePlan;
+            this.owner = owner;
+            this.lockOwner = lockOwner;
+            this.frozen = frozen;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof CacheKey))
+            {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return aclId == other.aclId && owner == other.owner && lockOwner == other.lockOwner &&
+                   frozen == other.frozen && authorities.equals(other.authorities) &&
+                   Objects.equals(filePlan, other.filePlan);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(authorities, aclId, filePlan, owner, lockOwner, frozen);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.capability;
+
+/**
+ * Management interface of the read decision cache.
+ *
+ * @since 3.4
+ */
+public interface RMReadDecisionCacheMBean
+{
+    /**
+     * @return boolean  true if read decisions are cached across transactions, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * @return long number of read checks answered from the cache
+     */
+    long getHits();
+
+    /**
+     * @return long number of cacheable read checks not found in the cache
+     */
+    long getMisses();
+
+    /**
+     * @return double   percentage of cacheable read checks answered from the cache
+     */
+    double getHitRatio();
+
+    /**
+     * @return long number of times the cache has been cleared because permissions changed
+     */
+    long getInvalidations();
+
+    /**
+     * @return long number of cached read decisions discarded by clearing the cache
+     */
+    long getEvictions();
+
+    /**
+     * Clears the cached read decisions.
+     */
+    void clear();
+
+    /**
+     * Resets the statistics.
+     */
+    void resetStatistics();
+}
@@ -27,6 +27,7 @@
 
 package org.alfresco.module.org_alfresco_module_rm.capability;
 
+import java.io.Serializable;
 import java.util.Map;
 
 import org.alfresco.module.org_alfresco_module_rm.capability.impl.ViewRecordsCapability;
@@ -76,6 +77,9 @@ public class RMSecurityCommon implements ApplicationContextAware
     protected RMCaveatConfigComponent caveatConfigComponent;
     private FilePlanService filePlanService;
 
+    /** Read decision cache */
+    protected RMReadDecisionCache readDecisionCache;
+
     /** Application context */
     protected ApplicationContext applicationContext;
 
@@ -112,6 +116,14 @@ public class RMSecurityCommon implements ApplicationContextAware
         this.caveatConfigComponent = caveatConfigComponent;
     }
 
+    /**
+     * @param readDecisionCache read decision cache, shared between transactions
+     */
+    public void setReadDecisionCache(RMReadDecisionCache readDecisionCache)
+    {
+        this.readDecisionCache = readDecisionCache;
+    }
+
     /**
      * @return	FilePlanService	file plan service
      */
@@ -235,36 +247,22 @@ public class RMSecurityCommon implements ApplicationContextAware
     	}
     	else
     	{
-	        if (permissionService.hasPermission(nodeRef, RMPermissionModel.READ_RECORDS) == AccessStatus.DENIED)
-	        {
-	            if (logger.isDebugEnabled())
-	            {
-	                logger.debug("\t\tUser does not have read record permission on node, access denied.  (nodeRef=" + nodeRef.toString() + ", user=" + AuthenticationUtil.getRunAsUser() + ")");
-	            }
-	            result = AccessDecisionVoter.ACCESS_DENIED;
-	        }
-	        else
-	        {
-		        // Get the file plan for the node
-		        NodeRef filePlan = getFilePlanService().getFilePlan(nodeRef);
-		        if (filePlan != null &&
-		            hasViewCapability(filePlan) == AccessStatus.DENIED)
-		        {
-		            if (logger.isDebugEnabled())
-		            {
-		                logger.debug("\t\tUser does not have view records capability permission on node, access denied. (filePlan=" + filePlan.toString() + ", user=" + AuthenticationUtil.getRunAsUser() + ")");
-		            }
-		            result = AccessDecisionVoter.ACCESS_DENIED;
-		        }
-		        else if (!caveatConfigComponent.hasAccess(nodeRef))
-		        {
-		            result = AccessDecisionVoter.ACCESS_DENIED;
-		        }
-		        else
-		        {
-		            result = AccessDecisionVoter.ACCESS_GRANTED;
-		        }
-	        }
+    	    // check the decisions shared between transactions
+    	    NodeRef filePlan = getFilePlanService().getFilePlan(nodeRef);
+    	    Serializable sharedKey = readDecisionCache == null ? null : readDecisionCache.getKey(nodeRef, filePlan);
+    	    Integer sharedResult = sharedKey == null ? null : readDecisionCache.get(sharedKey);
+    	    if (sharedResult != null)
+    	    {
+    	        result = sharedResult;
+    	    }
+    	    else
+    	    {
+    	        result = evaluateRmRead(nodeRef, filePlan);
+    	        if (sharedKey != null)
+    	        {
+    	            readDecisionCache.put(sharedKey, result);
+    	        }
+    	    }
 
 	        // cache result
 	        transactionCache.put(key, result);
@@ -273,6 +271,48 @@ public class RMSecurityCommon implements ApplicationContextAware
     	return result;
     }
 
+    /**
+     * Evaluates the core RM read check.
+     *
+     * @param nodeRef   node reference
+     * @param filePlan  file plan of the node, <code>null</code> if none
+     * @return int      see {@link AccessDecisionVoter}
+     */
+    private int evaluateRmRead(NodeRef nodeRef, NodeRef filePlan)
+    {
+        int result;
+        if (permissionService.hasPermission(nodeRef, RMPermissionModel.READ_RECORDS) == AccessStatus.DENIED)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("\t\tUser does not have read record permission on node, access denied.  (nodeRef=" + nodeRef.toString() + ", user=" + AuthenticationUtil.getRunAsUser() + ")");
+            }
+            result = AccessDecisionVoter.ACCESS_DENIED;
+        }
+        else
+        {
+            if (filePlan != null &&
+                hasViewCapability(filePlan) == AccessStatus.DENIED)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("\t\tUser does not have view records capability permission on node, access denied. (filePlan=" + filePlan.toString() + ", user=" + AuthenticationUtil.getRunAsUser() + ")");
+                }
+                result = AccessDecisionVoter.ACCESS_DENIED;
+            }
+            else if (!caveatConfigComponent.hasAccess(nodeRef))
+            {
+                result = AccessDecisionVoter.ACCESS_DENIED;
+            }
+            else
+            {
+                result = AccessDecisionVoter.ACCESS_GRANTED;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Helper method to determine whether the current user has view capability on the file plan
      *
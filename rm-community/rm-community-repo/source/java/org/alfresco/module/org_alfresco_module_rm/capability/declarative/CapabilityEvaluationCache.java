@@ -0,0 +1,656 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.capability.declarative;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.capability.Capability;
+import org.alfresco.module.org_alfresco_module_rm.model.BaseBehaviourBean;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.annotation.Behaviour;
+import org.alfresco.repo.policy.annotation.BehaviourBean;
+import org.alfresco.repo.policy.annotation.BehaviourKind;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Caches the results of capability evaluations across transactions.
+ * <p>
+ * Results are keyed by node, a digest of the user's authorities and a stamp of the node and its file plan ancestors,
+ * so a change to the user's group membership simply leads to a different key.  The stamp holds the last
+ * modification and the version of each of them, so a change to a node is seen by the results of all the nodes
+ * beneath it without clearing the cache.  The results of all the capabilities evaluated for a key are held
+ * together by capability name, so a node needs a single cache entry however many capabilities are evaluated
+ * against it, and the entry means the same on every server of a cluster.
+ * <p>
+ * The version of a node is changed, invalidating the results of the node and of the nodes beneath it, whenever a
+ * property capability conditions can depend on is changed on a file plan component, one is moved or deleted, a
+ * records management aspect is added to or removed from one, or its permissions or extended security are changed
+ * through records management.  Those properties are the properties of any model other than the content and system
+ * models, together with the owner and lock properties.  Role changes made through the file plan role service clear
+ * the whole cache.
+ *
+ * @since 3.4
+ */
+@BehaviourBean
+(
+   defaultType = "rma:filePlanComponent"
+)
+public class CapabilityEvaluationCache extends BaseBehaviourBean
+                                       implements CapabilityEvaluationCacheMBean,
+                                                  NodeServicePolicies.OnUpdatePropertiesPolicy,
+                                                  NodeServicePolicies.OnAddAspectPolicy,
+                                                  NodeServicePolicies.OnRemoveAspectPolicy,
+                                                  NodeServicePolicies.OnMoveNodePolicy,
+                                                  NodeServicePolicies.OnDeleteNodePolicy
+{
+    /** Transaction resource holding the stamps of the nodes used in the transaction */
+    private static final String KEY_CACHE_KEYS = "rm.capabilityEvaluationCache.keys";
+
+    /** Transaction resource holding the authority digests of the users seen in the transaction */
+    private static final String KEY_AUTHORITY_DIGESTS = "rm.capabilityEvaluationCache.authorityDigests";
+
+    /** Content model properties that capability conditions, or the dynamic authorities they check, can depend on */
+    private static final Set<QName> CAPABILITY_CONTENT_PROPERTIES = new HashSet<>(Arrays.asList(
+                ContentModel.PROP_OWNER,
+                ContentModel.PROP_LOCK_OWNER,
+                ContentModel.PROP_LOCK_TYPE,
+                ContentModel.PROP_LOCK_LIFETIME,
+                ContentModel.PROP_EXPIRY_DATE));
+
+    /** Authority service */
+    private AuthorityService authorityService;
+
+    /** Capability results cache */
+    private SimpleCache<Serializable, CapabilityResults> cache;
+
+    /** Node version cache */
+    private SimpleCache<NodeRef, Long> versionCache;
+
+    /** Indicates whether results are cached across transactions */
+    private boolean enabled = true;
+
+    /** Statistics */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong evaluationTime = new AtomicLong();
+    private final AtomicLong maxEvaluationTime = new AtomicLong();
+
+    /**
+     * @param authorityService  authority service
+     */
+    public void setAuthorityService(AuthorityService authorityService)
+    {
+        this.authorityService = authorityService;
+    }
+
+    /**
+     * @param cache capability results cache
+     */
+    public void setCache(SimpleCache<Serializable, CapabilityResults> cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @param versionCache  node version cache
+     */
+    public void setVersionCache(SimpleCache<NodeRef, Long> versionCache)
+    {
+        this.versionCache = versionCache;
+    }
+
+    /**
+     * @param enabled   true if results are cached across transactions, false otherwise
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#isEnabled()
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Gets the cached result of evaluating a capability against a node for the current user.
+     *
+     * @param capability    capability
+     * @param nodeRef       node reference
+     * @return Integer      cached result, <code>null</code> if there isn't one
+     */
+    public Integer get(Capability capability, NodeRef nodeRef)
+    {
+        Integer result = null;
+
+        Serializable key = getKey(nodeRef);
+        if (key != null)
+        {
+            CapabilityResults results = cache.get(key);
+            if (results != null)
+            {
+                result = results.get(capability.getName());
+            }
+
+            if (result == null)
+            {
+                misses.incrementAndGet();
+            }
+            else
+            {
+                hits.incrementAndGet();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Caches the result of evaluating a capability against a node for the current user.
+     *
+     * @param capability        capability
+     * @param nodeRef           node reference
+     * @param result            evaluation result
+     * @param evaluationTime    time taken to evaluate the capability, in nanoseconds
+     */
+    public void put(Capability capability, NodeRef nodeRef, int result, long evaluationTime)
+    {
+        recordEvaluation(evaluationTime);
+
+        Serializable key = getKey(nodeRef);
+        if (key != null)
+        {
+            CapabilityResults results = cache.get(key);
+            if (results == null)
+            {
+                results = new CapabilityResults();
+            }
+            cache.put(key, results.with(capability.getName(), result));
+        }
+    }
+
+    /**
+     * Invalidates the cached results of a node and of the nodes beneath it, by giving the node a new version.
+     *
+     * @param nodeRef   node reference
+     */
+    public void invalidate(NodeRef nodeRef)
+    {
+        transactionalResourceHelper.getMap(KEY_CACHE_KEYS).clear();
+        versionCache.remove(nodeRef);
+    }
+
+    /**
+     * Gets the cache key for a node and the current user.
+     *
+     * @param nodeRef       node reference
+     * @return Serializable cache key, <code>null</code> if the results for the node can't be cached
+     */
+    private Serializable getKey(NodeRef nodeRef)
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+
+        String user = AuthenticationUtil.getRunAsUser();
+        if (user == null)
+        {
+            return null;
+        }
+
+        long[] stamp = getStamp(nodeRef, transactionalResourceHelper.<NodeRef, long[]>getMap(KEY_CACHE_KEYS));
+        return stamp == null ? null : new CacheKey(nodeRef, getAuthorityDigest(user), stamp);
+    }
+
+    /**
+     * Gets the digest of the authorities of a user, which is computed once per transaction.
+     *
+     * @param user      user name
+     * @return String   digest of the user name and the sorted authorities of the user
+     */
+    private String getAuthorityDigest(String user)
+    {
+        Map<String, String> digests = transactionalResourceHelper.getMap(KEY_AUTHORITY_DIGESTS);
+        String digest = digests.get(user);
+        if (digest == null)
+        {
+            TreeSet<String> authorities = new TreeSet<>(authorityService.getAuthoritiesForUser(user));
+            authorities.add(user);
+            digest = DigestUtils.sha256Hex(String.join("\n", authorities));
+            digests.put(user, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Gets the stamp of a node, the last modification and version of the node followed by the stamp of its parent
+     * if that is a file plan component too.
+     *
+     * @param nodeRef   node reference
+     * @param stamps    stamps of the nodes already used in the transaction
+     * @return long[]   stamp of the node, <code>null</code> if changes to the node can't be detected
+     */
+    private long[] getStamp(NodeRef nodeRef, Map<NodeRef, long[]> stamps)
+    {
+        if (stamps.containsKey(nodeRef))
+        {
+            return stamps.get(nodeRef);
+        }
+
+        long[] stamp = null;
+        if (getInternalNodeService().exists(nodeRef))
+        {
+            // without a modification date changes to the node can't be detected
+            Date modified = (Date) getInternalNodeService().getProperty(nodeRef, ContentModel.PROP_MODIFIED);
+            if (modified != null)
+            {
+                long[] parentStamp = new long[0];
+                ChildAssociationRef parentAssoc = getInternalNodeService().getPrimaryParent(nodeRef);
+                NodeRef parent = parentAssoc == null ? null : parentAssoc.getParentRef();
+                if (parent != null && getInternalNodeService().hasAspect(parent, ASPECT_FILE_PLAN_COMPONENT))
+                {
+                    parentStamp = getStamp(parent, stamps);
+                }
+
+                if (parentStamp != null)
+                {
+                    stamp = new long[parentStamp.length + 2];
+                    stamp[0] = modified.getTime();
+                    stamp[1] = getVersion(nodeRef);
+                    System.arraycopy(parentStamp, 0, stamp, 2, parentStamp.length);
+                }
+            }
+        }
+        stamps.put(nodeRef, stamp);
+        return stamp;
+    }
+
+    /**
+     * Gets the version of a node, giving it a new one if it hasn't got one.
+     *
+     * @param nodeRef   node reference
+     * @return long     version of the node
+     */
+    private long getVersion(NodeRef nodeRef)
+    {
+        Long version = versionCache.get(nodeRef);
+        if (version == null)
+        {
+            // a random version can't match any version the node had before
+            version = ThreadLocalRandom.current().nextLong();
+            versionCache.put(nodeRef, version);
+        }
+        return version;
+    }
+
+    /**
+     * Records the time taken to evaluate a capability.
+     *
+     * @param time  evaluation time, in nanoseconds
+     */
+    private void recordEvaluation(long time)
+    {
+        evaluations.incrementAndGet();
+        evaluationTime.addAndGet(time);
+        maxEvaluationTime.accumulateAndGet(time, Math::max);
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#clear()
+     */
+    @Override
+    public void clear()
+    {
+        cache.clear();
+        versionCache.clear();
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy#onUpdateProperties(org.alfresco.service.cmr.repository.NodeRef, java.util.Map, java.util.Map)
+     */
+    @Override
+    @Behaviour
+    (
+       kind = BehaviourKind.CLASS
+    )
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        if (isCapabilityPropertyChange(before, after))
+        {
+            invalidate(nodeRef);
+        }
+    }
+
+    /**
+     * Indicates whether a property update can affect the evaluation of capabilities.
+     *
+     * @param before    properties before the update
+     * @param after     properties after the update
+     * @return boolean  true if a property capability conditions can depend on has changed, false otherwise
+     */
+    private boolean isCapabilityPropertyChange(Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        Set<QName> names = new HashSet<>(before.keySet());
+        names.addAll(after.keySet());
+        for (QName name : names)
+        {
+            String namespace = name.getNamespaceURI();
+            if ((CAPABILITY_CONTENT_PROPERTIES.contains(name) ||
+                 (!NamespaceService.CONTENT_MODEL_1_0_URI.equals(namespace) && !NamespaceService.SYSTEM_MODEL_1_0_URI.equals(namespace))) &&
+                !Objects.equals(before.get(name), after.get(name)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnAddAspectPolicy#onAddAspect(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName)
+     */
+    @Override
+    @Behaviour
+    (
+       kind = BehaviourKind.CLASS,
+       isService = true
+    )
+    public void onAddAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        if (isRecordsManagementChange(nodeRef, aspectTypeQName))
+        {
+            invalidate(nodeRef);
+        }
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnRemoveAspectPolicy#onRemoveAspect(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName)
+     */
+    @Override
+    @Behaviour
+    (
+       kind = BehaviourKind.CLASS,
+       isService = true
+    )
+    public void onRemoveAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        if (isRecordsManagementChange(nodeRef, aspectTypeQName))
+        {
+            invalidate(nodeRef);
+        }
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy#onMoveNode(org.alfresco.service.cmr.repository.ChildAssociationRef, org.alfresco.service.cmr.repository.ChildAssociationRef)
+     */
+    @Override
+    @Behaviour
+    (
+       kind = BehaviourKind.CLASS
+    )
+    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    {
+        invalidate(newChildAssocRef.getChildRef());
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnDeleteNodePolicy#onDeleteNode(org.alfresco.service.cmr.repository.ChildAssociationRef, boolean)
+     */
+    @Override
+    @Behaviour
+    (
+       kind = BehaviourKind.CLASS
+    )
+    public void onDeleteNode(ChildAssociationRef childAssocRef, boolean isNodeArchived)
+    {
+        invalidate(childAssocRef.getChildRef());
+    }
+
+    /**
+     * Indicates whether an aspect change can affect the evaluation of capabilities.
+     *
+     * @param nodeRef           node reference
+     * @param aspectTypeQName   aspect added or removed
+     * @return boolean          true if the aspect is a records management aspect or the node is a file plan component
+     */
+    private boolean isRecordsManagementChange(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        return RM_URI.equals(aspectTypeQName.getNamespaceURI()) ||
+               (getInternalNodeService().exists(nodeRef) && getInternalNodeService().hasAspect(nodeRef, ASPECT_FILE_PLAN_COMPONENT));
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#getHits()
+     */
+    @Override
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#getMisses()
+     */
+    @Override
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#getHitRatio()
+     */
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (hitCount * 100.0) / total;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#getEvaluations()
+     */
+    @Override
+    public long getEvaluations()
+    {
+        return evaluations.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#getAverageEvaluationTime()
+     */
+    @Override
+    public long getAverageEvaluationTime()
+    {
+        long count = evaluations.get();
+        return count == 0 ? 0 : evaluationTime.get() / count / 1000;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#getMaxEvaluationTime()
+     */
+    @Override
+    public long getMaxEvaluationTime()
+    {
+        return maxEvaluationTime.get() / 1000;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCacheMBean#resetStatistics()
+     */
+    @Override
+    public void resetStatistics()
+    {
+        hits.set(0);
+        misses.set(0);
+        evaluations.set(0);
+        evaluationTime.set(0);
+        maxEvaluationTime.set(0);
+    }
+
+    /**
+     * Cache key.
+     */
+    private static final class CacheKey implements Serializable
+    {
+        private static final long serialVersionUID = 4417395024188307745L;
+
+        private final NodeRef nodeRef;
+        private final String authorities;
+        private final long[] stamp;
+
+        private CacheKey(NodeRef nodeRef, String authorities, long[] stamp)
+        {
+            this.nodeRef = nodeRef;
+            this.authorities = authorities;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof CacheKey))
+            {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return nodeRef.equals(other.nodeRef) && authorities.equals(other.authorities) && Arrays.equals(stamp, other.stamp);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (nodeRef.hashCode() * 31 + authorities.hashCode()) * 31 + Arrays.hashCode(stamp);
+        }
+    }
+
+    /**
+     * The results of the capabilities evaluated for a node and user, held by capability name.
+     * <p>
+     * Instances are immutable so they can be shared by the cache.
+     */
+    public static final class CapabilityResults implements Serializable
+    {
+        private static final long serialVersionUID = 4337930373462372475L;
+
+        private final String[] names;
+        private final byte[] results;
+
+        /**
+         * Creates an empty set of results.
+         */
+        public CapabilityResults()
+        {
+            this(new String[0], new byte[0]);
+        }
+
+        private CapabilityResults(String[] names, byte[] results)
+        {
+            this.names = names;
+            this.results = results;
+        }
+
+        /**
+         * @param name      capability name
+         * @return Integer  result of the capability, <code>null</code> if it hasn't been evaluated
+         */
+        public Integer get(String name)
+        {
+            int index = indexOf(name);
+            return index < 0 ? null : Integer.valueOf(results[index]);
+        }
+
+        /**
+         * @param name      capability name
+         * @param result    result of the capability
+         * @return {@link CapabilityResults}    copy of these results including the result of the capability
+         */
+        public CapabilityResults with(String name, int result)
+        {
+            int index = indexOf(name);
+            String[] namesCopy = names;
+            byte[] resultsCopy;
+            if (index < 0)
+            {
+                index = names.length;
+                namesCopy = Arrays.copyOf(names, index + 1);
+                namesCopy[index] = name;
+                resultsCopy = Arrays.copyOf(results, index + 1);
+            }
+            else
+            {
+                resultsCopy = results.clone();
+            }
+            resultsCopy[index] = (byte) result;
+            return new CapabilityResults(namesCopy, resultsCopy);
+        }
+
+        /**
+         * @param name  capability name
+         * @return int  index of the capability's result, -1 if it hasn't been evaluated
+         */
+        private int indexOf(String name)
+        {
+            for (int index = 0; index < names.length; index++)
+            {
+                if (names[index].equals(name))
+                {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
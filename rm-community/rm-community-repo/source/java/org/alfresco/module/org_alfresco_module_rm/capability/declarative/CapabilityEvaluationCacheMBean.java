@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.capability.declarative;
+
+/**
+ * Management interface of the capability evaluation cache.
+ *
+ * @since 3.4
+ */
+public interface CapabilityEvaluationCacheMBean
+{
+    /**
+     * @return boolean  true if capability results are cached across transactions, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * @return long number of capability evaluations answered from the cache
+     */
+    long getHits();
+
+    /**
+     * @return long number of capability evaluations not found in the cache
+     */
+    long getMisses();
+
+    /**
+     * @return double   percentage of capability evaluations answered from the cache
+     */
+    double getHitRatio();
+
+    /**
+     * @return long number of capability evaluations performed
+     */
+    long getEvaluations();
+
+    /**
+     * @return long average time taken to evaluate a capability, in microseconds
+     */
+    long getAverageEvaluationTime();
+
+    /**
+     * @return long longest time taken to evaluate a capability, in microseconds
+     */
+    long getMaxEvaluationTime();
+
+    /**
+     * Clears the cached capability results.
+     */
+    void clear();
+
+    /**
+     * Resets the statistics.
+     */
+    void resetStatistics();
+}
@@ -75,6 +75,13 @@ public class DeclarativeCapability extends AbstractCapability
     /** List of available kinds */
     private Set<FilePlanComponentKind> availableKinds;
 
+    /** Resolved conditions and their expected evaluation results, in configuration order */
+    private volatile CapabilityCondition[] resolvedConditions;
+    private volatile boolean[] expectedResults;
+
+    /** Cross transaction evaluation cache */
+    private CapabilityEvaluationCache evaluationCache;
+
     /**
      * @param permissions   permissions
      */
@@ -89,6 +96,8 @@ public class DeclarativeCapability extends AbstractCapability
     public void setConditions(Map<String, Boolean> conditions)
     {
         this.conditions = conditions;
+        this.resolvedConditions = null;
+        this.expectedResults = null;
     }
 
     /**
@@ -164,6 +173,55 @@ public class DeclarativeCapability extends AbstractCapability
         this.targetCapability = targetCapability;
     }
 
+    /**
+     * @param evaluationCache   cross transaction evaluation cache
+     */
+    public void setEvaluationCache(CapabilityEvaluationCache evaluationCache)
+    {
+        this.evaluationCache = evaluationCache;
+    }
+
+    /**
+     * Resolves the set conditions, so they don't have to be looked up each time the capability is evaluated.
+     * <p>
+     * Conditions are resolved on first use rather than on initialisation, since condition beans may not have
+     * been created when the capability is registered.
+     *
+     * @return {@link CapabilityCondition}[]   resolved conditions
+     */
+    private synchronized CapabilityCondition[] resolveConditions()
+    {
+        if (resolvedConditions == null)
+        {
+            CapabilityCondition[] resolved = new CapabilityCondition[conditions.size()];
+            boolean[] expected = new boolean[conditions.size()];
+            int index = 0;
+            for (Map.Entry<String, Boolean> entry : conditions.entrySet())
+            {
+                resolved[index] = getCondition(entry.getKey());
+                expected[index] = entry.getValue().booleanValue();
+                index++;
+            }
+            expectedResults = expected;
+            resolvedConditions = resolved;
+        }
+        return resolvedConditions;
+    }
+
+    /**
+     * @param conditionName         condition name
+     * @return {@link CapabilityCondition}  capability condition
+     */
+    private CapabilityCondition getCondition(String conditionName)
+    {
+        CapabilityCondition condition = (CapabilityCondition)applicationContext.getBean(conditionName);
+        if (condition == null)
+        {
+            throw new AlfrescoRuntimeException("Capability condition " + conditionName + " does not exist.  Check the configuration of the capability " + name + ".");
+        }
+        return condition;
+    }
+
     /**
      * Check the permissions passed.
      *
@@ -215,43 +273,82 @@ public class DeclarativeCapability extends AbstractCapability
      * @return
      */
     protected boolean checkConditions(NodeRef nodeRef, Map<String, Boolean> conditions)
+    {
+        return checkConditions(nodeRef, conditions, false);
+    }
+
+    /**
+     * Checks conditions, either the passed conditions looked up by name or the set conditions resolved for this
+     * capability.
+     *
+     * @param nodeRef           node reference
+     * @param conditions        conditions and expected values
+     * @param useResolved       true if the conditions are the set conditions and their resolved beans can be used,
+     *                          false if the conditions have to be looked up by name
+     * @return boolean          true if conditions satisfied, false otherwise
+     */
+    private boolean checkConditions(NodeRef nodeRef, Map<String, Boolean> conditions, boolean useResolved)
     {
         boolean result = true;
         if (conditions != null)
         {
-            for (Map.Entry<String, Boolean> entry : conditions.entrySet())
+            if (useResolved)
             {
-                boolean expected = entry.getValue().booleanValue();
-                String conditionName = entry.getKey();
-
-                CapabilityCondition condition = (CapabilityCondition)applicationContext.getBean(conditionName);
-                if (condition == null)
+                // use the conditions resolved for this capability
+                CapabilityCondition[] resolved = resolvedConditions;
+                if (resolved == null)
                 {
-                    throw new AlfrescoRuntimeException("Capability condition " + conditionName + " does not exist.  Check the configuration of the capability " + name + ".");
+                    resolved = resolveConditions();
                 }
-
-                // determine the actual value
-                boolean actual = condition.evaluate(nodeRef);
-
-                // report information about condition (for exception reporting)
-                RMMethodSecurityInterceptor.reportCapabilityCondition(getName(), condition.getName(), expected, actual);
-
-                if (expected != actual)
+                boolean[] expected = expectedResults;
+                for (int index = 0; index < resolved.length; index++)
                 {
-                    result = false;
-
-                    if (LOGGER.isDebugEnabled())
+                    if (!checkCondition(nodeRef, resolved[index], expected[index]))
                     {
-                        LOGGER.debug("FAIL: Condition " + condition.getName() + " failed for capability " + getName() + " on nodeRef " + nodeRef.toString());
+                        result = false;
+                        break;
+                    }
+                }
+            }
+            else
+            {
+                for (Map.Entry<String, Boolean> entry : conditions.entrySet())
+                {
+                    if (!checkCondition(nodeRef, getCondition(entry.getKey()), entry.getValue().booleanValue()))
+                    {
+                        result = false;
+                        break;
                     }
-
-                    break;
                 }
             }
         }
         return result;
     }
 
+    /**
+     * Checks a single condition.
+     *
+     * @param nodeRef   node reference
+     * @param condition capability condition
+     * @param expected  expected evaluation result
+     * @return boolean  true if the condition evaluates to the expected result, false otherwise
+     */
+    private boolean checkCondition(NodeRef nodeRef, CapabilityCondition condition, boolean expected)
+    {
+        // determine the actual value
+        boolean actual = condition.evaluate(nodeRef);
+
+        // report information about condition (for exception reporting)
+        RMMethodSecurityInterceptor.reportCapabilityCondition(getName(), condition.getName(), expected, actual);
+
+        if (expected != actual && LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("FAIL: Condition " + condition.getName() + " failed for capability " + getName() + " on nodeRef " + nodeRef.toString());
+        }
+
+        return expected == actual;
+    }
+
     /**
      * Checks the set conditions.
      *
@@ -260,7 +357,7 @@ public class DeclarativeCapability extends AbstractCapability
      */
     protected boolean checkConditions(NodeRef nodeRef)
     {
-        return checkConditions(nodeRef, conditions);
+        return checkConditions(nodeRef, conditions, true);
     }
     
     /**
@@ -319,12 +416,21 @@ public class DeclarativeCapability extends AbstractCapability
     	// check transaction cache
         Map<String, Integer> map = TransactionalResourceHelper.getMap("rm.declarativeCapability");
         String key = getName() + "|" + nodeRef.toString() + "|" + AuthenticationUtil.getRunAsUser();
+        Integer cachedResult = null;
         if (map.containsKey(key))
         {
             result = map.get(key);
         }
+        else if (evaluationCache != null && (cachedResult = evaluationCache.get(this, nodeRef)) != null)
+        {
+            // result evaluated in an earlier transaction
+            result = cachedResult;
+            map.put(key, result);
+        }
         else
         {
+            long start = System.nanoTime();
+
 	        // Check we are dealing with a file plan component
 	        if (getFilePlanService().isFilePlanComponent(nodeRef))
 	        {
@@ -350,6 +456,11 @@ public class DeclarativeCapability extends AbstractCapability
 	        }
 
 	        map.put(key, result);
+
+	        if (evaluationCache != null)
+	        {
+	            evaluationCache.put(this, nodeRef, result, System.nanoTime() - start);
+	        }
 	    }
 
         return result;
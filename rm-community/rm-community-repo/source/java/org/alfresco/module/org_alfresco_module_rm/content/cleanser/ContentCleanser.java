@@ -27,23 +27,116 @@
 
 package org.alfresco.module.org_alfresco_module_rm.content.cleanser;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Content cleanser base implementation.
+ * <p>
+ * Each overwrite pass writes the file in place, a block at a time, through a {@link FileChannel}.  The
+ * file is forced to the storage device at the end of each pass so that the passes are not coalesced
+ * by the operating system.
  * 
  * @author Roy Wetherall
  * @since 2.4.a
  */
 public abstract class ContentCleanser
 {
+    /** logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentCleanser.class);
+
+    /** default block size (1MB) */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /** block size used when overwriting content */
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    /** indicates whether direct buffers are used to write the blocks */
+    private boolean useDirectBuffers = false;
+
+    /** indicates whether the file is forced to the storage device after each pass */
+    private boolean forceAfterPass = true;
+
+    /** total number of bytes overwritten */
+    private final AtomicLong bytesOverwritten = new AtomicLong();
+
+    /** total time spent overwriting, in nanoseconds */
+    private final AtomicLong overwriteTime = new AtomicLong();
+
+    /** total number of overwrite passes */
+    private final AtomicLong passCount = new AtomicLong();
+
+    /**
+     * @param blockSize block size, in bytes, used when overwriting content
+     */
+    public void setBlockSize(int blockSize)
+    {
+        if (blockSize <= 0)
+        {
+            throw new IllegalArgumentException("Block size must be greater than zero.");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return block size, in bytes, used when overwriting content
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * @param useDirectBuffers true if direct buffers should be used to write the blocks, false otherwise
+     */
+    public void setUseDirectBuffers(boolean useDirectBuffers)
+    {
+        this.useDirectBuffers = useDirectBuffers;
+    }
+
+    /**
+     * @param forceAfterPass true if the file should be forced to the storage device after each pass, false otherwise
+     */
+    public void setForceAfterPass(boolean forceAfterPass)
+    {
+        this.forceAfterPass = forceAfterPass;
+    }
+
+    /**
+     * @return total number of bytes overwritten by this cleanser
+     */
+    public long getBytesOverwritten()
+    {
+        return bytesOverwritten.get();
+    }
+
+    /**
+     * @return total number of overwrite passes made by this cleanser
+     */
+    public long getPassCount()
+    {
+        return passCount.get();
+    }
+
+    /**
+     * @return average overwrite throughput of this cleanser, in bytes per second
+     */
+    public long getAverageThroughput()
+    {
+        return bytesPerSecond(bytesOverwritten.get(), overwriteTime.get());
+    }
+
     /**
      * Cleanse file
      * 
@@ -61,15 +154,45 @@ public abstract class ContentCleanser
     {
         // get the number of bytes
         long bytes = file.length();
+        long start = System.nanoTime();
         try
         {
-            // get an output stream
-            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file)))
+            // open the file for writing, without truncating it, so the existing bytes are overwritten in place
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE))
             {
-                for (int i = 0; i < bytes; i++)
+                int size = (int) Math.min(blockSize, Math.max(bytes, 1));
+                byte[] block = new byte[size];
+                ByteBuffer buffer = useDirectBuffers ? ByteBuffer.allocateDirect(size) : ByteBuffer.wrap(block);
+
+                long position = 0;
+                while (position < bytes)
+                {
+                    int length = (int) Math.min(size, bytes - position);
+
+                    // fill the block with the overwrite data
+                    overwriteOperation.fill(block, length);
+                    buffer.clear();
+                    if (useDirectBuffers)
+                    {
+                        buffer.put(block, 0, length);
+                        buffer.flip();
+                    }
+                    else
+                    {
+                        buffer.limit(length);
+                    }
+
+                    // write the block
+                    while (buffer.hasRemaining())
+                    {
+                        position += channel.write(buffer, position);
+                    }
+                }
+
+                // make sure this pass reaches the storage device before the next one starts
+                if (forceAfterPass)
                 {
-                    // overwrite byte
-                    overwriteOperation.operation(os);
+                    channel.force(false);
                 }
             }
         }
@@ -78,6 +201,29 @@ public abstract class ContentCleanser
             // re-throw
             throw new AlfrescoRuntimeException("Unable to overwrite file", ioException);
         }
+
+        long elapsed = System.nanoTime() - start;
+        bytesOverwritten.addAndGet(bytes);
+        overwriteTime.addAndGet(elapsed);
+        passCount.incrementAndGet();
+
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Overwrote " + bytes + " bytes of " + file + " in " + (elapsed / 1000000) + "ms ("
+                        + bytesPerSecond(bytes, elapsed) + " bytes/sec).");
+        }
+    }
+
+    /**
+     * Helper method to calculate a throughput.
+     *
+     * @param bytes     number of bytes
+     * @param nanos     elapsed time, in nanoseconds
+     * @return long     throughput, in bytes per second
+     */
+    private static long bytesPerSecond(long bytes, long nanos)
+    {
+        return nanos == 0 ? 0 : (long) (bytes * 1000000000d / nanos);
     }
 
     /**
@@ -86,6 +232,38 @@ public abstract class ContentCleanser
     protected abstract class OverwriteOperation
     {
         public abstract void operation(OutputStream os) throws IOException;
+
+        /**
+         * Fill the first <code>length</code> bytes of the block with overwrite data.
+         * <p>
+         * By default each byte is produced by {@link #operation(OutputStream)}, operations that can
+         * produce a whole block at once should override this.
+         *
+         * @param block     block to fill
+         * @param length    number of bytes to fill
+         * @throws IOException
+         */
+        public void fill(final byte[] block, final int length) throws IOException
+        {
+            OutputStream os = new OutputStream()
+            {
+                private int index = 0;
+
+                @Override
+                public void write(int b)
+                {
+                    if (index < length)
+                    {
+                        block[index++] = (byte) b;
+                    }
+                }
+            };
+
+            for (int i = 0; i < length; i++)
+            {
+                operation(os);
+            }
+        }
     }
 
     /**
@@ -97,6 +275,12 @@ public abstract class ContentCleanser
         {
             os.write(0);
         }
+
+        @Override
+        public void fill(byte[] block, int length)
+        {
+            Arrays.fill(block, 0, length, (byte) 0);
+        }
     };
 
     /**
@@ -108,6 +292,12 @@ public abstract class ContentCleanser
         {
             os.write(0xff);
         }
+
+        @Override
+        public void fill(byte[] block, int length)
+        {
+            Arrays.fill(block, 0, length, (byte) 0xff);
+        }
     };
 
     /**
@@ -123,5 +313,12 @@ public abstract class ContentCleanser
             random.nextBytes(randomByte);
             os.write(randomByte[0]);
         }
+
+        @Override
+        public void fill(byte[] block, int length)
+        {
+            // random data is generated for the whole block at once, any bytes beyond length are never written
+            random.nextBytes(block);
+        }
     };
 }
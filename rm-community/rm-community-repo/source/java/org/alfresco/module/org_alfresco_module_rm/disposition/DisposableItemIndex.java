@@ -0,0 +1,591 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.disposition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.alfresco.module.org_alfresco_module_rm.model.BaseBehaviourBean;
+import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.annotation.Behaviour;
+import org.alfresco.repo.policy.annotation.BehaviourBean;
+import org.alfresco.repo.policy.annotation.BehaviourKind;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+
+/**
+ * Index of the disposable items governed by each disposition schedule.
+ * <p>
+ * The index of a schedule is built the first time its disposable items are requested and is then kept up to date
+ * as records are filed and folders are created or moved.  Changes that affect the scope of a schedule as a whole
+ * (moving a category, deleting a schedule or switching between record and folder level disposition) discard the
+ * index so that it is rebuilt on next use.
+ * <p>
+ * Entries are checked when read, so an item that has since been deleted or moved out of the scope of the
+ * schedule is never returned.  They are read a page at a time, no more than are needed to return the items asked for.
+ * <p>
+ * An index is built in batches, each written in a transaction of its own, and is only marked as built once every
+ * batch has been written.  Items filed while an index is being built are indexed as they are filed, so they are not
+ * lost if they were filed after the items to build the index from were read.
+ *
+ * @since 3.4
+ */
+@BehaviourBean
+(
+        defaultType = "rma:filePlanComponent"
+)
+public class DisposableItemIndex extends    BaseBehaviourBean
+                                 implements NodeServicePolicies.OnCreateChildAssociationPolicy,
+                                            NodeServicePolicies.OnMoveNodePolicy,
+                                            NodeServicePolicies.OnDeleteNodePolicy,
+                                            NodeServicePolicies.OnUpdatePropertiesPolicy
+{
+    /** attribute context of the index entries, keyed by schedule and item */
+    private static final String INDEX_CONTEXT = "rm.disposableItemIndex";
+
+    /** attribute context of the marker recording that the index of a schedule has been built */
+    private static final String INDEX_BUILT_CONTEXT = "rm.disposableItemIndex.built";
+
+    /** attribute context of the marker recording that the index of a schedule is being built */
+    private static final String INDEX_BUILDING_CONTEXT = "rm.disposableItemIndex.building";
+
+    /** attribute service */
+    private AttributeService attributeService;
+
+    /** disposition service */
+    private DispositionService dispositionService;
+
+    /** record service */
+    private RecordService recordService;
+
+    /** transaction service */
+    private TransactionService transactionService;
+
+    /** number of entries written in each transaction when an index is built */
+    private int buildBatchSize = 1000;
+
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param dispositionService    disposition service
+     */
+    public void setDispositionService(DispositionService dispositionService)
+    {
+        this.dispositionService = dispositionService;
+    }
+
+    /**
+     * @param recordService     record service
+     */
+    public void setRecordService(RecordService recordService)
+    {
+        this.recordService = recordService;
+    }
+
+    /**
+     * @param transactionService    transaction service
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param buildBatchSize    number of entries written in each transaction when an index is built
+     */
+    public void setBuildBatchSize(int buildBatchSize)
+    {
+        this.buildBatchSize = buildBatchSize;
+    }
+
+    /**
+     * Indicates whether the index of the given disposition schedule has been built.
+     *
+     * @param schedule  disposition schedule node reference
+     * @return boolean  true if the index has been built, false otherwise
+     */
+    public boolean isBuilt(NodeRef schedule)
+    {
+        return attributeService.exists(INDEX_BUILT_CONTEXT, schedule);
+    }
+
+    /**
+     * Builds the index of the given disposition schedule, replacing any existing entries.
+     * <p>
+     * The index is marked as being built before the items are read, so that items filed from then on are indexed as
+     * they are filed.  The entries are then written in batches as the items are handed over, each batch in a
+     * transaction of its own, so neither the index nor the transaction of the caller holds them all.  The index is
+     * marked as built once the last batch has been written, unless it was discarded in the meantime.
+     *
+     * @param schedule      disposition schedule node reference
+     * @param itemSource    hands each of the disposable items governed by the schedule to the given consumer
+     */
+    public void build(final NodeRef schedule, Consumer<Consumer<NodeRef>> itemSource)
+    {
+        final RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute()
+            {
+                invalidate(schedule);
+                attributeService.setAttribute(Boolean.TRUE, INDEX_BUILDING_CONTEXT, schedule);
+                return null;
+            }
+        }, false, true);
+
+        final int batchSize = Math.max(buildBatchSize, 1);
+        final List<NodeRef> batch = new ArrayList<>(batchSize);
+        itemSource.accept(item ->
+        {
+            batch.add(item);
+            if (batch.size() >= batchSize)
+            {
+                writeEntries(txnHelper, schedule, batch);
+            }
+        });
+        writeEntries(txnHelper, schedule, batch);
+
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute()
+            {
+                // an index discarded while it was being built may have missed changes, so is left to be rebuilt
+                if (attributeService.exists(INDEX_BUILDING_CONTEXT, schedule))
+                {
+                    attributeService.removeAttribute(INDEX_BUILDING_CONTEXT, schedule);
+                    attributeService.setAttribute(Boolean.TRUE, INDEX_BUILT_CONTEXT, schedule);
+                }
+                return null;
+            }
+        }, false, true);
+    }
+
+    /**
+     * Writes a batch of entries in a transaction of its own and clears the batch.
+     *
+     * @param txnHelper retrying transaction helper
+     * @param schedule  disposition schedule node reference
+     * @param batch     items to index
+     */
+    private void writeEntries(RetryingTransactionHelper txnHelper, final NodeRef schedule, final List<NodeRef> batch)
+    {
+        if (!batch.isEmpty())
+        {
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute()
+                {
+                    for (NodeRef item : batch)
+                    {
+                        attributeService.setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule, item);
+                    }
+                    return null;
+                }
+            }, false, true);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Discards the index of the given disposition schedule so that it is rebuilt on next use.
+     *
+     * @param schedule  disposition schedule node reference
+     */
+    public void invalidate(NodeRef schedule)
+    {
+        attributeService.removeAttribute(INDEX_BUILT_CONTEXT, schedule);
+        attributeService.removeAttribute(INDEX_BUILDING_CONTEXT, schedule);
+        attributeService.removeAttributes(INDEX_CONTEXT, schedule);
+    }
+
+    /**
+     * Gets the indexed disposable items of the given disposition schedule.
+     * <p>
+     * The entries are read a page at a time, the page being the number of items still needed.  Each page carries on
+     * from the entries already read, identified by attribute id, so entries added or removed by other transactions
+     * between pages don't shift the page.  Entries for items that no longer exist, or that are no longer governed by
+     * the schedule, are skipped and, when the current transaction allows it, removed from the index once all the pages
+     * have been read.
+     *
+     * @param schedule  disposition schedule node reference
+     * @param maxItems  maximum number of items to return
+     * @return {@link List}&lt;{@link NodeRef}&gt;  disposable items governed by the schedule
+     */
+    public List<NodeRef> getItems(NodeRef schedule, int maxItems)
+    {
+        List<NodeRef> items = new ArrayList<>();
+        List<NodeRef> staleItems = new ArrayList<>();
+        boolean isRecordLevel = isRecordLevel(schedule);
+        Set<Long> readIds = new HashSet<>();
+        while (items.size() < maxItems)
+        {
+            int pageSize = maxItems - items.size();
+            List<NodeRef> entries = readEntries(schedule, readIds, pageSize);
+            for (NodeRef entry : entries)
+            {
+                if (isGovernedBy(schedule, isRecordLevel, entry))
+                {
+                    items.add(entry);
+                }
+                else
+                {
+                    staleItems.add(entry);
+                }
+            }
+
+            if (entries.size() < pageSize)
+            {
+                // there are no more entries
+                break;
+            }
+        }
+
+        if (!staleItems.isEmpty() &&
+            AlfrescoTransactionSupport.getTransactionReadState().equals(TxnReadState.TXN_READ_WRITE))
+        {
+            for (NodeRef staleItem : staleItems)
+            {
+                attributeService.removeAttribute(INDEX_CONTEXT, schedule, staleItem);
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Reads the next page of the entries of the given disposition schedule that do not carry the given mark.
+     * <p>
+     * The query is closed before the entries are returned, so the caller is free to write to the index, marking the
+     * entries as it processes them, before reading the next page.  The entries are not checked, the items may no
+     * longer exist or be governed by the schedule.
+     *
+     * @param schedule      disposition schedule node reference
+     * @param mark          mark of the entries to pass over
+     * @param maxEntries    maximum number of entries to read
+     * @return {@link List}&lt;{@link NodeRef}&gt;  indexed items not carrying the mark
+     */
+    public List<NodeRef> getUnmarkedEntries(NodeRef schedule, final Serializable mark, final int maxEntries)
+    {
+        final List<NodeRef> entries = new ArrayList<>(Math.min(maxEntries, buildBatchSize));
+        attributeService.getAttributes(new AttributeQueryCallback()
+        {
+            @Override
+            public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+            {
+                if (!mark.equals(value))
+                {
+                    entries.add((NodeRef) keys[2]);
+                }
+                return entries.size() < maxEntries;
+            }
+        }, INDEX_CONTEXT, schedule);
+        return entries;
+    }
+
+    /**
+     * Records a mark against an entry of the index of the given disposition schedule, for example to note that the
+     * item has been processed.  The mark is lost when the entry is next written.
+     *
+     * @param schedule  disposition schedule node reference
+     * @param item      indexed item
+     * @param mark      mark
+     */
+    public void markEntry(NodeRef schedule, NodeRef item, Serializable mark)
+    {
+        attributeService.setAttribute(mark, INDEX_CONTEXT, schedule, item);
+    }
+
+    /**
+     * Reads the next page of the entries of the given disposition schedule.
+     * <p>
+     * The entries are read before they are checked, rather than querying nodes while the entries are being fetched.
+     * The attribute service can't start a query part way through a context, so the entries already read are passed
+     * over as they are fetched, by attribute id rather than by position.
+     *
+     * @param schedule  disposition schedule node reference
+     * @param readIds   attribute ids of the entries already read, updated with the ids of the entries read
+     * @param pageSize  maximum number of entries to read
+     * @return {@link List}&lt;{@link NodeRef}&gt;  indexed items
+     */
+    private List<NodeRef> readEntries(NodeRef schedule, final Set<Long> readIds, final int pageSize)
+    {
+        final List<NodeRef> entries = new ArrayList<>(Math.min(pageSize, buildBatchSize));
+        attributeService.getAttributes(new AttributeQueryCallback()
+        {
+            @Override
+            public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+            {
+                if (readIds.add(id))
+                {
+                    entries.add((NodeRef) keys[2]);
+                }
+                return entries.size() < pageSize;
+            }
+        }, INDEX_CONTEXT, schedule);
+        return entries;
+    }
+
+    /**
+     * @param schedule  disposition schedule node reference
+     * @return boolean  true if the index of the schedule has been built or is being built, false otherwise
+     */
+    private boolean isMaintained(NodeRef schedule)
+    {
+        return isBuilt(schedule) || attributeService.exists(INDEX_BUILDING_CONTEXT, schedule);
+    }
+
+    /**
+     * Keep the index up to date as records are filed and folders are created.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnCreateChildAssociationPolicy#onCreateChildAssociation(org.alfresco.service.cmr.repository.ChildAssociationRef, boolean)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.ASSOCIATION,
+            notificationFrequency = NotificationFrequency.TRANSACTION_COMMIT
+    )
+    public void onCreateChildAssociation(ChildAssociationRef childAssocRef, boolean isNewNode)
+    {
+        NodeRef parent = childAssocRef.getParentRef();
+        NodeRef child = childAssocRef.getChildRef();
+        if (nodeService.exists(parent) && nodeService.exists(child))
+        {
+            if (isRecordFolder(parent) && isRecord(child))
+            {
+                addRecord(parent, child);
+            }
+            else if (isRecordCategory(parent) && isRecordFolder(child))
+            {
+                addRecordFolder(child);
+            }
+        }
+    }
+
+    /**
+     * Keep the index up to date as records and folders are moved.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy#onMoveNode(org.alfresco.service.cmr.repository.ChildAssociationRef, org.alfresco.service.cmr.repository.ChildAssociationRef)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS,
+            notificationFrequency = NotificationFrequency.TRANSACTION_COMMIT
+    )
+    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    {
+        NodeRef parent = newChildAssocRef.getParentRef();
+        NodeRef child = newChildAssocRef.getChildRef();
+        if (nodeService.exists(parent) && nodeService.exists(child))
+        {
+            if (isRecordFolder(parent) && isRecord(child))
+            {
+                addRecord(parent, child);
+            }
+            else if (isRecordFolder(child))
+            {
+                addRecordFolder(child);
+            }
+            else if (isRecordCategory(child))
+            {
+                // the content of the category now falls under the schedule governing its new location
+                DispositionSchedule schedule = dispositionService.getDispositionSchedule(child);
+                if (schedule != null)
+                {
+                    invalidate(schedule.getNodeRef());
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard the index of a deleted disposition schedule, and of the schedule that takes over its items.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnDeleteNodePolicy#onDeleteNode(org.alfresco.service.cmr.repository.ChildAssociationRef, boolean)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS,
+            type = "rma:dispositionSchedule",
+            notificationFrequency = NotificationFrequency.TRANSACTION_COMMIT
+    )
+    public void onDeleteNode(ChildAssociationRef childAssocRef, boolean isNodeArchived)
+    {
+        invalidate(childAssocRef.getChildRef());
+
+        NodeRef container = childAssocRef.getParentRef();
+        if (nodeService.exists(container))
+        {
+            DispositionSchedule schedule = dispositionService.getDispositionSchedule(container);
+            if (schedule != null)
+            {
+                invalidate(schedule.getNodeRef());
+            }
+        }
+    }
+
+    /**
+     * Discard the index of a disposition schedule when it changes between record and folder level disposition.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy#onUpdateProperties(org.alfresco.service.cmr.repository.NodeRef, java.util.Map, java.util.Map)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS,
+            type = "rma:dispositionSchedule"
+    )
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        if (!Objects.equals(before.get(PROP_RECORD_LEVEL_DISPOSITION), after.get(PROP_RECORD_LEVEL_DISPOSITION)) &&
+            nodeService.exists(nodeRef))
+        {
+            invalidate(nodeRef);
+        }
+    }
+
+    /**
+     * Adds a record filed in the given record folder to the index of the schedule governing the folder, if the index
+     * has been built or is being built.
+     *
+     * @param recordFolder  record folder
+     * @param record        record
+     */
+    private void addRecord(NodeRef recordFolder, NodeRef record)
+    {
+        DispositionSchedule schedule = dispositionService.getDispositionSchedule(recordFolder);
+        if (schedule != null && schedule.isRecordLevelDisposition() && isMaintained(schedule.getNodeRef()))
+        {
+            attributeService.setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule.getNodeRef(), record);
+        }
+    }
+
+    /**
+     * Adds a record folder, or its records, to the index of the schedule governing the folder, if the index has been
+     * built or is being built.
+     *
+     * @param recordFolder  record folder
+     */
+    private void addRecordFolder(NodeRef recordFolder)
+    {
+        DispositionSchedule schedule = dispositionService.getDispositionSchedule(recordFolder);
+        if (schedule != null && isMaintained(schedule.getNodeRef()))
+        {
+            if (schedule.isRecordLevelDisposition())
+            {
+                for (NodeRef record : recordService.getRecords(recordFolder))
+                {
+                    attributeService.setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule.getNodeRef(), record);
+                }
+            }
+            else
+            {
+                attributeService.setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule.getNodeRef(), recordFolder);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the given item is still a disposable item governed by the schedule.
+     *
+     * @param schedule      disposition schedule node reference
+     * @param isRecordLevel true if the schedule is record level, false otherwise
+     * @param item          indexed item
+     * @return boolean      true if the item is governed by the schedule, false otherwise
+     */
+    private boolean isGovernedBy(NodeRef schedule, boolean isRecordLevel, NodeRef item)
+    {
+        if (!nodeService.exists(item))
+        {
+            return false;
+        }
+        if (!isRecordLevel)
+        {
+            return isRecordFolder(item) && isGovernedBy(schedule, item);
+        }
+        if (isRecord(item))
+        {
+            for (ChildAssociationRef parentAssoc : nodeService.getParentAssocs(item))
+            {
+                NodeRef parent = parentAssoc.getParentRef();
+                if (isRecordFolder(parent) && isGovernedBy(schedule, parent))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param schedule      disposition schedule node reference
+     * @param recordFolder  record folder
+     * @return boolean      true if the record folder is governed by the schedule, false otherwise
+     */
+    private boolean isGovernedBy(NodeRef schedule, NodeRef recordFolder)
+    {
+        DispositionSchedule folderSchedule = dispositionService.getDispositionSchedule(recordFolder);
+        return folderSchedule != null && schedule.equals(folderSchedule.getNodeRef());
+    }
+
+    /**
+     * @param schedule  disposition schedule node reference
+     * @return boolean  true if the schedule is record level, false otherwise
+     */
+    private boolean isRecordLevel(NodeRef schedule)
+    {
+        return Boolean.TRUE.equals(nodeService.getProperty(schedule, PROP_RECORD_LEVEL_DISPOSITION));
+    }
+}
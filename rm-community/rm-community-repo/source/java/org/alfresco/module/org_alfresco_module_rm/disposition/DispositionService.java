@@ -112,6 +112,17 @@ public interface DispositionService
      */
     List<NodeRef> getDisposableItems(DispositionSchedule dispositionSchedule);
 
+    /**
+     * Builds the index of the disposable items under the control of the disposition schedule, unless it has
+     * already been built, without holding the disposable items in memory.  Does nothing if the disposable items are
+     * not indexed or the current transaction is read only.
+     *
+     * @param dispositionSchedule   disposition schedule
+     *
+     * @since 3.4
+     */
+    void indexDisposableItems(DispositionSchedule dispositionSchedule);
+
     /**
      * Indicates whether the node is a disposable item or not (ie is under the control of a disposition schedule)
      *
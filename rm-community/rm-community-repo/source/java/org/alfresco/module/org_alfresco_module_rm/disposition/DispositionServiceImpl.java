@@ -36,6 +36,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
@@ -122,6 +123,9 @@ public class DispositionServiceImpl extends    ServiceBaseImpl
     /** Transaction service */
     private TransactionService transactionService;
 
+    /** Disposable item index */
+    private DisposableItemIndex disposableItemIndex;
+
     /** Disposition properties */
     private Map<QName, DispositionProperty> dispositionProperties = new HashMap<>(4);
 
@@ -207,6 +211,14 @@ public class DispositionServiceImpl extends    ServiceBaseImpl
         this.transactionService = transactionService;
     }
 
+    /**
+     * @param disposableItemIndex disposable item index
+     */
+    public void setDisposableItemIndex(DisposableItemIndex disposableItemIndex)
+    {
+        this.disposableItemIndex = disposableItemIndex;
+    }
+
     /**
      * Behavior to initialize the disposition schedule of a newly filed record.
      *
@@ -503,6 +515,12 @@ public class DispositionServiceImpl extends    ServiceBaseImpl
     @Override
     public boolean hasDisposableItems(DispositionSchedule dispositionSchdule)
     {
+        ParameterCheck.mandatory("dispositionSchedule", dispositionSchdule);
+
+        if (disposableItemIndex != null && disposableItemIndex.isBuilt(dispositionSchdule.getNodeRef()))
+        {
+            return !disposableItemIndex.getItems(dispositionSchdule.getNodeRef(), 1).isEmpty();
+        }
     	return !getDisposableItems(dispositionSchdule).isEmpty();
     }
 
@@ -514,11 +532,49 @@ public class DispositionServiceImpl extends    ServiceBaseImpl
     {
         ParameterCheck.mandatory("dispositionSchedule", dispositionSchedule);
 
+        NodeRef dsNodeRef = dispositionSchedule.getNodeRef();
+        if (disposableItemIndex != null && disposableItemIndex.isBuilt(dsNodeRef))
+        {
+            return disposableItemIndex.getItems(dsNodeRef, Integer.MAX_VALUE);
+        }
+
         // Get the associated container
-        NodeRef rmContainer = getAssociatedRecordsManagementContainer(dispositionSchedule);
+        final NodeRef rmContainer = getAssociatedRecordsManagementContainer(dispositionSchedule);
+        final boolean isRecordLevelDisposition = dispositionSchedule.isRecordLevelDisposition();
+
+        // Build the index from the disposable items so that subsequent calls do not need to walk the file plan
+        if (disposableItemIndex != null &&
+            AlfrescoTransactionSupport.getTransactionReadState().equals(TxnReadState.TXN_READ_WRITE))
+        {
+            final List<NodeRef> items = new ArrayList<>();
+            disposableItemIndex.build(dsNodeRef, consumer -> addDisposableItems(isRecordLevelDisposition, rmContainer, item ->
+            {
+                items.add(item);
+                consumer.accept(item);
+            }));
+            return items;
+        }
+
+        // Get the disposable items
+        return getDisposableItemsImpl(isRecordLevelDisposition, rmContainer);
+    }
 
-        // Return the disposable items
-        return getDisposableItemsImpl(dispositionSchedule.isRecordLevelDisposition(), rmContainer);
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.disposition.DispositionService#indexDisposableItems(org.alfresco.module.org_alfresco_module_rm.disposition.DispositionSchedule)
+     */
+    @Override
+    public void indexDisposableItems(DispositionSchedule dispositionSchedule)
+    {
+        ParameterCheck.mandatory("dispositionSchedule", dispositionSchedule);
+
+        NodeRef dsNodeRef = dispositionSchedule.getNodeRef();
+        if (disposableItemIndex != null && !disposableItemIndex.isBuilt(dsNodeRef) &&
+            AlfrescoTransactionSupport.getTransactionReadState().equals(TxnReadState.TXN_READ_WRITE))
+        {
+            final NodeRef rmContainer = getAssociatedRecordsManagementContainer(dispositionSchedule);
+            final boolean isRecordLevelDisposition = dispositionSchedule.isRecordLevelDisposition();
+            disposableItemIndex.build(dsNodeRef, consumer -> addDisposableItems(isRecordLevelDisposition, rmContainer, consumer));
+        }
     }
 
     /**
@@ -537,28 +593,41 @@ public class DispositionServiceImpl extends    ServiceBaseImpl
      * @return
      */
     private List<NodeRef> getDisposableItemsImpl(boolean isRecordLevelDisposition, NodeRef rmContainer)
+    {
+        List<NodeRef> result = new ArrayList<>();
+        addDisposableItems(isRecordLevelDisposition, rmContainer, result::add);
+        return result;
+    }
+
+    /**
+     * Hands each disposable item beneath a records management container to the consumer, descending into the
+     * categories that have no disposition schedule of their own.
+     *
+     * @param isRecordLevelDisposition  true if the records are the disposable items, false if the record folders are
+     * @param rmContainer               records management container
+     * @param consumer                  disposable item consumer
+     */
+    private void addDisposableItems(boolean isRecordLevelDisposition, NodeRef rmContainer, Consumer<NodeRef> consumer)
     {
         List<NodeRef> items = filePlanService.getAllContained(rmContainer);
-        List<NodeRef> result = new ArrayList<>(items.size());
         for (NodeRef item : items)
         {
             if (recordFolderService.isRecordFolder(item))
             {
                 if (isRecordLevelDisposition)
                 {
-                    result.addAll(recordService.getRecords(item));
+                    recordService.getRecords(item).forEach(consumer);
                 }
                 else
                 {
-                    result.add(item);
+                    consumer.accept(item);
                 }
             }
             else if (filePlanService.isRecordCategory(item) && getAssociatedDispositionScheduleImpl(item) == null)
             {
-                result.addAll(getDisposableItemsImpl(isRecordLevelDisposition, item));
+                addDisposableItems(isRecordLevelDisposition, item, consumer);
             }
         }
-        return result;
     }
 
     /**
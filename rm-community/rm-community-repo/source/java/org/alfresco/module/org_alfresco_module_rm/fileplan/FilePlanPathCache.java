@@ -0,0 +1,382 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.fileplan;
+
+import java.io.Serializable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.model.BaseBehaviourBean;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.annotation.Behaviour;
+import org.alfresco.repo.policy.annotation.BehaviourBean;
+import org.alfresco.repo.policy.annotation.BehaviourKind;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.springframework.extensions.surf.util.I18NUtil;
+
+/**
+ * Cache of the ancestors and names of file plan components, shared between transactions and invalidated across the
+ * cluster.
+ * <p>
+ * Each node is cached with its primary parent and name rather than its whole path, so a path is built from one cache
+ * entry per ancestor and moving or renaming a node only invalidates the entry of that node, not those of its
+ * descendants.  Entries are invalidated when a file plan component is moved, renamed or deleted, or when a node
+ * becomes or stops being a file plan component.  The time to live of the cache bounds how long an entry can outlive a
+ * change made while behaviours are disabled.
+ *
+ * @since 3.4
+ */
+@BehaviourBean
+(
+        defaultType = "rma:filePlanComponent"
+)
+public class FilePlanPathCache extends    BaseBehaviourBean
+                               implements FilePlanPathCacheMBean,
+                                          NodeServicePolicies.OnUpdatePropertiesPolicy,
+                                          NodeServicePolicies.OnMoveNodePolicy,
+                                          NodeServicePolicies.BeforeDeleteNodePolicy,
+                                          NodeServicePolicies.OnAddAspectPolicy,
+                                          NodeServicePolicies.OnRemoveAspectPolicy
+{
+    /** I18N */
+    private static final String MSG_NO_ROOT = "rm.service.no-root";
+
+    /** Path elements, by node */
+    private SimpleCache<NodeRef, PathElement> cache;
+
+    /** Indicates whether file plan paths are cached */
+    private boolean enabled = true;
+
+    /** Statistics */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param cache path element cache
+     */
+    public void setCache(SimpleCache<NodeRef, PathElement> cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @param enabled   true if file plan paths are cached, false otherwise
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#isEnabled()
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Gets the <b>NodeRef</b> path from the file plan to a node, as {@link FilePlanService#getNodeRefPath(NodeRef)}.
+     *
+     * @param nodeRef           node reference
+     * @return List<NodeRef>    the file plan components from the file plan to the node, empty if the node isn't a
+     *                          file plan component
+     */
+    public List<NodeRef> getNodeRefPath(NodeRef nodeRef)
+    {
+        LinkedList<NodeRef> nodeRefPath = new LinkedList<>();
+        NodeRef current = nodeRef;
+        while (current != null)
+        {
+            PathElement element = getElement(current);
+            if (!element.isFilePlanComponent())
+            {
+                break;
+            }
+
+            // prepend it to the path, stopping at the root
+            nodeRefPath.addFirst(current);
+            if (element.isFilePlan())
+            {
+                break;
+            }
+            if (element.getParent() == null)
+            {
+                // we hit the top of the store
+                throw new AlfrescoRuntimeException(I18NUtil.getMessage(MSG_NO_ROOT));
+            }
+            current = element.getParent();
+        }
+        return nodeRefPath;
+    }
+
+    /**
+     * Gets the name of a node.  Only the names of file plan components are taken from the cache, as renaming other
+     * nodes doesn't invalidate it.
+     *
+     * @param nodeRef   node reference
+     * @return String   name of the node
+     */
+    public String getName(NodeRef nodeRef)
+    {
+        PathElement element = getElement(nodeRef);
+        return element.isFilePlanComponent() ? element.getName() :
+                    (String) nodeService.getProperty(nodeRef, ContentModel.PROP_NAME);
+    }
+
+    /**
+     * Helper method to get the path element of a node from the cache, reading and caching it on a miss.
+     *
+     * @param nodeRef       node reference
+     * @return PathElement  path element of the node
+     */
+    private PathElement getElement(NodeRef nodeRef)
+    {
+        PathElement element = enabled ? cache.get(nodeRef) : null;
+        if (element == null)
+        {
+            misses.incrementAndGet();
+
+            if (nodeService.exists(nodeRef))
+            {
+                ChildAssociationRef assocRef = nodeService.getPrimaryParent(nodeRef);
+                element = new PathElement(assocRef == null ? null : assocRef.getParentRef(),
+                                          (String) nodeService.getProperty(nodeRef, ContentModel.PROP_NAME),
+                                          nodeService.hasAspect(nodeRef, ASPECT_FILE_PLAN_COMPONENT),
+                                          isFilePlan(nodeRef));
+                if (enabled)
+                {
+                    cache.put(nodeRef, element);
+                }
+            }
+            else
+            {
+                // nodes that don't exist aren't cached
+                element = new PathElement(null, null, false, false);
+            }
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return element;
+    }
+
+    /**
+     * Helper method to remove the path element of a node from the cache.
+     *
+     * @param nodeRef   node reference
+     */
+    private void invalidate(NodeRef nodeRef)
+    {
+        // removed without checking the cache first, a transactional cache may not yet see an entry it must drop
+        if (enabled)
+        {
+            cache.remove(nodeRef);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy#onUpdateProperties(org.alfresco.service.cmr.repository.NodeRef, java.util.Map, java.util.Map)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        if (!Objects.equals(before.get(ContentModel.PROP_NAME), after.get(ContentModel.PROP_NAME)))
+        {
+            invalidate(nodeRef);
+        }
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy#onMoveNode(org.alfresco.service.cmr.repository.ChildAssociationRef, org.alfresco.service.cmr.repository.ChildAssociationRef)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    {
+        invalidate(oldChildAssocRef.getChildRef());
+        invalidate(newChildAssocRef.getChildRef());
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy#beforeDeleteNode(org.alfresco.service.cmr.repository.NodeRef)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void beforeDeleteNode(NodeRef nodeRef)
+    {
+        invalidate(nodeRef);
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnAddAspectPolicy#onAddAspect(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onAddAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        invalidate(nodeRef);
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnRemoveAspectPolicy#onRemoveAspect(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onRemoveAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        invalidate(nodeRef);
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#getHits()
+     */
+    @Override
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#getMisses()
+     */
+    @Override
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#getHitRatio()
+     */
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (hitCount * 100.0) / total;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#getInvalidations()
+     */
+    @Override
+    public long getInvalidations()
+    {
+        return invalidations.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#clear()
+     */
+    @Override
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCacheMBean#resetStatistics()
+     */
+    @Override
+    public void resetStatistics()
+    {
+        hits.set(0);
+        misses.set(0);
+        invalidations.set(0);
+    }
+
+    /**
+     * The primary parent and name of a node, and whether it is a file plan component.
+     */
+    public static final class PathElement implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final NodeRef parent;
+        private final String name;
+        private final boolean filePlanComponent;
+        private final boolean filePlan;
+
+        public PathElement(NodeRef parent, String name, boolean filePlanComponent, boolean filePlan)
+        {
+            this.parent = parent;
+            this.name = name;
+            this.filePlanComponent = filePlanComponent;
+            this.filePlan = filePlan;
+        }
+
+        public NodeRef getParent()
+        {
+            return parent;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public boolean isFilePlanComponent()
+        {
+            return filePlanComponent;
+        }
+
+        public boolean isFilePlan()
+        {
+            return filePlan;
+        }
+    }
+}
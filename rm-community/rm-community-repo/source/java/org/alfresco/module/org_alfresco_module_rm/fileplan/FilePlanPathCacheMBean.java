@@ -0,0 +1,71 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.fileplan;
+
+/**
+ * Management interface of the file plan path cache.
+ *
+ * @since 3.4
+ */
+public interface FilePlanPathCacheMBean
+{
+    /**
+     * @return boolean  true if file plan paths are cached, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * @return long number of path elements found in the cache
+     */
+    long getHits();
+
+    /**
+     * @return long number of path elements not found in the cache
+     */
+    long getMisses();
+
+    /**
+     * @return double   percentage of path elements found in the cache
+     */
+    double getHitRatio();
+
+    /**
+     * @return long number of path elements removed from the cache because a node was moved, renamed or deleted
+     */
+    long getInvalidations();
+
+    /**
+     * Clears the cached path elements.
+     */
+    void clear();
+
+    /**
+     * Resets the statistics.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,415 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.fileplan;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.model.BaseBehaviourBean;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.annotation.Behaviour;
+import org.alfresco.repo.policy.annotation.BehaviourBean;
+import org.alfresco.repo.policy.annotation.BehaviourKind;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+/**
+ * Registry of the file plans in each store, shared between transactions and invalidated across the cluster.
+ * <p>
+ * The file plans of a store are found with a single node scan the first time they are asked for, after which they,
+ * and the file plan of each site, are looked up from the cache.  The entry of a store is invalidated whenever a file
+ * plan in it is created, deleted, moved or renamed, so the next lookup scans the store again.  The time to live of the
+ * cache bounds how long an entry can outlive a change made while behaviours are disabled.
+ *
+ * @since 3.4
+ */
+@BehaviourBean
+(
+        defaultType = "rma:recordsManagementRoot"
+)
+public class FilePlanRegistry extends    BaseBehaviourBean
+                              implements FilePlanRegistryMBean,
+                                         NodeServicePolicies.OnCreateNodePolicy,
+                                         NodeServicePolicies.OnAddAspectPolicy,
+                                         NodeServicePolicies.OnRemoveAspectPolicy,
+                                         NodeServicePolicies.OnMoveNodePolicy,
+                                         NodeServicePolicies.OnUpdatePropertiesPolicy,
+                                         NodeServicePolicies.BeforeDeleteNodePolicy
+{
+    /** RM site file plan container */
+    private static final String FILE_PLAN_CONTAINER = "documentLibrary";
+
+    /** File plans, by store */
+    private SimpleCache<StoreRef, FilePlans> cache;
+
+    /** Node DAO */
+    private NodeDAO nodeDAO;
+
+    /** Indicates whether file plans are cached */
+    private boolean enabled = true;
+
+    /** Statistics */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param cache file plan cache
+     */
+    public void setCache(SimpleCache<StoreRef, FilePlans> cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @param nodeDAO   node DAO
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * @param enabled   true if file plans are cached, false otherwise
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistryMBean#isEnabled()
+     */
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Gets the file plans in a store.
+     *
+     * @param storeRef      store reference
+     * @return Set<NodeRef> file plans in the store
+     */
+    public Set<NodeRef> getFilePlans(StoreRef storeRef)
+    {
+        return new HashSet<>(getEntry(storeRef).getFilePlans());
+    }
+
+    /**
+     * Gets the file plan of a site, that is the file plan that is the document library of the site.
+     *
+     * @param siteId    site short name
+     * @return NodeRef  file plan of the site, null if the site doesn't exist or has no file plan
+     */
+    public NodeRef getFilePlanBySiteId(String siteId)
+    {
+        return getEntry(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE).getFilePlanBySiteId(siteId);
+    }
+
+    /**
+     * Helper method to get the file plans of a store from the cache, scanning the store for them on a miss.
+     *
+     * @param storeRef      store reference
+     * @return FilePlans    file plans of the store
+     */
+    private FilePlans getEntry(final StoreRef storeRef)
+    {
+        FilePlans filePlans = enabled ? cache.get(storeRef) : null;
+        if (filePlans == null)
+        {
+            loads.incrementAndGet();
+
+            // the registry is shared by all users, so it is loaded regardless of their permissions
+            filePlans = authenticationUtil.runAsSystem(new RunAsWork<FilePlans>()
+            {
+                public FilePlans doWork()
+                {
+                    return load(storeRef);
+                }
+            });
+            if (enabled)
+            {
+                cache.put(storeRef, filePlans);
+            }
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return filePlans;
+    }
+
+    /**
+     * Helper method to scan a store for its file plans.
+     *
+     * @param storeRef      store reference
+     * @return FilePlans    file plans of the store
+     */
+    private FilePlans load(final StoreRef storeRef)
+    {
+        final Set<NodeRef> filePlans = new HashSet<>();
+        Set<QName> aspects = new HashSet<>(1);
+        aspects.add(ASPECT_RECORDS_MANAGEMENT_ROOT);
+        nodeDAO.getNodesWithAspects(aspects, Long.MIN_VALUE, Long.MAX_VALUE, new NodeDAO.NodeRefQueryCallback()
+        {
+            @Override
+            public boolean handle(Pair<Long, NodeRef> nodePair)
+            {
+                NodeRef nodeRef = nodePair.getSecond();
+                if (storeRef.equals(nodeRef.getStoreRef()))
+                {
+                    filePlans.add(nodeRef);
+                }
+
+                return true;
+            }
+        });
+
+        Map<String, NodeRef> sites = new HashMap<>();
+        for (NodeRef filePlan : filePlans)
+        {
+            String siteId = getSiteId(filePlan);
+            if (siteId != null)
+            {
+                sites.put(siteId.toLowerCase(), filePlan);
+            }
+        }
+        return new FilePlans(filePlans, sites);
+    }
+
+    /**
+     * Helper method to get the site of which a file plan is the document library.
+     *
+     * @param filePlan  file plan
+     * @return String   site short name, null if the file plan isn't the document library of a site
+     */
+    private String getSiteId(NodeRef filePlan)
+    {
+        String siteId = null;
+        if (nodeService.exists(filePlan) &&
+            instanceOf(filePlan, TYPE_FILE_PLAN) &&
+            FILE_PLAN_CONTAINER.equals(nodeService.getProperty(filePlan, ContentModel.PROP_NAME)))
+        {
+            ChildAssociationRef assocRef = nodeService.getPrimaryParent(filePlan);
+            if (assocRef != null && assocRef.getParentRef() != null &&
+                instanceOf(assocRef.getParentRef(), SiteModel.TYPE_SITE))
+            {
+                siteId = (String) nodeService.getProperty(assocRef.getParentRef(), ContentModel.PROP_NAME);
+            }
+        }
+        return siteId;
+    }
+
+    /**
+     * Helper method to remove the file plans of a store from the cache.
+     *
+     * @param storeRef  store reference
+     */
+    private void invalidate(StoreRef storeRef)
+    {
+        // removed without checking the cache first, a transactional cache may not yet see an entry it must drop
+        if (enabled)
+        {
+            cache.remove(storeRef);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy#onCreateNode(org.alfresco.service.cmr.repository.ChildAssociationRef)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onCreateNode(ChildAssociationRef childAssocRef)
+    {
+        invalidate(childAssocRef.getChildRef().getStoreRef());
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnAddAspectPolicy#onAddAspect(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onAddAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        invalidate(nodeRef.getStoreRef());
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnRemoveAspectPolicy#onRemoveAspect(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onRemoveAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        invalidate(nodeRef.getStoreRef());
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy#onMoveNode(org.alfresco.service.cmr.repository.ChildAssociationRef, org.alfresco.service.cmr.repository.ChildAssociationRef)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    {
+        invalidate(oldChildAssocRef.getChildRef().getStoreRef());
+        invalidate(newChildAssocRef.getChildRef().getStoreRef());
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy#onUpdateProperties(org.alfresco.service.cmr.repository.NodeRef, java.util.Map, java.util.Map)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        // the name decides whether a file plan is the document library of a site
+        if (!Objects.equals(before.get(ContentModel.PROP_NAME), after.get(ContentModel.PROP_NAME)))
+        {
+            invalidate(nodeRef.getStoreRef());
+        }
+    }
+
+    /**
+     * @see org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy#beforeDeleteNode(org.alfresco.service.cmr.repository.NodeRef)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void beforeDeleteNode(NodeRef nodeRef)
+    {
+        invalidate(nodeRef.getStoreRef());
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistryMBean#getHits()
+     */
+    @Override
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistryMBean#getLoads()
+     */
+    @Override
+    public long getLoads()
+    {
+        return loads.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistryMBean#getInvalidations()
+     */
+    @Override
+    public long getInvalidations()
+    {
+        return invalidations.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistryMBean#clear()
+     */
+    @Override
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistryMBean#resetStatistics()
+     */
+    @Override
+    public void resetStatistics()
+    {
+        hits.set(0);
+        loads.set(0);
+        invalidations.set(0);
+    }
+
+    /**
+     * The file plans of a store, and the file plan of each site in it by lower case site short name.
+     */
+    public static final class FilePlans implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Set<NodeRef> filePlans;
+        private final Map<String, NodeRef> sites;
+
+        public FilePlans(Set<NodeRef> filePlans, Map<String, NodeRef> sites)
+        {
+            this.filePlans = Collections.unmodifiableSet(filePlans);
+            this.sites = Collections.unmodifiableMap(sites);
+        }
+
+        public Set<NodeRef> getFilePlans()
+        {
+            return filePlans;
+        }
+
+        public NodeRef getFilePlanBySiteId(String siteId)
+        {
+            return siteId == null ? null : sites.get(siteId.toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.fileplan;
+
+/**
+ * Management interface of the file plan registry.
+ *
+ * @since 3.4
+ */
+public interface FilePlanRegistryMBean
+{
+    /**
+     * @return boolean  true if file plans are cached, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * @return long number of lookups answered from the cache
+     */
+    long getHits();
+
+    /**
+     * @return long number of times a store was scanned for its file plans
+     */
+    long getLoads();
+
+    /**
+     * @return long number of times the file plans of a store were removed from the cache because a file plan changed
+     */
+    long getInvalidations();
+
+    /**
+     * Clears the cached file plans.
+     */
+    void clear();
+
+    /**
+     * Resets the statistics.
+     */
+    void resetStatistics();
+}
@@ -101,6 +101,12 @@ public class FilePlanServiceImpl extends ServiceBaseImpl
     /** Site service */
     private SiteService siteService;
 
+    /** File plan path cache */
+    private FilePlanPathCache filePlanPathCache;
+
+    /** File plan registry */
+    private FilePlanRegistry filePlanRegistry;
+
     /**
      * Gets the file plan role service
      *
@@ -174,6 +180,22 @@ public class FilePlanServiceImpl extends ServiceBaseImpl
 		this.rootContainerCache = rootContainerCache;
 	}
 
+    /**
+     * @param filePlanPathCache file plan path cache
+     */
+    public void setFilePlanPathCache(FilePlanPathCache filePlanPathCache)
+    {
+        this.filePlanPathCache = filePlanPathCache;
+    }
+
+    /**
+     * @param filePlanRegistry  file plan registry
+     */
+    public void setFilePlanRegistry(FilePlanRegistry filePlanRegistry)
+    {
+        this.filePlanRegistry = filePlanRegistry;
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService#getFilePlans(org.alfresco.service.cmr.repository.StoreRef)
      */
@@ -182,6 +204,11 @@ public class FilePlanServiceImpl extends ServiceBaseImpl
     {
         ParameterCheck.mandatory("storeRef", storeRef);
 
+        if (filePlanRegistry != null && filePlanRegistry.isEnabled())
+        {
+            return filePlanRegistry.getFilePlans(storeRef);
+        }
+
         final Set<NodeRef> results = new HashSet<>();
         Set<QName> aspects = new HashSet<>(1);
         aspects.add(ASPECT_RECORDS_MANAGEMENT_ROOT);
@@ -208,6 +235,11 @@ public class FilePlanServiceImpl extends ServiceBaseImpl
     @Override
     public NodeRef getFilePlanBySiteId(String siteId)
     {
+        if (filePlanRegistry != null && filePlanRegistry.isEnabled())
+        {
+            return filePlanRegistry.getFilePlanBySiteId(siteId);
+        }
+
         NodeRef filePlan = null;
 
         SiteInfo siteInfo = getSiteService().getSite(siteId);
@@ -439,10 +471,19 @@ public class FilePlanServiceImpl extends ServiceBaseImpl
      */
     public List<NodeRef> getNodeRefPath(NodeRef nodeRef)
     {
-        LinkedList<NodeRef> nodeRefPath = new LinkedList<>();
+        List<NodeRef> nodeRefPath;
         try
         {
-            getNodeRefPathRecursive(nodeRef, nodeRefPath);
+            if (filePlanPathCache != null)
+            {
+                nodeRefPath = filePlanPathCache.getNodeRefPath(nodeRef);
+            }
+            else
+            {
+                LinkedList<NodeRef> walkedPath = new LinkedList<>();
+                getNodeRefPathRecursive(nodeRef, walkedPath);
+                nodeRefPath = walkedPath;
+            }
         }
         catch (RuntimeException e)
         {
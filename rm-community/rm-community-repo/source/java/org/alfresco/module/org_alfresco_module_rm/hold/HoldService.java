@@ -30,6 +30,8 @@ package org.alfresco.module.org_alfresco_module_rm.hold;
 import java.util.List;
 
 import org.alfresco.api.AlfrescoPublicApi;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
 import org.alfresco.service.cmr.repository.NodeRef;
 
 /**
@@ -76,6 +78,19 @@ public interface HoldService
      */
     List<NodeRef> heldBy(NodeRef nodeRef, boolean includedInHold);
 
+    /**
+     * Gets a page of the holds within the holds containers for the given node reference, ordered by name.
+     * <p>
+     * Only the holds the current user can read are included in the page and in the total count.
+     *
+     * @param nodeRef The {@link NodeRef} of the record / record folder /active content
+     * @param includedInHold <code>true</code> to retrieve the holds which include the node reference
+     * <code>false</code> to retrieve the holds which do not include the node reference
+     * @param pagingRequest The requested page, including whether the total count is required
+     * @return Page of hold node references
+     */
+    PagingResults<NodeRef> listHeldBy(NodeRef nodeRef, boolean includedInHold, PagingRequest pagingRequest);
+
     /**
      * Gets the list of item node references which are in the given hold
      *
@@ -33,6 +33,7 @@ import static org.alfresco.model.ContentModel.PROP_NAME;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -58,6 +59,9 @@ import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
 import org.alfresco.module.org_alfresco_module_rm.recordfolder.RecordFolderService;
 import org.alfresco.module.org_alfresco_module_rm.util.ServiceBaseImpl;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.node.integrity.IntegrityException;
 import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
@@ -76,9 +80,9 @@ import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
+import org.alfresco.util.Pair;
 import org.alfresco.util.ParameterCheck;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.ListUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.extensions.surf.util.I18NUtil;
@@ -124,6 +128,12 @@ public class HoldServiceImpl extends ServiceBaseImpl
     /** Policy component */
     private PolicyComponent policyComponent;
 
+    /** Node bulk loader */
+    private NodeBulkLoader nodeBulkLoader;
+
+    /** Number of nodes loaded together when adding or removing a list of nodes */
+    private int batchSize = 500;
+
     /**
      * Set the file plan service
      *
@@ -172,6 +182,22 @@ public class HoldServiceImpl extends ServiceBaseImpl
         this.capabilityService = capabilityService;
     }
 
+    /**
+     * @param nodeBulkLoader node bulk loader
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
+    /**
+     * @param batchSize number of nodes loaded together when adding or removing a list of nodes
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
     /**
      * Gets the policy component instance
      *
@@ -330,7 +356,6 @@ public class HoldServiceImpl extends ServiceBaseImpl
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.hold.HoldService#heldBy(org.alfresco.service.cmr.repository.NodeRef, boolean)
      */
-    @SuppressWarnings("unchecked")
     @Override
     public List<NodeRef> heldBy(NodeRef nodeRef, boolean includedInHold)
     {
@@ -357,12 +382,17 @@ public class HoldServiceImpl extends ServiceBaseImpl
             if (!CollectionUtils.isEmpty(filePlans))
             {
                 final List<NodeRef> holdsNotIncludingNodeRef = new ArrayList<>();
-                filePlans.forEach(filePlan ->
+                for (NodeRef filePlan : filePlans)
                 {
                     // invert list to get list of holds that do not contain this node
-                    final List<NodeRef> allHolds = getHolds(filePlan);
-                    holdsNotIncludingNodeRef.addAll(ListUtils.subtract(allHolds, new ArrayList<>(holdsIncludingNodeRef)));
-                });
+                    for (NodeRef hold : getHolds(filePlan))
+                    {
+                        if (!holdsIncludingNodeRef.contains(hold))
+                        {
+                            holdsNotIncludingNodeRef.add(hold);
+                        }
+                    }
+                }
                 result = holdsNotIncludingNodeRef;
             }
         }
@@ -374,6 +404,74 @@ public class HoldServiceImpl extends ServiceBaseImpl
         return result;
     }
 
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.hold.HoldService#listHeldBy(org.alfresco.service.cmr.repository.NodeRef, boolean, org.alfresco.query.PagingRequest)
+     */
+    @Override
+    public PagingResults<NodeRef> listHeldBy(NodeRef nodeRef, boolean includedInHold, PagingRequest pagingRequest)
+    {
+        ParameterCheck.mandatory("nodeRef", nodeRef);
+        ParameterCheck.mandatory("pagingRequest", pagingRequest);
+
+        // only count the holds the user can see, so that the page and the total agree
+        final Map<NodeRef, String> holdNames = new HashMap<>();
+        for (NodeRef hold : heldBy(nodeRef, includedInHold))
+        {
+            if (AccessStatus.ALLOWED.equals(permissionService.hasPermission(hold, RMPermissionModel.READ_RECORDS)))
+            {
+                holdNames.put(hold, (String) nodeService.getProperty(hold, PROP_NAME));
+            }
+        }
+
+        List<NodeRef> holds = new ArrayList<>(holdNames.keySet());
+        Collections.sort(holds, new Comparator<NodeRef>()
+        {
+            @Override
+            public int compare(NodeRef hold1, NodeRef hold2)
+            {
+                int result = String.CASE_INSENSITIVE_ORDER.compare(holdNames.get(hold1), holdNames.get(hold2));
+                return result != 0 ? result : hold1.toString().compareTo(hold2.toString());
+            }
+        });
+
+        final int totalCount = holds.size();
+        int skipCount = Math.min(Math.max(pagingRequest.getSkipCount(), 0), totalCount);
+        int maxItems = pagingRequest.getMaxItems();
+        int end = maxItems > 0 ? (int) Math.min((long) skipCount + maxItems, totalCount) : totalCount;
+
+        final List<NodeRef> page = new ArrayList<>(holds.subList(skipCount, end));
+        final boolean hasMoreItems = end < totalCount;
+        final boolean isTotalCountRequested = pagingRequest.getRequestTotalCountMax() > 0;
+        final String queryExecutionId = pagingRequest.getQueryExecutionId();
+
+        return new PagingResults<NodeRef>()
+        {
+            @Override
+            public List<NodeRef> getPage()
+            {
+                return page;
+            }
+
+            @Override
+            public boolean hasMoreItems()
+            {
+                return hasMoreItems;
+            }
+
+            @Override
+            public Pair<Integer, Integer> getTotalResultCount()
+            {
+                return isTotalCountRequested ? new Pair<>(totalCount, totalCount) : new Pair<Integer, Integer>(null, null);
+            }
+
+            @Override
+            public String getQueryExecutionId()
+            {
+                return queryExecutionId;
+            }
+        };
+    }
+
     /**
      * Helper method to get holds that are direct parents of the given node.
      *
@@ -608,9 +706,9 @@ public class HoldServiceImpl extends ServiceBaseImpl
         ParameterCheck.mandatory("hold", hold);
         ParameterCheck.mandatory("nodeRefs", nodeRefs);
 
-        for (NodeRef nodeRef : nodeRefs)
+        if (!nodeRefs.isEmpty())
         {
-            addToHold(hold, nodeRef);
+            addToHolds(Collections.singletonList(hold), nodeRefs);
         }
     }
 
@@ -624,23 +722,23 @@ public class HoldServiceImpl extends ServiceBaseImpl
         ParameterCheck.mandatory("nodeRef", nodeRef);
 
         checkNodeCanBeAddedToHold(nodeRef);
+        checkHolds(holds, RMPermissionModel.ADD_TO_HOLD);
+
+        addToHoldsImpl(holds, nodeRef);
+    }
 
+    /**
+     * Adds the node to the given holds, which have already been checked.
+     *
+     * @param holds     holds
+     * @param nodeRef   node to add to the holds
+     */
+    private void addToHoldsImpl(final List<NodeRef> holds, final NodeRef nodeRef)
+    {
         for (final NodeRef hold : holds)
         {
-            if (!isHold(hold))
-            {
-                final String holdName = (String) nodeService.getProperty(hold, ContentModel.PROP_NAME);
-                throw new IntegrityException(I18NUtil.getMessage("rm.hold.not-hold", holdName), null);
-            }
-
-            if (!AccessStatus.ALLOWED.equals(
-                            capabilityService.getCapabilityAccessState(hold, RMPermissionModel.ADD_TO_HOLD)))
-            {
-                throw new AccessDeniedException(I18NUtil.getMessage(MSG_ERR_ACCESS_DENIED));
-            }
-
             // check that the node isn't already in the hold
-            if (!getHeld(hold).contains(nodeRef))
+            if (!isHeld(hold, nodeRef))
             {
                 // fire before add to hold policy
                 invokeBeforeAddToHold(hold, nodeRef);
@@ -675,6 +773,56 @@ public class HoldServiceImpl extends ServiceBaseImpl
         }
     }
 
+    /**
+     * Check that the given nodes are holds and that the current user has the given capability on each of them.
+     *
+     * @param holds         holds
+     * @param capability    capability required on each hold
+     */
+    private void checkHolds(List<NodeRef> holds, String capability)
+    {
+        for (NodeRef hold : holds)
+        {
+            if (!isHold(hold))
+            {
+                final String holdName = (String) nodeService.getProperty(hold, ContentModel.PROP_NAME);
+                throw new IntegrityException(I18NUtil.getMessage("rm.hold.not-hold", holdName), null);
+            }
+
+            if (!AccessStatus.ALLOWED.equals(capabilityService.getCapabilityAccessState(hold, capability)))
+            {
+                throw new AccessDeniedException(I18NUtil.getMessage(MSG_ERR_ACCESS_DENIED));
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the node is directly held by the given hold.
+     * <p>
+     * Looks at the holds of the node rather than the content of the hold, which may be very large.
+     *
+     * @param hold      hold
+     * @param nodeRef   node reference
+     * @return boolean  true if the node is in the hold, false otherwise
+     */
+    protected boolean isHeld(NodeRef hold, NodeRef nodeRef)
+    {
+        return getParentHolds(nodeRef).contains(hold);
+    }
+
+    /**
+     * Loads the nodes of the given batch into the node caches ahead of processing them one by one.
+     *
+     * @param batch node references
+     */
+    private void prefetch(List<NodeRef> batch)
+    {
+        if (nodeBulkLoader != null)
+        {
+            nodeBulkLoader.cacheNodes(batch);
+        }
+    }
+
     /**
      * Check if the given node is eligible to be added into a hold
      *
@@ -740,9 +888,18 @@ public class HoldServiceImpl extends ServiceBaseImpl
         ParameterCheck.mandatoryCollection("holds", holds);
         ParameterCheck.mandatoryCollection("nodeRefs", nodeRefs);
 
-        for (NodeRef nodeRef : nodeRefs)
+        // the holds are checked once for the whole list rather than for each node
+        checkHolds(holds, RMPermissionModel.ADD_TO_HOLD);
+
+        for (int start = 0; start < nodeRefs.size(); start += batchSize)
         {
-            addToHolds(holds, nodeRef);
+            List<NodeRef> batch = nodeRefs.subList(start, Math.min(start + batchSize, nodeRefs.size()));
+            prefetch(batch);
+            for (NodeRef nodeRef : batch)
+            {
+                checkNodeCanBeAddedToHold(nodeRef);
+                addToHoldsImpl(holds, nodeRef);
+            }
         }
     }
 
@@ -769,9 +926,9 @@ public class HoldServiceImpl extends ServiceBaseImpl
         ParameterCheck.mandatory("hold", hold);
         ParameterCheck.mandatory("nodeRefs", nodeRefs);
 
-        for (NodeRef nodeRef : nodeRefs)
+        if (!nodeRefs.isEmpty())
         {
-            removeFromHold(hold, nodeRef);
+            removeFromHolds(Collections.singletonList(hold), nodeRefs);
         }
     }
 
@@ -786,51 +943,51 @@ public class HoldServiceImpl extends ServiceBaseImpl
 
         if (!holds.isEmpty())
         {
-            List<NodeRef> removedHolds = new ArrayList<>();
-            for (final NodeRef hold : holds)
-            {
-                if (!isHold(hold))
-                {
-                    final String holdName = (String) nodeService.getProperty(hold, ContentModel.PROP_NAME);
-                    throw new IntegrityException(I18NUtil.getMessage("rm.hold.not-hold", holdName), null);
-                }
-
-                if (!AccessStatus.ALLOWED.equals(
-                        capabilityService.getCapabilityAccessState(hold, RMPermissionModel.REMOVE_FROM_HOLD)))
-                {
-                    throw new AccessDeniedException(I18NUtil.getMessage(MSG_ERR_ACCESS_DENIED));
-                }
+            checkHolds(holds, RMPermissionModel.REMOVE_FROM_HOLD);
+            removeFromHoldsImpl(holds, nodeRef);
+        }
+    }
 
-                if (getHeld(hold).contains(nodeRef))
+    /**
+     * Removes the node from the given holds, which have already been checked.
+     *
+     * @param holds     holds
+     * @param nodeRef   node to remove from the holds
+     */
+    private void removeFromHoldsImpl(List<NodeRef> holds, final NodeRef nodeRef)
+    {
+        List<NodeRef> removedHolds = new ArrayList<>();
+        for (final NodeRef hold : holds)
+        {
+            if (isHeld(hold, nodeRef))
+            {
+                // fire before remove from hold policy
+                invokeBeforeRemoveFromHold(hold, nodeRef);
+                // run as system so we don't run into further permission issues
+                // we already know we have to have the correct capability to get here
+                authenticationUtil.runAsSystem((RunAsWork<Void>) () ->
                 {
-                    // fire before remove from hold policy
-                    invokeBeforeRemoveFromHold(hold, nodeRef);
-                    // run as system so we don't run into further permission issues
-                    // we already know we have to have the correct capability to get here
-                    authenticationUtil.runAsSystem((RunAsWork<Void>) () ->
-                    {
-                        // remove from hold
-                        //set in transaction cache in order not to trigger update policy when removing the child association
-                        transactionalResourceHelper.getSet("frozen").add(nodeRef);
-                        nodeService.removeChild(hold, nodeRef);
+                    // remove from hold
+                    //set in transaction cache in order not to trigger update policy when removing the child association
+                    transactionalResourceHelper.getSet("frozen").add(nodeRef);
+                    nodeService.removeChild(hold, nodeRef);
 
-                        return null;
-                    });
-                    removedHolds.add(hold);
-                }
+                    return null;
+                });
+                removedHolds.add(hold);
             }
+        }
 
-            // run as system as we can't be sure if have remove aspect rights on node
-            authenticationUtil.runAsSystem((RunAsWork<Void>) () ->
-            {
-                removeFreezeAspect(nodeRef, 0);
-                return null;
-            });
-            for (NodeRef removedHold : removedHolds)
-            {
-                // fire on remove from hold policy
-                invokeOnRemoveFromHold(removedHold, nodeRef);
-            }
+        // run as system as we can't be sure if have remove aspect rights on node
+        authenticationUtil.runAsSystem((RunAsWork<Void>) () ->
+        {
+            removeFreezeAspect(nodeRef, 0);
+            return null;
+        });
+        for (NodeRef removedHold : removedHolds)
+        {
+            // fire on remove from hold policy
+            invokeOnRemoveFromHold(removedHold, nodeRef);
         }
     }
 
@@ -843,9 +1000,17 @@ public class HoldServiceImpl extends ServiceBaseImpl
         ParameterCheck.mandatoryCollection("holds", holds);
         ParameterCheck.mandatoryCollection("nodeRefs", nodeRefs);
 
-        for (NodeRef nodeRef : nodeRefs)
+        // the holds are checked once for the whole list rather than for each node
+        checkHolds(holds, RMPermissionModel.REMOVE_FROM_HOLD);
+
+        for (int start = 0; start < nodeRefs.size(); start += batchSize)
         {
-            removeFromHolds(holds, nodeRef);
+            List<NodeRef> batch = nodeRefs.subList(start, Math.min(start + batchSize, nodeRefs.size()));
+            prefetch(batch);
+            for (NodeRef nodeRef : batch)
+            {
+                removeFromHoldsImpl(holds, nodeRef);
+            }
         }
     }
 
@@ -859,11 +1024,7 @@ public class HoldServiceImpl extends ServiceBaseImpl
 
         // remove the node from all the holds it's held by
         List<NodeRef> holds = heldBy(nodeRef, true);
-        for (NodeRef hold : holds)
-        {
-            // remove node from hold
-            removeFromHold(hold, nodeRef);
-        }
+        removeFromHolds(holds, nodeRef);
     }
 
     /**
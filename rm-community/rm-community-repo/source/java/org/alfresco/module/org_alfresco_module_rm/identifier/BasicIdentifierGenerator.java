@@ -32,15 +32,62 @@ import java.util.Calendar;
 import java.util.Map;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * Basic identifier generator implementation.
+ * <p>
+ * By default the identifier is made from the node database id.  With block allocation enabled the number is instead
+ * taken from the sequence of the file plan, so no database access is needed for most identifiers.  Switching block
+ * allocation on is one-way: once a block has been reserved, identifiers keep being allocated from the sequences even
+ * if block allocation is switched off again, as new node database ids would clash with numbers already handed out.
  *
  * @author Roy Wetherall
  */
 public class BasicIdentifierGenerator extends IdentifierGeneratorBase
 {
+    /** Logger */
+    private static final Log LOGGER = LogFactory.getLog(BasicIdentifierGenerator.class);
+
+    /** Indicates whether the identifier numbers are allocated in blocks */
+    private boolean blockAllocation = false;
+
+    /** Identifier block allocator */
+    private IdentifierBlockAllocator blockAllocator;
+
+    /** File plan service */
+    private FilePlanService filePlanService;
+
+    /**
+     * @param blockAllocation   true if the identifier numbers are allocated in blocks, false to use node database ids
+     * @since 3.4
+     */
+    public void setBlockAllocation(boolean blockAllocation)
+    {
+        this.blockAllocation = blockAllocation;
+    }
+
+    /**
+     * @param blockAllocator    identifier block allocator
+     * @since 3.4
+     */
+    public void setBlockAllocator(IdentifierBlockAllocator blockAllocator)
+    {
+        this.blockAllocator = blockAllocator;
+    }
+
+    /**
+     * @param filePlanService   file plan service
+     * @since 3.4
+     */
+    public void setFilePlanService(FilePlanService filePlanService)
+    {
+        this.filePlanService = filePlanService;
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierGenerator#generateId(java.util.Map)
      */
@@ -49,7 +96,11 @@ public class BasicIdentifierGenerator extends IdentifierGeneratorBase
     {
         NodeRef nodeRef = (NodeRef)context.get(IdentifierService.CONTEXT_NODEREF);
         Long dbId = 0l;
-        if (nodeRef != null)
+        if (isBlockAllocation())
+        {
+            dbId = blockAllocator.allocate(getFilePlan(nodeRef, (NodeRef)context.get(IdentifierService.CONTEXT_PARENT_NODEREF)));
+        }
+        else if (nodeRef != null)
         {
             dbId = (Long)nodeService.getProperty(nodeRef, ContentModel.PROP_NODE_DBID);
         }
@@ -62,4 +113,51 @@ public class BasicIdentifierGenerator extends IdentifierGeneratorBase
         String year = Integer.toString(fileCalendar.get(Calendar.YEAR));
         return year + "-" + padString(dbId.toString(), 10);
     }
+
+    /**
+     * Indicates whether identifier numbers are allocated in blocks.  Block allocation stays on once the allocator has
+     * been used, whatever the configuration says.
+     *
+     * @return boolean  true if identifier numbers are allocated in blocks, false otherwise
+     */
+    private boolean isBlockAllocation()
+    {
+        if (blockAllocator == null)
+        {
+            return false;
+        }
+        if (!blockAllocation && blockAllocator.isInUse())
+        {
+            LOGGER.warn("Identifier block allocation has been switched off, but blocks have already been reserved. " +
+                        "Identifiers will keep being allocated in blocks, as node database ids would clash with them.");
+            blockAllocation = true;
+        }
+        return blockAllocation;
+    }
+
+    /**
+     * Gets the file plan the identifier is generated in.  The file plan of the parent is preferred, as it is looked up
+     * once per parent and transaction rather than once per identifier.
+     *
+     * @param nodeRef   node reference, null if none
+     * @param parent    parent node reference, null if none
+     * @return NodeRef  file plan, null if there is none
+     */
+    private NodeRef getFilePlan(NodeRef nodeRef, NodeRef parent)
+    {
+        NodeRef filePlan = null;
+        if (filePlanService != null)
+        {
+            if (parent != null)
+            {
+                filePlan = filePlanService.getFilePlan(parent);
+            }
+            if (filePlan == null && nodeRef != null)
+            {
+                // the node may be a file plan itself
+                filePlan = filePlanService.getFilePlan(nodeRef);
+            }
+        }
+        return filePlan;
+    }
 }
@@ -0,0 +1,256 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.identifier;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+
+/**
+ * Allocates identifier numbers from a persistent sequence per file plan.
+ * <p>
+ * Numbers are reserved from the sequence a block at a time, in a transaction of their own, and are then handed out
+ * from memory without any further database access.  Each server in the cluster reserves its own blocks, so numbers
+ * are unique but not contiguous, and the rest of a block is lost when the server stops.
+ * <p>
+ * A sequence starts above the largest node database id, so its numbers don't clash with identifiers previously
+ * generated from node database ids.  The reverse is not true, new node database ids can reach numbers already handed
+ * out from a sequence, so once a block has been reserved the allocator stays {@link #isInUse() in use} and identifiers
+ * must not go back to being generated from node database ids.
+ *
+ * @since 3.4
+ */
+public class IdentifierBlockAllocator
+{
+    /** Attribute context of the sequences, keyed by file plan */
+    private static final String SEQUENCE_CONTEXT = "rm.identifierSequence";
+
+    /** Key of the sequence used when there is no file plan */
+    private static final String NO_FILE_PLAN = "none";
+
+    /** Attribute context and key of the marker recording that a block has been reserved */
+    private static final String IN_USE_CONTEXT = "rm.identifierSequenceInUse";
+    private static final String IN_USE_KEY = "inUse";
+
+    /** Attribute service */
+    private AttributeService attributeService;
+
+    /** Transaction service */
+    private TransactionService transactionService;
+
+    /** Node DAO */
+    private NodeDAO nodeDAO;
+
+    /** Number of identifier numbers reserved at a time */
+    private int blockSize = 100;
+
+    /** Block currently being handed out, by sequence key */
+    private final ConcurrentMap<Serializable, Block> blocks = new ConcurrentHashMap<>();
+
+    /** Whether a block has ever been reserved, null until checked */
+    private volatile Boolean inUse;
+
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param transactionService    transaction service
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param nodeDAO   node DAO
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * @param blockSize number of identifier numbers reserved at a time
+     */
+    public void setBlockSize(int blockSize)
+    {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocates the next identifier number of a file plan.
+     *
+     * @param filePlan  file plan, null if there is none
+     * @return long     identifier number, unique within the file plan
+     */
+    public long allocate(NodeRef filePlan)
+    {
+        Serializable key = (filePlan == null ? NO_FILE_PLAN : filePlan);
+        Block block = blocks.get(key);
+        if (block == null)
+        {
+            Block newBlock = new Block();
+            block = blocks.putIfAbsent(key, newBlock);
+            if (block == null)
+            {
+                block = newBlock;
+            }
+        }
+
+        long number = block.next();
+        while (number < 0)
+        {
+            // only one thread reserves the next block, the others wait for it
+            synchronized (block)
+            {
+                number = block.next();
+                if (number < 0)
+                {
+                    block.reset(reserve(key));
+                    inUse = Boolean.TRUE;
+                    number = block.next();
+                }
+            }
+        }
+        return number;
+    }
+
+    /**
+     * Indicates whether a block has ever been reserved, in which case identifier numbers must keep being allocated
+     * from the sequences.  The answer is checked once and then remembered.
+     *
+     * @return boolean  true if a block has been reserved, false otherwise
+     */
+    public boolean isInUse()
+    {
+        if (inUse == null)
+        {
+            inUse = Boolean.valueOf(attributeService.exists(IN_USE_CONTEXT, IN_USE_KEY));
+        }
+        return inUse.booleanValue();
+    }
+
+    /**
+     * Reserves the next block of a sequence.
+     *
+     * @param key   sequence key
+     * @return long first number of the block
+     */
+    private long reserve(final Serializable key)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Long>()
+        {
+            @Override
+            public Long execute()
+            {
+                Serializable reserved = attributeService.getAttribute(SEQUENCE_CONTEXT, key);
+                long start;
+                if (reserved instanceof Long)
+                {
+                    start = (Long) reserved;
+                }
+                else
+                {
+                    Long maxNodeId = nodeDAO.getMaxNodeId();
+                    start = (maxNodeId == null ? 0L : maxNodeId) + 1;
+                }
+                attributeService.setAttribute(Long.valueOf(start + blockSize), SEQUENCE_CONTEXT, key);
+                if (!Boolean.TRUE.equals(inUse))
+                {
+                    attributeService.setAttribute(Boolean.TRUE, IN_USE_CONTEXT, IN_USE_KEY);
+                }
+                return start;
+            }
+        }, false, true);
+    }
+
+    /**
+     * Block of identifier numbers currently being handed out from a sequence, without locking.
+     */
+    private final class Block
+    {
+        /** range of numbers, replaced as a whole so a number taken from a used up range is never handed out */
+        private volatile Range range = new Range(0, 0);
+
+        /**
+         * @return long next number of the block, -1 if the block has been used up
+         */
+        private long next()
+        {
+            return range.next();
+        }
+
+        /**
+         * @param start first number of the new block
+         */
+        private void reset(long start)
+        {
+            range = new Range(start, start + blockSize);
+        }
+    }
+
+    /**
+     * Range of identifier numbers.
+     */
+    private static final class Range
+    {
+        /** next number and end (exclusive) of the range */
+        private final AtomicLong next;
+        private final long end;
+
+        /**
+         * @param start first number
+         * @param end   end (exclusive)
+         */
+        private Range(long start, long end)
+        {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+
+        /**
+         * @return long next number of the range, -1 if the range has been used up
+         */
+        private long next()
+        {
+            long number = next.getAndIncrement();
+            return number < end ? number : -1;
+        }
+    }
+}
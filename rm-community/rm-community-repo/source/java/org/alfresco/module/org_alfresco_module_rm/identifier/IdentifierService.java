@@ -67,4 +67,37 @@ public interface IdentifierService
      * @return String   generated identifier
      */
     String generateIdentifier(NodeRef nodeRef);
+
+    /**
+     * Generate an identifier for the given node, when its type and parent are already known.
+     *
+     * @param nodeRef   node reference
+     * @param type      type of the node, null to read it from the node
+     * @param parent    primary parent of the node, null to read it from the node
+     * @return String   generated identifier
+     * @since 3.4
+     */
+    String generateIdentifier(NodeRef nodeRef, QName type, NodeRef parent);
+
+    /**
+     * Register an identifier that has been assigned to a node, checking that it is unique within the file plan.
+     *
+     * @param identifier    identifier
+     * @param filePlan      file plan of the node, null if none
+     * @param nodeRef       node the identifier has been assigned to
+     * @throws org.alfresco.service.cmr.attributes.DuplicateAttributeException if the identifier is already in use in
+     *         the file plan
+     * @since 3.4
+     */
+    void registerIdentifier(String identifier, NodeRef filePlan, NodeRef nodeRef);
+
+    /**
+     * Remove an identifier from the register of a file plan, if it is registered to the given node.
+     *
+     * @param identifier    identifier
+     * @param filePlan      file plan of the node, null if none
+     * @param nodeRef       node the identifier was assigned to
+     * @since 3.4
+     */
+    void unregisterIdentifier(String identifier, NodeRef filePlan, NodeRef nodeRef);
 }
@@ -30,8 +30,10 @@ package org.alfresco.module.org_alfresco_module_rm.identifier;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.ClassDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -53,12 +55,24 @@ public class IdentifierServiceImpl implements IdentifierService
     /** Registry map */
     private Map<QName, IdentifierGenerator> register = new HashMap<>(5);
 
+    /** Identifier generator found for each type, including those inherited from the parent types */
+    private Map<QName, IdentifierGenerator> generatorsByType = new ConcurrentHashMap<>();
+
     /** Node service */
     private NodeService nodeService;
 
     /** Dictionary service */
     private DictionaryService dictionaryService;
 
+    /** Attribute service */
+    private AttributeService attributeService;
+
+    /**
+     * Attribute context of the identifier register, keyed by file plan and identifier.  It is the context of the
+     * identifier uniqueness check, so entries created before the register was introduced have no node.
+     */
+    private static final String REGISTER_CONTEXT = "rma:identifier";
+
     /**
      * Set the node service
      *
@@ -79,6 +93,16 @@ public class IdentifierServiceImpl implements IdentifierService
         this.dictionaryService = dictionaryService;
     }
 
+    /**
+     * Set the attribute service
+     *
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierService#generateIdentifier(org.alfresco.service.namespace.QName, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -104,20 +128,39 @@ public class IdentifierServiceImpl implements IdentifierService
      */
     @Override
     public String generateIdentifier(NodeRef nodeRef)
+    {
+        return generateIdentifier(nodeRef, null, null);
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierService#generateIdentifier(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.namespace.QName, org.alfresco.service.cmr.repository.NodeRef)
+     */
+    @Override
+    public String generateIdentifier(NodeRef nodeRef, QName type, NodeRef parent)
     {
         ParameterCheck.mandatory("nodeRef", nodeRef);
 
         Map<String, Serializable> context = new HashMap<>(3);
 
         // Set the original type
-        QName type = nodeService.getType(nodeRef);
+        if (type == null)
+        {
+            type = nodeService.getType(nodeRef);
+        }
         context.put(CONTEXT_ORIG_TYPE, type);
 
         // Set the parent reference
-        ChildAssociationRef assocRef = nodeService.getPrimaryParent(nodeRef);
-        if (assocRef != null && assocRef.getParentRef() != null)
+        if (parent == null)
         {
-            context.put(CONTEXT_PARENT_NODEREF, assocRef.getParentRef());
+            ChildAssociationRef assocRef = nodeService.getPrimaryParent(nodeRef);
+            if (assocRef != null)
+            {
+                parent = assocRef.getParentRef();
+            }
+        }
+        if (parent != null)
+        {
+            context.put(CONTEXT_PARENT_NODEREF, parent);
         }
 
         // Set the node reference
@@ -155,23 +198,76 @@ public class IdentifierServiceImpl implements IdentifierService
         return idGen.generateId(context);
     }
 
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierService#registerIdentifier(java.lang.String, org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.cmr.repository.NodeRef)
+     */
+    @Override
+    public void registerIdentifier(String identifier, NodeRef filePlan, NodeRef nodeRef)
+    {
+        ParameterCheck.mandatory("identifier", identifier);
+        ParameterCheck.mandatory("nodeRef", nodeRef);
+
+        // fails if the identifier is already in use in the file plan
+        attributeService.createAttribute(nodeRef, REGISTER_CONTEXT, filePlan, identifier);
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierService#unregisterIdentifier(java.lang.String, org.alfresco.service.cmr.repository.NodeRef, org.alfresco.service.cmr.repository.NodeRef)
+     */
+    @Override
+    public void unregisterIdentifier(String identifier, NodeRef filePlan, NodeRef nodeRef)
+    {
+        ParameterCheck.mandatory("identifier", identifier);
+        ParameterCheck.mandatory("nodeRef", nodeRef);
+
+        // the identifier may have since been assigned to another node, entries without a node predate the register
+        Serializable registered = attributeService.getAttribute(REGISTER_CONTEXT, filePlan, identifier);
+        if (registered == null || nodeRef.equals(registered))
+        {
+            attributeService.removeAttribute(REGISTER_CONTEXT, filePlan, identifier);
+        }
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierService#register(org.alfresco.module.org_alfresco_module_rm.identifier.IdentifierGenerator)
      */
     public void register(IdentifierGenerator idGen)
     {
         register.put(idGen.getType(), idGen);
+        generatorsByType.clear();
     }
 
     /**
+     * Looks up the identifier generator of a type, remembering the generator found.
      *
      * @param type content type (could be aspect or type)
-     * @return
+     * @return IdentifierGenerator  identifier generator, null if none found
      */
     private IdentifierGenerator lookupGenerator(QName type)
     {
         ParameterCheck.mandatory("type", type);
 
+        IdentifierGenerator result = generatorsByType.get(type);
+        if (result == null)
+        {
+            result = findGenerator(type);
+            if (result != null)
+            {
+                generatorsByType.put(type, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param type content type (could be aspect or type)
+     * @return
+     */
+    private IdentifierGenerator findGenerator(QName type)
+    {
+        ParameterCheck.mandatory("type", type);
+
         if (logger.isDebugEnabled())
         {
             logger.debug("Looking for idGenerator for type " + type.toString());
@@ -189,7 +285,7 @@ public class IdentifierServiceImpl implements IdentifierService
                 if (parentType != null)
                 {
                     // Recurse to find parent type generator
-                    result = lookupGenerator(parentType);
+                    result = findGenerator(parentType);
                 }
             }
             else
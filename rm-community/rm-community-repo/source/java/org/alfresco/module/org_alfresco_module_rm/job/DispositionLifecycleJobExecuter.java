@@ -28,6 +28,9 @@
 package org.alfresco.module.org_alfresco_module_rm.job;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +39,12 @@ import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.module.org_alfresco_module_rm.action.RMDispositionActionExecuterAbstractBase;
 import org.alfresco.module.org_alfresco_module_rm.action.RecordsManagementActionService;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -45,17 +54,26 @@ import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.SearchParameters;
 import org.alfresco.service.cmr.search.SearchService;
 import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 
 /**
  * The Disposition Lifecycle Job Finds all disposition action nodes which are for disposition actions specified Where
  * asOf  &gt; now OR dispositionEventsEligible = true; Runs the cut off or retain action for eligible records.
+ * <p>
+ * By default the eligible disposition actions are found with a search query paged by skip count.  When keyset
+ * paging is enabled the eligible current disposition actions are instead read from the database a page at a time,
+ * ordered by node id, and are executed by a pool of worker threads.
  *
  * @author mrogers
  * @author Roy Wetherall
  */
-public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecuter
+public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecuter implements ApplicationEventPublisherAware
 {
     /** logger */
     private static Log logger = LogFactory.getLog(DispositionLifecycleJobExecuter.class);
@@ -78,6 +96,27 @@ public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecute
     /** person service */
     private PersonService personService;
 
+    /** records management query DAO */
+    private RecordsManagementQueryDAO recordsManagementQueryDAO;
+
+    /** application event publisher */
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /** job metrics */
+    private RecordsManagementJobMetrics metrics = new RecordsManagementJobMetrics();
+
+    /** indicates whether the disposition actions are paged by node id rather than found by search */
+    private boolean keysetPaging = false;
+
+    /** number of disposition actions read from the database in each page */
+    private int pageSize = 1000;
+
+    /** number of disposition actions executed in each transaction */
+    private int batchSize = 1;
+
+    /** number of worker threads used to execute the disposition actions */
+    private int workerThreads = 4;
+
     /**
      * List of disposition actions to automatically execute when eligible.
      *
@@ -112,6 +151,71 @@ public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecute
         this.searchService = searchService;
     }
 
+    /**
+     * @param recordsManagementQueryDAO records management query DAO
+     */
+    public void setRecordsManagementQueryDAO(RecordsManagementQueryDAO recordsManagementQueryDAO)
+    {
+        this.recordsManagementQueryDAO = recordsManagementQueryDAO;
+    }
+
+    /**
+     * @see org.springframework.context.ApplicationEventPublisherAware#setApplicationEventPublisher(org.springframework.context.ApplicationEventPublisher)
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * @return job metrics
+     */
+    public RecordsManagementJobMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @param metrics   job metrics
+     */
+    public void setMetrics(RecordsManagementJobMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param keysetPaging  true if the disposition actions are paged by node id, false if they are found by search
+     */
+    public void setKeysetPaging(boolean keysetPaging)
+    {
+        this.keysetPaging = keysetPaging;
+    }
+
+    /**
+     * @param pageSize  number of disposition actions read from the database in each page
+     */
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param batchSize number of disposition actions executed in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param workerThreads number of worker threads used to execute the disposition actions
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
     /**
      * Get the search query string.
      *
@@ -159,11 +263,16 @@ public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecute
      */
     public void executeImpl()
     {
+        metrics.startRun();
         try
         {
             logger.debug("Job Starting");
 
-            if (dispositionActions != null && !dispositionActions.isEmpty())
+            if (dispositionActions != null && !dispositionActions.isEmpty() && keysetPaging)
+            {
+                executeKeysetPaged();
+            }
+            else if (dispositionActions != null && !dispositionActions.isEmpty())
             {
                 boolean hasMore = true;
                 int skipCount = 0;
@@ -186,6 +295,7 @@ public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecute
                     {
                         logger.debug("Processing " + resultNodes.size() + " nodes");
                     }
+                    metrics.itemsScanned(resultNodes.size());
 
                     // process search results
                     for (NodeRef node : resultNodes)
@@ -204,6 +314,170 @@ public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecute
                 logger.debug(exception);
             }
         }
+        finally
+        {
+            metrics.endRun();
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Scanned " + metrics.getLastRunItemsScanned() + " disposition actions, executed " +
+                            metrics.getLastRunItemsProcessed() + " with " + metrics.getLastRunFailures() + " failures in " +
+                            metrics.getLastRunElapsedTime() + "ms");
+            }
+        }
+    }
+
+    /**
+     * Executes the eligible disposition actions, reading the current disposition actions from the database a page at
+     * a time by node id and processing them with a pool of worker threads.
+     */
+    private void executeKeysetPaged()
+    {
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+
+        BatchProcessWorkProvider<NodeRef> workProvider = new BatchProcessWorkProvider<NodeRef>()
+        {
+            /** largest node id read so far */
+            private Long lastNodeId = Long.MIN_VALUE;
+
+            /** indicates whether all the pages have been read */
+            private boolean complete = false;
+
+            @Override
+            public int getTotalEstimatedWorkSize()
+            {
+                return (int) metrics.getCurrentRunItemsScanned();
+            }
+
+            @Override
+            public Collection<NodeRef> getNextWork()
+            {
+                if (complete)
+                {
+                    return new ArrayList<>();
+                }
+
+                // read the page in a new transaction so that actions completed by the workers are not seen again
+                List<Pair<Long, NodeRef>> page = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<List<Pair<Long, NodeRef>>>()
+                {
+                    @Override
+                    public List<Pair<Long, NodeRef>> execute()
+                    {
+                        return recordsManagementQueryDAO.getNextDispositionActions(dispositionActions, new Date(), lastNodeId, pageSize);
+                    }
+                }, true, true);
+
+                complete = page.size() < pageSize;
+
+                List<NodeRef> result = new ArrayList<>(page.size());
+                for (Pair<Long, NodeRef> pair : page)
+                {
+                    result.add(pair.getSecond());
+                    lastNodeId = pair.getFirst();
+                }
+                metrics.itemsScanned(result.size());
+
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Processing " + result.size() + " nodes");
+                }
+
+                return result;
+            }
+        };
+
+        BatchProcessor<NodeRef> batchProcessor = new BatchProcessor<>(
+                    "DispositionLifecycleJob",
+                    retryingTransactionHelper,
+                    workProvider,
+                    workerThreads,
+                    batchSize,
+                    applicationEventPublisher,
+                    logger,
+                    pageSize);
+
+        batchProcessor.process(new BatchProcessWorkerAdaptor<NodeRef>()
+        {
+            @Override
+            public void beforeProcess()
+            {
+                AuthenticationUtil.setRunAsUser(runAsUser);
+            }
+
+            @Override
+            public void process(NodeRef actionNode)
+            {
+                // the query only compares the as of date approximately, so check eligibility exactly here
+                if (nodeService.exists(actionNode) && isEligible(actionNode))
+                {
+                    recordResultOnCommit(processAction(actionNode));
+                }
+            }
+
+            @Override
+            public void afterProcess()
+            {
+                AuthenticationUtil.clearCurrentSecurityContext();
+            }
+        }, true);
+    }
+
+    /**
+     * Helper method to determine whether a disposition action is eligible for execution, that is it has not been
+     * completed and either its events are eligible or its as of date has passed.
+     *
+     * @param actionNode    disposition action
+     * @return boolean      true if the disposition action is eligible, false otherwise
+     */
+    private boolean isEligible(NodeRef actionNode)
+    {
+        Map<QName, Serializable> props = nodeService.getProperties(actionNode);
+        if (props.get(RecordsManagementModel.PROP_DISPOSITION_ACTION_COMPLETED_AT) != null)
+        {
+            return false;
+        }
+
+        Date asOf = (Date) props.get(RecordsManagementModel.PROP_DISPOSITION_AS_OF);
+        return Boolean.TRUE.equals(props.get(RecordsManagementModel.PROP_DISPOSITION_EVENTS_ELIGIBLE)) ||
+               (asOf != null && !asOf.after(new Date()));
+    }
+
+    /**
+     * Helper method to record the result of processing a disposition action in the job metrics.
+     *
+     * @param result    true if the action was executed, false if it failed, null if it was not applicable
+     */
+    private void recordResult(Boolean result)
+    {
+        if (Boolean.TRUE.equals(result))
+        {
+            metrics.itemProcessed();
+        }
+        else if (Boolean.FALSE.equals(result))
+        {
+            metrics.failure();
+        }
+    }
+
+    /**
+     * Helper method to record the result of processing a disposition action once the current transaction commits, so
+     * that a transaction which is retried is only counted once.
+     *
+     * @param result    true if the action was executed, false if it failed, null if it was not applicable
+     */
+    private void recordResultOnCommit(final Boolean result)
+    {
+        if (result != null)
+        {
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    recordResult(result);
+                }
+            });
+        }
     }
 
     /**
@@ -217,49 +491,65 @@ public class DispositionLifecycleJobExecuter extends RecordsManagementJobExecute
         {
             public Boolean execute()
             {
-                final String dispAction = (String) nodeService.getProperty(actionNode,
-                            RecordsManagementModel.PROP_DISPOSITION_ACTION);
+                return processAction(actionNode);
+            }
+        };
+
+        // if exists
+        if (nodeService.exists(actionNode))
+        {
+            recordResult(retryingTransactionHelper.doInTransaction(processTranCB));
+        }
+    }
 
-                // Run disposition action
-                if (dispAction != null && dispositionActions.contains(dispAction))
+    /**
+     * Helper method that executes a disposition action in the current transaction
+     *
+     * @param actionNode    the disposition action to execute
+     * @return Boolean      true if the action was executed, false if it failed, null if it was not applicable
+     */
+    private Boolean processAction(NodeRef actionNode)
+    {
+        Boolean result = null;
+
+        final String dispAction = (String) nodeService.getProperty(actionNode,
+                    RecordsManagementModel.PROP_DISPOSITION_ACTION);
+
+        // Run disposition action
+        if (dispAction != null && dispositionActions.contains(dispAction))
+        {
+            ChildAssociationRef parent = nodeService.getPrimaryParent(actionNode);
+            if (parent.getTypeQName().equals(RecordsManagementModel.ASSOC_NEXT_DISPOSITION_ACTION))
+            {
+                Map<String, Serializable> props = new HashMap<>(1);
+                props.put(RMDispositionActionExecuterAbstractBase.PARAM_NO_ERROR_CHECK,
+                            Boolean.FALSE);
+
+                try
                 {
-                    ChildAssociationRef parent = nodeService.getPrimaryParent(actionNode);
-                    if (parent.getTypeQName().equals(RecordsManagementModel.ASSOC_NEXT_DISPOSITION_ACTION))
+                    // execute disposition action
+                    recordsManagementActionService.executeRecordsManagementAction(
+                                parent.getParentRef(), dispAction, props);
+                    result = Boolean.TRUE;
+
+                    if (logger.isDebugEnabled())
                     {
-                        Map<String, Serializable> props = new HashMap<>(1);
-                        props.put(RMDispositionActionExecuterAbstractBase.PARAM_NO_ERROR_CHECK,
-                                    Boolean.FALSE);
-
-                        try
-                        {
-                            // execute disposition action
-                            recordsManagementActionService.executeRecordsManagementAction(
-                                        parent.getParentRef(), dispAction, props);
-
-                            if (logger.isDebugEnabled())
-                            {
-                                logger.debug("Processed action: " + dispAction + "on" + parent);
-                            }
-                        }
-                        catch (AlfrescoRuntimeException exception)
-                        {
-                            if (logger.isDebugEnabled())
-                            {
-                                logger.debug(exception);
-                            }
-                        }
+                        logger.debug("Processed action: " + dispAction + "on" + parent);
                     }
                 }
+                catch (AlfrescoRuntimeException exception)
+                {
+                    result = Boolean.FALSE;
 
-                return Boolean.TRUE;
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug(exception);
+                    }
+                }
             }
-        };
-
-        // if exists
-        if (nodeService.exists(actionNode))
-        {
-            retryingTransactionHelper.doInTransaction(processTranCB);
         }
+
+        return result;
     }
 
     public PersonService getPersonService()
@@ -24,13 +24,18 @@
  * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
  * #L%
  */
-
 package org.alfresco.module.org_alfresco_module_rm.job;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.module.org_alfresco_module_rm.notification.RecordsManagementNotificationHelper;
+import org.alfresco.module.org_alfresco_module_rm.vital.ReviewDueQueue;
+import org.alfresco.module.org_alfresco_module_rm.vital.ReviewDueQueue.DuePage;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
@@ -45,6 +50,13 @@ import org.apache.commons.logging.LogFactory;
 /**
  * This job finds all Vital Records which are due for review, optionally
  * excluding those for which notification has already been issued.
+ * <p>
+ * Records due for review are taken from the {@link ReviewDueQueue}, a day at a time from the queue's cursor up to
+ * the current day, and a page at a time within each day.  Each page of due records is notified in a transaction of
+ * its own, with one notification for the records of each file plan, sent to the file plan's notification role.
+ * Notified records are removed from the queue, so a record is only notified once for each review as of date.
+ * <p>
+ * The job runs without an enclosing transaction, so the queue is seeded and committed before it is read.
  *
  * @author Neil McErlean
  */
@@ -58,6 +70,16 @@ public class NotifyOfRecordsDueForReviewJobExecuter extends RecordsManagementJob
 
     private SearchService searchService;
 
+    private FilePlanService filePlanService;
+
+    private ReviewDueQueue reviewDueQueue;
+
+    /** job metrics */
+    private RecordsManagementJobMetrics metrics = new RecordsManagementJobMetrics();
+
+    /** number of queue entries read, and records notified, in each transaction */
+    private int pageSize = 500;
+
     public void setRecordsManagementNotificationHelper(
             RecordsManagementNotificationHelper recordsManagementNotificationHelper)
     {
@@ -75,7 +97,58 @@ public class NotifyOfRecordsDueForReviewJobExecuter extends RecordsManagementJob
     }
 
     /**
-     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#execute()
+     * @param filePlanService   file plan service
+     */
+    public void setFilePlanService(FilePlanService filePlanService)
+    {
+        this.filePlanService = filePlanService;
+    }
+
+    /**
+     * @param reviewDueQueue    queue of the vital records due for review
+     */
+    public void setReviewDueQueue(ReviewDueQueue reviewDueQueue)
+    {
+        this.reviewDueQueue = reviewDueQueue;
+    }
+
+    /**
+     * @return job metrics
+     */
+    public RecordsManagementJobMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @param metrics   job metrics
+     */
+    public void setMetrics(RecordsManagementJobMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param pageSize  number of queue entries read, and records notified, in each transaction
+     */
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * The queue is seeded, read and notified in transactions of its own.
+     *
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#isTransactional()
+     */
+    @Override
+    protected boolean isTransactional()
+    {
+        return false;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#executeImpl()
      */
     public void executeImpl()
     {
@@ -84,62 +157,264 @@ public class NotifyOfRecordsDueForReviewJobExecuter extends RecordsManagementJob
             logger.debug("Job " + this.getClass().getSimpleName() + " starting.");
         }
 
-        AuthenticationUtil.runAs(new RunAsWork<Object>()
+        metrics.startRun();
+        try
         {
-            public Object doWork()
+            AuthenticationUtil.runAs(new RunAsWork<Object>()
             {
-                // Query is for all records that are due for review and for which
-                // notification has not been sent.
-                StringBuilder queryBuffer = new StringBuilder();
-                queryBuffer.append("ASPECT:\"rma:vitalRecord\" ");
-                queryBuffer.append("AND @rma\\:reviewAsOf:[MIN TO NOW] ");
-                // exclude destroyed electronic records and destroyed nonElectronic records with kept metadata
-                queryBuffer.append("AND -ASPECT:\"rma:ghosted\" ");
-                String query = queryBuffer.toString();
-
-                ResultSet results = searchService.query(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, SearchService.LANGUAGE_FTS_ALFRESCO, query);
-                final List<NodeRef> resultNodes = results.getNodeRefs();
-                results.close();
-
-                if (logger.isDebugEnabled())
+                public Object doWork()
                 {
-                    logger.debug("Found " + resultNodes.size() + " nodes due for review and without notification.");
+                    seedReviewDueQueue();
+
+                    final Date now = new Date();
+                    long today = ReviewDueQueue.getDay(now);
+                    long cursor = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Long>()
+                    {
+                        public Long execute()
+                        {
+                            return reviewDueQueue.getCursor(now);
+                        }
+                    }, true, true);
+                    for (long day = cursor; day <= today; day++)
+                    {
+                        // the records of the current day may not all be due yet, so the cursor stays on it
+                        if (notifyRecordsDueForReview(day, now) && day < today)
+                        {
+                            setCursor(day + 1);
+                        }
+                    }
+                    return null;
                 }
 
-                //If we have something to do and a template to do it with
-                if(resultNodes.size() != 0)
+            }, AuthenticationUtil.getSystemUserName());
+        }
+        finally
+        {
+            metrics.endRun();
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Job " + this.getClass().getSimpleName() + " finished");
+        }
+    }  // end of execute method
+
+    /**
+     * Seeds the queue with the records already due for review, if it has not been seeded yet.  The records are
+     * seeded a page at a time, each in a transaction of its own, and the queue is only marked as seeded once they
+     * have all been committed.
+     */
+    private void seedReviewDueQueue()
+    {
+        List<NodeRef> records = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<List<NodeRef>>()
+        {
+            public List<NodeRef> execute()
+            {
+                return reviewDueQueue.isSeeded() ? null : findRecordsDueForReview();
+            }
+        }, true, true);
+
+        if (records != null)
+        {
+            for (int start = 0; start < records.size(); start += pageSize)
+            {
+                final List<NodeRef> page = new ArrayList<>(records.subList(start, Math.min(start + pageSize, records.size())));
+                retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
                 {
-                    //Send the email message - but we must not retry since email is not transactional
-                    RetryingTransactionCallback<Void> txCallbackSendEmail = new RetryingTransactionCallback<Void>()
+                    public Void execute()
                     {
-                        // Set the notification issued property.
-                        public Void execute()
-                        {
-                            // Send notification
-                            recordsManagementNotificationHelper.recordsDueForReviewEmailNotification(resultNodes);
+                        reviewDueQueue.seed(page);
+                        return null;
+                    }
+                }, false, true);
+            }
 
-                            return null;
-                        }
-                    };
-
-                    /**
-                     * Now do the work, one action in each transaction
-                     */
-                    // don't retry the send email
-                    retryingTransactionHelper.setMaxRetries(0);
-                    retryingTransactionHelper.doInTransaction(txCallbackSendEmail);
+            retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute()
+                {
+                    reviewDueQueue.setSeeded();
+                    return null;
                 }
+            }, false, true);
+        }
+    }
+
+    /**
+     * Moves the queue's cursor forward.
+     *
+     * @param day   first day that may still hold entries
+     */
+    private void setCursor(final long day)
+    {
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute()
+            {
+                reviewDueQueue.setCursor(day);
                 return null;
             }
+        }, false, true);
+    }
 
-        }, AuthenticationUtil.getSystemUserName());
+    /**
+     * Finds the records that are due for review with a query, to seed the queue of records due for review.
+     *
+     * @return {@link List}&lt;{@link NodeRef}&gt;  records due for review
+     */
+    private List<NodeRef> findRecordsDueForReview()
+    {
+        // Query is for all records that are due for review and for which
+        // notification has not been sent.
+        StringBuilder queryBuffer = new StringBuilder();
+        queryBuffer.append("ASPECT:\"rma:vitalRecord\" ");
+        queryBuffer.append("AND @rma\\:reviewAsOf:[MIN TO NOW] ");
+        // exclude destroyed electronic records and destroyed nonElectronic records with kept metadata
+        queryBuffer.append("AND -ASPECT:\"rma:ghosted\" ");
+        String query = queryBuffer.toString();
+
+        ResultSet results = searchService.query(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, SearchService.LANGUAGE_FTS_ALFRESCO, query);
+        List<NodeRef> resultNodes = results.getNodeRefs();
+        results.close();
 
         if (logger.isDebugEnabled())
         {
-            logger.debug("Job " + this.getClass().getSimpleName() + " finished");
+            logger.debug("Found " + resultNodes.size() + " nodes due for review to seed the review queue.");
         }
-    }  // end of execute method
+        return resultNodes;
+    }
 
-}
+    /**
+     * Notifies the records of a day that are due for review, a page at a time.
+     * <p>
+     * Entries that stay queued, because their records are not due yet or could not be notified, are passed over
+     * when the next page is read.
+     *
+     * @param day       day
+     * @param now       current date
+     * @return boolean  true if every record of the day due for review was notified, false otherwise
+     */
+    private boolean notifyRecordsDueForReview(final long day, final Date now)
+    {
+        boolean complete = true;
+        int skipCount = 0;
+        DuePage duePage;
+        do
+        {
+            final int pageSkipCount = skipCount;
+            duePage = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<DuePage>()
+            {
+                public DuePage execute()
+                {
+                    return reviewDueQueue.getDueRecords(day, now, pageSkipCount, pageSize);
+                }
+            }, false, true);
+
+            List<NodeRef> records = duePage.getRecords();
+            metrics.itemsScanned(records.size());
 
+            if (logger.isDebugEnabled() && !records.isEmpty())
+            {
+                logger.debug("Found " + records.size() + " nodes due for review and without notification.");
+            }
 
+            int failedCount = notifyRecords(day, records);
+            if (failedCount > 0)
+            {
+                complete = false;
+            }
+            skipCount += duePage.getRetainedCount() + failedCount;
+        }
+        while (!duePage.isLast());
+
+        return complete;
+    }
+
+    /**
+     * Notifies records due for review, with one notification for the records of each file plan.
+     *
+     * @param day       day the records were queued under
+     * @param records   records due for review
+     * @return int      number of records that could not be notified and stay queued
+     */
+    private int notifyRecords(final long day, final List<NodeRef> records)
+    {
+        if (records.isEmpty())
+        {
+            return 0;
+        }
+
+        // don't retry the send email, since email is not transactional
+        retryingTransactionHelper.setMaxRetries(0);
+
+        // one notification for the records of each file plan, sent to the file plan's notification role
+        Map<NodeRef, List<NodeRef>> recordsByFilePlan = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Map<NodeRef, List<NodeRef>>>()
+        {
+            public Map<NodeRef, List<NodeRef>> execute()
+            {
+                Map<NodeRef, List<NodeRef>> result = new LinkedHashMap<>();
+                for (NodeRef record : records)
+                {
+                    NodeRef filePlan = filePlanService.getFilePlan(record);
+                    List<NodeRef> filePlanRecords = result.get(filePlan);
+                    if (filePlanRecords == null)
+                    {
+                        filePlanRecords = new ArrayList<>();
+                        result.put(filePlan, filePlanRecords);
+                    }
+                    filePlanRecords.add(record);
+                }
+                return result;
+            }
+        }, true, true);
+
+        int failedCount = 0;
+        for (final List<NodeRef> page : recordsByFilePlan.values())
+        {
+            try
+            {
+                retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+                {
+                    public Void execute()
+                    {
+                        notifyPage(day, page);
+                        return null;
+                    }
+                }, false, true);
+
+                for (int i = 0; i < page.size(); i++)
+                {
+                    metrics.itemProcessed();
+                }
+            }
+            catch (RuntimeException e)
+            {
+                // the records stay queued and are notified on a later run
+                failedCount += page.size();
+                metrics.failure();
+                logger.error("Unable to send the notification of records due for review.", e);
+            }
+        }
+        return failedCount;
+    }
+
+    /**
+     * Sends the notification of a page of records due for review, all from the same file plan, and removes them
+     * from the queue.
+     * <p>
+     * The queue is updated before sending, so a failure to send rolls back the queue changes.
+     *
+     * @param day       day the records were queued under
+     * @param page      records due for review
+     */
+    private void notifyPage(long day, List<NodeRef> page)
+    {
+        for (NodeRef record : page)
+        {
+            reviewDueQueue.notified(day, record);
+        }
+
+        // Send notification
+        recordsManagementNotificationHelper.recordsDueForReviewEmailNotification(page);
+    }
+}
@@ -29,13 +29,22 @@ package org.alfresco.module.org_alfresco_module_rm.job;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
 import org.alfresco.module.org_alfresco_module_rm.job.publish.PublishExecutor;
 import org.alfresco.module.org_alfresco_module_rm.job.publish.PublishExecutorRegistry;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
@@ -46,11 +55,21 @@ import org.alfresco.service.cmr.search.QueryConsistency;
 import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.SearchParameters;
 import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
  * Job to publish any pending updates on marked node references.
+ * <p>
+ * Each pending update is claimed with a lease, a job lock named after the node that is kept refreshed while
+ * the update is published.  The publish in progress flag is still set while publishing, so the update can't
+ * be changed, but it no longer decides whether an update can be claimed.  An update left marked in progress
+ * by a server that stopped is claimed again once its lease has expired.
+ * <p>
+ * Independent updates are published in parallel on the publish executor, if one has been configured and the
+ * job isn't run within a transaction.
  *
  * @author Roy Wetherall
  */
@@ -74,6 +93,18 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
     /** Behaviour filter */
     private BehaviourFilter behaviourFilter;
 
+    /** Job lock service */
+    private JobLockService jobLockService;
+
+    /** Executor used to publish the updates in parallel */
+    private Executor publishExecutor;
+
+    /** Lease time, in milliseconds */
+    private long leaseTime = 60000L;
+
+    /** Job metrics */
+    private PublishUpdatesJobMetrics metrics = new PublishUpdatesJobMetrics();
+
     /**
      * @param nodeService   node service
      */
@@ -114,6 +145,57 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
         this.dictionaryService = dictionaryService;
     }
 
+    /**
+     * @param jobLockService    job lock service
+     */
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param publishExecutor   executor used to publish the updates in parallel, if not set they are published in turn
+     */
+    public void setPublishExecutor(Executor publishExecutor)
+    {
+        this.publishExecutor = publishExecutor;
+    }
+
+    /**
+     * @param leaseTime lease time, in milliseconds
+     */
+    public void setLeaseTime(long leaseTime)
+    {
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * @param metrics   job metrics
+     */
+    public void setMetrics(PublishUpdatesJobMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return {@link PublishUpdatesJobMetrics} job metrics
+     */
+    public PublishUpdatesJobMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Each update is claimed and published in transactions of its own.
+     *
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#isTransactional()
+     */
+    @Override
+    protected boolean isTransactional()
+    {
+        return false;
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#executeImpl()
      */
@@ -130,50 +212,65 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
             {
                 if (rmLoaded())
                 {
-                    // Get a list of the nodes that have updates that need to be published
-                    List<NodeRef> nodeRefs = getUpdatedNodes();
-
-                    // Deal with each updated disposition action in turn
-                    for (NodeRef nodeRef : nodeRefs)
+                    metrics.startRun();
+                    try
                     {
-                        if (nodeService.exists(nodeRef))
+                        // Get a list of the nodes that have updates that need to be published
+                        List<NodeRef> nodeRefs = getUpdatedNodes();
+                        metrics.itemsScanned(nodeRefs.size());
+
+                        // Publish each updated node, in parallel if there is an executor.  When called within a
+                        // transaction the updates are published in turn, so they all take part in it
+                        boolean parallel = publishExecutor != null &&
+                                    AlfrescoTransactionSupport.getTransactionReadState().equals(TxnReadState.TXN_NONE);
+                        final CountDownLatch remaining = new CountDownLatch(nodeRefs.size());
+                        for (final NodeRef nodeRef : nodeRefs)
                         {
-                            boolean publishing = ((Boolean)nodeService.getProperty(nodeRef, PROP_PUBLISH_IN_PROGRESS)).booleanValue();
-                            if (!publishing)
+                            Runnable publish = new Runnable()
                             {
-                                // Mark the update node as publishing in progress
-                                markPublishInProgress(nodeRef);
-                                try
+                                @Override
+                                public void run()
                                 {
-                                    Date start = new Date();
-                                    if (logger.isDebugEnabled())
+                                    try
                                     {
-                                        logger.debug("Starting publish of updates ...");
-                                        logger.debug("   - for " + nodeRef.toString());
-                                        logger.debug("   - at " + start.toString());
+                                        AuthenticationUtil.runAsSystem(new RunAsWork<Void>()
+                                        {
+                                            public Void doWork()
+                                            {
+                                                publish(nodeRef);
+                                                return null;
+                                            }
+                                        });
                                     }
-
-                                    // Publish updates
-                                    publishUpdates(nodeRef);
-
-
-                                    if (logger.isDebugEnabled())
+                                    finally
                                     {
-                                        Date end = new Date();
-                                        long duration = end.getTime() - start.getTime();
-                                        logger.debug("Completed publish of updates ...");
-                                        logger.debug("   - for " + nodeRef.toString());
-                                        logger.debug("   - at " + end.toString());
-                                        logger.debug("   - duration " + Long.toString(duration));
+                                        metrics.pendingUpdateRemoved();
+                                        remaining.countDown();
                                     }
                                 }
-                                finally
-                                {
-                                    // Ensure the update node has either completed the publish or is marked as no longer in progress
-                                    unmarkPublishInProgress(nodeRef);
-                                }
+                            };
+
+                            if (!parallel)
+                            {
+                                publish.run();
+                            }
+                            else
+                            {
+                                publishExecutor.execute(publish);
                             }
                         }
+
+                        // Wait for the publishes to finish, so the job lock is held until they are done
+                        remaining.await();
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new AlfrescoRuntimeException("Interrupted while waiting for the updates to be published.", exception);
+                    }
+                    finally
+                    {
+                        metrics.endRun();
                     }
                 }
                 return null;
@@ -186,6 +283,156 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
         }
     }
 
+    /**
+     * Claim the update of a node with a lease and publish it.
+     * <p>
+     * The update is skipped if another publish holds its lease.  A failed publish is logged and counted, and
+     * the update is left to be published again by the next run.
+     *
+     * @param nodeRef   node reference
+     */
+    private void publish(final NodeRef nodeRef)
+    {
+        // Claim the update
+        final QName leaseQName = getLeaseQName(nodeRef);
+        String leaseToken;
+        try
+        {
+            leaseToken = jobLockService.getLock(leaseQName, leaseTime);
+        }
+        catch (LockAcquisitionException exception)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Update is already being published. (node=" + nodeRef.toString() + ")");
+            }
+            return;
+        }
+
+        final LeaseCallback leaseCallback = new LeaseCallback();
+        try
+        {
+            jobLockService.refreshLock(leaseToken, leaseQName, leaseTime, leaseCallback);
+
+            if (!isPendingUpdate(nodeRef))
+            {
+                // the update has been published since the pending updates were found
+                return;
+            }
+
+            // Mark the update node as publishing in progress
+            markPublishInProgress(nodeRef);
+            boolean published = false;
+            try
+            {
+                Date start = new Date();
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Starting publish of updates ...");
+                    logger.debug("   - for " + nodeRef.toString());
+                    logger.debug("   - at " + start.toString());
+                }
+
+                // Publish updates
+                publishUpdates(nodeRef, leaseCallback);
+                published = true;
+
+                Date end = new Date();
+                long duration = end.getTime() - start.getTime();
+                metrics.publishCompleted(duration);
+                metrics.itemProcessed();
+
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Completed publish of updates ...");
+                    logger.debug("   - for " + nodeRef.toString());
+                    logger.debug("   - at " + end.toString());
+                    logger.debug("   - duration " + Long.toString(duration));
+                }
+            }
+            finally
+            {
+                // Ensure the update node has either completed the publish or is marked as no longer in progress
+                if (!published)
+                {
+                    unmarkPublishInProgress(nodeRef);
+                }
+            }
+        }
+        catch (RuntimeException exception)
+        {
+            metrics.failure();
+            logger.error("Unable to publish updates. (node=" + nodeRef.toString() + ")", exception);
+        }
+        finally
+        {
+            leaseCallback.running.set(false);
+            try
+            {
+                jobLockService.releaseLock(leaseToken, leaseQName);
+            }
+            catch (LockAcquisitionException exception)
+            {
+                // Ignore
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Lease release failed: " + leaseQName + ": " + leaseToken + "(" + exception.getMessage() + ")");
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the lease on the update of a node.
+     * <p>
+     * The name contains no '.' so that it isn't nested under, and blocked by, the lock held on the job itself.
+     *
+     * @param nodeRef   node reference
+     * @return QName    lease name
+     */
+    private QName getLeaseQName(NodeRef nodeRef)
+    {
+        return QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "publishUpdateLease-" + nodeRef.getId());
+    }
+
+    /**
+     * Lease refresh callback, active until the publish has finished.
+     */
+    private static class LeaseCallback implements JobLockRefreshCallback
+    {
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        @Override
+        public boolean isActive()
+        {
+            return running.get();
+        }
+
+        @Override
+        public void lockReleased()
+        {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Indicates whether the node still has an update waiting to be published.
+     *
+     * @param nodeRef   node reference
+     * @return boolean  true if the node has an unpublished update, false otherwise
+     */
+    private boolean isPendingUpdate(final NodeRef nodeRef)
+    {
+        return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Boolean>()
+        {
+            @Override
+            public Boolean execute()
+            {
+                return nodeService.exists(nodeRef) && nodeService.hasAspect(nodeRef, ASPECT_UNPUBLISHED_UPDATE);
+            }
+        }, true);
+    }
+
     /**
      * Helper method to determine whether the RM content model has been loaded yet.
      *
@@ -261,6 +508,18 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
                         logger.debug("Found " + resultNodes.size() + " disposition action definitions updates awaiting publishing.");
                     }
 
+                    // Record the pending updates, the oldest being the one modified longest ago
+                    Date oldest = null;
+                    for (NodeRef resultNode : resultNodes)
+                    {
+                        Date modified = nodeService.exists(resultNode) ? (Date)nodeService.getProperty(resultNode, ContentModel.PROP_MODIFIED) : null;
+                        if (modified != null && (oldest == null || modified.before(oldest)))
+                        {
+                            oldest = modified;
+                        }
+                    }
+                    metrics.pendingUpdates(resultNodes.size(), oldest);
+
                     return resultNodes;
                 }
             };
@@ -306,9 +565,13 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
 
     /**
      * Publish the updates made to the node.
-     * @param nodeRef   node reference
+     * <p>
+     * The publish is rolled back if the lease on the update has been lost, as another server may have claimed it.
+     *
+     * @param nodeRef           node reference
+     * @param leaseCallback     lease refresh callback
      */
-    private void publishUpdates(final NodeRef nodeRef)
+    private void publishUpdates(final NodeRef nodeRef, final LeaseCallback leaseCallback)
     {
         RetryingTransactionHelper.RetryingTransactionCallback<Void> execution =
             new RetryingTransactionHelper.RetryingTransactionCallback<Void>()
@@ -356,6 +619,11 @@ public class PublishUpdatesJobExecuter extends RecordsManagementJobExecuter
                             }
                         }
 
+                        if (!leaseCallback.isActive())
+                        {
+                            throw new AlfrescoRuntimeException("Lease on the update has been lost. (noderef=" + nodeRef.toString() + ")");
+                        }
+
                         // Remove the unpublished update aspect
                         nodeService.removeAspect(nodeRef, ASPECT_UNPUBLISHED_UPDATE);
 
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish updates job metrics.
+ * <p>
+ * In addition to the job run counters, tracks the updates waiting to be published and how long each
+ * publish takes.  The pending updates are those found at the start of the current (or last) run.
+ *
+ * @since 3.4
+ */
+public class PublishUpdatesJobMetrics extends RecordsManagementJobMetrics implements PublishUpdatesJobMetricsMBean
+{
+    /** pending updates */
+    private final AtomicLong queueDepth = new AtomicLong();
+    private volatile long oldestPendingUpdateTime = 0;
+
+    /** publish durations */
+    private volatile long lastPublishDuration = 0;
+    private final AtomicLong maxPublishDuration = new AtomicLong();
+    private final AtomicLong totalPublishDuration = new AtomicLong();
+    private final AtomicLong totalPublishes = new AtomicLong();
+
+    /**
+     * Record the updates waiting to be published.
+     *
+     * @param count     number of pending updates
+     * @param oldest    time of the oldest pending update, null if there are none
+     */
+    public void pendingUpdates(long count, Date oldest)
+    {
+        queueDepth.set(count);
+        oldestPendingUpdateTime = oldest == null ? 0 : oldest.getTime();
+    }
+
+    /**
+     * Record that a pending update has been dealt with, whether or not it was published.
+     */
+    public void pendingUpdateRemoved()
+    {
+        if (queueDepth.decrementAndGet() <= 0)
+        {
+            queueDepth.set(0);
+            oldestPendingUpdateTime = 0;
+        }
+    }
+
+    /**
+     * Record a completed publish.
+     *
+     * @param duration  publish duration, in milliseconds
+     */
+    public void publishCompleted(long duration)
+    {
+        lastPublishDuration = duration;
+        totalPublishDuration.addAndGet(duration);
+        totalPublishes.incrementAndGet();
+
+        long max = maxPublishDuration.get();
+        while (duration > max && !maxPublishDuration.compareAndSet(max, duration))
+        {
+            max = maxPublishDuration.get();
+        }
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.PublishUpdatesJobMetricsMBean#getQueueDepth()
+     */
+    @Override
+    public long getQueueDepth()
+    {
+        return queueDepth.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.PublishUpdatesJobMetricsMBean#getOldestPendingUpdateAge()
+     */
+    @Override
+    public long getOldestPendingUpdateAge()
+    {
+        long oldest = oldestPendingUpdateTime;
+        return oldest == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.PublishUpdatesJobMetricsMBean#getLastPublishDuration()
+     */
+    @Override
+    public long getLastPublishDuration()
+    {
+        return lastPublishDuration;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.PublishUpdatesJobMetricsMBean#getMaxPublishDuration()
+     */
+    @Override
+    public long getMaxPublishDuration()
+    {
+        return maxPublishDuration.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.PublishUpdatesJobMetricsMBean#getAveragePublishDuration()
+     */
+    @Override
+    public long getAveragePublishDuration()
+    {
+        long count = totalPublishes.get();
+        return count == 0 ? 0 : totalPublishDuration.get() / count;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+/**
+ * Management interface of the publish updates job metrics.
+ *
+ * @since 3.4
+ */
+public interface PublishUpdatesJobMetricsMBean extends RecordsManagementJobMetricsMBean
+{
+    /**
+     * @return long number of updates waiting to be published
+     */
+    long getQueueDepth();
+
+    /**
+     * @return long age of the oldest update waiting to be published, in milliseconds, 0 if there are none
+     */
+    long getOldestPendingUpdateAge();
+
+    /**
+     * @return long duration of the last completed publish, in milliseconds
+     */
+    long getLastPublishDuration();
+
+    /**
+     * @return long duration of the longest completed publish, in milliseconds
+     */
+    long getMaxPublishDuration();
+
+    /**
+     * @return long average duration of the completed publishes, in milliseconds
+     */
+    long getAveragePublishDuration();
+}
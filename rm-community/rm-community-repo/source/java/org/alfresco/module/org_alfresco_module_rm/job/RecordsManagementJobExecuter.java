@@ -61,6 +61,17 @@ public abstract class RecordsManagementJobExecuter implements RecordsManagementM
         this.repositoryState = repositoryState;
     }
 
+    /**
+     * Indicates whether the jobs work is run in a read-write transaction.  Jobs that manage transactions of their own
+     * return false, so that their work is not enclosed in a single long-running transaction.
+     *
+     * @return boolean  true if the jobs work is run in a transaction, false otherwise
+     */
+    protected boolean isTransactional()
+    {
+        return true;
+    }
+
     /**
      * Executes the jobs work.
      */
@@ -69,16 +80,23 @@ public abstract class RecordsManagementJobExecuter implements RecordsManagementM
         // jobs not allowed to execute unless bootstrap is complete
         if (!repositoryState.isBootstrapping())
         {
-            retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            if (isTransactional())
             {
-                @Override
-                public Void execute()
+                retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
                 {
-                    executeImpl();
+                    @Override
+                    public Void execute()
+                    {
+                        executeImpl();
 
-                    return null;
-                }
-            }, false, true);
+                        return null;
+                    }
+                }, false, true);
+            }
+            else
+            {
+                executeImpl();
+            }
         }
     }
 
@@ -0,0 +1,224 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records management job metrics.
+ * <p>
+ * Counts the items scanned and processed, and the failures, of each run of a job.  The counters of the
+ * current run are safe to update from several worker threads.
+ *
+ * @since 3.4
+ */
+public class RecordsManagementJobMetrics implements RecordsManagementJobMetricsMBean
+{
+    /** current run counters */
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /** indicates whether a run is in progress */
+    private volatile boolean running = false;
+
+    /** start time of the last (or current) run */
+    private volatile long runStartTime = 0;
+
+    /** last completed run values */
+    private volatile long lastRunElapsedTime = 0;
+    private volatile long lastRunItemsScanned = 0;
+    private volatile long lastRunItemsProcessed = 0;
+    private volatile long lastRunFailures = 0;
+
+    /** totals over all completed runs */
+    private final AtomicLong totalRuns = new AtomicLong();
+    private final AtomicLong totalItemsProcessed = new AtomicLong();
+    private final AtomicLong totalFailures = new AtomicLong();
+
+    /**
+     * Start a run, resetting the current run counters.
+     */
+    public void startRun()
+    {
+        scanned.set(0);
+        processed.set(0);
+        failures.set(0);
+        runStartTime = System.currentTimeMillis();
+        running = true;
+    }
+
+    /**
+     * @param count number of items scanned
+     */
+    public void itemsScanned(long count)
+    {
+        scanned.addAndGet(count);
+    }
+
+    /**
+     * Record that an item has been processed.
+     */
+    public void itemProcessed()
+    {
+        processed.incrementAndGet();
+    }
+
+    /**
+     * Record a failure.
+     */
+    public void failure()
+    {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * End the current run, making its counters available as the last run values.
+     */
+    public void endRun()
+    {
+        lastRunElapsedTime = System.currentTimeMillis() - runStartTime;
+        lastRunItemsScanned = scanned.get();
+        lastRunItemsProcessed = processed.get();
+        lastRunFailures = failures.get();
+
+        totalRuns.incrementAndGet();
+        totalItemsProcessed.addAndGet(lastRunItemsProcessed);
+        totalFailures.addAndGet(lastRunFailures);
+
+        running = false;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#isRunning()
+     */
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getLastRunStartTime()
+     */
+    @Override
+    public Date getLastRunStartTime()
+    {
+        return runStartTime == 0 ? null : new Date(runStartTime);
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getLastRunElapsedTime()
+     */
+    @Override
+    public long getLastRunElapsedTime()
+    {
+        return lastRunElapsedTime;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getLastRunItemsScanned()
+     */
+    @Override
+    public long getLastRunItemsScanned()
+    {
+        return lastRunItemsScanned;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getLastRunItemsProcessed()
+     */
+    @Override
+    public long getLastRunItemsProcessed()
+    {
+        return lastRunItemsProcessed;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getLastRunFailures()
+     */
+    @Override
+    public long getLastRunFailures()
+    {
+        return lastRunFailures;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getLastRunThroughput()
+     */
+    @Override
+    public long getLastRunThroughput()
+    {
+        return lastRunElapsedTime == 0 ? 0 : lastRunItemsProcessed * 1000L / lastRunElapsedTime;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getCurrentRunItemsScanned()
+     */
+    @Override
+    public long getCurrentRunItemsScanned()
+    {
+        return running ? scanned.get() : 0;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getCurrentRunItemsProcessed()
+     */
+    @Override
+    public long getCurrentRunItemsProcessed()
+    {
+        return running ? processed.get() : 0;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getTotalRuns()
+     */
+    @Override
+    public long getTotalRuns()
+    {
+        return totalRuns.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getTotalItemsProcessed()
+     */
+    @Override
+    public long getTotalItemsProcessed()
+    {
+        return totalItemsProcessed.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetricsMBean#getTotalFailures()
+     */
+    @Override
+    public long getTotalFailures()
+    {
+        return totalFailures.get();
+    }
+}
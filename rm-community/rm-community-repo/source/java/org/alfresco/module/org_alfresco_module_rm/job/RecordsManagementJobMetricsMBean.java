@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+import java.util.Date;
+
+/**
+ * Management interface of the records management job metrics.
+ *
+ * @since 3.4
+ */
+public interface RecordsManagementJobMetricsMBean
+{
+    /**
+     * @return boolean  true if the job is currently running, false otherwise
+     */
+    boolean isRunning();
+
+    /**
+     * @return Date start time of the last (or current) run, null if the job has not run yet
+     */
+    Date getLastRunStartTime();
+
+    /**
+     * @return long elapsed time of the last completed run, in milliseconds
+     */
+    long getLastRunElapsedTime();
+
+    /**
+     * @return long number of items scanned by the last completed run
+     */
+    long getLastRunItemsScanned();
+
+    /**
+     * @return long number of items processed by the last completed run
+     */
+    long getLastRunItemsProcessed();
+
+    /**
+     * @return long number of failures in the last completed run
+     */
+    long getLastRunFailures();
+
+    /**
+     * @return long number of items processed per second by the last completed run
+     */
+    long getLastRunThroughput();
+
+    /**
+     * @return long number of items scanned by the current run, zero if the job is not running
+     */
+    long getCurrentRunItemsScanned();
+
+    /**
+     * @return long number of items processed by the current run, zero if the job is not running
+     */
+    long getCurrentRunItemsProcessed();
+
+    /**
+     * @return long number of completed runs
+     */
+    long getTotalRuns();
+
+    /**
+     * @return long number of items processed by all completed runs
+     */
+    long getTotalItemsProcessed();
+
+    /**
+     * @return long number of failures in all completed runs
+     */
+    long getTotalFailures();
+}
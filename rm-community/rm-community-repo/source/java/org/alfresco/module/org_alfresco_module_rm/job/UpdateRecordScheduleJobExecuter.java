@@ -0,0 +1,519 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionSchedule;
+import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionService;
+import org.alfresco.module.org_alfresco_module_rm.model.behaviour.RecordsManagementSearchBehaviour;
+import org.alfresco.module.org_alfresco_module_rm.model.rma.aspect.FrozenAspect;
+import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+/**
+ * Update record schedule job executer.
+ * <p>
+ * Updates the records of record folders that are missing their schedule information (MNT-20864).  The work is
+ * only done once it has been requested, see {@link #requestUpdate(int)}.  The record folders are read from the
+ * database a page at a time by node id, so ranges of node ids without record folders are skipped by the query, and
+ * each page is processed by a pool of worker threads.
+ * <p>
+ * The largest node id below which every folder has been processed is kept as a high-water mark, so an interrupted
+ * update resumes where it left off.
+ *
+ * @since 3.4
+ */
+public class UpdateRecordScheduleJobExecuter extends RecordsManagementJobExecuter implements ApplicationEventPublisherAware
+{
+    /** logger */
+    private static Log logger = LogFactory.getLog(UpdateRecordScheduleJobExecuter.class);
+
+    /** attribute keys */
+    private static final String ATTRIBUTE_CONTEXT = "rm.updateRecordSchedule";
+    private static final String ATTRIBUTE_REQUEST = "request";
+    private static final String ATTRIBUTE_HIGH_WATER_MARK = "highWaterMark";
+
+    /** node service */
+    private NodeService nodeService;
+
+    /** disposition service */
+    private DispositionService dispositionService;
+
+    /** record service */
+    private RecordService recordService;
+
+    /** records management query DAO */
+    private RecordsManagementQueryDAO recordsManagementQueryDAO;
+
+    /** qname DAO */
+    private QNameDAO qnameDAO;
+
+    /** attribute service */
+    private AttributeService attributeService;
+
+    /** frozen aspect */
+    private FrozenAspect frozenAspect;
+
+    /** records management search behaviour */
+    private RecordsManagementSearchBehaviour recordsManagementSearchBehaviour;
+
+    /** application event publisher */
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /** job metrics */
+    private RecordsManagementJobMetrics metrics = new RecordsManagementJobMetrics();
+
+    /** number of record folders read from the database in each page */
+    private int pageSize = 1000;
+
+    /** number of record folders updated in each transaction */
+    private int batchSize = 10;
+
+    /** number of worker threads used to update the record folders */
+    private int workerThreads = 4;
+
+    /**
+     * @param nodeService node service
+     */
+    public void setNodeService(NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * @param dispositionService disposition service
+     */
+    public void setDispositionService(DispositionService dispositionService)
+    {
+        this.dispositionService = dispositionService;
+    }
+
+    /**
+     * @param recordService record service
+     */
+    public void setRecordService(RecordService recordService)
+    {
+        this.recordService = recordService;
+    }
+
+    /**
+     * @param recordsManagementQueryDAO records management query DAO
+     */
+    public void setRecordsManagementQueryDAO(RecordsManagementQueryDAO recordsManagementQueryDAO)
+    {
+        this.recordsManagementQueryDAO = recordsManagementQueryDAO;
+    }
+
+    /**
+     * @param qnameDAO qname DAO
+     */
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+
+    /**
+     * @param attributeService attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param frozenAspect frozen aspect
+     */
+    public void setFrozenAspect(FrozenAspect frozenAspect)
+    {
+        this.frozenAspect = frozenAspect;
+    }
+
+    /**
+     * @param recordsManagementSearchBehaviour records management search behaviour
+     */
+    public void setRecordsManagementSearchBehaviour(RecordsManagementSearchBehaviour recordsManagementSearchBehaviour)
+    {
+        this.recordsManagementSearchBehaviour = recordsManagementSearchBehaviour;
+    }
+
+    /**
+     * @see org.springframework.context.ApplicationEventPublisherAware#setApplicationEventPublisher(org.springframework.context.ApplicationEventPublisher)
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * @return job metrics
+     */
+    public RecordsManagementJobMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @param metrics   job metrics
+     */
+    public void setMetrics(RecordsManagementJobMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param pageSize  number of record folders read from the database in each page
+     */
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param batchSize number of record folders updated in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param workerThreads number of worker threads used to update the record folders
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Request that the record folders are updated by the next run of the job.
+     * <p>
+     * Must be called in a read-write transaction.
+     *
+     * @param maxRecordFolders  maximum number of record folders to update
+     */
+    public void requestUpdate(int maxRecordFolders)
+    {
+        attributeService.setAttribute(Integer.valueOf(maxRecordFolders), ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+    }
+
+    /**
+     * @return Integer  maximum number of record folders still to update, null if no update has been requested
+     */
+    public Integer getRequestedUpdate()
+    {
+        return (Integer) attributeService.getAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+    }
+
+    /**
+     * @return Long node id below which all the record folders have been updated, null if no update is in progress
+     */
+    public Long getHighWaterMark()
+    {
+        return (Long) attributeService.getAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+    }
+
+    /**
+     * The record folders are read and updated in transactions of their own.
+     *
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#isTransactional()
+     */
+    @Override
+    protected boolean isTransactional()
+    {
+        return false;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobExecuter#executeImpl()
+     */
+    @Override
+    public void executeImpl()
+    {
+        Integer request = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Integer>()
+        {
+            @Override
+            public Integer execute()
+            {
+                return getRequestedUpdate();
+            }
+        }, true, true);
+        if (request == null)
+        {
+            // nothing to do
+            return;
+        }
+
+        // make sure the processed aspect can be queried for, committing it before the workers use it
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute()
+            {
+                qnameDAO.getOrCreateQName(ASPECT_DISPOSITION_PROCESSED);
+                return null;
+            }
+        }, false, true);
+
+        metrics.startRun();
+        try
+        {
+            update(request);
+        }
+        finally
+        {
+            metrics.endRun();
+
+            if (logger.isInfoEnabled())
+            {
+                logger.info("Updated " + metrics.getLastRunItemsProcessed() + " record folders with " +
+                            metrics.getLastRunFailures() + " failures in " + metrics.getLastRunElapsedTime() + "ms");
+            }
+        }
+    }
+
+    /**
+     * Update the record folders a page at a time, starting after the high-water mark.
+     *
+     * @param maxRecordFolders  maximum number of record folders to update
+     */
+    private void update(int maxRecordFolders)
+    {
+        BatchProcessWorkerAdaptor<NodeRef> worker = new BatchProcessWorkerAdaptor<NodeRef>()
+        {
+            @Override
+            public void beforeProcess()
+            {
+                AuthenticationUtil.setRunAsUserSystem();
+            }
+
+            @Override
+            public void process(NodeRef recordFolder)
+            {
+                updateRecordFolder(recordFolder);
+                metrics.itemProcessed();
+            }
+
+            @Override
+            public void afterProcess()
+            {
+                AuthenticationUtil.clearCurrentSecurityContext();
+            }
+        };
+
+        Long highWaterMark = getHighWaterMark();
+        Long lastNodeId = (highWaterMark == null ? Long.MIN_VALUE : highWaterMark);
+
+        // the high-water mark is only moved on while every folder before it has been updated
+        boolean advanceHighWaterMark = true;
+        int remaining = maxRecordFolders;
+        while (remaining > 0)
+        {
+            final Long afterNodeId = lastNodeId;
+            final int maxResults = Math.min(pageSize, remaining);
+            List<Pair<Long, NodeRef>> page = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<List<Pair<Long, NodeRef>>>()
+            {
+                @Override
+                public List<Pair<Long, NodeRef>> execute()
+                {
+                    return recordsManagementQueryDAO.getNextRecordFoldersWithSchedules(afterNodeId, maxResults);
+                }
+            }, true, true);
+
+            if (page.isEmpty())
+            {
+                // all the record folders have been read, any that failed are retried by the next update requested
+                setProgress(null, advanceHighWaterMark ? null : highWaterMark);
+                return;
+            }
+
+            List<NodeRef> recordFolders = new ArrayList<>(page.size());
+            for (Pair<Long, NodeRef> pair : page)
+            {
+                recordFolders.add(pair.getSecond());
+            }
+            lastNodeId = page.get(page.size() - 1).getFirst();
+            remaining -= page.size();
+            metrics.itemsScanned(page.size());
+
+            BatchProcessor<NodeRef> batchProcessor = createBatchProcessor(recordFolders);
+            batchProcessor.process(worker, true);
+
+            if (batchProcessor.getTotalErrors() > 0)
+            {
+                for (int i = 0; i < batchProcessor.getTotalErrors(); i++)
+                {
+                    metrics.failure();
+                }
+
+                // the next update will start again from the current high-water mark
+                advanceHighWaterMark = false;
+            }
+
+            if (advanceHighWaterMark)
+            {
+                highWaterMark = lastNodeId;
+                setProgress(remaining > 0 ? remaining : null, highWaterMark);
+            }
+            else if (remaining <= 0)
+            {
+                setProgress(null, highWaterMark);
+            }
+        }
+    }
+
+    /**
+     * Create the batch processor that updates a page of record folders, each batch in its own transaction.
+     *
+     * @param recordFolders record folders
+     * @return {@link BatchProcessor}&lt;{@link NodeRef}&gt;  batch processor
+     */
+    protected BatchProcessor<NodeRef> createBatchProcessor(List<NodeRef> recordFolders)
+    {
+        return new BatchProcessor<>(
+                    "UpdateRecordScheduleJob",
+                    retryingTransactionHelper,
+                    recordFolders,
+                    workerThreads,
+                    batchSize,
+                    applicationEventPublisher,
+                    logger,
+                    pageSize);
+    }
+
+    /**
+     * Record the progress of the update.
+     *
+     * @param request       maximum number of record folders still to update, null if the update is complete
+     * @param highWaterMark node id below which all the record folders have been updated, null to clear
+     */
+    private void setProgress(final Integer request, final Long highWaterMark)
+    {
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute()
+            {
+                setAttribute(request, ATTRIBUTE_REQUEST);
+                setAttribute(highWaterMark, ATTRIBUTE_HIGH_WATER_MARK);
+                return null;
+            }
+        }, false, true);
+    }
+
+    /**
+     * @param value value to set, null to remove the attribute
+     * @param key   attribute key
+     */
+    private void setAttribute(Serializable value, String key)
+    {
+        if (value == null)
+        {
+            attributeService.removeAttribute(ATTRIBUTE_CONTEXT, key);
+        }
+        else
+        {
+            attributeService.setAttribute(value, ATTRIBUTE_CONTEXT, key);
+        }
+    }
+
+    /**
+     * Update the records of a record folder that are missing their schedule information, and mark the folder as
+     * processed.
+     * <p>
+     * Must be called in a read-write transaction.
+     *
+     * @param recordFolder  record folder
+     * @return int          number of records updated
+     */
+    public int updateRecordFolder(final NodeRef recordFolder)
+    {
+        int recordCount = 0;
+        frozenAspect.disableOnPropUpdateFrozenAspect();
+        try
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Checking folder: " + recordFolder);
+            }
+            recordCount = AuthenticationUtil.runAsSystem(new RunAsWork<Integer>()
+            {
+                @Override
+                public Integer doWork()
+                {
+                    DispositionSchedule schedule = dispositionService.getDispositionSchedule(recordFolder);
+                    int innerRecordCount = 0;
+                    if (schedule != null && schedule.isRecordLevelDisposition())
+                    {
+                        List<NodeRef> records = recordService.getRecords(recordFolder);
+                        for (NodeRef record : records)
+                        {
+                            if (!nodeService.hasAspect(record, ASPECT_DISPOSITION_LIFECYCLE) &&
+                                recordFolder.equals(nodeService.getPrimaryParent(record).getParentRef()))
+                            {
+                                if (logger.isDebugEnabled())
+                                {
+                                    logger.debug("updating record: " + record);
+                                }
+
+                                // update record disposition information
+                                dispositionService.updateNextDispositionAction(record, schedule);
+                                recordsManagementSearchBehaviour.onAddDispositionLifecycleAspect(record, null);
+                                innerRecordCount++;
+                            }
+                        }
+                    }
+                    return innerRecordCount;
+                }
+            });
+            nodeService.addAspect(recordFolder, ASPECT_DISPOSITION_PROCESSED, null);
+        }
+        finally
+        {
+            frozenAspect.enableOnPropUpdateFrozenAspect();
+        }
+        return recordCount;
+    }
+}
@@ -27,13 +27,20 @@
 
 package org.alfresco.module.org_alfresco_module_rm.jscript;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.alfresco.module.org_alfresco_module_rm.RecordsManagementServiceRegistry;
+import org.alfresco.module.org_alfresco_module_rm.jscript.app.JSONConversionComponent;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.notification.RecordsManagementNotificationHelper;
 import org.alfresco.module.org_alfresco_module_rm.security.FilePlanPermissionService;
 import org.alfresco.repo.jscript.BaseScopableProcessorExtension;
 import org.alfresco.repo.jscript.ScriptNode;
+import org.alfresco.repo.jscript.ScriptValueConverter;
 import org.alfresco.scripts.ScriptException;
+import org.alfresco.service.cmr.repository.NodeRef;
 
 /**
  * Records management service
@@ -49,6 +56,9 @@ public class ScriptRecordsManagmentService extends BaseScopableProcessorExtensio
     /** Records management notification helper */
     private RecordsManagementNotificationHelper notificationHelper;
 
+    /** JSON conversion component */
+    private JSONConversionComponent jsonConversionComponent;
+
     /**
      * Set records management service registry
      *
@@ -69,6 +79,16 @@ public class ScriptRecordsManagmentService extends BaseScopableProcessorExtensio
         this.notificationHelper = notificationHelper;
     }
 
+    /**
+     * Sets the JSON conversion component
+     *
+     * @param jsonConversionComponent   JSON conversion component
+     */
+    public void setJsonConversionComponent(JSONConversionComponent jsonConversionComponent)
+    {
+        this.jsonConversionComponent = jsonConversionComponent;
+    }
+
     /**
      * Get records management node
      *
@@ -119,6 +139,28 @@ public class ScriptRecordsManagmentService extends BaseScopableProcessorExtensio
         filePlanPermissionService.deletePermission(node.getNodeRef(), authority, permission);
     }
 
+    /**
+     * Loads a page of nodes in bulk before they are converted to JSON one by one.
+     *
+     * @param nodes script nodes, as an array
+     */
+    public void prefetch(Object nodes)
+    {
+        Object value = ScriptValueConverter.unwrapValue(nodes);
+        if (jsonConversionComponent != null && value instanceof Collection)
+        {
+            List<NodeRef> nodeRefs = new ArrayList<>(((Collection<?>) value).size());
+            for (Object node : (Collection<?>) value)
+            {
+                if (node instanceof NodeRef)
+                {
+                    nodeRefs.add((NodeRef) node);
+                }
+            }
+            jsonConversionComponent.prefetch(nodeRefs);
+        }
+    }
+
     /**
      * Send superseded notification
      *
@@ -33,6 +33,7 @@ import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagement
 import static org.alfresco.service.cmr.security.AccessStatus.ALLOWED;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +42,7 @@ import java.util.Set;
 import org.alfresco.model.ContentModel;
 import org.alfresco.module.org_alfresco_module_rm.capability.CapabilityService;
 import org.alfresco.module.org_alfresco_module_rm.capability.impl.ViewRecordsCapability;
+import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionAction;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionService;
 import org.alfresco.module.org_alfresco_module_rm.event.EventCompletionDetails;
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanComponentKind;
@@ -50,7 +52,9 @@ import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
 import org.alfresco.module.org_alfresco_module_rm.role.FilePlanRoleService;
 import org.alfresco.module.org_alfresco_module_rm.role.Role;
+import org.alfresco.module.org_alfresco_module_rm.util.TransactionalResourceHelper;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
@@ -136,6 +140,16 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
     /** Constants for checking the cache */
     private static final String RM_SITE_EXISTS = "rmSiteExists";
 
+    /** Node bulk loader */
+    private NodeBulkLoader nodeBulkLoader;
+
+    /** Transactional resource helper */
+    private TransactionalResourceHelper transactionalResourceHelper;
+
+    /** Transaction resource keys for the values shared by all the nodes converted in a request */
+    private static final String KEY_FILE_PLAN_VALUES = "rm.jsonConversionComponent.filePlanValues";
+    private static final String KEY_VISIBLE_FOR_USER = "rm.jsonConversionComponent.visibleForUser";
+
     /**
      * @param enabled   true if enabled, false otherwise
      */
@@ -274,6 +288,37 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
      */
     public void setFreezeService(FreezeService freezeService) { this.freezeService = freezeService; }
 
+    /**
+     * @param nodeBulkLoader node bulk loader
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
+    /**
+     * @param transactionalResourceHelper transactional resource helper
+     */
+    public void setTransactionalResourceHelper(TransactionalResourceHelper transactionalResourceHelper)
+    {
+        this.transactionalResourceHelper = transactionalResourceHelper;
+    }
+
+    /**
+     * Loads the properties, aspects and parent associations of a page of nodes in bulk, ahead of them being
+     * converted one by one.  The indicator and action evaluators then read the same pre-loaded nodes.
+     *
+     * @param nodeRefs  node references about to be converted
+     */
+    public void prefetch(Collection<NodeRef> nodeRefs)
+    {
+        if (nodeBulkLoader != null && nodeRefs != null && !nodeRefs.isEmpty())
+        {
+            List<NodeRef> list = new ArrayList<>(nodeRefs);
+            nodeBulkLoader.cacheNodes(list);
+        }
+    }
+
     /**
      * The initialise method
      */
@@ -303,7 +348,8 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
             // Set the base root values
             super.setRootValues(nodeInfo, rootJSONObject, useShortQNames);
 
-            rootJSONObject.put("uiType", getUIType(nodeInfo.getNodeRef()));
+            String uiType = getUIType(nodeInfo.getNodeRef());
+            rootJSONObject.put("uiType", uiType);
 
             // check the existence of the RM site
             checkRmSiteExistence(rootJSONObject);
@@ -323,24 +369,45 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
 
                 if (isFilePlanComponent)
                 {
-                    rootJSONObject.put(RM_NODE, setRmNodeValues(nodeRef, useShortQNames));
+                    rootJSONObject.put(RM_NODE, setRmNodeValues(nodeRef, uiType, useShortQNames));
 
                     // FIXME: Is this the right place to add the information?
                     addInfo(nodeInfo, rootJSONObject);
                 }
             }
+            Boolean isVisibleForCurrentUser = isVisibleForCurrentUser();
+            if (isVisibleForCurrentUser != null)
+            {
+                rootJSONObject.put(IS_VISIBLE_FOR_CURRENT_USER, isVisibleForCurrentUser);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the current user has a role in the file plan, worked out once per user for each request.
+     *
+     * @return Boolean  true if the user has a role, false if not, null if there is no file plan
+     */
+    /*package*/ Boolean isVisibleForCurrentUser()
+    {
+        String user = AuthenticationUtil.getFullyAuthenticatedUser();
+        Map<String, Boolean> visibleForUser = transactionalResourceHelper.getMap(KEY_VISIBLE_FOR_USER);
+        if (!visibleForUser.containsKey(user))
+        {
+            Boolean hasFilingPermission = null;
             Set<NodeRef> filePlans = filePlanService.getFilePlans();
             if (!CollectionUtils.isEmpty(filePlans))
             {
                 NodeRef filePlanNodeRef = filePlans.stream().findFirst().orElse(null);
                 if (filePlanNodeRef != null)
                 {
-                    Set<Role> roles = filePlanRoleService.getRolesByUser(filePlanNodeRef, AuthenticationUtil.getFullyAuthenticatedUser());
-                    boolean hasFilingPermission = !CollectionUtils.isEmpty(roles);
-                    rootJSONObject.put(IS_VISIBLE_FOR_CURRENT_USER, hasFilingPermission);
+                    Set<Role> roles = filePlanRoleService.getRolesByUser(filePlanNodeRef, user);
+                    hasFilingPermission = !CollectionUtils.isEmpty(roles);
                 }
             }
+            visibleForUser.put(user, hasFilingPermission);
         }
+        return visibleForUser.get(user);
     }
 
     /**
@@ -456,16 +523,17 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
      * Helper method to set the RM node values
      *
      * @param nodeRef               node reference
+     * @param uiType                UI convenience type of the node
      * @param useShortQName         indicates whether the short QName are used or not
      * @return {@link JSONObject}   JSON object containing values
      */
     @SuppressWarnings("unchecked")
-    private JSONObject setRmNodeValues(final NodeRef nodeRef, final boolean useShortQName)
+    private JSONObject setRmNodeValues(final NodeRef nodeRef, String uiType, final boolean useShortQName)
     {
     	JSONObject rmNodeValues = new JSONObject();
 
         // UI convenience type
-        rmNodeValues.put("uiType", getUIType(nodeRef));
+        rmNodeValues.put("uiType", uiType);
 
         // Get the 'kind' of the file plan component
         FilePlanComponentKind kind = filePlanService.getFilePlanComponentKind(nodeRef);
@@ -478,34 +546,25 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
             rmNodeValues.put("primaryParentNodeRef", assoc.getParentRef().toString());
         }
 
-        Map<String, Object> values = AuthenticationUtil.runAsSystem(new RunAsWork<Map<String, Object>>()
+        NodeRef filePlan = AuthenticationUtil.runAsSystem(new RunAsWork<NodeRef>()
         {
-            public Map<String, Object> doWork() throws Exception
+            public NodeRef doWork() throws Exception
             {
-                Map<String, Object> result = new HashMap<>();
-
-                // File plan node reference
-                NodeRef filePlan = filePlanService.getFilePlan(nodeRef);
-                if (filePlan != null)
-                {
-                    result.put("filePlan", filePlan.toString());
-
-                    // Unfiled container node reference
-                    NodeRef unfiledRecordContainer = filePlanService.getUnfiledContainer(filePlan);
-                    if (unfiledRecordContainer != null)
-                    {
-                        result.put("unfiledRecordContainer", unfiledRecordContainer.toString());
-                        result.put("properties", propertiesToJSON(unfiledRecordContainer, nodeService.getProperties(unfiledRecordContainer), useShortQName));
-                        QName type = fileFolderService.getFileInfo(unfiledRecordContainer).getType();
-                        result.put("type", useShortQName ? type.toPrefixString(namespaceService) : type.toString());
-                    }
-                }
-
-                return result;
+                return filePlanService.getFilePlan(nodeRef);
             }
-         });
+        });
+        if (filePlan != null)
+        {
+            Map<String, Object> values = getFilePlanValues(filePlan, useShortQName);
+            rmNodeValues.putAll(values);
 
-        rmNodeValues.putAll(values);
+            // the properties are added to below, so each node needs its own copy
+            Map<String, Object> properties = (Map<String, Object>) values.get("properties");
+            if (properties != null)
+            {
+                rmNodeValues.put("properties", new JSONObject(properties));
+            }
+        }
 
         // Set the indicators array
         setIndicators(rmNodeValues, nodeRef);
@@ -515,16 +574,18 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
 
 
         //Add details of the next incomplete event in the disposition schedule
-        if(dispositionService.getNextDispositionAction(nodeRef) != null)
+        DispositionAction nextDispositionAction = dispositionService.getNextDispositionAction(nodeRef);
+        if (nextDispositionAction != null)
         {
-            for(EventCompletionDetails details: dispositionService.getNextDispositionAction(nodeRef).getEventCompletionDetails())
+            for (EventCompletionDetails details : nextDispositionAction.getEventCompletionDetails())
             {
-                if(!details.isEventComplete())
+                HashMap properties = ((HashMap) rmNodeValues.get("properties"));
+                if (!details.isEventComplete() && properties != null)
                 {
-                    HashMap properties = ((HashMap) rmNodeValues.get("properties"));
-                    properties.put("combineDispositionStepConditions", nodeService.getProperty(dispositionService.getNextDispositionAction(nodeRef).getDispositionActionDefinition().getNodeRef(), PROP_COMBINE_DISPOSITION_STEP_CONDITIONS));
+                    NodeRef actionDefinition = nextDispositionAction.getDispositionActionDefinition().getNodeRef();
+                    properties.put("combineDispositionStepConditions", nodeService.getProperty(actionDefinition, PROP_COMBINE_DISPOSITION_STEP_CONDITIONS));
                     properties.put("incompleteDispositionEvent", details.getEventName());
-                    properties.put("dispositionEventCombination", nodeService.getProperty(dispositionService.getNextDispositionAction(nodeRef).getDispositionActionDefinition().getNodeRef(), PROP_DISPOSITION_EVENT_COMBINATION));
+                    properties.put("dispositionEventCombination", nodeService.getProperty(actionDefinition, PROP_DISPOSITION_EVENT_COMBINATION));
                     break;
                 }
             }
@@ -533,6 +594,50 @@ public class JSONConversionComponent extends    org.alfresco.repo.jscript.app.JS
         return rmNodeValues;
     }
 
+    /**
+     * Helper method to get the values of a file plan, and its unfiled container, included for each of its nodes.
+     * <p>
+     * The values are worked out once for each file plan in a request.
+     *
+     * @param filePlan          file plan
+     * @param useShortQName     indicates whether the short QName are used or not
+     * @return {@link Map}      file plan values
+     */
+    /*package*/ Map<String, Object> getFilePlanValues(final NodeRef filePlan, final boolean useShortQName)
+    {
+        Map<String, Map<String, Object>> filePlanValues = transactionalResourceHelper.getMap(KEY_FILE_PLAN_VALUES);
+        String key = filePlan.toString() + useShortQName;
+
+        Map<String, Object> values = filePlanValues.get(key);
+        if (values == null)
+        {
+            values = AuthenticationUtil.runAsSystem(new RunAsWork<Map<String, Object>>()
+            {
+                public Map<String, Object> doWork() throws Exception
+                {
+                    Map<String, Object> result = new HashMap<>();
+
+                    // File plan node reference
+                    result.put("filePlan", filePlan.toString());
+
+                    // Unfiled container node reference
+                    NodeRef unfiledRecordContainer = filePlanService.getUnfiledContainer(filePlan);
+                    if (unfiledRecordContainer != null)
+                    {
+                        result.put("unfiledRecordContainer", unfiledRecordContainer.toString());
+                        result.put("properties", propertiesToJSON(unfiledRecordContainer, nodeService.getProperties(unfiledRecordContainer), useShortQName));
+                        QName type = fileFolderService.getFileInfo(unfiledRecordContainer).getType();
+                        result.put("type", useShortQName ? type.toPrefixString(namespaceService) : type.toString());
+                    }
+
+                    return result;
+                }
+            });
+            filePlanValues.put(key, values);
+        }
+        return values;
+    }
+
     @SuppressWarnings("unchecked")
     private void setIndicators(JSONObject rmNodeValues, NodeRef nodeRef)
     {
@@ -68,7 +68,7 @@ public class RecordComponentIdentifierAspect extends    BaseBehaviourBean
     /** I18N */
     private static final String MSG_SET_ID = "rm.service.set-id";
 
-    /** attribute context value */
+    /** attribute context value, shared with the identifier register */
     private static final String CONTEXT_VALUE = "rma:identifier";
 
     /** file plan service */
@@ -193,20 +193,20 @@ public class RecordComponentIdentifierAspect extends    BaseBehaviourBean
         {
             if (afterId != null)
             {
-                // Just create it
-                attributeService.createAttribute(null, CONTEXT_VALUE, contextNodeRef, afterId);
+                // Just create it, the register fails if the id is already in use in the file plan
+                identifierService.registerIdentifier(afterId, contextNodeRef, nodeRef);
             }
         }
         else if (afterId == null)
         {
             // The before value was not null, so remove it
-            attributeService.removeAttribute(CONTEXT_VALUE, contextNodeRef, beforeId);
+            identifierService.unregisterIdentifier(beforeId, contextNodeRef, nodeRef);
             // Do a blanket removal in case this is a contextual nodes
             attributeService.removeAttributes(CONTEXT_VALUE, nodeRef);
         }
         else if(!beforeId.equals(afterId))
         {
-            // This is a full update
+            // This is a full update, the node registered against the id is kept
             attributeService.updateOrCreateAttribute(
                     CONTEXT_VALUE, contextNodeRef, beforeId,
                     CONTEXT_VALUE, contextNodeRef, afterId);
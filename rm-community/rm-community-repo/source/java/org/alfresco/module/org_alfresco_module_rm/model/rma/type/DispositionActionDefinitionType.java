@@ -34,12 +34,14 @@ import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.module.org_alfresco_module_rm.action.impl.BroadcastDispositionActionDefinitionUpdateAction;
 import org.alfresco.module.org_alfresco_module_rm.model.BaseBehaviourBean;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
 import org.alfresco.repo.policy.annotation.Behaviour;
 import org.alfresco.repo.policy.annotation.BehaviourBean;
 import org.alfresco.repo.policy.annotation.BehaviourKind;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.PropertyMap;
@@ -61,6 +63,17 @@ public class DispositionActionDefinitionType extends    BaseBehaviourBean
     /** I18N */
     private static final String MSG_UPDATE_DISP_ACT_DEF = "rm.service.update-disposition-action-def";
 
+    /** attribute service */
+    private AttributeService attributeService;
+
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
     /**
      * @see org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy#onUpdateProperties(org.alfresco.service.cmr.repository.NodeRef, java.util.Map, java.util.Map)
      */
@@ -102,6 +115,9 @@ public class DispositionActionDefinitionType extends    BaseBehaviourBean
                 props.put(PROP_UPDATED_PROPERTIES, (Serializable)changedProps);
                 nodeService.setProperties(nodeRef, props);
             }
+
+            // a new change is broadcast to every disposable item, even if an earlier broadcast was interrupted
+            attributeService.removeAttribute(BroadcastDispositionActionDefinitionUpdateAction.CHANGE_CONTEXT, nodeRef.toString());
         }
 
     }
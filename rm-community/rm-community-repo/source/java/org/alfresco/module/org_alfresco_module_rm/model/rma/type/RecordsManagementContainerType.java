@@ -191,7 +191,8 @@ public class RecordsManagementContainerType extends    BaseBehaviourBean
                         else
                         {
                             // Catch all to generate the rm id (assuming it doesn't already have one!)
-                            setIdenifierProperty(child);
+                            setIdenifierProperty(child, childType,
+                                        childAssocRef.isPrimary() ? childAssocRef.getParentRef() : null);
                         }
                     }
                 }
@@ -208,6 +209,18 @@ public class RecordsManagementContainerType extends    BaseBehaviourBean
      * @param nodeRef	node reference
      */
     protected void setIdenifierProperty(final NodeRef nodeRef)
+    {
+        setIdenifierProperty(nodeRef, null, null);
+    }
+
+    /**
+     * Set the identifier property, when the type and parent of the node are already known
+     *
+     * @param nodeRef   node reference
+     * @param type      type of the node, null if not known
+     * @param parent    primary parent of the node, null if not known
+     */
+    protected void setIdenifierProperty(final NodeRef nodeRef, final QName type, final NodeRef parent)
     {
         AuthenticationUtil.runAsSystem(new RunAsWork<Object>()
         {
@@ -216,7 +229,7 @@ public class RecordsManagementContainerType extends    BaseBehaviourBean
                 if (nodeService.hasAspect(nodeRef, ASPECT_FILE_PLAN_COMPONENT) &&
                     nodeService.getProperty(nodeRef, PROP_IDENTIFIER) == null)
                 {
-                    String id = identifierService.generateIdentifier(nodeRef);
+                    String id = identifierService.generateIdentifier(nodeRef, type, parent);
                     nodeService.setProperty(nodeRef, RecordsManagementModel.PROP_IDENTIFIER, id);
                 }
                 return null;
@@ -27,7 +27,8 @@
 package org.alfresco.module.org_alfresco_module_rm.query;
 
 /**
- * Select parameter for <b>select_GetStringPropertyValuesOfChildren</b>.
+ * Select parameter for <b>select_GetStringPropertyValuesOfChildren</b> and
+ * <b>select_GetStringPropertyValuesOfChildrenLike</b>.
  *
  * @author Ana Manolache
  * @since 2.6
@@ -36,6 +37,9 @@ public class PropertyValuesOfChildrenQueryParams
 {
     private Long parentId;
     private Long propertyQnameId;
+    private String valuePattern;
+    private Long assocTypeQnameId;
+    private Boolean isPrimary;
 
     public Long getParentId()
     {
@@ -57,5 +61,35 @@ public class PropertyValuesOfChildrenQueryParams
         this.propertyQnameId = propertyQnameId;
     }
 
+    public String getValuePattern()
+    {
+        return valuePattern;
+    }
+
+    public void setValuePattern(String valuePattern)
+    {
+        this.valuePattern = valuePattern;
+    }
+
+    public Long getAssocTypeQnameId()
+    {
+        return assocTypeQnameId;
+    }
+
+    public void setAssocTypeQnameId(Long assocTypeQnameId)
+    {
+        this.assocTypeQnameId = assocTypeQnameId;
+    }
+
+    public Boolean getIsPrimary()
+    {
+        return isPrimary;
+    }
+
+    public void setIsPrimary(Boolean isPrimary)
+    {
+        this.isPrimary = isPrimary;
+    }
+
 }
 
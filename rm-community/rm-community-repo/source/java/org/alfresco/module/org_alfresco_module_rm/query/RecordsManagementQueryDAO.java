@@ -27,12 +27,14 @@
 
 package org.alfresco.module.org_alfresco_module_rm.query;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
 import org.alfresco.repo.domain.propval.PropertyStringValueEntity;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
 
 
 /**
@@ -56,14 +58,30 @@ public interface RecordsManagementQueryDAO
     int getCountRmaIdentifier(String identifierValue);
 
     /**
-     * Returns a number of nodeRefs for record folders in the system
-     * that have the property recordSearchHasDispositionSchedule:true
-     * (used for MNT-20864)
-     * @param start long - the first result row to return
-     * @param end long - the last result row to return
-     * @return list of node refs
+     * Returns a page of the record folders that have not yet had their records' schedules updated, ordered by node
+     * id.  Pages are requested by keyset, so ranges of node ids without any such folders cost nothing to skip.
+     *
+     * @param afterNodeId   only folders with a node id greater than this are returned
+     * @param maxResults    maximum number of folders returned
+     * @return list of node id and node reference pairs of the record folders
+     */
+    List<Pair<Long, NodeRef>> getNextRecordFoldersWithSchedules(Long afterNodeId, int maxResults);
+
+    /**
+     * Returns a page of the current (next) disposition actions whose action name is one of those given, that are not
+     * completed and whose events are eligible or whose as of date has passed, ordered by node id.  Pages are
+     * requested by keyset, so the next page starts after the largest node id of the previous one and actions that
+     * complete between pages do not cause other actions to be skipped.
+     * <p>
+     * The as of date may only be compared approximately, so callers check the eligibility of each action returned.
+     *
+     * @param dispositionActions    disposition action names
+     * @param asOf                  date the actions must be eligible at
+     * @param afterNodeId           only actions with a node id greater than this are returned
+     * @param maxResults            maximum number of actions returned
+     * @return list of node id and node reference pairs of the disposition actions
      */
-    List<NodeRef> getRecordFoldersWithSchedules(Long start, Long end);
+    List<Pair<Long, NodeRef>> getNextDispositionActions(List<String> dispositionActions, Date asOf, Long afterNodeId, int maxResults);
 
     /**
      * Returns whether a given node contains children with one of the given values for the given property
@@ -75,6 +93,21 @@ public interface RecordsManagementQueryDAO
      */
     public Set<String> getChildrenStringPropertyValues(NodeRef parent, QName property);
 
+    /**
+     * Returns distinct property values from the primary cm:contains children for the given property, where the value
+     * starts with the given prefix and ends with the given suffix.
+     * <p>
+     * Values are matched ignoring case.  Any SQL wildcards in the prefix or suffix are not escaped, so callers that
+     * need an exact match should check the values returned.
+     *
+     * @param parent         the parent to evaluate
+     * @param property       the QName of the property to evaluate
+     * @param prefix         the start of the values
+     * @param suffix         the end of the values
+     * @return set of distinct property values
+     */
+    Set<String> getChildrenStringPropertyValues(NodeRef parent, QName property, String prefix, String suffix);
+
     /**
      * @param contentUrl the URL of the content url entity
      * @return Set<NodeRef>  a set of nodes that reference the given content url
@@ -30,12 +30,15 @@ package org.alfresco.module.org_alfresco_module_rm.query;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import org.alfresco.model.ContentModel;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.repo.domain.contentdata.ContentUrlEntity;
 import org.alfresco.repo.domain.node.NodeDAO;
@@ -46,6 +49,7 @@ import org.alfresco.repo.version.Version2Model;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ISO8601DateFormat;
 import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -70,9 +74,19 @@ public class RecordsManagementQueryDAOImpl implements RecordsManagementQueryDAO,
      */
     private static final String COUNT_IDENTIFIER = "alfresco.query.rm.select_CountRMIndentifier";
     private static final String GET_CHILDREN_PROPERTY_VALUES = "select_GetStringPropertyValuesOfChildren";
+    private static final String GET_CHILDREN_PROPERTY_VALUES_LIKE = "select_GetStringPropertyValuesOfChildrenLike";
     private static final String SELECT_NODE_IDS_WHICH_REFERENCE_CONTENT_URL = "select_NodeIdsWhichReferenceContentUrl";
-    private static final String SCHEDULED_FOLDERS = "alfresco.query.rm.select_RecordFoldersWithSchedules";
-    private static final String SCHEDULED_FOLDERS_COUNT = "alfresco.query.rm.select_RecordFoldersWithSchedulesCount";
+    private static final String NEXT_DISPOSITION_ACTIONS = "alfresco.query.rm.dialect.select_NextDispositionActions";
+    private static final String NEXT_SCHEDULED_FOLDERS = "alfresco.query.rm.dialect.select_NextRecordFoldersWithSchedules";
+
+    /**
+     * Margin added to the as of date when eligible disposition actions are selected.  Dates are persisted as ISO8601
+     * strings in the time zone of the server that wrote them, so they are only compared to within a day in the query.
+     */
+    private static final long AS_OF_MARGIN = 24L * 60 * 60 * 1000;
+
+    /** Id used for a qname that is not in the database, so that nothing matches it */
+    private static final Long UNKNOWN_QNAME_ID = Long.valueOf(-1);
     private static final String GET_PROP_STRING_VALUE = "alfresco.query.rm.select_PropertyStringValue";
     private static final String UPDATE_PROP_STRING_VALUE = "alfresco.query.rm.update_PropertyStringValue";
 
@@ -170,6 +184,46 @@ public class RecordsManagementQueryDAOImpl implements RecordsManagementQueryDAO,
 
     }
 
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO#getChildrenStringPropertyValues(NodeRef, QName, String, String)
+     */
+    @Override
+    public Set<String> getChildrenStringPropertyValues(NodeRef parent, QName property, String prefix, String suffix)
+    {
+        PropertyValuesOfChildrenQueryParams queryParams = new PropertyValuesOfChildrenQueryParams();
+
+        // Set the parent node id
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(tenantService.getName(parent));
+        if (nodePair == null)
+        {
+            throw new InvalidNodeRefException("The parent node does not exist.", parent);
+        }
+        queryParams.setParentId(nodePair.getFirst());
+
+        // Set the property qname id
+        Pair<Long, QName> pair = qnameDAO.getQName(property);
+        if (pair == null)
+        {
+            return Collections.emptySet();
+        }
+        queryParams.setPropertyQnameId(pair.getFirst());
+
+        // Only the primary children of the parent's folder contents are matched
+        Pair<Long, QName> assocPair = qnameDAO.getQName(ContentModel.ASSOC_CONTAINS);
+        if (assocPair == null)
+        {
+            return Collections.emptySet();
+        }
+        queryParams.setAssocTypeQnameId(assocPair.getFirst());
+        queryParams.setIsPrimary(Boolean.TRUE);
+
+        // Set the lower case value pattern
+        queryParams.setValuePattern((prefix + "%" + suffix).toLowerCase(Locale.ENGLISH));
+
+        // Perform the query
+        return new HashSet<>(template.selectList(GET_CHILDREN_PROPERTY_VALUES_LIKE, queryParams));
+    }
+
     /**
      * Get a set of node reference which reference the provided content URL
      *
@@ -259,33 +313,93 @@ public class RecordsManagementQueryDAOImpl implements RecordsManagementQueryDAO,
     }
 
     /**
-     * @see org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO#getRecordFoldersWithSchedules(Long, Long)
+     * @see org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO#getNextRecordFoldersWithSchedules(Long, int)
      */
     @Override
-    public List<NodeRef> getRecordFoldersWithSchedules(Long start, Long end)
+    public List<Pair<Long, NodeRef>> getNextRecordFoldersWithSchedules(Long afterNodeId, int maxResults)
     {
-        Map<String, Object> params = new HashMap<>(2);
-        params.put("processed", qnameDAO.getQName(ASPECT_DISPOSITION_PROCESSED)
-            .getFirst());
-        params.put("folderQnameId", qnameDAO.getQName(TYPE_RECORD_FOLDER)
-            .getFirst());
-        params.put("start", start);
-        params.put("end", end);
+        Pair<Long, QName> folderPair = qnameDAO.getQName(TYPE_RECORD_FOLDER);
+        if (folderPair == null || maxResults <= 0)
+        {
+            // nothing can match
+            return Collections.emptyList();
+        }
+        // no folder has been processed if the aspect has never been used
+        Pair<Long, QName> processedPair = qnameDAO.getQName(ASPECT_DISPOSITION_PROCESSED);
 
-        List<NodeRefEntity> entities = template.selectList(SCHEDULED_FOLDERS, params);
+        Map<String, Object> params = new HashMap<>(4);
+        params.put("folderQnameId", folderPair.getFirst());
+        params.put("processedQnameId", processedPair == null ? UNKNOWN_QNAME_ID : processedPair.getFirst());
+        params.put("afterNodeId", afterNodeId);
+        params.put("maxResults", Integer.valueOf(maxResults));
 
-        List<NodeRef> results = new ArrayList<>();
+        List<NodeRefEntity> entities = template.selectList(NEXT_SCHEDULED_FOLDERS, params);
 
-        // convert the entities to NodeRefs
+        // convert the entities to node id and NodeRef pairs
+        List<Pair<Long, NodeRef>> results = new ArrayList<>(entities.size());
         for (NodeRefEntity nodeRefEntity : entities)
         {
-            results.add(
-                new NodeRef(nodeRefEntity.getProtocol(), nodeRefEntity.getIdentifier(), nodeRefEntity.getUuid()));
+            results.add(new Pair<>(nodeRefEntity.getNum(),
+                new NodeRef(nodeRefEntity.getProtocol(), nodeRefEntity.getIdentifier(), nodeRefEntity.getUuid())));
         }
 
         return results;
     }
 
+    /**
+     * The as of date is compared in the query to within {@link #AS_OF_MARGIN}, so the actions returned may include
+     * some that only become eligible later that day.
+     *
+     * @see org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO#getNextDispositionActions(List, Date, Long, int)
+     */
+    @Override
+    public List<Pair<Long, NodeRef>> getNextDispositionActions(List<String> dispositionActions, Date asOf, Long afterNodeId, int maxResults)
+    {
+        Pair<Long, QName> typePair = qnameDAO.getQName(TYPE_DISPOSITION_ACTION);
+        Pair<Long, QName> assocPair = qnameDAO.getQName(ASSOC_NEXT_DISPOSITION_ACTION);
+        Pair<Long, QName> actionPair = qnameDAO.getQName(PROP_DISPOSITION_ACTION);
+        if (typePair == null || assocPair == null || actionPair == null || dispositionActions.isEmpty() || maxResults <= 0)
+        {
+            // nothing can match
+            return Collections.emptyList();
+        }
+
+        Map<String, Object> params = new HashMap<>(12);
+        params.put("typeQnameId", typePair.getFirst());
+        params.put("assocQnameId", assocPair.getFirst());
+        params.put("actionQnameId", actionPair.getFirst());
+        params.put("completedAtQnameId", getQNameId(PROP_DISPOSITION_ACTION_COMPLETED_AT));
+        params.put("eventsEligibleQnameId", getQNameId(PROP_DISPOSITION_EVENTS_ELIGIBLE));
+        params.put("asOfQnameId", getQNameId(PROP_DISPOSITION_AS_OF));
+        params.put("eventsEligible", Boolean.TRUE);
+        params.put("asOfLimit", ISO8601DateFormat.format(new Date(asOf.getTime() + AS_OF_MARGIN)));
+        params.put("actions", dispositionActions);
+        params.put("afterNodeId", afterNodeId);
+        params.put("maxResults", Integer.valueOf(maxResults));
+
+        List<NodeRefEntity> entities = template.selectList(NEXT_DISPOSITION_ACTIONS, params);
+
+        // convert the entities to node id and NodeRef pairs
+        List<Pair<Long, NodeRef>> results = new ArrayList<>(entities.size());
+        for (NodeRefEntity nodeRefEntity : entities)
+        {
+            results.add(new Pair<>(nodeRefEntity.getNum(),
+                new NodeRef(nodeRefEntity.getProtocol(), nodeRefEntity.getIdentifier(), nodeRefEntity.getUuid())));
+        }
+
+        return results;
+    }
+
+    /**
+     * @param qname     qualified name
+     * @return Long     id of the qualified name, {@link #UNKNOWN_QNAME_ID} if it is not in the database
+     */
+    private Long getQNameId(QName qname)
+    {
+        Pair<Long, QName> pair = qnameDAO.getQName(qname);
+        return pair == null ? UNKNOWN_QNAME_ID : pair.getFirst();
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO#getPropertyStringValueEntity(String stringValue)
      */
@@ -39,6 +39,8 @@ import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.module.org_alfresco_module_rm.bootstrap.BootstrapImporterModuleComponent;
 import org.alfresco.module.org_alfresco_module_rm.capability.Capability;
 import org.alfresco.module.org_alfresco_module_rm.capability.CapabilityService;
+import org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCache;
+import org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCache;
 import org.alfresco.module.org_alfresco_module_rm.capability.RMPermissionModel;
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
@@ -102,6 +104,12 @@ public class FilePlanRoleServiceImpl implements FilePlanRoleService,
 
     private BootstrapImporterModuleComponent bootstrapImporterModule;
 
+    /** Capability evaluation cache */
+    private CapabilityEvaluationCache capabilityEvaluationCache;
+
+    /** Read decision cache */
+    private RMReadDecisionCache readDecisionCache;
+
     /** Records management role zone */
     public static final String RM_ROLE_ZONE_PREFIX = "rmRoleZone";
 
@@ -157,6 +165,45 @@ public class FilePlanRoleServiceImpl implements FilePlanRoleService,
         this.bootstrapImporterModule = bootstrapImporterModuleComponent;
     }
 
+    /**
+     * @param capabilityEvaluationCache capability evaluation cache, cleared whenever a role changes
+     */
+    public void setCapabilityEvaluationCache(CapabilityEvaluationCache capabilityEvaluationCache)
+    {
+        this.capabilityEvaluationCache = capabilityEvaluationCache;
+    }
+
+    /**
+     * Clears any capability results cached before a role changed.
+     */
+    private void clearCapabilityEvaluationCache()
+    {
+        if (capabilityEvaluationCache != null)
+        {
+            capabilityEvaluationCache.clear();
+        }
+    }
+
+    /**
+     * @param readDecisionCache read decision cache, cleared whenever the capabilities of a role change
+     */
+    public void setReadDecisionCache(RMReadDecisionCache readDecisionCache)
+    {
+        this.readDecisionCache = readDecisionCache;
+    }
+
+    /**
+     * Clears any read decisions cached before the capabilities of a role changed.  Role assignments change the
+     * authorities of the users concerned, and so the keys of their read decisions, so they needn't clear the cache.
+     */
+    private void invalidateReadDecisions()
+    {
+        if (readDecisionCache != null)
+        {
+            readDecisionCache.invalidate();
+        }
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.role.FilePlanRoleService#setupFilePlanRoles(NodeRef)
      */
@@ -697,6 +744,8 @@ public class FilePlanRoleServiceImpl implements FilePlanRoleService,
                 {
                     permissionService.setPermission(rmRootNode, roleAuthority, capability.getName(), true);
                 }
+                clearCapabilityEvaluationCache();
+                invalidateReadDecisions();
 
                 return new Role(role, roleDisplayLabel, capabilities, roleAuthority);
 
@@ -727,6 +776,8 @@ public class FilePlanRoleServiceImpl implements FilePlanRoleService,
             {
                 String roleAuthority = authorityService.getName(AuthorityType.GROUP, getFullRoleName(role, rmRootNode));
                 authorityService.deleteAuthority(roleAuthority);
+                clearCapabilityEvaluationCache();
+                invalidateReadDecisions();
                 return null;
 
             }
@@ -818,6 +869,7 @@ public class FilePlanRoleServiceImpl implements FilePlanRoleService,
                 	{
                     	// ignore, because the work has already been performed
                 	}
+                    clearCapabilityEvaluationCache();
                 }
                 return null;
 
@@ -837,6 +889,7 @@ public class FilePlanRoleServiceImpl implements FilePlanRoleService,
             {
                 String roleAuthority = authorityService.getName(AuthorityType.GROUP, getFullRoleName(role, filePlan));
                 authorityService.removeAuthority(roleAuthority, authorityName);
+                clearCapabilityEvaluationCache();
                 return null;
 
             }
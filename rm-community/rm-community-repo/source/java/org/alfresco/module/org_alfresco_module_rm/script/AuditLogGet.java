@@ -34,6 +34,7 @@ import org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditQu
 import org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditService.ReportFormat;
 import org.alfresco.module.org_alfresco_module_rm.capability.CapabilityService;
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.web.scripts.content.ContentStreamer;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.security.AccessStatus;
@@ -56,8 +57,11 @@ public class AuditLogGet extends BaseAuditRetrievalWebScript
     private static Log logger = LogFactory.getLog(AuditLogGet.class);
 
     private static final String PARAM_EXPORT = "export";
+    private static final String PARAM_STREAM = "stream";
+    private static final String PARAM_CONTINUATION = "continuation";
     private static final String ACCESS_AUDIT_CAPABILITY = "AccessAudit";
     private static final int DEFAULT_VIEW_LOG_MAX_SIZE = 100;
+    private static final int DEFAULT_EXPORT_PAGE_SIZE = 10000;
 
     /** Content Streamer */
     protected ContentStreamer contentStreamer;
@@ -71,6 +75,9 @@ public class AuditLogGet extends BaseAuditRetrievalWebScript
     /** Maximum number of entries to be displayed in View Audit Log */
     private int viewLogMaxSize;
 
+    /** Maximum number of entries to be streamed in a single request */
+    private int exportPageSize = DEFAULT_EXPORT_PAGE_SIZE;
+
     /**
      * @param contentStreamer
      */
@@ -106,6 +113,15 @@ public class AuditLogGet extends BaseAuditRetrievalWebScript
         this.viewLogMaxSize = (viewLogMaxSize <= 0 ? DEFAULT_VIEW_LOG_MAX_SIZE: viewLogMaxSize);
     }
 
+    /**
+     *
+     * @param exportPageSize Maximum number of entries to be streamed in a single request
+     */
+    public void setExportPageSize(int exportPageSize)
+    {
+        this.exportPageSize = (exportPageSize <= 0 ? DEFAULT_EXPORT_PAGE_SIZE : exportPageSize);
+    }
+
     @Override
     public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
@@ -121,6 +137,12 @@ public class AuditLogGet extends BaseAuditRetrievalWebScript
                 throw new WebScriptException(Status.STATUS_FORBIDDEN, "Access denied because the user does not have the Access Audit capability");
             }
             
+            if (Boolean.parseBoolean(req.getParameter(PARAM_STREAM)))
+            {
+                streamAuditTrail(req, res, queryParams, reportFormat);
+                return;
+            }
+
             // limit the number of audit log entries to be returned
             if (queryParams.getMaxEntries() <= 0 || queryParams.getMaxEntries() > viewLogMaxSize)
             {
@@ -171,6 +193,49 @@ public class AuditLogGet extends BaseAuditRetrievalWebScript
         }
     }
 
+    /**
+     * Stream the audit trail straight to the response, limited to the export page size.
+     *
+     * @param req           web script request
+     * @param res           web script response
+     * @param queryParams   audit query parameters
+     * @param reportFormat  report format
+     * @throws IOException
+     */
+    private void streamAuditTrail(WebScriptRequest req, WebScriptResponse res,
+                RecordsManagementAuditQueryParameters queryParams, ReportFormat reportFormat) throws IOException
+    {
+        // limit the number of audit log entries to be streamed
+        if (queryParams.getMaxEntries() <= 0 || queryParams.getMaxEntries() > exportPageSize)
+        {
+            queryParams.setMaxEntries(exportPageSize);
+        }
+
+        String extension = (reportFormat == ReportFormat.HTML ? "html" : "json");
+        res.setContentType(reportFormat == ReportFormat.HTML ? MimetypeMap.MIMETYPE_HTML : MimetypeMap.MIMETYPE_JSON);
+        res.setContentEncoding("UTF-8");
+        if (Boolean.parseBoolean(req.getParameter(PARAM_EXPORT)))
+        {
+            res.setHeader("Content-Disposition", "attachment; filename=\"audit_trail." + extension + "\"");
+        }
+
+        String continuationToken;
+        try
+        {
+            continuationToken = rmAuditService.writeAuditTrail(queryParams, req.getParameter(PARAM_CONTINUATION),
+                        res.getWriter(), reportFormat);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new WebScriptException(Status.STATUS_BAD_REQUEST, e.getMessage(), e);
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Streamed audit trail, continuation token: " + continuationToken);
+        }
+    }
+
     private boolean userCanAccessAudit(RecordsManagementAuditQueryParameters queryParams) 
     {
         NodeRef targetNode = queryParams.getNodeRef();
@@ -155,6 +155,14 @@ public class RelationshipsGet extends AbstractRmWebScript
     {
         List<String> result = new ArrayList<>();
 
+        // load the related nodes in one go before converting them one at a time
+        List<NodeRef> nodes = new ArrayList<>(relationships.size());
+        for (Relationship relationship : relationships)
+        {
+            nodes.add(RelationshipEndPoint.SOURCE.equals(relationshipEndPoint) ? relationship.getSource() : relationship.getTarget());
+        }
+        getJsonConversionComponent().prefetch(nodes);
+
         for (Relationship relationship : relationships)
         {
             String uniqueName = relationship.getUniqueName();
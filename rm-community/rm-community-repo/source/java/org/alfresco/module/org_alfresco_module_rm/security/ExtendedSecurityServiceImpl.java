@@ -29,6 +29,7 @@ package org.alfresco.module.org_alfresco_module_rm.security;
 
 import static org.alfresco.service.cmr.security.PermissionService.GROUP_PREFIX;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -36,13 +37,16 @@ import java.util.Set;
 
 import org.alfresco.model.RenditionModel;
 import org.alfresco.module.org_alfresco_module_rm.capability.RMPermissionModel;
+import org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCache;
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.role.FilePlanRoleService;
 import org.alfresco.module.org_alfresco_module_rm.util.ServiceBaseImpl;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.security.authority.RMAuthority;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.DuplicateChildNodeNameException;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -54,6 +58,7 @@ import org.alfresco.service.namespace.RegexQNamePattern;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.Pair;
 import org.alfresco.util.ParameterCheck;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.extensions.webscripts.ui.common.StringUtils;
@@ -79,6 +84,9 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
     
     /** max page size for authority query */
     private static final int MAX_ITEMS = 50;
+
+    /** attribute context of the IPR group index */
+    private static final String IPR_GROUP_INDEX = "rm.iprGroupIndex";
     
     /** File plan service */
     private FilePlanService filePlanService;
@@ -95,6 +103,16 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
     /** transaction service */
     private TransactionService transactionService;
 
+    /** attribute service */
+    private AttributeService attributeService;
+
+    /** IPR group cache, keyed by IPR group index key */
+    private SimpleCache<String, String> iprGroupCache;
+
+
+    /** capability evaluation cache, invalidated for a node whenever its extended security changes */
+    private CapabilityEvaluationCache capabilityEvaluationCache;
+
     /**
      * @param filePlanService   file plan service
      */
@@ -135,6 +153,30 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
         this.transactionService = transactionService;
     }
 
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param iprGroupCache IPR group cache
+     */
+    public void setIprGroupCache(SimpleCache<String, String> iprGroupCache)
+    {
+        this.iprGroupCache = iprGroupCache;
+    }
+
+    /**
+     * @param capabilityEvaluationCache capability evaluation cache
+     */
+    public void setCapabilityEvaluationCache(CapabilityEvaluationCache capabilityEvaluationCache)
+    {
+        this.capabilityEvaluationCache = capabilityEvaluationCache;
+    }
+
     /**
      * Application context refresh event handler
      */
@@ -277,6 +319,8 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
                 assignIPRGroupsToNode(iprGroups, child);
             }
         }
+
+        invalidateCapabilityEvaluations(nodeRef);
     }
 
     /**
@@ -342,6 +386,9 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
 
     /**
      * Create or find an IPR group based on the provided prefix and authorities.
+     * <p>
+     * The IPR group index is consulted first.  Only when the index has no entry for the authorities, or the
+     * indexed group no longer exactly matches them, are the groups with a matching name prefix inspected.
      *
      * @param groupPrefix   group prefix
      * @param authorities   authorities
@@ -349,7 +396,20 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
      */
     private String createOrFindIPRGroup(String groupPrefix, Set<String> authorities)
     {
-        String group = null;
+        String indexKey = getIPRGroupIndexKey(groupPrefix, authorities);
+
+        // look the group up in the index
+        String group = getIndexedIPRGroup(indexKey);
+        if (group != null)
+        {
+            if (authorityService.authorityExists(group) && isIPRGroupTrueMatch(group, authorities))
+            {
+                return group;
+            }
+
+            // the indexed group is stale
+            group = null;
+        }
 
         // find group or determine what the next index is if no group exists or there is a clash
         Pair<String, Integer> groupResult = findIPRGroup(groupPrefix, authorities);
@@ -363,9 +423,68 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
             group = groupResult.getFirst();
         }
 
+        // record the group in the index
+        indexIPRGroup(indexKey, group);
+
+        return group;
+    }
+
+    /**
+     * Get the IPR group index key for a set of authorities.
+     * <p>
+     * The key is made from the group prefix and a digest of the sorted authorities, so it does not depend on the
+     * iteration order of the set.
+     * <p>
+     * 'package' scope to help testing.
+     *
+     * @param groupPrefix   group prefix
+     * @param authorities   authorities
+     * @return String       IPR group index key
+     */
+    /*package*/ String getIPRGroupIndexKey(String groupPrefix, Set<String> authorities)
+    {
+        List<String> sorted = new ArrayList<>();
+        if (authorities != null)
+        {
+            sorted.addAll(authorities);
+            Collections.sort(sorted);
+        }
+
+        return groupPrefix + DigestUtils.sha256Hex(StringUtils.join(sorted.toArray(), "\n"));
+    }
+
+    /**
+     * Get the IPR group recorded in the index for the given key.
+     *
+     * @param indexKey  IPR group index key
+     * @return String   full group name, null if none indexed
+     */
+    private String getIndexedIPRGroup(String indexKey)
+    {
+        String group = iprGroupCache.get(indexKey);
+        if (group == null)
+        {
+            group = (String) attributeService.getAttribute(IPR_GROUP_INDEX, indexKey);
+            if (group != null)
+            {
+                iprGroupCache.put(indexKey, group);
+            }
+        }
         return group;
     }
 
+    /**
+     * Record an IPR group in the index.
+     *
+     * @param indexKey  IPR group index key
+     * @param group     full group name
+     */
+    private void indexIPRGroup(String indexKey, String group)
+    {
+        attributeService.setAttribute(group, IPR_GROUP_INDEX, indexKey);
+        iprGroupCache.put(indexKey, group);
+    }
+
     /**
      * Given a group name prefix and the authorities, finds the exact match existing group.
      * <p>
@@ -586,6 +705,22 @@ public class ExtendedSecurityServiceImpl extends ServiceBaseImpl
                     clearPermissions(child, iprGroups);
                 }
             }
+
+            invalidateCapabilityEvaluations(nodeRef);
+        }
+    }
+
+    /**
+     * Invalidates the cached capability evaluations of a node and the nodes beneath it, since its extended security
+     * has changed.
+     *
+     * @param nodeRef   node reference
+     */
+    private void invalidateCapabilityEvaluations(NodeRef nodeRef)
+    {
+        if (capabilityEvaluationCache != null)
+        {
+            capabilityEvaluationCache.invalidate(nodeRef);
         }
     }
 
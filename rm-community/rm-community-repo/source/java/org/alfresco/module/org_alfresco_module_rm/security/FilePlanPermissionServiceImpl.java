@@ -46,6 +46,8 @@ import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditService;
 import org.alfresco.module.org_alfresco_module_rm.audit.event.AuditEvent;
 import org.alfresco.module.org_alfresco_module_rm.capability.RMPermissionModel;
+import org.alfresco.module.org_alfresco_module_rm.capability.RMReadDecisionCache;
+import org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCache;
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.module.org_alfresco_module_rm.role.FilePlanRoleService;
 import org.alfresco.module.org_alfresco_module_rm.util.ServiceBaseImpl;
@@ -108,6 +110,12 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
     /** The RM audit service. */
     private RecordsManagementAuditService recordsManagementAuditService;
 
+    /** Read decision cache, cleared whenever permissions change */
+    private RMReadDecisionCache readDecisionCache;
+
+    /** Capability evaluation cache, invalidated for a node whenever its permissions change */
+    private CapabilityEvaluationCache capabilityEvaluationCache;
+
     /** Logger */
     private static final Log LOGGER = LogFactory.getLog(FilePlanPermissionServiceImpl.class);
 
@@ -254,6 +262,47 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
         this.filePlanService = filePlanService;
     }
 
+    /**
+     * @param readDecisionCache read decision cache
+     */
+    public void setReadDecisionCache(RMReadDecisionCache readDecisionCache)
+    {
+        this.readDecisionCache = readDecisionCache;
+    }
+
+    /**
+     * Clears the cached read decisions, since permissions have changed.
+     */
+    private void invalidateReadDecisions()
+    {
+        if (readDecisionCache != null)
+        {
+            readDecisionCache.invalidate();
+        }
+    }
+
+    /**
+     * @param capabilityEvaluationCache capability evaluation cache
+     */
+    public void setCapabilityEvaluationCache(CapabilityEvaluationCache capabilityEvaluationCache)
+    {
+        this.capabilityEvaluationCache = capabilityEvaluationCache;
+    }
+
+    /**
+     * Invalidates the cached capability evaluations of a node and the nodes beneath it, since its permissions
+     * have changed.
+     *
+     * @param nodeRef   node reference
+     */
+    private void invalidateCapabilityEvaluations(NodeRef nodeRef)
+    {
+        if (capabilityEvaluationCache != null)
+        {
+            capabilityEvaluationCache.invalidate(nodeRef);
+        }
+    }
+
     /**
      * Set the RM audit service.
      *
@@ -421,6 +470,7 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
                     boolean isParentNodeFilePlan = isRecordCategory(nodeRef) && isFilePlan(parent);
                     boolean inheritanceAllowed = isInheritanceAllowed(nodeRef, isParentNodeFilePlan);
                     getPermissionService().setInheritParentPermissions(nodeRef, inheritanceAllowed);
+                    invalidateCapabilityEvaluations(nodeRef);
 
                     Set<AccessPermission> keepPerms = new HashSet<>(5);
                     Set<AccessPermission> origionalPerms= getPermissionService().getAllSetPermissions(nodeRef);
@@ -580,6 +630,8 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
                     }
 
                     permissionService.setInheritParentPermissions(record, inheritParentPermissions);
+                    invalidateReadDecisions();
+                    invalidateCapabilityEvaluations(record);
                 }
 
                 return null;
@@ -611,6 +663,8 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
                     // Add an entry in the audit log.
                     recordsManagementAuditService.auditOrUpdateEvent(nodeRef, AUDIT_SET_PERMISSION, oldPermission,
                                 new HashMap<>(singletonMap(auditProperty, (Serializable) true)), true);
+                    invalidateReadDecisions();
+                    invalidateCapabilityEvaluations(nodeRef);
                 }
                 else
                 {
@@ -670,6 +724,8 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
                     // Add an entry in the audit log.
                     recordsManagementAuditService.auditOrUpdateEvent(nodeRef, AUDIT_SET_PERMISSION, oldPermission,
                                 new HashMap<>(singletonMap(auditProperty, (Serializable) false)), true);
+                    invalidateReadDecisions();
+                    invalidateCapabilityEvaluations(nodeRef);
                 }
                 else
                 {
@@ -710,6 +766,8 @@ public class FilePlanPermissionServiceImpl extends    ServiceBaseImpl
         if (isFilePlan(newChildAssocRef.getParentRef()))
         {
             permissionService.setInheritParentPermissions(oldChildAssocRef.getChildRef(), false);
+            invalidateReadDecisions();
+            invalidateCapabilityEvaluations(oldChildAssocRef.getChildRef());
         }
     }
 }
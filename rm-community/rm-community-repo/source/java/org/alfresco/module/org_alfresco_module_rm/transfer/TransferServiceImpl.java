@@ -30,8 +30,10 @@ package org.alfresco.module.org_alfresco_module_rm.transfer;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
@@ -47,6 +49,7 @@ import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
 import org.alfresco.module.org_alfresco_module_rm.recordfolder.RecordFolderService;
 import org.alfresco.module.org_alfresco_module_rm.util.ServiceBaseImpl;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -71,6 +74,9 @@ public class TransferServiceImpl extends ServiceBaseImpl
     /** Transfer node reference key */
     public static final String KEY_TRANSFER_NODEREF = "transferNodeRef";
 
+    /** Transfer state key */
+    private static final String KEY_TRANSFER_STATE = "transferState";
+
     /** I18N */
     private static final String MSG_NODE_ALREADY_TRANSFER = "rm.action.node-already-transfer";
 
@@ -93,6 +99,9 @@ public class TransferServiceImpl extends ServiceBaseImpl
 
     protected TransferType transferType;
 
+    /** Node bulk loader */
+    private NodeBulkLoader nodeBulkLoader;
+
     /**
      * @param filePlanService file plan service
      */
@@ -143,6 +152,14 @@ public class TransferServiceImpl extends ServiceBaseImpl
         this.transferType = transferType;
     }
 
+    /**
+     * @param nodeBulkLoader node bulk loader
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
     /**
      * @see org.alfresco.module.org_alfresco_module_rm.transfer.TransferService#transfer(NodeRef, boolean)
      */
@@ -151,125 +168,171 @@ public class TransferServiceImpl extends ServiceBaseImpl
     {
         ParameterCheck.mandatory("nodeRef", nodeRef);
 
-        // Get the root rm node
-        NodeRef root = filePlanService.getFilePlan(nodeRef);
-
         // Get the transfer object
         NodeRef transferNodeRef = (NodeRef)AlfrescoTransactionSupport.getResource(KEY_TRANSFER_NODEREF);
         if (transferNodeRef == null)
         {
-            // Calculate a transfer name
-            QName nodeDbid = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "node-dbid");
-            Long dbId = (Long) nodeService.getProperty(nodeRef, nodeDbid);
-            String transferName = StringUtils.leftPad(dbId.toString(), 10, "0");
-
-            // Create the transfer object
-            Map<QName, Serializable> transferProps = new HashMap<>(2);
-            transferProps.put(ContentModel.PROP_NAME, transferName);
-            transferProps.put(PROP_TRANSFER_ACCESSION_INDICATOR, isAccession);
-
-            // setup location property from disposition schedule
-            DispositionAction da = dispositionService.getNextDispositionAction(nodeRef);
-            if (da != null)
+            transferNodeRef = createTransfer(nodeRef, isAccession);
+
+            // Bind the transfer node reference to the transaction
+            AlfrescoTransactionSupport.bindResource(KEY_TRANSFER_NODEREF, transferNodeRef);
+        }
+        TransferState state = getTransferState(transferNodeRef);
+
+        // ensure this node is not already in the process of being transferred
+        if (!state.transferred.add(nodeRef))
+        {
+            throw new AlfrescoRuntimeException(I18NUtil.getMessage(MSG_NODE_ALREADY_TRANSFER, nodeRef.toString()));
+        }
+
+        // Link the record to the transfer object
+        boolean pdf = state.pdf;
+        transferType.disable();
+        try
+        {
+            nodeService.addChild(transferNodeRef,
+                        nodeRef,
+                        ASSOC_TRANSFERRED,
+                        ASSOC_TRANSFERRED);
+
+            // Set the transferring indicator aspect
+            nodeService.addAspect(nodeRef, ASPECT_TRANSFERRING, null);
+            if (isRecordFolder(nodeRef))
             {
-                DispositionActionDefinition actionDef = da.getDispositionActionDefinition();
-                if (actionDef != null)
+                // add the transferring indicator aspect to all the child records
+                List<NodeRef> records = recordService.getRecords(nodeRef);
+                if (nodeBulkLoader != null)
                 {
-                    transferProps.put(PROP_TRANSFER_LOCATION, actionDef.getLocation());
+                    nodeBulkLoader.cacheNodes(records);
+                }
+                for (NodeRef record : records)
+                {
+                    nodeService.addAspect(record, ASPECT_TRANSFERRING, null);
+                    pdf = pdf || isPDF(record);
                 }
             }
-
-            NodeRef transferContainer = filePlanService.getTransferContainer(root);
-
-            transferContainerType.disable();
-            transferType.disable();
-            try
+            else
             {
-                transferNodeRef = nodeService.createNode(transferContainer,
-                                                          ContentModel.ASSOC_CONTAINS,
-                                                          QName.createQName(RM_URI, transferName),
-                                                          TYPE_TRANSFER,
-                                                          transferProps).getChildRef();
-
+                pdf = pdf || isPDF(nodeRef);
             }
-            finally
+
+            // Set PDF indicator flag, only once for the transfer
+            if (pdf && !state.pdf)
             {
-                transferContainerType.enable();
-                transferType.enable();
+                nodeService.setProperty(transferNodeRef, PROP_TRANSFER_PDF_INDICATOR, true);
+                state.pdf = true;
             }
-            // Bind the hold node reference to the transaction
-            AlfrescoTransactionSupport.bindResource(KEY_TRANSFER_NODEREF, transferNodeRef);
         }
-        else
+        finally
         {
-            // ensure this node has not already in the process of being transferred
-            List<ChildAssociationRef> transferredAlready = nodeService.getChildAssocs(transferNodeRef, ASSOC_TRANSFERRED, ASSOC_TRANSFERRED);
-            for(ChildAssociationRef car : transferredAlready)
-            {
-                if(car.getChildRef().equals(nodeRef))
-                {
-                    throw new AlfrescoRuntimeException(I18NUtil.getMessage(MSG_NODE_ALREADY_TRANSFER, nodeRef.toString()));
+            transferType.enable();
+        }
 
-                }
+        return transferNodeRef;
+    }
+
+    /**
+     * Create the transfer object, named and located after the given disposition lifecycle node.
+     *
+     * @param nodeRef       disposition lifecycle node
+     * @param isAccession   Indicates whether this transfer is an accession or not
+     * @return transfer node reference
+     */
+    private NodeRef createTransfer(NodeRef nodeRef, boolean isAccession)
+    {
+        // Get the root rm node
+        NodeRef root = filePlanService.getFilePlan(nodeRef);
+
+        // Calculate a transfer name
+        QName nodeDbid = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "node-dbid");
+        Long dbId = (Long) nodeService.getProperty(nodeRef, nodeDbid);
+        String transferName = StringUtils.leftPad(dbId.toString(), 10, "0");
+
+        // Create the transfer object
+        Map<QName, Serializable> transferProps = new HashMap<>(2);
+        transferProps.put(ContentModel.PROP_NAME, transferName);
+        transferProps.put(PROP_TRANSFER_ACCESSION_INDICATOR, isAccession);
+
+        // setup location property from disposition schedule
+        DispositionAction da = dispositionService.getNextDispositionAction(nodeRef);
+        if (da != null)
+        {
+            DispositionActionDefinition actionDef = da.getDispositionActionDefinition();
+            if (actionDef != null)
+            {
+                transferProps.put(PROP_TRANSFER_LOCATION, actionDef.getLocation());
             }
         }
 
-        // Link the record to the trasnfer object
+        NodeRef transferContainer = filePlanService.getTransferContainer(root);
+
+        transferContainerType.disable();
         transferType.disable();
         try
         {
-            nodeService.addChild(transferNodeRef,
-                        nodeRef,
-                        ASSOC_TRANSFERRED,
-                        ASSOC_TRANSFERRED);
-            // Set PDF indicator flag
-            setPDFIndicationFlag(transferNodeRef, nodeRef);
+            return nodeService.createNode(transferContainer,
+                                          ContentModel.ASSOC_CONTAINS,
+                                          QName.createQName(RM_URI, transferName),
+                                          TYPE_TRANSFER,
+                                          transferProps).getChildRef();
+
         }
         finally
         {
+            transferContainerType.enable();
             transferType.enable();
         }
+    }
 
-        // Set the transferring indicator aspect
-        nodeService.addAspect(nodeRef, ASPECT_TRANSFERRING, null);
-        if (isRecordFolder(nodeRef))
+    /**
+     * Get the state of the given transfer for this transaction, reading the nodes already
+     * linked to it the first time the transfer is seen.
+     *
+     * @param transferNodeRef   transfer node reference
+     * @return transfer state
+     */
+    private TransferState getTransferState(NodeRef transferNodeRef)
+    {
+        TransferState state = (TransferState)AlfrescoTransactionSupport.getResource(KEY_TRANSFER_STATE);
+        if (state == null || !state.transferNodeRef.equals(transferNodeRef))
         {
-            // add the transferring indicator aspect to all the child records
-            for (NodeRef record : recordService.getRecords(nodeRef))
+            state = new TransferState(transferNodeRef);
+            List<ChildAssociationRef> transferredAlready = nodeService.getChildAssocs(transferNodeRef, ASSOC_TRANSFERRED, ASSOC_TRANSFERRED);
+            for (ChildAssociationRef car : transferredAlready)
             {
-                nodeService.addAspect(record, ASPECT_TRANSFERRING, null);
+                state.transferred.add(car.getChildRef());
             }
+            state.pdf = Boolean.TRUE.equals(nodeService.getProperty(transferNodeRef, PROP_TRANSFER_PDF_INDICATOR));
+
+            AlfrescoTransactionSupport.bindResource(KEY_TRANSFER_STATE, state);
         }
+        return state;
+    }
 
-        return transferNodeRef;
+    /**
+     * @param nodeRef   node reference
+     * @return true if the content of the node is a PDF, false otherwise
+     */
+    private boolean isPDF(NodeRef nodeRef)
+    {
+        ContentData contentData = (ContentData)nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT);
+        return contentData != null && MimetypeMap.MIMETYPE_PDF.equals(contentData.getMimetype());
     }
 
     /**
-     *
-     * @param transferNodeRef
-     * @param dispositionLifeCycleNodeRef
+     * Nodes linked to a transfer, and whether it holds a PDF, within the current transaction.
      */
-   private void setPDFIndicationFlag(NodeRef transferNodeRef, NodeRef dispositionLifeCycleNodeRef)
-   {
-      if (recordFolderService.isRecordFolder(dispositionLifeCycleNodeRef))
-      {
-          List<NodeRef> records = recordService.getRecords(dispositionLifeCycleNodeRef);
-          for (NodeRef record : records)
-          {
-              setPDFIndicationFlag(transferNodeRef, record);
-          }
-      }
-      else
-      {
-          ContentData contentData = (ContentData)nodeService.getProperty(dispositionLifeCycleNodeRef, ContentModel.PROP_CONTENT);
-          if (contentData != null &&
-              MimetypeMap.MIMETYPE_PDF.equals(contentData.getMimetype()))
-          {
-              // Set the property indicator
-              nodeService.setProperty(transferNodeRef, PROP_TRANSFER_PDF_INDICATOR, true);
-          }
-      }
-   }
+    private static final class TransferState
+    {
+        private final NodeRef transferNodeRef;
+        private final Set<NodeRef> transferred = new HashSet<>();
+        private boolean pdf;
+
+        private TransferState(NodeRef transferNodeRef)
+        {
+            this.transferNodeRef = transferNodeRef;
+        }
+    }
 
    /**
     * @see org.alfresco.module.org_alfresco_module_rm.transfer.TransferService#completeTransfer(NodeRef)
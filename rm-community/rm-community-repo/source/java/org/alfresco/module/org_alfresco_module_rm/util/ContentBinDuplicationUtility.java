@@ -28,20 +28,33 @@ package org.alfresco.module.org_alfresco_module_rm.util;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utility class to duplicate the content of a node without triggering the audit or versioning behaviours
+ * <p>
+ * Content held in a file is duplicated with a channel transfer, which lets the operating system copy the bytes
+ * without passing them through the JVM, and other content is streamed.  The duplicate is always a separate file,
+ * rather than a link or a deferred copy, so that destroying and cleansing the content of a record can never affect
+ * the node it was duplicated from.
+ *
  * @author Ross Gale
  * @since 2.7.2
  */
-public class ContentBinDuplicationUtility extends ServiceBaseImpl
+public class ContentBinDuplicationUtility extends ServiceBaseImpl implements ContentBinDuplicationUtilityMBean
 {
     /**
      * Behaviour filter
@@ -56,6 +69,14 @@ public class ContentBinDuplicationUtility extends ServiceBaseImpl
     /** Records Management Query DAO */
     private RecordsManagementQueryDAO recordsManagementQueryDAO;
 
+    /** Indicates whether content held in a file is duplicated with a channel transfer */
+    private boolean channelTransferEnabled = true;
+
+    /** Statistics */
+    private final AtomicLong duplications = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private final AtomicLong bytesStreamed = new AtomicLong();
+
     /**
      * Setter for behaviour filter
      * @param behaviourFilter BehaviourFilter
@@ -84,6 +105,15 @@ public class ContentBinDuplicationUtility extends ServiceBaseImpl
         this.recordsManagementQueryDAO = recordsManagementQueryDAO;
     }
 
+    /**
+     * @param channelTransferEnabled true if content held in a file is duplicated with a channel transfer, false if
+     *                               all content is streamed
+     */
+    public void setChannelTransferEnabled(boolean channelTransferEnabled)
+    {
+        this.channelTransferEnabled = channelTransferEnabled;
+    }
+
     /**
      * Determines whether the bin file for a given node has at least one other reference to it
      * Will return true if the binary exists and is referenced by at least one other node
@@ -140,7 +170,111 @@ public class ContentBinDuplicationUtility extends ServiceBaseImpl
         if (reader != null)
         {
             ContentWriter writer = contentService.getWriter(nodeRef, ContentModel.PROP_CONTENT, true);
-            writer.putContent(reader);
+            if (channelTransferEnabled && reader instanceof FileContentReader)
+            {
+                transferContent((FileContentReader) reader, writer);
+            }
+            else
+            {
+                writer.putContent(reader);
+                bytesStreamed.addAndGet(writer.getSize());
+            }
+            duplications.incrementAndGet();
         }
     }
+
+    /**
+     * Helper to duplicate content held in a file with a channel transfer.
+     * <p>
+     * The content is written through the writer's channel, so the writer's listeners still update the node when the
+     * channel is closed.
+     *
+     * @param reader    reader of the content file
+     * @param writer    writer of the duplicate
+     */
+    private void transferContent(FileContentReader reader, ContentWriter writer)
+    {
+        try (FileChannel source = FileChannel.open(reader.getFile().toPath(), StandardOpenOption.READ);
+             WritableByteChannel target = writer.getWritableChannel())
+        {
+            long size = source.size();
+            long position = 0;
+            while (position < size)
+            {
+                long transferred;
+                if (target instanceof FileChannel)
+                {
+                    transferred = ((FileChannel) target).transferFrom(source, position, size - position);
+                }
+                else
+                {
+                    transferred = source.transferTo(position, size - position, target);
+                }
+
+                // a transfer that makes no progress means the source has shrunk or the target won't take any more
+                if (transferred <= 0)
+                {
+                    throw new ContentIOException("Failed to duplicate content, because the transfer stopped at " +
+                                position + " of " + size + " bytes: \n" +
+                                "   reader: " + reader + "\n" +
+                                "   writer: " + writer);
+                }
+                position += transferred;
+            }
+            bytesTransferred.addAndGet(size);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to duplicate content: \n" +
+                        "   reader: " + reader + "\n" +
+                        "   writer: " + writer, e);
+        }
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.util.ContentBinDuplicationUtilityMBean#isChannelTransferEnabled()
+     */
+    @Override
+    public boolean isChannelTransferEnabled()
+    {
+        return channelTransferEnabled;
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.util.ContentBinDuplicationUtilityMBean#getDuplications()
+     */
+    @Override
+    public long getDuplications()
+    {
+        return duplications.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.util.ContentBinDuplicationUtilityMBean#getBytesTransferred()
+     */
+    @Override
+    public long getBytesTransferred()
+    {
+        return bytesTransferred.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.util.ContentBinDuplicationUtilityMBean#getBytesStreamed()
+     */
+    @Override
+    public long getBytesStreamed()
+    {
+        return bytesStreamed.get();
+    }
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.util.ContentBinDuplicationUtilityMBean#resetStatistics()
+     */
+    @Override
+    public void resetStatistics()
+    {
+        duplications.set(0);
+        bytesTransferred.set(0);
+        bytesStreamed.set(0);
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.util;
+
+/**
+ * Management interface of the content bin duplication utility.
+ *
+ * @since 3.4
+ */
+public interface ContentBinDuplicationUtilityMBean
+{
+    /**
+     * @return boolean  true if content held in a file is duplicated with a channel transfer, false otherwise
+     */
+    boolean isChannelTransferEnabled();
+
+    /**
+     * @return long number of content bins duplicated
+     */
+    long getDuplications();
+
+    /**
+     * @return long number of bytes duplicated with a channel transfer
+     */
+    long getBytesTransferred();
+
+    /**
+     * @return long number of bytes duplicated by streaming
+     */
+    long getBytesStreamed();
+
+    /**
+     * Resets the statistics.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,249 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.util;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanComponentKind;
+import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.repo.dictionary.DictionaryDAO;
+import org.alfresco.repo.dictionary.DictionaryListener;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ParameterCheck;
+
+/**
+ * Table of the file plan component kind of each type, so that the kind of a node is resolved from its type and
+ * aspects with a single lookup rather than a chain of sub-class checks.
+ * <p>
+ * The kind of a file plan component only depends on its type and on whether it has the record aspect, so each type
+ * maps to the kind of a file plan component of that type that isn't a record and the kind of one that is.  The table
+ * is built for all the types in the dictionary on first use, and is discarded whenever the dictionary is reloaded so
+ * that it is rebuilt with the new models.
+ *
+ * @since 3.4
+ */
+public class FilePlanComponentKindTable implements DictionaryListener, RecordsManagementModel
+{
+    /** Dictionary service */
+    private DictionaryService dictionaryService;
+
+    /** Dictionary DAO */
+    private DictionaryDAO dictionaryDAO;
+
+    /** Kinds by type, null until built */
+    private volatile Map<QName, Kinds> table;
+
+    /**
+     * @param dictionaryService dictionary service
+     */
+    public void setDictionaryService(DictionaryService dictionaryService)
+    {
+        this.dictionaryService = dictionaryService;
+    }
+
+    /**
+     * @param dictionaryDAO dictionary DAO
+     */
+    public void setDictionaryDAO(DictionaryDAO dictionaryDAO)
+    {
+        this.dictionaryDAO = dictionaryDAO;
+    }
+
+    /**
+     * Init method
+     */
+    public void init()
+    {
+        dictionaryDAO.registerListener(this);
+    }
+
+    /**
+     * Gets the file plan component kind of a node, as {@link ServiceBaseImpl#getFilePlanComponentKind}.
+     *
+     * @param type                      type of the node
+     * @param aspects                   aspects of the node
+     * @return FilePlanComponentKind    kind of the node, null if it isn't a file plan component
+     */
+    public FilePlanComponentKind getFilePlanComponentKind(QName type, Set<QName> aspects)
+    {
+        ParameterCheck.mandatory("type", type);
+        ParameterCheck.mandatory("aspects", aspects);
+
+        FilePlanComponentKind result = null;
+        if (aspects.contains(ASPECT_FILE_PLAN_COMPONENT))
+        {
+            // types loaded since the table was built are added as they are met
+            Kinds kinds = getTable().computeIfAbsent(type, this::getKinds);
+            result = aspects.contains(ASPECT_RECORD) ? kinds.getRecordKind() : kinds.getKind();
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to get the table, building it if needed.
+     *
+     * @return Map<QName, Kinds>    kinds by type
+     */
+    private Map<QName, Kinds> getTable()
+    {
+        Map<QName, Kinds> result = table;
+        if (result == null)
+        {
+            result = new ConcurrentHashMap<>();
+            for (QName type : dictionaryService.getAllTypes())
+            {
+                result.put(type, getKinds(type));
+            }
+            table = result;
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to work out the kinds of the file plan components of a type.  The checks are made in the same
+     * order as they were when each node was checked, so a type keeps the kind it has always had.
+     *
+     * @param type      type
+     * @return Kinds    kinds of the file plan components of the type
+     */
+    private Kinds getKinds(QName type)
+    {
+        FilePlanComponentKind kind = FilePlanComponentKind.FILE_PLAN_COMPONENT;
+        FilePlanComponentKind recordKind = FilePlanComponentKind.RECORD;
+
+        if (instanceOf(type, TYPE_FILE_PLAN))
+        {
+            kind = recordKind = FilePlanComponentKind.FILE_PLAN;
+        }
+        else if (instanceOf(type, TYPE_RECORD_CATEGORY))
+        {
+            kind = recordKind = FilePlanComponentKind.RECORD_CATEGORY;
+        }
+        else if (instanceOf(type, TYPE_RECORD_FOLDER))
+        {
+            kind = recordKind = FilePlanComponentKind.RECORD_FOLDER;
+        }
+        else if (instanceOf(type, TYPE_HOLD_CONTAINER))
+        {
+            kind = FilePlanComponentKind.HOLD_CONTAINER;
+        }
+        else if (instanceOf(type, TYPE_HOLD))
+        {
+            kind = FilePlanComponentKind.HOLD;
+        }
+        else if (instanceOf(type, TYPE_TRANSFER_CONTAINER))
+        {
+            kind = FilePlanComponentKind.TRANSFER_CONTAINER;
+        }
+        else if (instanceOf(type, TYPE_TRANSFER))
+        {
+            kind = FilePlanComponentKind.TRANSFER;
+        }
+        else if (instanceOf(type, TYPE_DISPOSITION_SCHEDULE) || instanceOf(type, TYPE_DISPOSITION_ACTION_DEFINITION))
+        {
+            kind = FilePlanComponentKind.DISPOSITION_SCHEDULE;
+        }
+        else if (instanceOf(type, TYPE_UNFILED_RECORD_CONTAINER))
+        {
+            kind = FilePlanComponentKind.UNFILED_RECORD_CONTAINER;
+        }
+        else if (instanceOf(type, TYPE_UNFILED_RECORD_FOLDER))
+        {
+            kind = FilePlanComponentKind.UNFILED_RECORD_FOLDER;
+        }
+
+        return new Kinds(kind, recordKind);
+    }
+
+    /**
+     * Helper method to determine whether one class is equal to or sub of another.
+     *
+     * @param className     class name
+     * @param ofClassName   class name to check against
+     * @return boolean      true if equal to or sub, false otherwise
+     */
+    private boolean instanceOf(QName className, QName ofClassName)
+    {
+        return ofClassName.equals(className) || dictionaryService.isSubClass(className, ofClassName);
+    }
+
+    /**
+     * @see org.alfresco.repo.dictionary.DictionaryListener#onDictionaryInit()
+     */
+    @Override
+    public void onDictionaryInit()
+    {
+        // nothing to do until the models have been loaded
+    }
+
+    /**
+     * @see org.alfresco.repo.dictionary.DictionaryListener#afterDictionaryInit()
+     */
+    @Override
+    public void afterDictionaryInit()
+    {
+        table = null;
+    }
+
+    /**
+     * @see org.alfresco.repo.dictionary.DictionaryListener#afterDictionaryDestroy()
+     */
+    @Override
+    public void afterDictionaryDestroy()
+    {
+        table = null;
+    }
+
+    /**
+     * The kind of a file plan component of a type that isn't a record, and of one that is.
+     */
+    private static final class Kinds
+    {
+        private final FilePlanComponentKind kind;
+        private final FilePlanComponentKind recordKind;
+
+        private Kinds(FilePlanComponentKind kind, FilePlanComponentKind recordKind)
+        {
+            this.kind = kind;
+            this.recordKind = recordKind;
+        }
+
+        private FilePlanComponentKind getKind()
+        {
+            return kind;
+        }
+
+        private FilePlanComponentKind getRecordKind()
+        {
+            return recordKind;
+        }
+    }
+}
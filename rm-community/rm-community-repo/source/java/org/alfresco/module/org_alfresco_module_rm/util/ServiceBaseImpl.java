@@ -82,6 +82,9 @@ public class ServiceBaseImpl implements RecordsManagementModel, ApplicationConte
     /** Node type utility */
     protected NodeTypeUtility nodeTypeUtility;
 
+    /** File plan component kind table */
+    protected FilePlanComponentKindTable filePlanComponentKindTable;
+
     /**
      * @see org.springframework.context.ApplicationContextAware#setApplicationContext(org.springframework.context.ApplicationContext)
      */
@@ -131,6 +134,14 @@ public class ServiceBaseImpl implements RecordsManagementModel, ApplicationConte
         this.nodeTypeUtility = nodeTypeUtility;
     }
 
+    /**
+     * @param filePlanComponentKindTable  file plan component kind table
+     */
+    public void setFilePlanComponentKindTable(FilePlanComponentKindTable filePlanComponentKindTable)
+    {
+        this.filePlanComponentKindTable = filePlanComponentKindTable;
+    }
+
     /**
      * @param transactionalResourceHelper   transactional resource helper
      */
@@ -180,7 +191,16 @@ public class ServiceBaseImpl implements RecordsManagementModel, ApplicationConte
         }
         else
         {
-            if (isFilePlanComponent(nodeRef))
+            if (filePlanComponentKindTable != null)
+            {
+                // a single fetch of the type and aspects of the node, and a single lookup
+                if (getInternalNodeService().exists(nodeRef))
+                {
+                    result = filePlanComponentKindTable.getFilePlanComponentKind(getInternalNodeService().getType(nodeRef),
+                                                                                 getInternalNodeService().getAspects(nodeRef));
+                }
+            }
+            else if (isFilePlanComponent(nodeRef))
             {
                 result = FilePlanComponentKind.FILE_PLAN_COMPONENT;
 
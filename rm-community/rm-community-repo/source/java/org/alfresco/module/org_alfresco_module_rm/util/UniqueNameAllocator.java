@@ -0,0 +1,254 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.util;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+
+/**
+ * Utility class to allocate unique names for new children of a node.
+ * <p>
+ * Clashing names are made unique by adding a counter, so <code>scan.pdf</code> becomes <code>scan-1.pdf</code>,
+ * <code>scan-2.pdf</code> and so on.  Rather than trying each counter in turn, the existing names that follow the
+ * same pattern are read with a single query and the next counter after the largest is used.
+ * <p>
+ * The last counter allocated for each parent and name is reserved in its own transaction, so concurrent requests,
+ * on any node in the cluster, never allocate the same name.  The counters reserved for a parent are removed when
+ * the parent is deleted.
+ *
+ * @since 3.4
+ */
+public class UniqueNameAllocator implements NodeServicePolicies.BeforeDeleteNodePolicy
+{
+    /** Attribute context of the reserved counters */
+    private static final String COUNTER_CONTEXT = "rm.uniqueNameAllocator";
+
+    /** Counters are limited to nine digits, so they always fit in an int */
+    private static final int MAX_COUNTER_DIGITS = 9;
+
+    /** Records Management Query DAO */
+    private RecordsManagementQueryDAO recordsManagementQueryDAO;
+
+    /** Attribute service */
+    private AttributeService attributeService;
+
+    /** Transaction service */
+    private TransactionService transactionService;
+
+    /** Policy component */
+    private PolicyComponent policyComponent;
+
+    /**
+     * @param recordsManagementQueryDAO records management query DAO
+     */
+    public void setRecordsManagementQueryDAO(RecordsManagementQueryDAO recordsManagementQueryDAO)
+    {
+        this.recordsManagementQueryDAO = recordsManagementQueryDAO;
+    }
+
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param transactionService    transaction service
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param policyComponent   policy component
+     */
+    public void setPolicyComponent(PolicyComponent policyComponent)
+    {
+        this.policyComponent = policyComponent;
+    }
+
+    /**
+     * Initialise method
+     */
+    public void init()
+    {
+        // remove the counters of the containers that unique names are allocated in when they are deleted
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.BeforeDeleteNodePolicy.QNAME,
+                RecordsManagementModel.TYPE_RECORDS_MANAGEMENT_CONTAINER,
+                new JavaBehaviour(this, "beforeDeleteNode"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.BeforeDeleteNodePolicy.QNAME,
+                RecordsManagementModel.TYPE_RECORD_FOLDER,
+                new JavaBehaviour(this, "beforeDeleteNode"));
+    }
+
+    /**
+     * Removes the counters reserved for the children of a deleted node.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy#beforeDeleteNode(org.alfresco.service.cmr.repository.NodeRef)
+     */
+    @Override
+    public void beforeDeleteNode(NodeRef nodeRef)
+    {
+        attributeService.removeAttributes(COUNTER_CONTEXT, nodeRef);
+    }
+
+    /**
+     * Allocates a unique name for a new child of a node, based on a name that is already in use.
+     *
+     * @param parentNodeRef the parent node
+     * @param fileName      the clashing name
+     * @return String       a name that isn't used by any child of the parent node
+     */
+    public String allocateUniqueName(final NodeRef parentNodeRef, String fileName)
+    {
+        final NamePattern pattern = new NamePattern(fileName);
+
+        // find the largest counter already in use
+        int largest = 0;
+        for (String name : recordsManagementQueryDAO.getChildrenStringPropertyValues(parentNodeRef, ContentModel.PROP_NAME,
+                    pattern.prefix, pattern.suffix))
+        {
+            largest = Math.max(largest, pattern.getCounter(name));
+        }
+
+        // reserve the next counter
+        final int inUse = largest;
+        int counter = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Integer>()
+        {
+            @Override
+            public Integer execute()
+            {
+                Serializable reserved = attributeService.getAttribute(COUNTER_CONTEXT, parentNodeRef, pattern.getKey());
+                int next = Math.max(inUse, reserved instanceof Integer ? (Integer) reserved : 0) + 1;
+                attributeService.setAttribute(Integer.valueOf(next), COUNTER_CONTEXT, parentNodeRef, pattern.getKey());
+                return next;
+            }
+        }, false, true);
+
+        return pattern.getName(counter);
+    }
+
+    /**
+     * The pattern of the unique names made from a clashing name.
+     */
+    /*package*/ static final class NamePattern
+    {
+        /** text before and after the counter */
+        private final String prefix;
+        private final String suffix;
+
+        /**
+         * @param fileName  the clashing name
+         */
+        /*package*/ NamePattern(String fileName)
+        {
+            int dotIndex = fileName.lastIndexOf('.');
+            if (dotIndex == 0)
+            {
+                // File didn't have a proper 'name' instead it
+                // had just a suffix and started with a ".", create "1.txt"
+                prefix = "";
+                suffix = fileName;
+            }
+            else if (dotIndex > 0)
+            {
+                // Filename contained ".", create "fileName-1.txt"
+                prefix = fileName.substring(0, dotIndex) + "-";
+                suffix = fileName.substring(dotIndex);
+            }
+            else
+            {
+                // Filename didn't contain a dot at all, create "fileName-1"
+                prefix = fileName + "-";
+                suffix = "";
+            }
+        }
+
+        /**
+         * @param counter   counter
+         * @return String   the name with the given counter
+         */
+        /*package*/ String getName(int counter)
+        {
+            return prefix + counter + suffix;
+        }
+
+        /**
+         * Gets the counter of a name that follows this pattern.  Names are compared ignoring case, as they are when
+         * checking for duplicate child names.
+         *
+         * @param name  name
+         * @return int  the counter of the name, 0 if the name doesn't follow this pattern
+         */
+        /*package*/ int getCounter(String name)
+        {
+            int length = name.length() - prefix.length() - suffix.length();
+            if (length < 1 || length > MAX_COUNTER_DIGITS ||
+                !name.regionMatches(true, 0, prefix, 0, prefix.length()) ||
+                !name.regionMatches(true, name.length() - suffix.length(), suffix, 0, suffix.length()))
+            {
+                return 0;
+            }
+
+            String counter = name.substring(prefix.length(), prefix.length() + length);
+            for (int index = 0; index < counter.length(); index++)
+            {
+                char digit = counter.charAt(index);
+                if (digit < '0' || digit > '9')
+                {
+                    return 0;
+                }
+            }
+            return Integer.parseInt(counter);
+        }
+
+        /**
+         * @return String   key of the reserved counter for this pattern
+         */
+        /*package*/ String getKey()
+        {
+            return (prefix + "*" + suffix).toLowerCase(Locale.ENGLISH);
+        }
+    }
+}
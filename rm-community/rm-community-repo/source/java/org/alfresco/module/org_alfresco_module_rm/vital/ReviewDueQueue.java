@@ -0,0 +1,347 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.vital;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.module.org_alfresco_module_rm.model.BaseBehaviourBean;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.annotation.Behaviour;
+import org.alfresco.repo.policy.annotation.BehaviourBean;
+import org.alfresco.repo.policy.annotation.BehaviourKind;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+/**
+ * Queue of the vital records due for review, ordered by day.
+ * <p>
+ * A vital record is queued whenever its review as of date changes, in the bucket of the day it becomes due, or of
+ * the current day if it is already due.  The queue is consumed a day at a time from a cursor, which is only ever
+ * moved forward by the consumer, so a record queued while the queue is being consumed is never skipped.
+ * <p>
+ * Entries are read a page at a time and checked when read, so a record that has since been deleted, reviewed or
+ * destroyed is never returned.  Once a record has been notified its entry is removed and the review as of date it
+ * was notified for is recorded.
+ *
+ * @since 3.4
+ */
+@BehaviourBean
+(
+        defaultType = "rma:vitalRecord"
+)
+public class ReviewDueQueue extends    BaseBehaviourBean
+                            implements NodeServicePolicies.OnUpdatePropertiesPolicy
+{
+    /** attribute context of the queue entries, keyed by day and record */
+    private static final String QUEUE_CONTEXT = "rm.reviewDueQueue";
+
+    /** attribute context of the consumer's cursor, the first day that may still hold entries */
+    private static final String CURSOR_CONTEXT = "rm.reviewDueQueue.cursor";
+
+    /** attribute context of the marker recording that the queue has been seeded with the records already due */
+    private static final String SEEDED_CONTEXT = "rm.reviewDueQueue.seeded";
+
+    /** attribute context of the review as of dates records have been notified for, keyed by record */
+    private static final String NOTIFIED_CONTEXT = "rm.reviewDueQueue.notified";
+
+    /** attribute service */
+    private AttributeService attributeService;
+
+    /**
+     * @param attributeService  attribute service
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * Gets the day of a date, in days since the epoch.
+     *
+     * @param date  date
+     * @return long day of the date
+     */
+    public static long getDay(Date date)
+    {
+        return TimeUnit.MILLISECONDS.toDays(date.getTime());
+    }
+
+    /**
+     * Queues a vital record for review.
+     *
+     * @param record        vital record
+     * @param reviewAsOf    date the record is due for review
+     */
+    public void enqueue(NodeRef record, Date reviewAsOf)
+    {
+        long day = Math.max(getDay(reviewAsOf), getDay(new Date()));
+        attributeService.setAttribute(reviewAsOf, QUEUE_CONTEXT, day, record);
+
+        // a new review as of date starts a new notification cycle
+        attributeService.removeAttribute(NOTIFIED_CONTEXT, record);
+    }
+
+    /**
+     * Indicates whether the queue has been seeded with the records that were already due when it was introduced.
+     *
+     * @return boolean  true if the queue has been seeded, false otherwise
+     */
+    public boolean isSeeded()
+    {
+        return attributeService.exists(SEEDED_CONTEXT);
+    }
+
+    /**
+     * Seeds the queue with some of the records that were already due when it was introduced.
+     * <p>
+     * The records may be seeded in as many transactions as needed, the queue is only marked as seeded by
+     * {@link #setSeeded()}.
+     *
+     * @param records   vital records due for review
+     */
+    public void seed(List<NodeRef> records)
+    {
+        for (NodeRef record : records)
+        {
+            Date reviewAsOf = (Date) nodeService.getProperty(record, PROP_REVIEW_AS_OF);
+            if (reviewAsOf != null)
+            {
+                enqueue(record, reviewAsOf);
+            }
+        }
+    }
+
+    /**
+     * Marks the queue as seeded, once all the records that were already due have been seeded.
+     */
+    public void setSeeded()
+    {
+        attributeService.setAttribute(Boolean.TRUE, SEEDED_CONTEXT);
+    }
+
+    /**
+     * Gets the first day that may still hold entries.
+     *
+     * @param now   current date
+     * @return long first day that may still hold entries, the current day if the queue has never been consumed
+     */
+    public long getCursor(Date now)
+    {
+        Long cursor = (Long) attributeService.getAttribute(CURSOR_CONTEXT);
+        return cursor == null ? getDay(now) : cursor;
+    }
+
+    /**
+     * Moves the cursor forward, once every entry of the days before it has been consumed.
+     *
+     * @param day   first day that may still hold entries
+     */
+    public void setCursor(long day)
+    {
+        attributeService.setAttribute(day, CURSOR_CONTEXT);
+    }
+
+    /**
+     * Gets a page of the records of a day that are due for review.
+     * <p>
+     * The entries of the day are read in a stable order.  The first entries, those left queued by earlier pages, are
+     * passed over and at most the given number of entries are read after them.  Entries of records that no longer
+     * exist, are no longer vital, have been destroyed or have been given another review as of date are removed from
+     * the queue.  Must be called in a read-write transaction.
+     *
+     * @param day           day
+     * @param now           current date, records due after it are not returned
+     * @param skipCount     number of entries of the day to pass over
+     * @param maxEntries    maximum number of entries read
+     * @return {@link DuePage}  page of the records of the day due for review
+     */
+    public DuePage getDueRecords(long day, Date now, final int skipCount, final int maxEntries)
+    {
+        // read the entries before checking them, rather than querying nodes while the entries are being fetched
+        final List<Pair<NodeRef, Date>> entries = new ArrayList<>(Math.min(maxEntries, 1000));
+        attributeService.getAttributes(new AttributeQueryCallback()
+        {
+            private int skipped = 0;
+
+            @Override
+            public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+            {
+                if (skipped < skipCount)
+                {
+                    skipped++;
+                }
+                else
+                {
+                    entries.add(new Pair<>((NodeRef) keys[2], (Date) value));
+                }
+                return entries.size() < maxEntries;
+            }
+        }, QUEUE_CONTEXT, day);
+
+        List<NodeRef> records = new ArrayList<>(entries.size());
+        int retainedCount = 0;
+        for (Pair<NodeRef, Date> entry : entries)
+        {
+            NodeRef record = entry.getFirst();
+            Date reviewAsOf = entry.getSecond();
+            if (!isDueForReview(record, reviewAsOf))
+            {
+                attributeService.removeAttribute(QUEUE_CONTEXT, day, record);
+            }
+            else if (reviewAsOf.after(now))
+            {
+                // not due yet, stays queued
+                retainedCount++;
+            }
+            else if (reviewAsOf.equals(attributeService.getAttribute(NOTIFIED_CONTEXT, record)))
+            {
+                // already notified for this review as of date
+                attributeService.removeAttribute(QUEUE_CONTEXT, day, record);
+            }
+            else
+            {
+                records.add(record);
+            }
+        }
+        return new DuePage(records, retainedCount, entries.size() < maxEntries);
+    }
+
+    /**
+     * Page of the records of a day that are due for review.
+     */
+    public static final class DuePage
+    {
+        /** records due for review */
+        private final List<NodeRef> records;
+
+        /** number of entries read that are not due yet and stay queued */
+        private final int retainedCount;
+
+        /** indicates whether the last entry of the day has been read */
+        private final boolean last;
+
+        /**
+         * @param records       records due for review
+         * @param retainedCount number of entries read that are not due yet and stay queued
+         * @param last          true if the last entry of the day has been read, false otherwise
+         */
+        private DuePage(List<NodeRef> records, int retainedCount, boolean last)
+        {
+            this.records = records;
+            this.retainedCount = retainedCount;
+            this.last = last;
+        }
+
+        /**
+         * @return {@link List}&lt;{@link NodeRef}&gt;  records due for review
+         */
+        public List<NodeRef> getRecords()
+        {
+            return records;
+        }
+
+        /**
+         * @return int  number of entries read that are not due yet and stay queued
+         */
+        public int getRetainedCount()
+        {
+            return retainedCount;
+        }
+
+        /**
+         * @return boolean  true if the last entry of the day has been read, false otherwise
+         */
+        public boolean isLast()
+        {
+            return last;
+        }
+    }
+
+    /**
+     * Records that a record has been notified as due for review and removes it from the queue.
+     *
+     * @param day       day the record was queued under
+     * @param record    record
+     */
+    public void notified(long day, NodeRef record)
+    {
+        Serializable reviewAsOf = nodeService.getProperty(record, PROP_REVIEW_AS_OF);
+        if (reviewAsOf != null)
+        {
+            attributeService.setAttribute(reviewAsOf, NOTIFIED_CONTEXT, record);
+        }
+        attributeService.removeAttribute(QUEUE_CONTEXT, day, record);
+    }
+
+    /**
+     * Queue vital records whenever their review as of date changes.
+     *
+     * @see org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy#onUpdateProperties(org.alfresco.service.cmr.repository.NodeRef, java.util.Map, java.util.Map)
+     */
+    @Override
+    @Behaviour
+    (
+            kind = BehaviourKind.CLASS
+    )
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        Date reviewAsOf = (Date) after.get(PROP_REVIEW_AS_OF);
+        if (reviewAsOf != null && !Objects.equals(before.get(PROP_REVIEW_AS_OF), reviewAsOf))
+        {
+            enqueue(nodeRef, reviewAsOf);
+        }
+    }
+
+    /**
+     * Indicates whether a queued record is still due for review on the date it was queued for.
+     *
+     * @param record        record
+     * @param reviewAsOf    review as of date the record was queued for
+     * @return boolean      true if the record is still due for review on that date, false otherwise
+     */
+    private boolean isDueForReview(NodeRef record, Date reviewAsOf)
+    {
+        if (!nodeService.exists(record))
+        {
+            attributeService.removeAttribute(NOTIFIED_CONTEXT, record);
+            return false;
+        }
+        return nodeService.hasAspect(record, ASPECT_VITAL_RECORD) &&
+               !nodeService.hasAspect(record, ASPECT_GHOSTED) &&
+               reviewAsOf.equals(nodeService.getProperty(record, PROP_REVIEW_AS_OF));
+    }
+}
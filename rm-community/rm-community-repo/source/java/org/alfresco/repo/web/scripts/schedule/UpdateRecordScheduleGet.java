@@ -51,25 +51,14 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.text.MessageFormat;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionSchedule;
-import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionService;
+import org.alfresco.module.org_alfresco_module_rm.job.UpdateRecordScheduleJobExecuter;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
-import org.alfresco.module.org_alfresco_module_rm.model.behaviour.RecordsManagementSearchBehaviour;
-import org.alfresco.module.org_alfresco_module_rm.model.rma.aspect.FrozenAspect;
-import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
-import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
-import org.alfresco.repo.domain.node.NodeDAO;
-import org.alfresco.repo.domain.qname.QNameDAO;
-import org.alfresco.repo.policy.BehaviourFilter;
-import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.service.cmr.repository.NodeRef;
-import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.transaction.TransactionService;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -103,73 +92,26 @@ public class UpdateRecordScheduleGet extends AbstractWebScript implements Record
     private static final String SUCCESS_STATUS = "success";
     private static final String MODEL_STATUS = "responsestatus";
     private static final String MODEL_MESSAGE = "message";
-    private static final String MESSAGE_ALL_TEMPLATE = "Updated {0} records from {1} folders with updated disposition instructions.";
+    private static final String MESSAGE_ALL_TEMPLATE = "Requested update of up to {0} folders with updated disposition instructions, see rm-updateRecordSchedule/status for progress.";
     private static final String MESSAGE_FOLDER_TEMPLATE = "Updated records in folder {0} with updated disposition instructions.";
 
     /**
      * services
      */
-    private NodeService nodeService;
-    private DispositionService dispositionService;
-    private RecordService recordService;
     private TransactionService transactionService;
-    private RecordsManagementQueryDAO recordsManagementQueryDAO;
-    private BehaviourFilter behaviourFilter;
-    private NodeDAO nodeDAO;
-    private QNameDAO qnameDAO;
-    private FrozenAspect frozenAspect;
-    private RecordsManagementSearchBehaviour recordsManagementSearchBehaviour;
+    private UpdateRecordScheduleJobExecuter updateRecordScheduleJobExecuter;
+
     /**
      * service setters
      */
-    public void setNodeService(NodeService nodeService)
-    {
-        this.nodeService = nodeService;
-    }
-
-    public void setRecordsManagementQueryDAO(RecordsManagementQueryDAO recordsManagementQueryDAO)
-    {
-        this.recordsManagementQueryDAO = recordsManagementQueryDAO;
-    }
-
-    public void setRecordService(RecordService recordService)
-    {
-        this.recordService = recordService;
-    }
-
-    public void setDispositionService(DispositionService dispositionService)
-    {
-        this.dispositionService = dispositionService;
-    }
-
     public void setTransactionService(TransactionService transactionService)
     {
         this.transactionService = transactionService;
     }
 
-    public void setBehaviourFilter(BehaviourFilter behaviourFilter)
-    {
-        this.behaviourFilter = behaviourFilter;
-    }
-
-    public void setNodeDAO(NodeDAO nodeDAO)
-    {
-        this.nodeDAO = nodeDAO;
-    }
-
-    public void setQnameDAO(QNameDAO qnameDAO)
-    {
-        this.qnameDAO = qnameDAO;
-    }
-
-    public void setFrozenAspect(FrozenAspect frozenAspect)
-    {
-        this.frozenAspect = frozenAspect;
-    }
-
-    public void setRecordsManagementSearchBehaviour(RecordsManagementSearchBehaviour recordsManagementSearchBehaviour)
+    public void setUpdateRecordScheduleJobExecuter(UpdateRecordScheduleJobExecuter updateRecordScheduleJobExecuter)
     {
-        this.recordsManagementSearchBehaviour = recordsManagementSearchBehaviour;
+        this.updateRecordScheduleJobExecuter = updateRecordScheduleJobExecuter;
     }
 
     /**
@@ -178,55 +120,37 @@ public class UpdateRecordScheduleGet extends AbstractWebScript implements Record
     protected Map<String, Object> buildModel(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
         Map<String, Object> model = new HashMap<>();
-        transactionService.getRetryingTransactionHelper()
-            .doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<String>()
-            {
-                public String execute() throws Throwable
-                {
-                    qnameDAO.getOrCreateQName(ASPECT_DISPOSITION_PROCESSED);
-                    return null;
-                }
 
-            }, false, true);
+        final int maxRecordFolders = getMaxRecordFolders(req);
+        final NodeRef recordFolder = getRecordFolder(req);
 
-        int maxRecordFolders = getMaxRecordFolders(req);
-        NodeRef recordFolder = getRecordFolder(req);
-
-        int processedRecords = 0;
         String message;
         if (recordFolder != null)
         {
             // Process the specified record folder
-            updateRecordFolder(recordFolder);
+            transactionService.getRetryingTransactionHelper()
+                .doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Integer>()
+                {
+                    public Integer execute() throws Throwable
+                    {
+                        return updateRecordScheduleJobExecuter.updateRecordFolder(recordFolder);
+                    }
+                }, false, true);
             message = MessageFormat.format(MESSAGE_FOLDER_TEMPLATE, recordFolder);
         }
         else
         {
-            int processedRecordFolders = 0;
-            int queryBatchSize = 10000;
-            Long maxNodeId = nodeDAO.getMaxNodeId();
-            for (Long i = 0L; i < maxNodeId; i += queryBatchSize)
-            {
-                List<NodeRef> folders = recordsManagementQueryDAO.getRecordFoldersWithSchedules(i, i + queryBatchSize);
-                for (NodeRef folder : folders)
+            // The record folders are processed in the background by the update record schedule job
+            transactionService.getRetryingTransactionHelper()
+                .doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Void>()
                 {
-                    processedRecords = processedRecords + updateRecordFolder(folder);
-                    processedRecordFolders++;
-
-                    if (processedRecordFolders >= maxRecordFolders)
+                    public Void execute() throws Throwable
                     {
-                        // stop processing since we have meet our limit
-                        break;
+                        updateRecordScheduleJobExecuter.requestUpdate(maxRecordFolders);
+                        return null;
                     }
-                }
-
-                if (processedRecordFolders >= maxRecordFolders)
-                {
-                    // stop processing since we have meet our limit
-                    break;
-                }
-            }
-            message = MessageFormat.format(MESSAGE_ALL_TEMPLATE, processedRecords, processedRecordFolders);
+                }, false, true);
+            message = MessageFormat.format(MESSAGE_ALL_TEMPLATE, maxRecordFolders);
         }
 
         model.put(MODEL_STATUS, SUCCESS_STATUS);
@@ -381,63 +305,4 @@ public class UpdateRecordScheduleGet extends AbstractWebScript implements Record
 
         return value;
     }
-
-    private int updateRecordFolder(final NodeRef recordFolder)
-    {
-        return transactionService.getRetryingTransactionHelper()
-            .doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Integer>()
-            {
-                public Integer execute() throws Throwable
-                {
-                    int recordCount = 0;
-                    frozenAspect.disableOnPropUpdateFrozenAspect();
-                    try
-                    {
-	                    if (logger.isDebugEnabled())
-	                    {
-	                        logger.info("Checking folder: " + recordFolder);
-	                    }
-	                    recordCount = AuthenticationUtil.runAsSystem(new AuthenticationUtil.RunAsWork<Integer>()
-	                    {
-	                        @Override
-	                        public Integer doWork() throws Exception
-	                        {
-	                            DispositionSchedule schedule = dispositionService.getDispositionSchedule(recordFolder);
-	                            int innerRecordCount = 0;
-	                            if (schedule != null && schedule.isRecordLevelDisposition())
-	                            {
-	
-	                                List<NodeRef> records = recordService.getRecords(recordFolder);
-	                                for (NodeRef record : records)
-	                                {
-	                                    if (!nodeService.hasAspect(record, ASPECT_DISPOSITION_LIFECYCLE))
-	                                    {
-	                                        if (recordFolder.equals(nodeService.getPrimaryParent(record).getParentRef()))
-	                                        {
-	                                            if (logger.isDebugEnabled())
-	                                            {
-	                                                logger.info("updating record: " + record);
-	                                            }
-
-	                                            // update record disposition information
-	                                            dispositionService.updateNextDispositionAction(record, schedule);
-                                                recordsManagementSearchBehaviour.onAddDispositionLifecycleAspect(record,null);
-	                                            innerRecordCount++;
-	                                        }
-	                                    }
-	                                }
-	                            }
-	                            return innerRecordCount;
-	                        }
-	                    });
-	                    nodeService.addAspect(recordFolder, ASPECT_DISPOSITION_PROCESSED, null);
-                    }
-                    finally
-                    {
-                        frozenAspect.enableOnPropUpdateFrozenAspect();
-                    }
-                    return recordCount;
-                }
-            }, false, true);
-    }
 }
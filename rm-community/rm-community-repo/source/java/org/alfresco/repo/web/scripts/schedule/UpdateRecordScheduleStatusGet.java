@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.repo.web.scripts.schedule;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.module.org_alfresco_module_rm.job.RecordsManagementJobMetrics;
+import org.alfresco.module.org_alfresco_module_rm.job.UpdateRecordScheduleJobExecuter;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.DeclarativeWebScript;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+/**
+ * Webscript used to report the progress of the update of records that are missing their schedule information
+ *
+ * @since 3.4
+ */
+public class UpdateRecordScheduleStatusGet extends DeclarativeWebScript
+{
+    private NodeDAO nodeDAO;
+    private UpdateRecordScheduleJobExecuter updateRecordScheduleJobExecuter;
+
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    public void setUpdateRecordScheduleJobExecuter(UpdateRecordScheduleJobExecuter updateRecordScheduleJobExecuter)
+    {
+        this.updateRecordScheduleJobExecuter = updateRecordScheduleJobExecuter;
+    }
+
+    /**
+     * @see org.springframework.extensions.webscripts.DeclarativeWebScript#executeImpl(org.springframework.extensions.webscripts.WebScriptRequest, org.springframework.extensions.webscripts.Status, org.springframework.extensions.webscripts.Cache)
+     */
+    @Override
+    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status, Cache cache)
+    {
+        RecordsManagementJobMetrics metrics = updateRecordScheduleJobExecuter.getMetrics();
+        Integer requested = updateRecordScheduleJobExecuter.getRequestedUpdate();
+        Long highWaterMark = updateRecordScheduleJobExecuter.getHighWaterMark();
+
+        // rate of the current run, or of the last one if the job is not running
+        long throughput = metrics.getLastRunThroughput();
+        if (metrics.isRunning())
+        {
+            long elapsed = System.currentTimeMillis() - metrics.getLastRunStartTime().getTime();
+            throughput = elapsed == 0 ? 0 : metrics.getCurrentRunItemsProcessed() * 1000L / elapsed;
+        }
+
+        Map<String, Object> model = new HashMap<>();
+        model.put("requested", requested != null);
+        model.put("remainingRecordFolders", requested == null ? 0 : requested);
+        model.put("highWaterMark", highWaterMark == null ? 0L : highWaterMark);
+        model.put("maxNodeId", nodeDAO.getMaxNodeId());
+        model.put("running", metrics.isRunning());
+        model.put("recordFoldersProcessed", metrics.getCurrentRunItemsProcessed());
+        model.put("recordFoldersPerSecond", throughput);
+        model.put("lastRunRecordFoldersProcessed", metrics.getLastRunItemsProcessed());
+        model.put("lastRunFailures", metrics.getLastRunFailures());
+        model.put("lastRunElapsedTime", metrics.getLastRunElapsedTime());
+        return model;
+    }
+}
@@ -52,6 +52,7 @@ import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.record.RecordService;
 import org.alfresco.module.org_alfresco_module_rm.util.AuthenticationUtil;
+import org.alfresco.module.org_alfresco_module_rm.util.UniqueNameAllocator;
 import org.alfresco.repo.content.ContentLimitViolationException;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.model.filefolder.FileFolderServiceImpl.InvalidTypeException;
@@ -146,6 +147,7 @@ public class FilePlanComponentsApiUtils
     private AuthenticationUtil authenticationUtil;
     private ActivityPoster activityPoster;
     private RMSites sites;
+    private UniqueNameAllocator uniqueNameAllocator;
 
     public void setNodes(Nodes nodes)
     {
@@ -212,6 +214,11 @@ public class FilePlanComponentsApiUtils
         this.sites = sites;
     }
 
+    public void setUniqueNameAllocator(UniqueNameAllocator uniqueNameAllocator)
+    {
+        this.uniqueNameAllocator = uniqueNameAllocator;
+    }
+
     /**
      * lookup node and validate type
      *
@@ -1007,33 +1014,6 @@ public class FilePlanComponentsApiUtils
      */
     private String findUniqueName(NodeRef parentNodeRef, String fileName)
     {
-        int counter = 1;
-        String tmpFilename;
-        NodeRef existingFile;
-        do
-        {
-            int dotIndex = fileName.lastIndexOf('.');
-            if (dotIndex == 0)
-            {
-                // File didn't have a proper 'name' instead it
-                // had just a suffix and started with a ".", create "1.txt"
-                tmpFilename = counter + fileName;
-            }
-            else if (dotIndex > 0)
-            {
-                // Filename contained ".", create "fileName-1.txt"
-                tmpFilename = fileName.substring(0, dotIndex) + "-" + counter + fileName.substring(dotIndex);
-            }
-            else
-            {
-                // Filename didn't contain a dot at all, create "fileName-1"
-                tmpFilename = fileName + "-" + counter;
-            }
-            existingFile = nodeService.getChildByName(parentNodeRef, ContentModel.ASSOC_CONTAINS, tmpFilename);
-            counter++;
-
-        } while (existingFile != null);
-
-        return tmpFilename;
+        return uniqueNameAllocator.allocateUniqueName(parentNodeRef, fileName);
     }
 }
@@ -29,28 +29,52 @@ package org.alfresco.module.org_alfresco_module_rm.action.impl;
 
 import static java.util.Arrays.asList;
 import static org.alfresco.module.org_alfresco_module_rm.action.impl.BroadcastDispositionActionDefinitionUpdateAction.CHANGED_PROPERTIES;
+import static org.alfresco.module.org_alfresco_module_rm.action.impl.BroadcastDispositionActionDefinitionUpdateAction.CHANGE_CONTEXT;
 import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.ASPECT_DISPOSITION_LIFECYCLE;
 import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.PROP_DISPOSITION_AS_OF;
 import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.PROP_DISPOSITION_PERIOD_PROPERTY;
 import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.TYPE_DISPOSITION_ACTION_DEFINITION;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.module.org_alfresco_module_rm.disposition.DisposableItemIndex;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionAction;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionActionDefinition;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionSchedule;
 import org.alfresco.module.org_alfresco_module_rm.disposition.DispositionService;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorker;
 import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 /**
  * Unit tests for {@link BroadcastDispositionActionDefinitionUpdateAction}.
@@ -66,13 +90,30 @@ public class BroadcastDispositionActionDefinitionUpdateActionUnitTest
     private static final NodeRef NEXT_ACTION_NODE_REF = new NodeRef("next://Step/");
     /** The node being subject to the disposition step. */
     private static final NodeRef CONTENT_NODE_REF = new NodeRef("content://Node/Ref");
+    /** The indexed disposition schedule and its disposable items. */
+    private static final NodeRef INDEXED_SCHEDULE_NODE = new NodeRef("schedule://Indexed/");
+    private static final NodeRef FIRST_ITEM = new NodeRef("item://Node/First");
+    private static final NodeRef SECOND_ITEM = new NodeRef("item://Node/Second");
+    /** The identifier of the change being broadcast. */
+    private static final String CHANGE_ID = "changeId";
 
-    /** The class under test. */
-    private BroadcastDispositionActionDefinitionUpdateAction action = new BroadcastDispositionActionDefinitionUpdateAction();
+    /** The class under test, updating each batch of items in turn on the calling thread. */
+    private BroadcastDispositionActionDefinitionUpdateAction action = new BroadcastDispositionActionDefinitionUpdateAction()
+    {
+        @Override
+        protected BatchProcessor<NodeRef> createBatchProcessor(String processName, List<NodeRef> disposableItems)
+        {
+            return mockBatchProcessor(disposableItems);
+        }
+    };
 
     private NodeService mockNodeService = mock(NodeService.class);
     private DispositionService mockDispositionService = mock(DispositionService.class);
     private BehaviourFilter mockBehaviourFilter = mock(BehaviourFilter.class);
+    private TransactionService mockTransactionService = mock(TransactionService.class);
+    private RetryingTransactionHelper mockTransactionHelper = mock(RetryingTransactionHelper.class);
+    private AttributeService mockAttributeService = mock(AttributeService.class);
+    private DisposableItemIndex mockDisposableItemIndex = mock(DisposableItemIndex.class);
 
     /** Inject the mock services into the class under test and link the content and next action nodes. */
     @Before
@@ -87,6 +128,13 @@ public class BroadcastDispositionActionDefinitionUpdateActionUnitTest
         when(mockAssocRef.getParentRef()).thenReturn(CONTENT_NODE_REF);
     }
 
+    /** Clear the user the broadcast runs as. */
+    @After
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
     /**
      * Check that the disposition service is used to determine the "disposition as of" date when changes are made to the
      * disposition period.
@@ -168,4 +216,151 @@ public class BroadcastDispositionActionDefinitionUpdateActionUnitTest
         // Check that the "as of" date is updated.
         verify(mockNodeService).setProperty(stepNode, PROP_DISPOSITION_AS_OF, newAsOfDate);
     }
+
+    /**
+     * Check that a new change to an indexed schedule is given an identifier, which is marked against each item as it
+     * is updated, and which is removed once every item has been updated.
+     */
+    @Test
+    public void testChangeIdMarkedAgainstUpdatedItems()
+    {
+        NodeRef definitionNode = setUpIndexedBroadcast();
+        when(mockDisposableItemIndex.getUnmarkedEntries(eq(INDEXED_SCHEDULE_NODE), any(Serializable.class), eq(1)))
+                    .thenReturn(asList(FIRST_ITEM), asList(SECOND_ITEM), Collections.<NodeRef>emptyList());
+
+        // Call the method under test.
+        action.executeImpl(mockAction(), definitionNode);
+
+        // Check that the new change identifier is marked against each item and removed at the end.
+        ArgumentCaptor<Serializable> changeId = ArgumentCaptor.forClass(Serializable.class);
+        verify(mockAttributeService).setAttribute(changeId.capture(), eq(CHANGE_CONTEXT), eq(definitionNode.toString()));
+        verify(mockDisposableItemIndex, times(3)).getUnmarkedEntries(INDEXED_SCHEDULE_NODE, changeId.getValue(), 1);
+        verify(mockDisposableItemIndex).markEntry(INDEXED_SCHEDULE_NODE, FIRST_ITEM, changeId.getValue());
+        verify(mockDisposableItemIndex).markEntry(INDEXED_SCHEDULE_NODE, SECOND_ITEM, changeId.getValue());
+        verify(mockAttributeService).removeAttribute(CHANGE_CONTEXT, definitionNode.toString());
+    }
+
+    /**
+     * Check that a broadcast that fails part way through keeps its change identifier, and that when it is executed
+     * again it resumes from the items not yet marked as updated for the change.
+     */
+    @Test
+    public void testResumeAfterFailure()
+    {
+        NodeRef definitionNode = setUpIndexedBroadcast();
+        when(mockAttributeService.getAttribute(CHANGE_CONTEXT, definitionNode.toString())).thenReturn(CHANGE_ID);
+        when(mockDisposableItemIndex.getUnmarkedEntries(INDEXED_SCHEDULE_NODE, CHANGE_ID, 1))
+                    .thenReturn(asList(FIRST_ITEM), asList(SECOND_ITEM));
+        doThrow(new AlfrescoRuntimeException("Update failed")).when(mockDispositionService).getDispositionSchedule(SECOND_ITEM);
+
+        // The first execution fails on the second item.
+        try
+        {
+            action.executeImpl(mockAction(), definitionNode);
+            fail("Expected the broadcast to fail.");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // expected
+        }
+        verify(mockDisposableItemIndex).markEntry(INDEXED_SCHEDULE_NODE, FIRST_ITEM, CHANGE_ID);
+        verify(mockDisposableItemIndex, never()).markEntry(INDEXED_SCHEDULE_NODE, SECOND_ITEM, CHANGE_ID);
+        verify(mockAttributeService, never()).removeAttribute(CHANGE_CONTEXT, definitionNode.toString());
+
+        // The second execution only reads the item not yet marked.
+        doReturn(null).when(mockDispositionService).getDispositionSchedule(SECOND_ITEM);
+        doReturn(asList(SECOND_ITEM)).doReturn(Collections.<NodeRef>emptyList())
+                    .when(mockDisposableItemIndex).getUnmarkedEntries(INDEXED_SCHEDULE_NODE, CHANGE_ID, 1);
+        action.executeImpl(mockAction(), definitionNode);
+
+        verify(mockDispositionService).getDispositionSchedule(FIRST_ITEM);
+        verify(mockDisposableItemIndex).markEntry(INDEXED_SCHEDULE_NODE, SECOND_ITEM, CHANGE_ID);
+        verify(mockAttributeService, never()).setAttribute(anyString(), eq(CHANGE_CONTEXT), eq(definitionNode.toString()));
+        verify(mockAttributeService).removeAttribute(CHANGE_CONTEXT, definitionNode.toString());
+    }
+
+    /**
+     * Set up a disposition action definition whose schedule has an index holding more items than fit in a batch of
+     * one, broadcast by a single worker.
+     *
+     * @return The disposition action definition node.
+     */
+    @SuppressWarnings("unchecked")
+    private NodeRef setUpIndexedBroadcast()
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser("admin");
+        action.setTransactionService(mockTransactionService);
+        action.setAttributeService(mockAttributeService);
+        action.setDisposableItemIndex(mockDisposableItemIndex);
+        action.setBatchSize(1);
+        action.setWorkerThreads(1);
+
+        when(mockTransactionService.getRetryingTransactionHelper()).thenReturn(mockTransactionHelper);
+        doAnswer(invocation -> ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute())
+                    .when(mockTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+
+        // Set up the action definition under the schedule, under the category.
+        NodeRef definitionNode = new NodeRef("definition://node/indexed");
+        NodeRef categoryNode = new NodeRef("category://node/indexed");
+        when(mockNodeService.getType(definitionNode)).thenReturn(TYPE_DISPOSITION_ACTION_DEFINITION);
+        when(mockNodeService.getPrimaryParent(definitionNode)).thenReturn(new ChildAssociationRef(null, INDEXED_SCHEDULE_NODE, null, definitionNode));
+        when(mockNodeService.getPrimaryParent(INDEXED_SCHEDULE_NODE)).thenReturn(new ChildAssociationRef(null, categoryNode, null, INDEXED_SCHEDULE_NODE));
+        DispositionSchedule mockDispositionSchedule = mock(DispositionSchedule.class);
+        when(mockDispositionSchedule.getNodeRef()).thenReturn(INDEXED_SCHEDULE_NODE);
+        when(mockDispositionService.getAssociatedDispositionSchedule(categoryNode)).thenReturn(mockDispositionSchedule);
+
+        // Set up the index so that the items don't fit in one batch.
+        when(mockDisposableItemIndex.isBuilt(INDEXED_SCHEDULE_NODE)).thenReturn(true);
+        when(mockDisposableItemIndex.getItems(INDEXED_SCHEDULE_NODE, 2)).thenReturn(asList(FIRST_ITEM, SECOND_ITEM));
+        return definitionNode;
+    }
+
+    /**
+     * @return An action whose period property has been changed.
+     */
+    private Action mockAction()
+    {
+        Action mockAction = mock(Action.class);
+        when(mockAction.getParameterValue(CHANGED_PROPERTIES)).thenReturn((Serializable) asList(PROP_DISPOSITION_PERIOD_PROPERTY));
+        return mockAction;
+    }
+
+    /**
+     * Mock a batch processor that hands each item to the worker in turn, counting the items that fail.  The user of
+     * the calling thread is kept, as it is when the workers run on threads of their own.
+     *
+     * @param items The items to process.
+     * @return The mocked batch processor.
+     */
+    @SuppressWarnings("unchecked")
+    private BatchProcessor<NodeRef> mockBatchProcessor(final List<NodeRef> items)
+    {
+        BatchProcessor<NodeRef> batchProcessor = mock(BatchProcessor.class);
+        final int[] errors = new int[1];
+        doAnswer(invocation ->
+        {
+            BatchProcessWorker<NodeRef> worker = (BatchProcessWorker<NodeRef>) invocation.getArguments()[0];
+            String user = AuthenticationUtil.getFullyAuthenticatedUser();
+            for (NodeRef item : items)
+            {
+                worker.beforeProcess();
+                try
+                {
+                    worker.process(item);
+                }
+                catch (Throwable e)
+                {
+                    errors[0]++;
+                }
+                finally
+                {
+                    worker.afterProcess();
+                }
+            }
+            AuthenticationUtil.setFullyAuthenticatedUser(user);
+            return items.size() - errors[0];
+        }).when(batchProcessor).process(any(BatchProcessWorker.class), anyBoolean());
+        when(batchProcessor.getTotalErrors()).thenAnswer(invocation -> errors[0]);
+        return batchProcessor;
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.action.impl;
+
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.action.BaseActionUnitTest;
+import org.alfresco.module.org_alfresco_module_rm.action.impl.CopyMoveLinkFileToBaseAction.CopyMoveLinkFileToActionMode;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.model.FileNotFoundException;
+import org.alfresco.service.cmr.repository.DuplicateChildNodeNameException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit test for file to action
+ *
+ * @since 3.4
+ */
+public class FileToActionUnitTest extends BaseActionUnitTest
+{
+    private static final String FOLDER_NAME = "folder";
+
+    @Mock private TransactionService mockedTransactionService;
+
+    @InjectMocks
+    private FileToAction action;
+
+    private NodeRef document;
+    private NodeRef existingFolder;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        action.setMode(CopyMoveLinkFileToActionMode.MOVE);
+        doReturn(mockedRetryingTransactionHelper).when(mockedTransactionService).getRetryingTransactionHelper();
+        doAnswer(new Answer<Object>()
+        {
+            @SuppressWarnings("rawtypes")
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback) invocation.getArguments()[0]).execute();
+            }
+        }).when(mockedRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+
+        // an unfiled document to be filed into a folder that has to be created
+        document = generateCmContent("document");
+        doReturn(true).when(mockedDictionaryService).isSubClass(ContentModel.TYPE_CONTENT, ContentModel.TYPE_CONTENT);
+        doReturn(filePlan).when(mockedFilePlanService).getFilePlan(document);
+        doReturn(FileToAction.NAME).when(getMockedAction()).getActionDefinitionName();
+        mockActionParameterValue(CopyMoveLinkFileToBaseAction.PARAM_PATH, FOLDER_NAME);
+        mockActionParameterValue(CopyMoveLinkFileToBaseAction.PARAM_CREATE_RECORD_PATH, true);
+
+        existingFolder = generateRecordFolder();
+    }
+
+    /**
+     * Given the destination folder doesn't exist when it is looked up
+     * When it is created by another cluster node before this one creates it
+     * Then the folder created by the other node is used
+     */
+    @Test
+    public void concurrentlyCreatedFolderIsUsed() throws Exception
+    {
+        doReturn(null, null, existingFolder).when(mockedNodeService).getChildByName(filePlan, ContentModel.ASSOC_CONTAINS, FOLDER_NAME);
+        doThrow(DuplicateChildNodeNameException.class).when(mockedRecordFolderService).createRecordFolder(filePlan, FOLDER_NAME);
+
+        action.executeImpl(getMockedAction(), document);
+
+        verify(mockedFileFolderService).move(document, existingFolder, null);
+    }
+
+    /**
+     * Given the destination folder doesn't exist
+     * When it is created and the filing then fails
+     * Then the folder was created in the transaction of the caller, so it is rolled back with the failed filing
+     */
+    @Test
+    public void createdPathRolledBackWithFailedFiling() throws Exception
+    {
+        NodeRef newFolder = generateRecordFolder();
+        doReturn(newFolder).when(mockedRecordFolderService).createRecordFolder(filePlan, FOLDER_NAME);
+        doThrow(FileNotFoundException.class).when(mockedFileFolderService).move(document, newFolder, null);
+
+        try
+        {
+            action.executeImpl(getMockedAction(), document);
+            fail("Expected the filing to fail.");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // expected
+        }
+
+        verify(mockedRecordFolderService).createRecordFolder(filePlan, FOLDER_NAME);
+        verifyZeroInteractions(mockedRetryingTransactionHelper);
+    }
+
+    /**
+     * Given a destination path whose category and folder don't exist
+     * When the document is filed
+     * Then the category is created and the folder is created within it, in the same transaction
+     */
+    @Test
+    public void nestedPathCreatedWithinNewParent() throws Exception
+    {
+        NodeRef newCategory = generateNodeRef(TYPE_RECORD_CATEGORY);
+        NodeRef newFolder = generateRecordFolder();
+        mockActionParameterValue(CopyMoveLinkFileToBaseAction.PARAM_PATH, "category/" + FOLDER_NAME);
+        doReturn(newCategory).when(mockedFilePlanService).createRecordCategory(filePlan, "category");
+        doReturn(newFolder).when(mockedRecordFolderService).createRecordFolder(newCategory, FOLDER_NAME);
+
+        action.executeImpl(getMockedAction(), document);
+
+        verify(mockedFileFolderService).move(document, newFolder, null);
+        verifyZeroInteractions(mockedRetryingTransactionHelper);
+    }
+
+    /**
+     * Given the destination folder doesn't exist when it is looked up
+     * When its creation fails and it still can't be found
+     * Then the failure is reported and nothing is filed
+     */
+    @Test(expected = DuplicateChildNodeNameException.class)
+    public void failedCreateIsReported() throws Exception
+    {
+        doReturn(null).when(mockedNodeService).getChildByName(filePlan, ContentModel.ASSOC_CONTAINS, FOLDER_NAME);
+        doThrow(DuplicateChildNodeNameException.class).when(mockedRecordFolderService).createRecordFolder(filePlan, FOLDER_NAME);
+
+        try
+        {
+            action.executeImpl(getMockedAction(), document);
+        }
+        finally
+        {
+            verify(mockedFileFolderService, never()).move(any(NodeRef.class), any(NodeRef.class), any(String.class));
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link AuditJournal}.
+ *
+ * @since 3.4
+ */
+public class AuditJournalUnitTest
+{
+    private static final NodeRef NODE_REF = new NodeRef("workspace://SpacesStore/node");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Given an empty journal
+     * When events are appended
+     * Then they are numbered in order and read back after a given event
+     */
+    @Test
+    public void appendAndRead() throws Exception
+    {
+        AuditJournal journal = new AuditJournal(temporaryFolder.newFolder(), 1024 * 1024);
+        assertEquals(0, journal.getLastId());
+
+        assertEquals(2, journal.append(entries("first", "second")));
+        assertEquals(3, journal.append(entries("third")));
+
+        List<AuditJournal.Entry> read = journal.read(0, 10);
+        assertEquals(3, read.size());
+        assertEquals(1, read.get(0).getId());
+        assertEquals("first", read.get(0).getAuditMap().get("event"));
+        assertEquals("admin", read.get(0).getUser());
+        assertEquals(NODE_REF, read.get(0).getNodeRef());
+
+        read = journal.read(1, 1);
+        assertEquals(1, read.size());
+        assertEquals("second", read.get(0).getAuditMap().get("event"));
+
+        assertTrue(journal.read(3, 10).isEmpty());
+        journal.close();
+    }
+
+    /**
+     * Given a journal whose last event was only partly written
+     * When it is opened again
+     * Then the partly written event is discarded and numbering continues from the last complete event
+     */
+    @Test
+    public void partlyWrittenEventDiscarded() throws Exception
+    {
+        File directory = temporaryFolder.newFolder();
+        AuditJournal journal = new AuditJournal(directory, 1024 * 1024);
+        journal.append(entries("first", "second"));
+        journal.close();
+
+        File segment = segments(directory)[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.setLength(file.length() - 10);
+        }
+
+        journal = new AuditJournal(directory, 1024 * 1024);
+        assertEquals(1, journal.getLastId());
+        assertEquals(2, journal.append(entries("replacement")));
+
+        List<AuditJournal.Entry> read = journal.read(0, 10);
+        assertEquals(2, read.size());
+        assertEquals("first", read.get(0).getAuditMap().get("event"));
+        assertEquals("replacement", read.get(1).getAuditMap().get("event"));
+        journal.close();
+    }
+
+    /**
+     * Given a journal split into several segments
+     * When events are released
+     * Then only the segments whose events have all been written are deleted
+     */
+    @Test
+    public void writtenSegmentsReleased() throws Exception
+    {
+        File directory = temporaryFolder.newFolder();
+        AuditJournal journal = new AuditJournal(directory, 1);
+        journal.append(entries("first"));
+        journal.append(entries("second"));
+        journal.append(entries("third"));
+        assertEquals(4, segments(directory).length);
+
+        journal.release(1);
+        assertEquals(3, segments(directory).length);
+        assertEquals(2, journal.read(1, 10).size());
+
+        journal.release(3);
+        assertEquals(1, segments(directory).length);
+        assertTrue(journal.read(3, 10).isEmpty());
+        assertEquals(4, journal.append(entries("fourth")));
+        journal.close();
+    }
+
+    /**
+     * Given a journal with events
+     * When it is opened again
+     * Then the events are still there
+     */
+    @Test
+    public void eventsSurviveReopening() throws Exception
+    {
+        File directory = temporaryFolder.newFolder();
+        AuditJournal journal = new AuditJournal(directory, 1024 * 1024);
+        journal.append(entries("first", "second"));
+        journal.close();
+
+        journal = new AuditJournal(directory, 1024 * 1024);
+        assertEquals(2, journal.getLastId());
+        List<AuditJournal.Entry> read = journal.read(1, 10);
+        assertEquals(1, read.size());
+        assertEquals("second", read.get(0).getAuditMap().get("event"));
+        journal.close();
+    }
+
+    /**
+     * Given a journal with events
+     * When it is opened again
+     * Then it keeps its identity
+     */
+    @Test
+    public void journalIdKeptOnReopening() throws Exception
+    {
+        File directory = temporaryFolder.newFolder();
+        AuditJournal journal = new AuditJournal(directory, 1024 * 1024);
+        String journalId = journal.getJournalId();
+        journal.append(entries("first"));
+        journal.close();
+
+        journal = new AuditJournal(directory, 1024 * 1024);
+        assertEquals(journalId, journal.getJournalId());
+        journal.close();
+    }
+
+    /**
+     * Given a journal with events
+     * When its segments are deleted and it is opened again
+     * Then it starts again from event one with a new identity
+     */
+    @Test
+    public void journalIdChangedWhenSegmentsDeleted() throws Exception
+    {
+        File directory = temporaryFolder.newFolder();
+        AuditJournal journal = new AuditJournal(directory, 1024 * 1024);
+        String journalId = journal.getJournalId();
+        journal.append(entries("first", "second"));
+        journal.close();
+
+        for (File segment : segments(directory))
+        {
+            assertTrue(segment.delete());
+        }
+
+        journal = new AuditJournal(directory, 1024 * 1024);
+        assertFalse(journalId.equals(journal.getJournalId()));
+        assertEquals(1, journal.append(entries("third")));
+        journal.close();
+    }
+
+    /**
+     * Given an event with the audit values of its node captured
+     * When it is journalled
+     * Then the captured values are read back with it
+     */
+    @Test
+    public void nodeValuesJournalled() throws Exception
+    {
+        AuditJournal journal = new AuditJournal(temporaryFolder.newFolder(), 1024 * 1024);
+        List<AuditJournal.Entry> entries = entries("first", "second");
+        entries.get(0).setNodeValues(Collections.<String, Serializable>singletonMap("name", "record.txt"));
+        journal.append(entries);
+
+        List<AuditJournal.Entry> read = journal.read(0, 10);
+        assertEquals("record.txt", read.get(0).getNodeValues().get("name"));
+        assertNull(read.get(1).getNodeValues());
+        journal.close();
+    }
+
+    private static File[] segments(File directory)
+    {
+        return directory.listFiles((dir, name) -> name.endsWith(".journal"));
+    }
+
+    private static List<AuditJournal.Entry> entries(String... events)
+    {
+        List<AuditJournal.Entry> entries = new ArrayList<>();
+        for (String event : events)
+        {
+            Map<String, Serializable> auditMap = Collections.<String, Serializable>singletonMap("event", event);
+            entries.add(new AuditJournal.Entry(System.currentTimeMillis(), "admin", NODE_REF, auditMap));
+        }
+        return entries;
+    }
+}
@@ -30,44 +30,67 @@ import static java.util.Collections.emptyList;
 
 import static org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditService.ReportFormat.JSON;
 import static org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditServiceImpl.DOD5015_AUDIT_APPLICATION_NAME;
+import static org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditServiceImpl.DOD5015_AUDIT_DATA_EVENT_NAME;
 import static org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditServiceImpl.RM_AUDIT_APPLICATION_NAME;
+import static org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditServiceImpl.RM_AUDIT_DATA_EVENT_NAME;
 import static org.alfresco.module.org_alfresco_module_rm.audit.RecordsManagementAuditServiceImpl.RM_AUDIT_PATH_ROOT;
 import static org.alfresco.module.org_alfresco_module_rm.dod5015.DOD5015Model.TYPE_DOD_5015_SITE;
 import static org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService.DEFAULT_RM_SITE_ID;
 import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.TYPE_RM_SITE;
 import static org.alfresco.module.org_alfresco_module_rm.model.rma.type.RmSiteType.DEFAULT_SITE_NAME;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.Sets;
 
 import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
 import org.alfresco.repo.audit.AuditComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.audit.AuditQueryParameters;
 import org.alfresco.service.cmr.audit.AuditService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.site.SiteInfo;
 import org.alfresco.service.cmr.site.SiteService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.Pair;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -103,6 +126,10 @@ public class RecordsManagementAuditServiceImplUnitTest
     private Writer mockWriter;
     @Mock
     private SiteInfo mockSiteInfo;
+    @Mock
+    private TransactionService mockTransactionService;
+    @Mock
+    private RetryingTransactionHelper mockRetryingTransactionHelper;
     @Captor
     private ArgumentCaptor<AuditQueryParameters> queryParamsCaptor;
 
@@ -197,4 +224,176 @@ public class RecordsManagementAuditServiceImplUnitTest
 
         assertEquals("Unexpected date truncation.", format.parse("2001-02-03 00:00:00.000"), startOfDay);
     }
+
+    /**
+     * Check that the streamed audit trail merges the entries of the audit applications into timestamp order.
+     */
+    @Test
+    public void testStreamedAuditTrailMergedInTimestampOrder()
+    {
+        when(mockNodeService.getType(RM_SITE_NODE)).thenReturn(TYPE_DOD_5015_SITE);
+        mockAuditEntries(RM_AUDIT_APPLICATION_NAME, 1L, 100L, 3L, 300L);
+        mockAuditEntries(DOD5015_AUDIT_APPLICATION_NAME, 2L, 200L, 4L, 400L);
+
+        StringWriter writer = new StringWriter();
+        String continuationToken = recordsManagementAuditServiceImpl.writeAuditTrail(
+                    new RecordsManagementAuditQueryParameters(), null, writer, JSON);
+
+        String report = writer.toString();
+        assertNull("All entries have been read so no continuation is expected.", continuationToken);
+        assertTrue("Entries should be in timestamp order.", report.indexOf("event1") < report.indexOf("event2"));
+        assertTrue("Entries should be in timestamp order.", report.indexOf("event2") < report.indexOf("event3"));
+        assertTrue("Entries should be in timestamp order.", report.indexOf("event3") < report.indexOf("event4"));
+        assertFalse("No continuation should be written.", report.contains("continuation"));
+        // Check that the event of viewing the audit log was itself audited.
+        verify(mockAuditComponent).recordAuditValues(eq(RM_AUDIT_PATH_ROOT), any(Map.class));
+    }
+
+    /**
+     * Check that a limited streamed audit trail stops at the last entry it can place in order and returns a
+     * continuation token resuming each audit application after the last entry read from it.
+     */
+    @Test
+    public void testStreamedAuditTrailContinuation()
+    {
+        when(mockNodeService.getType(RM_SITE_NODE)).thenReturn(TYPE_DOD_5015_SITE);
+        mockAuditEntries(RM_AUDIT_APPLICATION_NAME, 1L, 100L, 3L, 300L);
+        mockAuditEntries(DOD5015_AUDIT_APPLICATION_NAME, 2L, 200L, 5L, 500L);
+        RecordsManagementAuditQueryParameters params = new RecordsManagementAuditQueryParameters();
+        params.setMaxEntries(2);
+
+        StringWriter writer = new StringWriter();
+        String continuationToken = recordsManagementAuditServiceImpl.writeAuditTrail(params, null, writer, JSON);
+
+        String report = writer.toString();
+        assertEquals("Expected to resume after RM entry 3 and DOD entry 2.", "3-2", continuationToken);
+        assertTrue("Expected entries up to the end of the RM results.", report.contains("event3"));
+        assertFalse("Entries after the end of the RM results can't be placed in order.", report.contains("event5"));
+        assertTrue("Expected the continuation to be written.", report.contains("\"continuation\": \"3-2\""));
+
+        // Resume from the continuation token.
+        recordsManagementAuditServiceImpl.writeAuditTrail(params, continuationToken, new StringWriter(), JSON);
+
+        verify(mockAuditService, times(4)).auditQuery(any(AuditService.AuditQueryCallback.class),
+                    queryParamsCaptor.capture(), eq(2));
+        Map<String, Long> fromIds = queryParamsCaptor.getAllValues().subList(2, 4).stream()
+                    .collect(Collectors.toMap(AuditQueryParameters::getApplicationName, AuditQueryParameters::getFromId));
+        assertEquals(Long.valueOf(4L), fromIds.get(RM_AUDIT_APPLICATION_NAME));
+        assertEquals(Long.valueOf(3L), fromIds.get(DOD5015_AUDIT_APPLICATION_NAME));
+    }
+
+    /**
+     * Check that several DOD 5015 exports streamed at once on an executor with fewer threads than they have audit
+     * applications all complete, rather than each holding a pool thread while waiting on another.
+     */
+    @Test
+    public void testConcurrentStreamedAuditTrails() throws Exception
+    {
+        when(mockNodeService.getType(RM_SITE_NODE)).thenReturn(TYPE_DOD_5015_SITE);
+        when(mockTransactionService.getRetryingTransactionHelper()).thenReturn(mockRetryingTransactionHelper);
+        doAnswer(invocation -> ((RetryingTransactionCallback<?>) invocation.getArguments()[0]).execute())
+                    .when(mockRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+        long[] rmEntries = new long[100];
+        long[] dod5015Entries = new long[100];
+        for (int i = 0; i < 50; i++)
+        {
+            rmEntries[2 * i] = 2 * i + 1;
+            rmEntries[2 * i + 1] = 100 * (2 * i + 1);
+            dod5015Entries[2 * i] = 2 * i + 2;
+            dod5015Entries[2 * i + 1] = 100 * (2 * i + 2);
+        }
+        mockAuditEntries(RM_AUDIT_APPLICATION_NAME, rmEntries);
+        mockAuditEntries(DOD5015_AUDIT_APPLICATION_NAME, dod5015Entries);
+
+        ExecutorService auditQueryExecutor = Executors.newFixedThreadPool(2);
+        ExecutorService exports = Executors.newFixedThreadPool(6);
+        try
+        {
+            recordsManagementAuditServiceImpl.setAuditQueryExecutor(auditQueryExecutor);
+            recordsManagementAuditServiceImpl.setStreamBufferSize(1);
+            recordsManagementAuditServiceImpl.setStreamTimeout(10L);
+
+            List<Future<String>> reports = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                reports.add(exports.submit(() ->
+                {
+                    AuthenticationUtil.setFullyAuthenticatedUser("user");
+                    try
+                    {
+                        StringWriter writer = new StringWriter();
+                        assertNull(recordsManagementAuditServiceImpl.writeAuditTrail(
+                                    new RecordsManagementAuditQueryParameters(), null, writer, JSON));
+                        return writer.toString();
+                    }
+                    finally
+                    {
+                        AuthenticationUtil.clearCurrentSecurityContext();
+                    }
+                }));
+            }
+
+            for (Future<String> report : reports)
+            {
+                String content = report.get(60, TimeUnit.SECONDS);
+                assertTrue("Expected the first entry.", content.contains("\"event1\""));
+                assertTrue("Expected the last entry.", content.contains("\"event100\""));
+                assertTrue("Entries should be in timestamp order.", content.indexOf("\"event99\"") < content.indexOf("\"event100\""));
+            }
+        }
+        finally
+        {
+            exports.shutdownNow();
+            auditQueryExecutor.shutdownNow();
+        }
+    }
+
+    /** Check that continuation tokens can be read back and invalid tokens are rejected. */
+    @Test
+    public void testContinuationToken()
+    {
+        assertEquals(new Pair<>(12L, null), RecordsManagementAuditServiceImpl.parseContinuationToken(
+                    RecordsManagementAuditServiceImpl.getContinuationToken(12L, null)));
+        assertEquals(new Pair<>(null, null), RecordsManagementAuditServiceImpl.parseContinuationToken(null));
+        try
+        {
+            RecordsManagementAuditServiceImpl.parseContinuationToken("invalid");
+            fail("Expected an invalid continuation token to be rejected.");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Mock the entries returned by an audit application.
+     *
+     * @param applicationName The audit application.
+     * @param idsAndTimes Pairs of entry id and time.
+     */
+    private void mockAuditEntries(String applicationName, long... idsAndTimes)
+    {
+        String eventPath = RM_AUDIT_APPLICATION_NAME.equals(applicationName) ? RM_AUDIT_DATA_EVENT_NAME
+                    : DOD5015_AUDIT_DATA_EVENT_NAME;
+        doAnswer(invocation ->
+        {
+            AuditService.AuditQueryCallback callback = (AuditService.AuditQueryCallback) invocation.getArguments()[0];
+            for (int i = 0; i < idsAndTimes.length; i += 2)
+            {
+                Map<String, Serializable> values = new HashMap<>();
+                values.put(eventPath, "event" + idsAndTimes[i]);
+                callback.handleAuditEntry(idsAndTimes[i], applicationName, "user", idsAndTimes[i + 1], values);
+            }
+            return null;
+        }).when(mockAuditService).auditQuery(any(AuditService.AuditQueryCallback.class),
+                    argThat(new ArgumentMatcher<AuditQueryParameters>()
+                    {
+                        @Override
+                        public boolean matches(Object argument)
+                        {
+                            return argument != null && applicationName.equals(((AuditQueryParameters) argument).getApplicationName());
+                        }
+                    }), anyInt());
+    }
 }
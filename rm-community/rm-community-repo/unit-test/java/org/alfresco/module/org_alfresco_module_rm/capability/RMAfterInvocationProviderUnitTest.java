@@ -30,16 +30,29 @@ package org.alfresco.module.org_alfresco_module_rm.capability;
 import static java.util.Arrays.asList;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import net.sf.acegisecurity.Authentication;
 import net.sf.acegisecurity.ConfigAttribute;
 import net.sf.acegisecurity.ConfigAttributeDefinition;
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.caveat.RMCaveatConfigComponent;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanService;
+import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.util.AuthenticationUtil;
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.security.permissions.PermissionCheckCollection.PermissionCheckCollectionMixin;
 import org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSet;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -48,10 +61,13 @@ import org.alfresco.service.cmr.search.LimitBy;
 import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.ResultSetMetaData;
 import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationContext;
 
 /** Unit tests for {@link RMAfterInvocationProvider}. */
 public class RMAfterInvocationProviderUnitTest
@@ -73,6 +89,16 @@ public class RMAfterInvocationProviderUnitTest
 	NodeService nodeService;
 	@Mock
 	ChildAssociationRef childAssocRefA;
+	@Mock
+	NodeBulkLoader nodeBulkLoader;
+	@Mock
+	PermissionService permissionService;
+	@Mock
+	RMCaveatConfigComponent caveatConfigComponent;
+	@Mock
+	ApplicationContext applicationContext;
+	@Mock
+	FilePlanService filePlanService;
 
 	/** Set up the mocks and common test data. */
 	@Before
@@ -178,4 +204,112 @@ public class RMAfterInvocationProviderUnitTest
 		assertEquals("Expected no results returned.", 0, filteringResultSet.length());
 		assertEquals("Expected that results were limited by page size.", LimitBy.FINAL_SIZE, filteringResultSet.getResultSetMetaData().getLimitedBy());
 	}
+
+	/** Check that the nodes of a collection are pre-fetched a batch at a time. */
+	@Test
+	public void testDecide_collection_prefetchedInBatches()
+	{
+		rmAfterInvocationProvider.setFilterBatchSize(100);
+		List<NodeRef> returnedObject = createNodeRefs(250);
+
+		// Call the method under test.
+		Collection<?> filtered = (Collection<?>) rmAfterInvocationProvider.decide(authentication, object, config, returnedObject);
+
+		assertEquals("Expected all results returned.", 250, filtered.size());
+		verify(nodeBulkLoader, times(3)).cacheNodes(anyListOf(NodeRef.class));
+		verify(nodeBulkLoader).cacheNodes(returnedObject.subList(0, 100));
+		verify(nodeBulkLoader).cacheNodes(returnedObject.subList(200, 250));
+	}
+
+	/** Check that no more batches are pre-fetched once the requested number of results has been found. */
+	@Test
+	public void testDecide_collection_stopsWhenFilled()
+	{
+		rmAfterInvocationProvider.setFilterBatchSize(100);
+		List<NodeRef> nodeRefs = createNodeRefs(250);
+		Collection<NodeRef> returnedObject = PermissionCheckCollectionMixin.create(nodeRefs, 150, 0, 0);
+
+		// Call the method under test.
+		Collection<?> filtered = (Collection<?>) rmAfterInvocationProvider.decide(authentication, object, config, returnedObject);
+
+		assertEquals("Expected the requested number of results returned.", 150, filtered.size());
+		verify(nodeBulkLoader, times(2)).cacheNodes(anyListOf(NodeRef.class));
+	}
+
+	/**
+	 * Check that denied values don't count towards the requested number of results, so the checks carry on until the
+	 * requested number has been kept, and stop there.
+	 */
+	@Test
+	public void testDecide_collection_filledPastDeniedValues()
+	{
+		setUpFilterNode();
+		List<NodeRef> nodeRefs = createNodeRefs(4);
+		for (NodeRef nodeRef : nodeRefs)
+		{
+			when(nodeService.hasAspect(nodeRef, RecordsManagementModel.ASPECT_FILE_PLAN_COMPONENT)).thenReturn(true);
+			when(permissionService.hasPermission(nodeRef, RMPermissionModel.READ_RECORDS)).thenReturn(AccessStatus.ALLOWED);
+		}
+		when(permissionService.hasPermission(nodeRefs.get(0), RMPermissionModel.READ_RECORDS)).thenReturn(AccessStatus.DENIED);
+		Collection<NodeRef> returnedObject = PermissionCheckCollectionMixin.create(new ArrayList<>(nodeRefs), 2, 0, 0);
+
+		// Call the method under test.
+		Collection<?> filtered = (Collection<?>) rmAfterInvocationProvider.decide(authentication, object, config, returnedObject);
+
+		assertEquals("Expected the two readable results after the denied one.", nodeRefs.subList(1, 3), new ArrayList<>(filtered));
+		verify(permissionService, never()).hasPermission(nodeRefs.get(3), RMPermissionModel.READ_RECORDS);
+	}
+
+	/** Check that nodes sharing an ACL but with different owners are each checked for read records. */
+	@Test
+	public void testDecide_collection_sameAclDifferentOwners()
+	{
+		setUpFilterNode();
+
+		// Two records with the same ACL, only the first of which is owned by the current user.
+		NodeRef ownedRecord = new NodeRef("test://node/ownedRecord");
+		NodeRef otherRecord = new NodeRef("test://node/otherRecord");
+		for (NodeRef record : asList(ownedRecord, otherRecord))
+		{
+			when(nodeService.hasAspect(record, RecordsManagementModel.ASPECT_FILE_PLAN_COMPONENT)).thenReturn(true);
+			when(nodeService.getNodeAclId(record)).thenReturn(1L);
+		}
+		when(nodeService.getProperty(ownedRecord, ContentModel.PROP_OWNER)).thenReturn("owner");
+		when(nodeService.getProperty(otherRecord, ContentModel.PROP_OWNER)).thenReturn("other");
+		when(permissionService.hasPermission(ownedRecord, RMPermissionModel.READ_RECORDS)).thenReturn(AccessStatus.ALLOWED);
+		when(permissionService.hasPermission(otherRecord, RMPermissionModel.READ_RECORDS)).thenReturn(AccessStatus.DENIED);
+		List<NodeRef> returnedObject = new ArrayList<>(asList(ownedRecord, otherRecord));
+
+		// Call the method under test.
+		Collection<?> filtered = (Collection<?>) rmAfterInvocationProvider.decide(authentication, object, config, returnedObject);
+
+		assertEquals("Expected only the owned record returned.", asList(ownedRecord), new ArrayList<>(filtered));
+		verify(permissionService).hasPermission(ownedRecord, RMPermissionModel.READ_RECORDS);
+		verify(permissionService).hasPermission(otherRecord, RMPermissionModel.READ_RECORDS);
+	}
+
+	/** Filter the nodes returned, checking read records and caveats. */
+	private void setUpFilterNode()
+	{
+		rmAfterInvocationProvider.setFilterBatchSize(100);
+		rmAfterInvocationProvider.setPermissionService(permissionService);
+		rmAfterInvocationProvider.setCaveatConfigComponent(caveatConfigComponent);
+		rmAfterInvocationProvider.setApplicationContext(applicationContext);
+		when(applicationContext.getBean("filePlanService")).thenReturn(filePlanService);
+		when(caveatConfigComponent.hasAccess(any(NodeRef.class))).thenReturn(true);
+		ConfigAttribute configAttribute = mock(ConfigAttribute.class);
+		when(configAttribute.getAttribute()).thenReturn("AFTER_RM.FilterNode");
+		List<ConfigAttribute> configAttributes = asList(configAttribute);
+		when(config.getConfigAttributes()).thenReturn(configAttributes.iterator());
+	}
+
+	private List<NodeRef> createNodeRefs(int count)
+	{
+		List<NodeRef> nodeRefs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			nodeRefs.add(new NodeRef("test://node/" + i));
+		}
+		return nodeRefs;
+	}
 }
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.capability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.doReturn;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.alfresco.module.org_alfresco_module_rm.caveat.RMCaveatConfigComponent;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.lock.LockService;
+import org.alfresco.service.cmr.lock.LockStatus;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import net.sf.acegisecurity.vote.AccessDecisionVoter;
+
+/**
+ * Read decision cache unit test
+ *
+ * @since 3.4
+ */
+public class RMReadDecisionCacheUnitTest extends BaseUnitTest
+{
+    private static final String USER = "user";
+    private static final String GROUP = "GROUP_readers";
+    private static final Long ACL_ID = 10L;
+
+    @Mock(name="caveatConfigComponent") private RMCaveatConfigComponent mockedCaveatConfigComponent;
+    @Mock(name="lockService") private LockService mockedLockService;
+
+    /** cache under test */
+    @InjectMocks private RMReadDecisionCache readDecisionCache;
+
+    /** node sharing the ACL of the file plan component */
+    private NodeRef sibling;
+
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        readDecisionCache.setCache(new DefaultSimpleCache<Serializable, Integer>());
+        sibling = generateNodeRef();
+
+        doReturn(ACL_ID).when(mockedNodeService).getNodeAclId(filePlanComponent);
+        doReturn(ACL_ID).when(mockedNodeService).getNodeAclId(sibling);
+        doReturn(Collections.singleton(GROUP)).when(mockedAuthorityService).getAuthoritiesForUser(USER);
+        doReturn(LockStatus.NO_LOCK).when(mockedLockService).getLockStatus(filePlanComponent, USER);
+        doReturn(LockStatus.NO_LOCK).when(mockedLockService).getLockStatus(sibling, USER);
+        startTransaction();
+
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+    }
+
+    @After
+    public void after()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * Given a read decision has been cached for a node
+     * When the decision for another node with the same ACL is retrieved in a later transaction
+     * Then the cached decision is returned
+     */
+    @Test
+    public void decisionSharedByNodesWithSameAcl()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_GRANTED);
+
+        startTransaction();
+
+        assertEquals(Integer.valueOf(AccessDecisionVoter.ACCESS_GRANTED), readDecisionCache.get(readDecisionCache.getKey(sibling, filePlan)));
+        assertEquals(1, readDecisionCache.getHits());
+    }
+
+    /**
+     * Given a cached read decision
+     * When the decision for a node with another ACL is retrieved
+     * Then no decision is returned
+     */
+    @Test
+    public void decisionCachedPerAcl()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_GRANTED);
+
+        doReturn(11L).when(mockedNodeService).getNodeAclId(sibling);
+
+        assertNull(readDecisionCache.get(readDecisionCache.getKey(sibling, filePlan)));
+        assertEquals(1, readDecisionCache.getMisses());
+    }
+
+    /**
+     * Given a cached read decision
+     * When the user is added to a group and the decision is retrieved in a later transaction
+     * Then no decision is returned
+     */
+    @Test
+    public void groupMembershipChangeNotCached()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_DENIED);
+
+        doReturn(new HashSet<>(Arrays.asList(GROUP, "GROUP_other"))).when(mockedAuthorityService).getAuthoritiesForUser(USER);
+        startTransaction();
+
+        assertNull(readDecisionCache.get(readDecisionCache.getKey(filePlanComponent, filePlan)));
+    }
+
+    /**
+     * Given a cached read decision
+     * When the node is frozen
+     * Then no decision is returned
+     */
+    @Test
+    public void frozenNodeNotCached()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_GRANTED);
+
+        doReturn(true).when(mockedNodeService).hasAspect(filePlanComponent, ASPECT_FROZEN);
+
+        assertNull(readDecisionCache.get(readDecisionCache.getKey(filePlanComponent, filePlan)));
+    }
+
+    /**
+     * Given a node with caveats
+     * When the cache key of its read decision is requested
+     * Then the decision is not cacheable
+     */
+    @Test
+    public void nodeWithCaveatsNotCached()
+    {
+        doReturn(true).when(mockedCaveatConfigComponent).hasCaveats(filePlanComponent);
+
+        assertNull(readDecisionCache.getKey(filePlanComponent, filePlan));
+        assertNotNull(readDecisionCache.getKey(sibling, filePlan));
+    }
+
+    /**
+     * Given a cached read decision
+     * When the decision for a node with the same ACL in another file plan is retrieved
+     * Then no decision is returned
+     */
+    @Test
+    public void decisionCachedPerFilePlan()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_GRANTED);
+
+        assertNull(readDecisionCache.get(readDecisionCache.getKey(sibling, generateNodeRef(TYPE_FILE_PLAN))));
+    }
+
+    /**
+     * Given a cached read decision
+     * When the decision for a node with the same ACL locked by the user is retrieved
+     * Then no decision is returned
+     */
+    @Test
+    public void lockOwnerNotShared()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_DENIED);
+
+        doReturn(LockStatus.LOCK_OWNER).when(mockedLockService).getLockStatus(sibling, USER);
+
+        assertNull(readDecisionCache.get(readDecisionCache.getKey(sibling, filePlan)));
+    }
+
+    /**
+     * Given a node with extended security
+     * When the cache key of its read decision is requested
+     * Then the decision is not cacheable
+     */
+    @Test
+    public void nodeWithExtendedSecurityNotCached()
+    {
+        doReturn(true).when(mockedNodeService).hasAspect(filePlanComponent, ASPECT_EXTENDED_SECURITY);
+
+        assertNull(readDecisionCache.getKey(filePlanComponent, filePlan));
+        assertNotNull(readDecisionCache.getKey(sibling, filePlan));
+    }
+
+    /**
+     * Given a cached read decision
+     * When permissions change
+     * Then no decision is returned
+     */
+    @Test
+    public void invalidatedWhenPermissionsChange()
+    {
+        readDecisionCache.put(readDecisionCache.getKey(filePlanComponent, filePlan), AccessDecisionVoter.ACCESS_GRANTED);
+
+        readDecisionCache.invalidate();
+
+        assertNull(readDecisionCache.get(readDecisionCache.getKey(filePlanComponent, filePlan)));
+        assertEquals(1, readDecisionCache.getInvalidations());
+        assertEquals(1, readDecisionCache.getEvictions());
+    }
+
+    /**
+     * Simulates the start of a new transaction.
+     */
+    private void startTransaction()
+    {
+        doReturn(new HashMap<>()).when(mockedTransactionalResourceHelper).getMap("rm.readDecisionCache.authorityDigests");
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.capability.declarative;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.capability.Capability;
+import org.alfresco.module.org_alfresco_module_rm.capability.declarative.CapabilityEvaluationCache.CapabilityResults;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+
+import net.sf.acegisecurity.vote.AccessDecisionVoter;
+
+/**
+ * Capability evaluation cache unit test
+ *
+ * @since 3.4
+ */
+public class CapabilityEvaluationCacheUnitTest extends BaseUnitTest
+{
+    private static final String USER = "user";
+
+    /** test capabilities */
+    private Capability readCapability;
+    private Capability writeCapability;
+
+    /** node version cache */
+    private DefaultSimpleCache<NodeRef, Long> versionCache;
+
+    /** cache under test */
+    @InjectMocks private CapabilityEvaluationCache evaluationCache;
+
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        evaluationCache.setCache(new DefaultSimpleCache<Serializable, CapabilityResults>());
+        versionCache = new DefaultSimpleCache<>();
+        evaluationCache.setVersionCache(versionCache);
+        readCapability = mockCapability("Read");
+        writeCapability = mockCapability("Write");
+
+        doReturn(new Date(1000L)).when(mockedNodeService).getProperty(filePlanComponent, ContentModel.PROP_MODIFIED);
+        startTransaction();
+
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+    }
+
+    @After
+    public void after()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * Given the results of several capabilities have been cached for a node
+     * When they are retrieved in a later transaction
+     * Then each capability's result is returned
+     */
+    @Test
+    public void resultsCachedAcrossTransactions()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+        evaluationCache.put(writeCapability, filePlanComponent, AccessDecisionVoter.ACCESS_DENIED, 3000L);
+
+        startTransaction();
+
+        assertEquals(Integer.valueOf(AccessDecisionVoter.ACCESS_GRANTED), evaluationCache.get(readCapability, filePlanComponent));
+        assertEquals(Integer.valueOf(AccessDecisionVoter.ACCESS_DENIED), evaluationCache.get(writeCapability, filePlanComponent));
+        assertEquals(2, evaluationCache.getHits());
+        assertEquals(2, evaluationCache.getEvaluations());
+        assertEquals(3, evaluationCache.getMaxEvaluationTime());
+    }
+
+    /**
+     * Given a cached result
+     * When it is retrieved for another user
+     * Then no result is returned
+     */
+    @Test
+    public void resultsCachedPerUser()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        AuthenticationUtil.setFullyAuthenticatedUser("anotherUser");
+
+        assertNull(evaluationCache.get(readCapability, filePlanComponent));
+        assertEquals(1, evaluationCache.getMisses());
+    }
+
+    /**
+     * Given a cached result
+     * When the user is added to a group and the result is retrieved in a later transaction
+     * Then no result is returned
+     */
+    @Test
+    public void groupMembershipChangeNotCached()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        doReturn(Collections.singleton("GROUP_RecordsManagers")).when(mockedAuthorityService).getAuthoritiesForUser(USER);
+        startTransaction();
+
+        assertNull(evaluationCache.get(readCapability, filePlanComponent));
+    }
+
+    /**
+     * Given a cached result
+     * When the node is modified in a later transaction
+     * Then no result is returned
+     */
+    @Test
+    public void modifiedNodeNotCached()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        doReturn(new Date(2000L)).when(mockedNodeService).getProperty(filePlanComponent, ContentModel.PROP_MODIFIED);
+        startTransaction();
+
+        assertNull(evaluationCache.get(readCapability, filePlanComponent));
+    }
+
+    /**
+     * Given a cached result
+     * When the properties of a file plan component are updated
+     * Then the result of that node is invalidated
+     */
+    @Test
+    public void invalidatedOnUpdate()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        evaluationCache.onUpdateProperties(filePlanComponent, properties(PROP_REVIEW_AS_OF, null), properties(PROP_REVIEW_AS_OF, new Date()));
+
+        assertNull(evaluationCache.get(readCapability, filePlanComponent));
+    }
+
+    /**
+     * Given a cached result
+     * When a property capability conditions do not depend on is updated on a file plan component
+     * Then the result of that node is still returned
+     */
+    @Test
+    public void notInvalidatedOnUnrelatedUpdate()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        evaluationCache.onUpdateProperties(filePlanComponent, properties(ContentModel.PROP_TITLE, "before"), properties(ContentModel.PROP_TITLE, "after"));
+        startTransaction();
+
+        assertEquals(Integer.valueOf(AccessDecisionVoter.ACCESS_GRANTED), evaluationCache.get(readCapability, filePlanComponent));
+    }
+
+    /**
+     * Given a cached result
+     * When the cache is cleared and the node is stamped again in a later transaction
+     * Then no result is returned and the node versions have been reset
+     */
+    @Test
+    public void clearResetsVersions()
+    {
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+        assertFalse(versionCache.getKeys().isEmpty());
+
+        evaluationCache.clear();
+        startTransaction();
+
+        assertTrue(versionCache.getKeys().isEmpty());
+        assertNull(evaluationCache.get(readCapability, filePlanComponent));
+    }
+
+    /**
+     * Given cached results for two unrelated nodes
+     * When the properties of one of them are updated
+     * Then the result of the other node is still returned
+     */
+    @Test
+    public void otherNodesNotInvalidatedOnUpdate()
+    {
+        NodeRef otherNode = generateNodeRef();
+        doReturn(new Date(1000L)).when(mockedNodeService).getProperty(otherNode, ContentModel.PROP_MODIFIED);
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+        evaluationCache.put(readCapability, otherNode, AccessDecisionVoter.ACCESS_DENIED, 1000L);
+
+        evaluationCache.onUpdateProperties(otherNode, properties(PROP_REVIEW_AS_OF, null), properties(PROP_REVIEW_AS_OF, new Date()));
+        startTransaction();
+
+        assertEquals(Integer.valueOf(AccessDecisionVoter.ACCESS_GRANTED), evaluationCache.get(readCapability, filePlanComponent));
+        assertNull(evaluationCache.get(readCapability, otherNode));
+    }
+
+    /**
+     * Given a cached result for a node within a file plan component
+     * When the permissions of the parent are changed
+     * Then the result of the child is invalidated
+     */
+    @Test
+    public void childInvalidatedWithParent()
+    {
+        NodeRef child = generateNodeRef();
+        doReturn(new Date(1000L)).when(mockedNodeService).getProperty(child, ContentModel.PROP_MODIFIED);
+        doReturn(new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, filePlanComponent, ContentModel.ASSOC_CONTAINS, child))
+            .when(mockedNodeService).getPrimaryParent(child);
+        evaluationCache.put(readCapability, child, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        startTransaction();
+        assertEquals(Integer.valueOf(AccessDecisionVoter.ACCESS_GRANTED), evaluationCache.get(readCapability, child));
+
+        evaluationCache.invalidate(filePlanComponent);
+
+        assertNull(evaluationCache.get(readCapability, child));
+    }
+
+    /**
+     * Given the cache is disabled
+     * When a result is cached
+     * Then no result is returned
+     */
+    @Test
+    public void disabled()
+    {
+        evaluationCache.setEnabled(false);
+        evaluationCache.put(readCapability, filePlanComponent, AccessDecisionVoter.ACCESS_GRANTED, 1000L);
+
+        assertNull(evaluationCache.get(readCapability, filePlanComponent));
+        assertEquals(1, evaluationCache.getEvaluations());
+    }
+
+    /**
+     * Given the results of many capabilities
+     * When the results are retrieved by capability name
+     * Then each is returned unchanged
+     */
+    @Test
+    public void capabilityResultsHeldByName()
+    {
+        int[] values = { AccessDecisionVoter.ACCESS_GRANTED, AccessDecisionVoter.ACCESS_DENIED, AccessDecisionVoter.ACCESS_ABSTAIN };
+        CapabilityResults results = new CapabilityResults();
+        for (int index = 0; index < 100; index++)
+        {
+            results = results.with("capability" + index, values[index % values.length]);
+        }
+        results = results.with("capability40", AccessDecisionVoter.ACCESS_GRANTED);
+
+        for (int index = 0; index < 100; index++)
+        {
+            int expected = index == 40 ? AccessDecisionVoter.ACCESS_GRANTED : values[index % values.length];
+            assertEquals(Integer.valueOf(expected), results.get("capability" + index));
+        }
+        assertNull(results.get("capability100"));
+    }
+
+    /**
+     * Simulates the start of a new transaction.
+     */
+    private void startTransaction()
+    {
+        doReturn(new HashMap<>()).when(mockedTransactionalResourceHelper).getMap("rm.capabilityEvaluationCache.keys");
+        doReturn(new HashMap<>()).when(mockedTransactionalResourceHelper).getMap("rm.capabilityEvaluationCache.authorityDigests");
+    }
+
+    /**
+     * @param name      property name
+     * @param value     property value
+     * @return {@link Map}  properties holding the single value
+     */
+    private Map<QName, Serializable> properties(QName name, Serializable value)
+    {
+        Map<QName, Serializable> properties = new HashMap<>();
+        properties.put(name, value);
+        return properties;
+    }
+
+    /**
+     * @param name              capability name
+     * @return {@link Capability}   mocked capability
+     */
+    private Capability mockCapability(String name)
+    {
+        Capability capability = mock(Capability.class);
+        doReturn(name).when(capability).getName();
+        return capability;
+    }
+}
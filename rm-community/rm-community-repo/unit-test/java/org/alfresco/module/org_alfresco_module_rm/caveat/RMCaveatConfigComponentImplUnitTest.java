@@ -0,0 +1,270 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.caveat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.module.org_alfresco_module_rm.caveat.RMListOfValuesConstraint.MatchLogic;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.dictionary.ConstraintDefinition;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.security.AuthorityType;
+import org.alfresco.service.namespace.QName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+/**
+ * RM caveat config component implementation unit test
+ *
+ * @since 3.4
+ */
+public class RMCaveatConfigComponentImplUnitTest extends BaseUnitTest
+{
+    private static final String LIST = "rmc:list";
+    private static final String USER = "user";
+    private static final String OTHER_USER = "other";
+    private static final String GROUP = "GROUP_cleared";
+    private static final String VALUE = "secret";
+    private static final QName CAVEAT_ASPECT = QName.createQName(RM_URI, "caveatAspect");
+    private static final QName CAVEAT_PROPERTY = QName.createQName(RM_URI, "caveatProperty");
+
+    @Mock(name="contentService") private ContentService mockedContentService;
+
+    /** component under test */
+    @InjectMocks private RMCaveatConfigComponentImpl caveatConfigComponent;
+
+    /** allowed values cache */
+    private DefaultSimpleCache<String, Map<String, Set<String>>> userAllowedValues;
+
+    /** caveat-bearing property */
+    private PropertyDefinition mockedPropertyDefinition;
+
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        DefaultSimpleCache<String, Map<String, List<String>>> caveatConfig = new DefaultSimpleCache<>();
+        Map<String, List<String>> members = new HashMap<>();
+        members.put(GROUP, Collections.singletonList(VALUE));
+        caveatConfig.put(LIST, members);
+        caveatConfigComponent.setCaveatConfig(caveatConfig);
+
+        userAllowedValues = new DefaultSimpleCache<>();
+        caveatConfigComponent.setUserAllowedValues(userAllowedValues);
+
+        caveatConfigComponent.setCaveatAspects(Collections.singletonList(CAVEAT_ASPECT.toString()));
+        caveatConfigComponent.init();
+
+        doReturn(Collections.singleton(GROUP)).when(mockedAuthorityService).getAuthoritiesForUser(USER);
+        doReturn(Collections.emptySet()).when(mockedAuthorityService).getAuthoritiesForUser(OTHER_USER);
+
+        RMListOfValuesConstraint mockedConstraint = mock(RMListOfValuesConstraint.class);
+        doReturn(LIST).when(mockedConstraint).getShortName();
+        doReturn(MatchLogic.AND).when(mockedConstraint).getMatchLogicEnum();
+        ConstraintDefinition mockedConstraintDefinition = mock(ConstraintDefinition.class);
+        doReturn(mockedConstraint).when(mockedConstraintDefinition).getConstraint();
+        DataTypeDefinition mockedDataType = mock(DataTypeDefinition.class);
+        doReturn(DataTypeDefinition.TEXT).when(mockedDataType).getName();
+        mockedPropertyDefinition = mock(PropertyDefinition.class);
+        doReturn(mockedDataType).when(mockedPropertyDefinition).getDataType();
+        doReturn(Collections.singletonList(mockedConstraintDefinition)).when(mockedPropertyDefinition).getConstraints();
+        doReturn(mockedPropertyDefinition).when(mockedDictionaryService).getProperty(CAVEAT_PROPERTY);
+    }
+
+    @After
+    public void after()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * Given a user in a group with caveat values
+     * When the allowed values are retrieved twice
+     * Then the user's authorities are only resolved once
+     */
+    @Test
+    public void allowedValuesCachedPerUser()
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+
+        assertEquals(Collections.singletonList(VALUE), caveatConfigComponent.getRMAllowedValues(LIST));
+        assertEquals(Collections.singletonList(VALUE), caveatConfigComponent.getRMAllowedValues(LIST));
+
+        verify(mockedAuthorityService, times(1)).getAuthoritiesForUser(USER);
+    }
+
+    /**
+     * Given the allowed values of two users are cached
+     * When one of the users is added to a group
+     * Then only the allowed values of that user are cleared
+     */
+    @Test
+    public void userAddedToGroupClearsOnlyThatUser()
+    {
+        cacheAllowedValues();
+        NodeRef person = generateNodeRef(TYPE_PERSON);
+        doReturn(USER).when(mockedNodeService).getProperty(person, PROP_USERNAME);
+
+        caveatConfigComponent.onCreateChildAssociation(memberAssoc(person), false);
+
+        assertNull(userAllowedValues.get(USER));
+        assertNotNull(userAllowedValues.get(OTHER_USER));
+    }
+
+    /**
+     * Given the allowed values of two users are cached
+     * When a group containing one of the users is removed from another group
+     * Then only the allowed values of the users in the group are cleared
+     */
+    @Test
+    public void groupRemovedFromGroupClearsContainedUsers()
+    {
+        cacheAllowedValues();
+        NodeRef group = generateNodeRef(TYPE_AUTHORITY_CONTAINER);
+        doReturn(GROUP).when(mockedNodeService).getProperty(group, PROP_AUTHORITY_NAME);
+        doReturn(Collections.singleton(USER)).when(mockedAuthorityService).getContainedAuthorities(AuthorityType.USER, GROUP, false);
+
+        caveatConfigComponent.onDeleteChildAssociation(memberAssoc(group));
+
+        assertNull(userAllowedValues.get(USER));
+        assertNotNull(userAllowedValues.get(OTHER_USER));
+    }
+
+    /**
+     * Given the allowed values of two users are cached
+     * When the membership of an authority that no longer exists changes
+     * Then the allowed values of every user are cleared
+     */
+    @Test
+    public void unresolvedMemberClearsAllUsers()
+    {
+        cacheAllowedValues();
+
+        caveatConfigComponent.onDeleteChildAssociation(memberAssoc(generateNodeRef(TYPE_PERSON, false)));
+
+        assertNull(userAllowedValues.get(USER));
+        assertNull(userAllowedValues.get(OTHER_USER));
+    }
+
+    /**
+     * Given the allowed values of two users are cached
+     * When the values of an authority in a caveat list are updated
+     * Then the allowed values of every user are cleared
+     */
+    @Test
+    public void configChangeClearsAllUsers()
+    {
+        cacheAllowedValues();
+        doReturn(generateNodeRef(TYPE_CAVEAT_CONFIG)).when(mockedNodeService).getChildByName(any(NodeRef.class), eq(ASSOC_CAVEAT_CONFIG), anyString());
+        doReturn(mock(ContentWriter.class)).when(mockedContentService).getWriter(any(NodeRef.class), eq(PROP_CONTENT), eq(true));
+
+        caveatConfigComponent.updateRMConstraintListAuthority(LIST, OTHER_USER, Collections.singletonList(VALUE));
+
+        assertNull(userAllowedValues.get(USER));
+        assertNull(userAllowedValues.get(OTHER_USER));
+
+        AuthenticationUtil.setFullyAuthenticatedUser(OTHER_USER);
+        assertEquals(Collections.singletonList(VALUE), caveatConfigComponent.getRMAllowedValues(LIST));
+    }
+
+    /**
+     * Given a node with a caveat property
+     * When access to the node is checked for a user with and a user without the caveat value
+     * Then only the user with the value has access and the property constraints are worked out once
+     */
+    @Test
+    public void accessVetoedByCaveat()
+    {
+        NodeRef record = generateNodeRef(TYPE_CONTENT);
+        doReturn(true).when(mockedNodeService).hasAspect(record, CAVEAT_ASPECT);
+        Map<QName, Serializable> properties = new HashMap<>();
+        properties.put(CAVEAT_PROPERTY, (Serializable)Arrays.asList(VALUE));
+        doReturn(properties).when(mockedNodeService).getProperties(record);
+
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+        assertTrue(caveatConfigComponent.hasAccess(record));
+
+        AuthenticationUtil.setFullyAuthenticatedUser(OTHER_USER);
+        assertFalse(caveatConfigComponent.hasAccess(record));
+
+        verify(mockedPropertyDefinition, times(1)).getConstraints();
+    }
+
+    /**
+     * Helper method to cache the allowed values of both users.
+     */
+    private void cacheAllowedValues()
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+        caveatConfigComponent.getRMAllowedValues(LIST);
+        AuthenticationUtil.setFullyAuthenticatedUser(OTHER_USER);
+        caveatConfigComponent.getRMAllowedValues(LIST);
+
+        assertNotNull(userAllowedValues.get(USER));
+        assertNotNull(userAllowedValues.get(OTHER_USER));
+    }
+
+    /**
+     * Helper method to create a group membership association.
+     */
+    private ChildAssociationRef memberAssoc(NodeRef member)
+    {
+        return new ChildAssociationRef(ASSOC_MEMBER, generateNodeRef(TYPE_AUTHORITY_CONTAINER), ASSOC_MEMBER, member);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.content.cleanser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Content cleanser unit test.
+ *
+ * @since 3.4
+ */
+public class ContentCleanserUnitTest
+{
+    /** file size that is not a multiple of the block size */
+    private static final int FILE_SIZE = 10 * 1024 + 17;
+
+    private ContentCleanser contentCleanser = new ContentCleanser()
+    {
+        public void cleanse(File file) {}
+    };
+
+    private File file;
+
+    @Before
+    public void before() throws Exception
+    {
+        file = File.createTempFile("contentCleanser", ".bin");
+        byte[] content = new byte[FILE_SIZE];
+        Arrays.fill(content, (byte) 0x5a);
+        Files.write(file.toPath(), content);
+
+        contentCleanser.setBlockSize(1024);
+    }
+
+    @After
+    public void after()
+    {
+        file.delete();
+    }
+
+    /**
+     * Given a file that spans a number of blocks
+     * When I overwrite it with ones
+     * Then every byte is overwritten and the length of the file is unchanged
+     */
+    @Test
+    public void overwriteOnes() throws Exception
+    {
+        contentCleanser.overwrite(file, contentCleanser.overwriteOnes);
+
+        byte[] expected = new byte[FILE_SIZE];
+        Arrays.fill(expected, (byte) 0xff);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+        assertEquals(FILE_SIZE, contentCleanser.getBytesOverwritten());
+        assertEquals(1, contentCleanser.getPassCount());
+    }
+
+    /**
+     * Given a file that spans a number of blocks
+     * When I overwrite it with zeros using direct buffers
+     * Then every byte is overwritten and the length of the file is unchanged
+     */
+    @Test
+    public void overwriteZerosWithDirectBuffers() throws Exception
+    {
+        contentCleanser.setUseDirectBuffers(true);
+        contentCleanser.overwrite(file, contentCleanser.overwriteZeros);
+
+        assertArrayEquals(new byte[FILE_SIZE], Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Given a file that spans a number of blocks
+     * When I overwrite it with random data
+     * Then the original content is replaced and the length of the file is unchanged
+     */
+    @Test
+    public void overwriteRandom() throws Exception
+    {
+        contentCleanser.overwrite(file, contentCleanser.overwriteRandom);
+
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertEquals(FILE_SIZE, content.length);
+
+        byte[] original = new byte[FILE_SIZE];
+        Arrays.fill(original, (byte) 0x5a);
+        assertFalse(Arrays.equals(original, content));
+    }
+
+    /**
+     * Given an overwrite operation that only writes a byte at a time
+     * When I overwrite a file with it
+     * Then every byte is overwritten
+     */
+    @Test
+    public void overwriteByteOperation() throws Exception
+    {
+        contentCleanser.overwrite(file, contentCleanser.new OverwriteOperation()
+        {
+            public void operation(OutputStream os) throws IOException
+            {
+                os.write(0x01);
+            }
+        });
+
+        byte[] expected = new byte[FILE_SIZE];
+        Arrays.fill(expected, (byte) 0x01);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.disposition;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Disposable item index unit test
+ *
+ * @since 3.4
+ */
+public class DisposableItemIndexUnitTest extends BaseUnitTest
+{
+    private static final String INDEX_CONTEXT = "rm.disposableItemIndex";
+    private static final String INDEX_BUILT_CONTEXT = "rm.disposableItemIndex.built";
+    private static final String INDEX_BUILDING_CONTEXT = "rm.disposableItemIndex.building";
+
+    /** service mocks */
+    private @Mock AttributeService mockedAttributeService;
+    private @Mock TransactionService mockedTransactionService;
+
+    /** test object */
+    private @InjectMocks DisposableItemIndex disposableItemIndex;
+
+    /** number of index entries handed to the attribute query callbacks */
+    private int entriesRead;
+
+    /** marks recorded against the index entries */
+    private Map<NodeRef, Serializable> marks = new HashMap<>();
+
+    /**
+     * Given a folder level schedule with indexed folders
+     * When one folder has been deleted and another now falls under a different schedule
+     * Then only the folder still governed by the schedule is returned
+     */
+    @Test
+    public void staleEntriesAreSkipped()
+    {
+        NodeRef schedule = generateSchedule(false);
+        NodeRef deletedFolder = generateNodeRef(TYPE_RECORD_FOLDER, false);
+        NodeRef movedFolder = generateRecordFolder();
+        doReturn(mockSchedule(generateSchedule(false), false)).when(mockedDispositionService).getDispositionSchedule(movedFolder);
+        doReturn(mockSchedule(schedule, false)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+        mockIndexEntries(schedule, deletedFolder, movedFolder, recordFolder);
+
+        List<NodeRef> items = disposableItemIndex.getItems(schedule, Integer.MAX_VALUE);
+
+        assertEquals(Collections.singletonList(recordFolder), items);
+    }
+
+    /**
+     * Given a record level schedule with indexed records
+     * When only one item is requested
+     * Then the remaining entries are not checked
+     */
+    @Test
+    public void stopsOnceEnoughItemsFound()
+    {
+        NodeRef schedule = generateSchedule(true);
+        NodeRef otherRecord = generateRecord();
+        doReturn(mockSchedule(schedule, true)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+        mockIndexEntries(schedule, record, otherRecord);
+
+        List<NodeRef> items = disposableItemIndex.getItems(schedule, 1);
+
+        assertEquals(Collections.singletonList(record), items);
+        verify(mockedNodeService, never()).getParentAssocs(otherRecord);
+        assertEquals(1, entriesRead);
+    }
+
+    /**
+     * Given a folder level schedule whose first indexed folder has been deleted
+     * When only one item is requested
+     * Then the entries are read a page at a time until a folder governed by the schedule is found
+     */
+    @Test
+    public void readsFurtherPagesPastStaleEntries()
+    {
+        NodeRef schedule = generateSchedule(false);
+        NodeRef deletedFolder = generateNodeRef(TYPE_RECORD_FOLDER, false);
+        NodeRef otherFolder = generateRecordFolder();
+        doReturn(mockSchedule(schedule, false)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+        mockIndexEntries(schedule, deletedFolder, recordFolder, otherFolder);
+
+        List<NodeRef> items = disposableItemIndex.getItems(schedule, 1);
+
+        assertEquals(Collections.singletonList(recordFolder), items);
+        verify(mockedNodeService, never()).exists(otherFolder);
+    }
+
+    /**
+     * Given a folder level schedule whose first page of entries includes a deleted folder
+     * When the entry of the deleted folder is removed by another transaction before the next page is read
+     * Then the next page carries on after the entries already read, rather than skipping a live entry
+     */
+    @Test
+    public void entryRemovedBetweenPagesDoesNotShiftNextPage()
+    {
+        NodeRef schedule = generateSchedule(false);
+        final NodeRef deletedFolder = generateNodeRef(TYPE_RECORD_FOLDER, false);
+        NodeRef otherFolder = generateRecordFolder();
+        doReturn(mockSchedule(schedule, false)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+        doReturn(mockSchedule(schedule, false)).when(mockedDispositionService).getDispositionSchedule(otherFolder);
+        final List<NodeRef> entries = mockIndexEntries(schedule, deletedFolder, recordFolder, otherFolder);
+        doAnswer(new Answer<Boolean>()
+        {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable
+            {
+                entries.remove(deletedFolder);
+                return false;
+            }
+        }).when(mockedNodeService).exists(deletedFolder);
+
+        List<NodeRef> items = disposableItemIndex.getItems(schedule, 2);
+
+        assertEquals(asList(recordFolder, otherFolder), items);
+    }
+
+    /**
+     * Given a built record level index
+     * When a record is filed into a folder governed by the schedule
+     * Then the record is added to the index
+     */
+    @Test
+    public void fileRecordAddsToBuiltIndex()
+    {
+        NodeRef schedule = generateSchedule(true);
+        doReturn(mockSchedule(schedule, true)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+        doReturn(true).when(mockedAttributeService).exists(INDEX_BUILT_CONTEXT, schedule);
+
+        disposableItemIndex.onCreateChildAssociation(generateChildAssociationRef(recordFolder, record), true);
+
+        verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule, record);
+    }
+
+    /**
+     * Given a record level index that is being built
+     * When a record is filed into a folder governed by the schedule
+     * Then the record is added to the index, in case it was filed after the items to build from were read
+     */
+    @Test
+    public void fileRecordAddsToIndexBeingBuilt()
+    {
+        NodeRef schedule = generateSchedule(true);
+        doReturn(mockSchedule(schedule, true)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+        doReturn(true).when(mockedAttributeService).exists(INDEX_BUILDING_CONTEXT, schedule);
+
+        disposableItemIndex.onCreateChildAssociation(generateChildAssociationRef(recordFolder, record), true);
+
+        verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule, record);
+    }
+
+    /**
+     * Given a record level index that has not been built
+     * When a record is filed into a folder governed by the schedule
+     * Then nothing is indexed, the index will be built on first use
+     */
+    @Test
+    public void fileRecordIgnoredWhenIndexNotBuilt()
+    {
+        NodeRef schedule = generateSchedule(true);
+        doReturn(mockSchedule(schedule, true)).when(mockedDispositionService).getDispositionSchedule(recordFolder);
+
+        disposableItemIndex.onCreateChildAssociation(generateChildAssociationRef(recordFolder, record), true);
+
+        verify(mockedAttributeService, never()).setAttribute(any(Serializable.class), eq(INDEX_CONTEXT), eq(schedule), eq(record));
+    }
+
+    /**
+     * Given a schedule
+     * When it is changed from folder to record level disposition
+     * Then its index is discarded
+     */
+    @Test
+    public void recordLevelChangeInvalidatesIndex()
+    {
+        NodeRef schedule = generateSchedule(true);
+        Map<QName, Serializable> before = Collections.<QName, Serializable>singletonMap(PROP_RECORD_LEVEL_DISPOSITION, false);
+        Map<QName, Serializable> after = Collections.<QName, Serializable>singletonMap(PROP_RECORD_LEVEL_DISPOSITION, true);
+
+        disposableItemIndex.onUpdateProperties(schedule, before, after);
+
+        verify(mockedAttributeService).removeAttribute(INDEX_BUILT_CONTEXT, schedule);
+        verify(mockedAttributeService).removeAttribute(INDEX_BUILDING_CONTEXT, schedule);
+        verify(mockedAttributeService).removeAttributes(INDEX_CONTEXT, schedule);
+    }
+
+    /**
+     * Given a schedule
+     * When its index is built
+     * Then the index is marked as being built before the items are read, every item is indexed and the index is
+     * marked as built
+     */
+    @Test
+    public void buildIndexesAllItems()
+    {
+        final NodeRef schedule = generateSchedule(false);
+        final NodeRef otherFolder = generateRecordFolder();
+        mockTransactions();
+        doReturn(true).when(mockedAttributeService).exists(INDEX_BUILDING_CONTEXT, schedule);
+        disposableItemIndex.setBuildBatchSize(1);
+
+        disposableItemIndex.build(schedule, consumer ->
+        {
+            verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_BUILDING_CONTEXT, schedule);
+            consumer.accept(recordFolder);
+            consumer.accept(otherFolder);
+        });
+
+        verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule, recordFolder);
+        verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule, otherFolder);
+        verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_BUILT_CONTEXT, schedule);
+        // the old entries are discarded, then each batch and the built marker are written in a new transaction
+        verify(mockedRetryingTransactionHelper, times(4)).doInTransaction(any(RetryingTransactionCallback.class), eq(false), eq(true));
+    }
+
+    /**
+     * Given a schedule whose index is being built
+     * When the index is discarded before the build finishes
+     * Then the index is not marked as built
+     */
+    @Test
+    public void buildDiscardedWhileBuildingNotMarkedBuilt()
+    {
+        NodeRef schedule = generateSchedule(false);
+        mockTransactions();
+
+        disposableItemIndex.build(schedule, consumer -> consumer.accept(recordFolder));
+
+        verify(mockedAttributeService).setAttribute(Boolean.TRUE, INDEX_CONTEXT, schedule, recordFolder);
+        verify(mockedAttributeService, never()).setAttribute(Boolean.TRUE, INDEX_BUILT_CONTEXT, schedule);
+    }
+
+    /**
+     * Given an index whose first entry has been marked
+     * When a page of one unmarked entry is read
+     * Then the marked entry is passed over and the query stops once the page is full
+     */
+    @Test
+    public void unmarkedEntriesReadAPageAtATime()
+    {
+        NodeRef schedule = generateSchedule(true);
+        NodeRef otherRecord = generateRecord();
+        NodeRef lastRecord = generateRecord();
+        marks.put(record, "change");
+        mockIndexEntries(schedule, record, otherRecord, lastRecord);
+
+        List<NodeRef> entries = disposableItemIndex.getUnmarkedEntries(schedule, "change", 1);
+
+        assertEquals(Collections.singletonList(otherRecord), entries);
+        assertEquals(2, entriesRead);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockTransactions()
+    {
+        when(mockedTransactionService.getRetryingTransactionHelper()).thenReturn(mockedRetryingTransactionHelper);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+            }
+        }).when(mockedRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+    }
+
+    private NodeRef generateSchedule(boolean isRecordLevel)
+    {
+        NodeRef schedule = generateNodeRef(TYPE_DISPOSITION_SCHEDULE);
+        doReturn(isRecordLevel).when(mockedNodeService).getProperty(schedule, PROP_RECORD_LEVEL_DISPOSITION);
+        return schedule;
+    }
+
+    private DispositionSchedule mockSchedule(NodeRef schedule, boolean isRecordLevel)
+    {
+        DispositionSchedule dispositionSchedule = mock(DispositionSchedule.class);
+        doReturn(schedule).when(dispositionSchedule).getNodeRef();
+        doReturn(isRecordLevel).when(dispositionSchedule).isRecordLevelDisposition();
+        return dispositionSchedule;
+    }
+
+    /**
+     * Mock the entries of an index, each given the attribute id of its position in the items.
+     *
+     * @return the entries, from which entries can be removed
+     */
+    private List<NodeRef> mockIndexEntries(final NodeRef schedule, final NodeRef... items)
+    {
+        final List<NodeRef> entries = new ArrayList<>(asList(items));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                AttributeQueryCallback callback = (AttributeQueryCallback) invocation.getArguments()[0];
+                for (NodeRef item : new ArrayList<>(entries))
+                {
+                    entriesRead++;
+                    long id = asList(items).indexOf(item);
+                    Serializable mark = marks.containsKey(item) ? marks.get(item) : Boolean.TRUE;
+                    if (!callback.handleAttribute(id, mark, new Serializable[] { INDEX_CONTEXT, schedule, item }))
+                    {
+                        break;
+                    }
+                }
+                return null;
+            }
+        }).when(mockedAttributeService).getAttributes(any(AttributeQueryCallback.class), eq(INDEX_CONTEXT), eq(schedule));
+        return entries;
+    }
+}
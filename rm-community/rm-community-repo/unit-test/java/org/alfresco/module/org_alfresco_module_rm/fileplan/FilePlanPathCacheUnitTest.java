@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.fileplan;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanPathCache.PathElement;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+
+/**
+ * File plan path cache unit test
+ *
+ * @since 3.4
+ */
+public class FilePlanPathCacheUnitTest extends BaseUnitTest
+{
+    /** cache under test */
+    @InjectMocks private FilePlanPathCache filePlanPathCache;
+
+    private NodeRef category;
+    private NodeRef folder;
+    private NodeRef otherCategory;
+
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        filePlanPathCache.setCache(new DefaultSimpleCache<NodeRef, PathElement>());
+
+        category = generateNodeRef();
+        setupAsFilePlanComponent(category);
+        otherCategory = generateNodeRef();
+        setupAsFilePlanComponent(otherCategory);
+        folder = generateNodeRef();
+        setupAsFilePlanComponent(folder);
+
+        setPrimaryParent(category, filePlan);
+        setPrimaryParent(otherCategory, filePlan);
+        setPrimaryParent(folder, category);
+        doReturn("folder").when(mockedNodeService).getProperty(folder, ContentModel.PROP_NAME);
+    }
+
+    /**
+     * Given the path of a node has been cached
+     * When the path is retrieved again
+     * Then it is built from the cache without reading any ancestors
+     */
+    @Test
+    public void pathBuiltFromCache()
+    {
+        assertEquals(asList(filePlan, category, folder), filePlanPathCache.getNodeRefPath(folder));
+        assertEquals(asList(filePlan, category, folder), filePlanPathCache.getNodeRefPath(folder));
+
+        verify(mockedNodeService, times(1)).getPrimaryParent(folder);
+        verify(mockedNodeService, times(1)).getPrimaryParent(category);
+        assertEquals(3, filePlanPathCache.getMisses());
+        assertEquals(3, filePlanPathCache.getHits());
+        assertEquals("folder", filePlanPathCache.getName(folder));
+    }
+
+    /**
+     * Given the path of a node has been cached
+     * When the node is moved
+     * Then its path reflects the new parent
+     */
+    @Test
+    public void moveInvalidatesNode()
+    {
+        filePlanPathCache.getNodeRefPath(folder);
+
+        ChildAssociationRef oldAssoc = setPrimaryParent(folder, category);
+        ChildAssociationRef newAssoc = setPrimaryParent(folder, otherCategory);
+        filePlanPathCache.onMoveNode(oldAssoc, newAssoc);
+
+        assertEquals(asList(filePlan, otherCategory, folder), filePlanPathCache.getNodeRefPath(folder));
+        assertEquals(1, filePlanPathCache.getInvalidations());
+    }
+
+    /**
+     * Given the name of a node has been cached
+     * When properties other than the name are updated
+     * Then the node is not invalidated, and when the name is updated it is
+     */
+    @Test
+    public void renameInvalidatesNode()
+    {
+        filePlanPathCache.getNodeRefPath(folder);
+
+        Map<QName, Serializable> before = Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, "folder");
+        filePlanPathCache.onUpdateProperties(folder, before, before);
+        assertEquals(0, filePlanPathCache.getInvalidations());
+
+        doReturn("renamed").when(mockedNodeService).getProperty(folder, ContentModel.PROP_NAME);
+        filePlanPathCache.onUpdateProperties(folder, before,
+                    Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, "renamed"));
+        assertEquals(1, filePlanPathCache.getInvalidations());
+        assertEquals("renamed", filePlanPathCache.getName(folder));
+    }
+
+    /**
+     * Given a node that isn't a file plan component
+     * When its path is retrieved
+     * Then the path is empty
+     */
+    @Test
+    public void nonFilePlanComponentHasEmptyPath()
+    {
+        NodeRef document = generateCmContent("document");
+        setPrimaryParent(document, generateNodeRef());
+
+        assertTrue(filePlanPathCache.getNodeRefPath(document).isEmpty());
+    }
+
+    private ChildAssociationRef setPrimaryParent(NodeRef child, NodeRef parent)
+    {
+        ChildAssociationRef assoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, parent, ContentModel.ASSOC_CONTAINS, child);
+        doReturn(assoc).when(mockedNodeService).getPrimaryParent(child);
+        return assoc;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.fileplan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanRegistry.FilePlans;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.util.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * File plan registry unit test
+ *
+ * @since 3.4
+ */
+public class FilePlanRegistryUnitTest extends BaseUnitTest
+{
+    /** registry under test */
+    @InjectMocks private FilePlanRegistry filePlanRegistry;
+
+    @Mock private NodeDAO mockedNodeDAO;
+
+    /** file plans returned by the node scan */
+    private List<NodeRef> scannedFilePlans;
+
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        filePlanRegistry.setCache(new DefaultSimpleCache<StoreRef, FilePlans>());
+        filePlanRegistry.setNodeDAO(mockedNodeDAO);
+
+        scannedFilePlans = Arrays.asList(filePlan);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                NodeRefQueryCallback callback = (NodeRefQueryCallback) invocation.getArguments()[3];
+                long id = 1;
+                for (NodeRef nodeRef : scannedFilePlans)
+                {
+                    callback.handle(new Pair<>(id++, nodeRef));
+                }
+                return null;
+            }
+        }).when(mockedNodeDAO).getNodesWithAspects(any(Set.class), anyLong(), anyLong(), any(NodeRefQueryCallback.class));
+    }
+
+    /**
+     * Given the file plans of a store have been looked up
+     * When they are looked up again
+     * Then the store is not scanned again
+     */
+    @Test
+    public void filePlansScannedOnce()
+    {
+        Set<NodeRef> expected = Collections.singleton(filePlan);
+        assertEquals(expected, filePlanRegistry.getFilePlans(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE));
+        assertEquals(expected, filePlanRegistry.getFilePlans(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE));
+
+        verify(mockedNodeDAO, times(1)).getNodesWithAspects(any(Set.class), anyLong(), anyLong(), any(NodeRefQueryCallback.class));
+        assertEquals(1, filePlanRegistry.getLoads());
+        assertEquals(1, filePlanRegistry.getHits());
+    }
+
+    /**
+     * Given the file plans of a store have been looked up
+     * When a file plan is created
+     * Then the next lookup includes it
+     */
+    @Test
+    public void createInvalidatesStore()
+    {
+        filePlanRegistry.getFilePlans(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+
+        NodeRef newFilePlan = generateNodeRef(TYPE_FILE_PLAN);
+        scannedFilePlans = Arrays.asList(filePlan, newFilePlan);
+        filePlanRegistry.onCreateNode(new ChildAssociationRef(ContentModel.ASSOC_CHILDREN, generateNodeRef(), ContentModel.ASSOC_CHILDREN, newFilePlan));
+
+        assertEquals(new HashSet<>(scannedFilePlans), filePlanRegistry.getFilePlans(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE));
+        assertEquals(1, filePlanRegistry.getInvalidations());
+        assertEquals(2, filePlanRegistry.getLoads());
+    }
+
+    /**
+     * Given a file plan that is the document library of a site
+     * When the file plan of the site is looked up
+     * Then it is found whatever the case of the site short name, and other sites have no file plan
+     */
+    @Test
+    public void filePlanBySiteId()
+    {
+        NodeRef site = generateNodeRef(SiteModel.TYPE_SITE);
+        doReturn("rm").when(mockedNodeService).getProperty(site, ContentModel.PROP_NAME);
+        doReturn("documentLibrary").when(mockedNodeService).getProperty(filePlan, ContentModel.PROP_NAME);
+        doReturn(new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, site, ContentModel.ASSOC_CONTAINS, filePlan))
+                    .when(mockedNodeService).getPrimaryParent(filePlan);
+        doReturn(true).when(mockedNodeTypeUtility).instanceOf(TYPE_FILE_PLAN, TYPE_FILE_PLAN);
+        doReturn(true).when(mockedNodeTypeUtility).instanceOf(SiteModel.TYPE_SITE, SiteModel.TYPE_SITE);
+
+        assertEquals(filePlan, filePlanRegistry.getFilePlanBySiteId("rm"));
+        assertEquals(filePlan, filePlanRegistry.getFilePlanBySiteId("RM"));
+        assertNull(filePlanRegistry.getFilePlanBySiteId("other"));
+        assertEquals(1, filePlanRegistry.getLoads());
+    }
+}
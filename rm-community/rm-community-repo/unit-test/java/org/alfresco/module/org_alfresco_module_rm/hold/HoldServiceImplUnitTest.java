@@ -58,6 +58,8 @@ import org.alfresco.module.org_alfresco_module_rm.capability.CapabilityService;
 import org.alfresco.module.org_alfresco_module_rm.capability.RMPermissionModel;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
 import org.alfresco.repo.node.integrity.IntegrityException;
 import org.alfresco.repo.security.permissions.AccessDeniedException;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -374,7 +376,8 @@ public class HoldServiceImplUnitTest extends BaseUnitTest
     @Test
     public void addToHoldAlreadyInHold()
     {
-        doReturn(asList(recordFolder, activeContent)).when(holdService).getHeld(hold);
+        doReturn(true).when(holdService).isHeld(hold, recordFolder);
+        doReturn(true).when(holdService).isHeld(hold, activeContent);
 
         holdService.addToHold(hold, recordFolder);
 
@@ -474,6 +477,52 @@ public class HoldServiceImplUnitTest extends BaseUnitTest
         verify(mockedNodeService, times(1)).addAspect(eq(record), eq(ASPECT_FROZEN), any(Map.class));
     }
 
+    @Test
+    public void addListToHoldsChecksHoldsOnce()
+    {
+        mockPoliciesForAddToHold();
+
+        holdService.addToHolds(asList(hold, hold2), asList(recordFolder, activeContent));
+
+        verify(mockedCapabilityService, times(1)).getCapabilityAccessState(hold, RMPermissionModel.ADD_TO_HOLD);
+        verify(mockedCapabilityService, times(1)).getCapabilityAccessState(hold2, RMPermissionModel.ADD_TO_HOLD);
+        verify(mockedNodeService).addChild(hold, recordFolder, ASSOC_FROZEN_CONTENT, ASSOC_FROZEN_CONTENT);
+        verify(mockedNodeService).addChild(hold2, recordFolder, ASSOC_FROZEN_CONTENT, ASSOC_FROZEN_CONTENT);
+        verify(mockedNodeService).addChild(hold, activeContent, ASSOC_FROZEN_CONTENT, ASSOC_FROZEN_CONTENT);
+        verify(mockedNodeService).addChild(hold2, activeContent, ASSOC_FROZEN_CONTENT, ASSOC_FROZEN_CONTENT);
+        verify(holdService, never()).getHeld(any(NodeRef.class));
+    }
+
+    @Test
+    public void listHeldByPagedByName()
+    {
+        NodeRef hiddenHold = generateNodeRef(TYPE_HOLD);
+        List<ChildAssociationRef> holds = new ArrayList<>(3);
+        holds.add(new ChildAssociationRef(ASSOC_FROZEN_CONTENT, hold, ASSOC_FROZEN_CONTENT, recordFolder, true, 1));
+        holds.add(new ChildAssociationRef(ASSOC_FROZEN_CONTENT, hold2, ASSOC_FROZEN_CONTENT, recordFolder, true, 2));
+        holds.add(new ChildAssociationRef(ASSOC_FROZEN_CONTENT, hiddenHold, ASSOC_FROZEN_CONTENT, recordFolder, true, 3));
+        doReturn(holds).when(mockedNodeService).getParentAssocs(recordFolder, ASSOC_FROZEN_CONTENT, ASSOC_FROZEN_CONTENT);
+        doReturn("Beta").when(mockedNodeService).getProperty(hold, ContentModel.PROP_NAME);
+        doReturn("alpha").when(mockedNodeService).getProperty(hold2, ContentModel.PROP_NAME);
+        doReturn(AccessStatus.ALLOWED).when(mockedPermissionService).hasPermission(hold, RMPermissionModel.READ_RECORDS);
+        doReturn(AccessStatus.ALLOWED).when(mockedPermissionService).hasPermission(hold2, RMPermissionModel.READ_RECORDS);
+        doReturn(AccessStatus.DENIED).when(mockedPermissionService).hasPermission(hiddenHold, RMPermissionModel.READ_RECORDS);
+
+        PagingRequest pagingRequest = new PagingRequest(0, 1);
+        pagingRequest.setRequestTotalCountMax(100);
+        PagingResults<NodeRef> firstPage = holdService.listHeldBy(recordFolder, true, pagingRequest);
+
+        assertEquals(Collections.singletonList(hold2), firstPage.getPage());
+        assertTrue(firstPage.hasMoreItems());
+        assertEquals(Integer.valueOf(2), firstPage.getTotalResultCount().getFirst());
+
+        PagingResults<NodeRef> secondPage = holdService.listHeldBy(recordFolder, true, new PagingRequest(1, 1));
+
+        assertEquals(Collections.singletonList(hold), secondPage.getPage());
+        assertFalse(secondPage.hasMoreItems());
+        assertNull(secondPage.getTotalResultCount().getFirst());
+    }
+
     @Test (expected = IntegrityException.class)
     public void removeFromHoldNotAHold()
     {
@@ -495,7 +544,7 @@ public class HoldServiceImplUnitTest extends BaseUnitTest
     @Test
     public void removeFromHold()
     {
-        doReturn(Collections.singletonList(recordFolder)).when(holdService).getHeld(hold);
+        doReturn(true).when(holdService).isHeld(hold, recordFolder);
         doReturn(true).when(mockedNodeService).hasAspect(recordFolder, ASPECT_FROZEN);
         doReturn(true).when(mockedNodeService).hasAspect(record, ASPECT_FROZEN);
 
@@ -511,8 +560,8 @@ public class HoldServiceImplUnitTest extends BaseUnitTest
     @Test
     public void removeFromHolds()
     {
-        doReturn(Collections.singletonList(recordFolder)).when(holdService).getHeld(hold);
-        doReturn(Collections.singletonList(recordFolder)).when(holdService).getHeld(hold2);
+        doReturn(true).when(holdService).isHeld(hold, recordFolder);
+        doReturn(true).when(holdService).isHeld(hold2, recordFolder);
         doReturn(true).when(mockedNodeService).hasAspect(recordFolder, ASPECT_FROZEN);
         doReturn(true).when(mockedNodeService).hasAspect(record, ASPECT_FROZEN);
 
@@ -563,8 +612,8 @@ public class HoldServiceImplUnitTest extends BaseUnitTest
 
         // define interactions
         doReturn(holds).when(holdService).heldBy(recordFolder, true);
-        doReturn(Collections.singletonList(recordFolder)).when(holdService).getHeld(hold);
-        doReturn(Collections.singletonList(recordFolder)).when(holdService).getHeld(hold2);
+        doReturn(true).when(holdService).isHeld(hold, recordFolder);
+        doReturn(true).when(holdService).isHeld(hold2, recordFolder);
         doReturn(true).when(mockedNodeService).hasAspect(recordFolder, ASPECT_FROZEN);
         doReturn(true).when(mockedNodeService).hasAspect(record, ASPECT_FROZEN);
 
@@ -581,8 +630,8 @@ public class HoldServiceImplUnitTest extends BaseUnitTest
      @Test (expected = AccessDeniedException.class)
     public void removeActiveContentFromHoldsNoPermissionsOnHold()
     {
-        doReturn(Collections.singletonList(activeContent)).when(holdService).getHeld(hold);
-        doReturn(Collections.singletonList(activeContent)).when(holdService).getHeld(hold2);
+        doReturn(true).when(holdService).isHeld(hold, activeContent);
+        doReturn(true).when(holdService).isHeld(hold2, activeContent);
         doReturn(true).when(mockedNodeService).hasAspect(activeContent, ASPECT_FROZEN);
         when(mockedCapabilityService.getCapabilityAccessState(hold, RMPermissionModel.REMOVE_FROM_HOLD)).thenReturn(AccessStatus.DENIED);
         // build a list of holds
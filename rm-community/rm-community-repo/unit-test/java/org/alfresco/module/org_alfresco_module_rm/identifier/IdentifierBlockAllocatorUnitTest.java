@@ -0,0 +1,198 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.identifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.GUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Identifier block allocator unit test.
+ *
+ * @since 3.4
+ */
+public class IdentifierBlockAllocatorUnitTest
+{
+    /** number of threads and identifier numbers allocated by each */
+    private static final int THREADS = 8;
+    private static final int ALLOCATIONS = 250;
+
+    /** block size */
+    private static final int BLOCK_SIZE = 100;
+
+    /** largest node database id */
+    private static final long MAX_NODE_ID = 5000L;
+
+    @Mock private AttributeService mockedAttributeService;
+    @Mock private TransactionService mockedTransactionService;
+    @Mock private RetryingTransactionHelper mockedRetryingTransactionHelper;
+    @Mock private NodeDAO mockedNodeDAO;
+
+    @InjectMocks private IdentifierBlockAllocator allocator;
+
+    /** attributes by context, shared by all the threads */
+    private final Map<Serializable, Serializable> attributes = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void before()
+    {
+        MockitoAnnotations.initMocks(this);
+        allocator.setBlockSize(BLOCK_SIZE);
+
+        when(mockedNodeDAO.getMaxNodeId()).thenReturn(MAX_NODE_ID);
+        when(mockedTransactionService.getRetryingTransactionHelper()).thenReturn(mockedRetryingTransactionHelper);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                // reservations are serialised, as they are by the database
+                synchronized (IdentifierBlockAllocatorUnitTest.this)
+                {
+                    return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+                }
+            }
+        }).when(mockedRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+
+        doAnswer(new Answer<Serializable>()
+        {
+            @Override
+            public Serializable answer(InvocationOnMock invocation)
+            {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        }).when(mockedAttributeService).getAttribute((Serializable[]) anyVararg());
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                attributes.put((Serializable) invocation.getArguments()[1], (Serializable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(mockedAttributeService).setAttribute(any(Serializable.class), (Serializable[]) anyVararg());
+    }
+
+    /**
+     * Given many threads allocating identifier numbers from the same file plan
+     * When they all run at once
+     * Then every number is unique, above the largest node database id, and is reserved a block at a time
+     */
+    @Test
+    public void concurrentAllocationsAreUnique() throws Exception
+    {
+        final NodeRef filePlan = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+        final Set<Long> numbers = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>(THREADS);
+            for (int thread = 0; thread < THREADS; thread++)
+            {
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for (int i = 0; i < ALLOCATIONS; i++)
+                        {
+                            long number = allocator.allocate(filePlan);
+                            assertTrue(number > MAX_NODE_ID);
+                            assertTrue("Number allocated twice: " + number, numbers.add(number));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals(THREADS * ALLOCATIONS, numbers.size());
+        verify(mockedRetryingTransactionHelper, atMost(THREADS * ALLOCATIONS / BLOCK_SIZE + THREADS))
+                    .doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+    }
+
+    /**
+     * Given no block has been reserved yet
+     * When a number is allocated
+     * Then the allocator is recorded as in use, so block allocation can't be switched off again
+     */
+    @Test
+    public void allocationRecordsAllocatorInUse()
+    {
+        assertFalse(allocator.isInUse());
+
+        allocator.allocate(null);
+
+        assertTrue(allocator.isInUse());
+        verify(mockedAttributeService).setAttribute(eq(Boolean.TRUE), eq("rm.identifierSequenceInUse"), eq("inUse"));
+    }
+}
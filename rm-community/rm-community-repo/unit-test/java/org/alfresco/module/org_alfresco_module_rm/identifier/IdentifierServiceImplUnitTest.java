@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.identifier;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.util.GUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Identifier service implementation unit test.
+ *
+ * @since 3.4
+ */
+public class IdentifierServiceImplUnitTest
+{
+    /** register attribute context */
+    private static final String REGISTER_CONTEXT = "rma:identifier";
+
+    /** identifier */
+    private static final String IDENTIFIER = "2020-0000000001";
+
+    @Mock private AttributeService mockedAttributeService;
+
+    @InjectMocks private IdentifierServiceImpl identifierService;
+
+    /** node the identifier is assigned to, and its file plan */
+    private NodeRef nodeRef;
+    private NodeRef filePlan;
+
+    @Before
+    public void before()
+    {
+        MockitoAnnotations.initMocks(this);
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+        filePlan = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+    }
+
+    /**
+     * Given an identifier registered to another node
+     * When it is unregistered
+     * Then the registration is kept
+     */
+    @Test
+    public void identifierOfAnotherNodeIsNotUnregistered()
+    {
+        NodeRef otherNodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+        when(mockedAttributeService.getAttribute(REGISTER_CONTEXT, filePlan, IDENTIFIER)).thenReturn(otherNodeRef);
+
+        identifierService.unregisterIdentifier(IDENTIFIER, filePlan, nodeRef);
+
+        verify(mockedAttributeService, never()).removeAttribute(REGISTER_CONTEXT, filePlan, IDENTIFIER);
+    }
+
+    /**
+     * Given an identifier registered to the node
+     * When it is unregistered
+     * Then the registration is removed
+     */
+    @Test
+    public void identifierOfNodeIsUnregistered()
+    {
+        when(mockedAttributeService.getAttribute(REGISTER_CONTEXT, filePlan, IDENTIFIER)).thenReturn(nodeRef);
+
+        identifierService.unregisterIdentifier(IDENTIFIER, filePlan, nodeRef);
+
+        verify(mockedAttributeService).removeAttribute(REGISTER_CONTEXT, filePlan, IDENTIFIER);
+    }
+
+    /**
+     * Given an identifier registered without a node, before the register was introduced
+     * When it is unregistered
+     * Then the registration is removed
+     */
+    @Test
+    public void identifierRegisteredWithoutNodeIsUnregistered()
+    {
+        identifierService.unregisterIdentifier(IDENTIFIER, filePlan, nodeRef);
+
+        verify(mockedAttributeService).removeAttribute(REGISTER_CONTEXT, filePlan, IDENTIFIER);
+    }
+
+    /**
+     * Given an identifier
+     * When it is registered
+     * Then the node is recorded against it in the file plan's uniqueness context
+     */
+    @Test
+    public void identifierIsRegisteredInFilePlan()
+    {
+        identifierService.registerIdentifier(IDENTIFIER, filePlan, nodeRef);
+
+        verify(mockedAttributeService).createAttribute(nodeRef, REGISTER_CONTEXT, filePlan, IDENTIFIER);
+    }
+}
@@ -29,11 +29,13 @@ package org.alfresco.module.org_alfresco_module_rm.job;
 
 import static org.alfresco.module.org_alfresco_module_rm.test.util.AlfMock.generateQName;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -45,6 +47,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
 import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
@@ -247,6 +250,47 @@ public class DispositionLifecycleJobExecuterUnitTest extends BaseUnitTest
         verifyNoMoreInteractions(mockedNodeService, mockedRecordsManagementActionService);
     }
 
+    /**
+     * Given disposition actions that are eligible for processing, one of which fails
+     * When the job executer runs
+     * Then the run is recorded in the job metrics
+     */
+    @Test
+    public void metricsRecorded()
+    {
+        // test data
+        NodeRef node1 = generateNodeRef();
+        NodeRef node2 = generateNodeRef();
+        NodeRef node3 = generateNodeRef();
+        List<NodeRef> nodeRefs = buildList(node1, node2, node3);
+        NodeRef parent = generateNodeRef();
+        NodeRef failingParent = generateNodeRef();
+        ChildAssociationRef parentAssoc = new ChildAssociationRef(ASSOC_NEXT_DISPOSITION_ACTION, parent, generateQName(), generateNodeRef());
+        ChildAssociationRef failingParentAssoc = new ChildAssociationRef(ASSOC_NEXT_DISPOSITION_ACTION, failingParent, generateQName(), generateNodeRef());
+
+        // given
+        doReturn(nodeRefs).when(mockedResultSet).getNodeRefs();
+        doReturn(CUTOFF).when(mockedNodeService).getProperty(node1, RecordsManagementModel.PROP_DISPOSITION_ACTION);
+        doReturn(RETAIN).when(mockedNodeService).getProperty(node2, RecordsManagementModel.PROP_DISPOSITION_ACTION);
+        doReturn(CUTOFF).when(mockedNodeService).getProperty(node3, RecordsManagementModel.PROP_DISPOSITION_ACTION);
+        doReturn(parentAssoc).when(mockedNodeService).getPrimaryParent(node1);
+        doReturn(parentAssoc).when(mockedNodeService).getPrimaryParent(node2);
+        doReturn(failingParentAssoc).when(mockedNodeService).getPrimaryParent(node3);
+        doThrow(new AlfrescoRuntimeException("failed")).when(mockedRecordsManagementActionService)
+            .executeRecordsManagementAction(eq(failingParent), eq(CUTOFF), anyMap());
+
+        // when
+        executer.executeImpl();
+
+        // then
+        RecordsManagementJobMetrics metrics = executer.getMetrics();
+        assertFalse(metrics.isRunning());
+        assertEquals(1, metrics.getTotalRuns());
+        assertEquals(3, metrics.getLastRunItemsScanned());
+        assertEquals(2, metrics.getLastRunItemsProcessed());
+        assertEquals(1, metrics.getLastRunFailures());
+    }
+
     /**
      * Brittle unit test that simply checks the generated query is an exact string when the supplied disposition actions
      * are "CUTOFF" and "RETAIN" (see {@link #before}).
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.alfresco.module.org_alfresco_module_rm.job.publish.PublishExecutor;
+import org.alfresco.module.org_alfresco_module_rm.job.publish.PublishExecutorRegistry;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.dictionary.AspectDefinition;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Publish updates job execution unit test.
+ *
+ * @since 3.4
+ */
+public class PublishUpdatesJobExecuterUnitTest extends BaseUnitTest
+{
+    /** publish executor name */
+    private static final String UPDATE_TO = "updateTo";
+
+    /** mocked result set */
+    @Mock ResultSet mockedResultSet;
+
+    /** mocked job lock service */
+    @Mock JobLockService mockedJobLockService;
+
+    /** mocked publish executor */
+    @Mock PublishExecutor mockedPublishExecutor;
+
+    /** updated node */
+    private NodeRef nodeRef;
+
+    /** publish updates job executer */
+    @InjectMocks PublishUpdatesJobExecuter executer;
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest#before()
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    @Before
+    public void before() throws Exception
+    {
+        super.before();
+
+        // read only transactions are run straight away
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+            }
+        }).when(mockedRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean());
+
+        // register the publish executor
+        when(mockedPublishExecutor.getName()).thenReturn(UPDATE_TO);
+        PublishExecutorRegistry registry = new PublishExecutorRegistry();
+        registry.register(mockedPublishExecutor);
+        executer.setPublishExecutorRegistry(registry);
+        executer.setJobLockService(mockedJobLockService);
+        executer.setMetrics(new PublishUpdatesJobMetrics());
+
+        // one update is pending
+        nodeRef = generateNodeRef();
+        when(mockedDictionaryService.getAspect(ASPECT_UNPUBLISHED_UPDATE)).thenReturn(mock(AspectDefinition.class));
+        doReturn(mockedResultSet).when(mockedSearchService).query(any(SearchParameters.class));
+        when(mockedResultSet.getNodeRefs()).thenReturn(Collections.singletonList(nodeRef));
+        when(mockedNodeService.hasAspect(nodeRef, ASPECT_UNPUBLISHED_UPDATE)).thenReturn(true);
+        when(mockedNodeService.getProperty(nodeRef, PROP_UPDATE_TO)).thenReturn(UPDATE_TO);
+        when(mockedNodeService.getProperty(eq(nodeRef), eq(PROP_MODIFIED))).thenReturn(new Date());
+    }
+
+    /**
+     * Given an update whose lease is held by another publish
+     * When the job runs
+     * Then the update is not published
+     */
+    @Test
+    public void updateLeasedElsewhereIsSkipped()
+    {
+        doThrow(mock(LockAcquisitionException.class)).when(mockedJobLockService).getLock(any(QName.class), anyLong());
+
+        executer.executeImpl();
+
+        verify(mockedPublishExecutor, never()).publish(any(NodeRef.class));
+        verify(mockedNodeService, never()).setProperty(nodeRef, PROP_PUBLISH_IN_PROGRESS, true);
+        assertEquals(1, executer.getMetrics().getLastRunItemsScanned());
+        assertEquals(0, executer.getMetrics().getLastRunItemsProcessed());
+        assertEquals(0, executer.getMetrics().getLastRunFailures());
+        assertEquals(0, executer.getMetrics().getQueueDepth());
+    }
+
+    /**
+     * Given an update left marked in progress, whose lease has expired
+     * When the job runs
+     * Then the update is claimed, published and the lease released
+     */
+    @Test
+    public void updateLeftInProgressIsReclaimed()
+    {
+        when(mockedNodeService.getProperty(nodeRef, PROP_PUBLISH_IN_PROGRESS)).thenReturn(true);
+        when(mockedJobLockService.getLock(any(QName.class), anyLong())).thenReturn("token");
+
+        executer.executeImpl();
+
+        verify(mockedJobLockService).refreshLock(eq("token"), any(QName.class), anyLong(), any(JobLockRefreshCallback.class));
+        verify(mockedPublishExecutor).publish(nodeRef);
+        verify(mockedNodeService).removeAspect(nodeRef, ASPECT_UNPUBLISHED_UPDATE);
+        verify(mockedJobLockService).releaseLock(eq("token"), any(QName.class));
+        assertEquals(1, executer.getMetrics().getLastRunItemsProcessed());
+        assertEquals(0, executer.getMetrics().getLastRunFailures());
+    }
+
+    /**
+     * Given a publish that fails
+     * When the job runs
+     * Then the failure is counted, the update is no longer marked in progress and the lease is released
+     */
+    @Test
+    public void failedPublishIsCounted()
+    {
+        when(mockedJobLockService.getLock(any(QName.class), anyLong())).thenReturn("token");
+        doThrow(new RuntimeException()).when(mockedPublishExecutor).publish(nodeRef);
+
+        executer.executeImpl();
+
+        verify(mockedNodeService).setProperty(nodeRef, PROP_PUBLISH_IN_PROGRESS, false);
+        verify(mockedNodeService, never()).removeAspect(nodeRef, ASPECT_UNPUBLISHED_UPDATE);
+        verify(mockedJobLockService).releaseLock(eq("token"), any(QName.class));
+        assertEquals(0, executer.getMetrics().getLastRunItemsProcessed());
+        assertEquals(1, executer.getMetrics().getLastRunFailures());
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.module.org_alfresco_module_rm.model.behaviour.RecordsManagementSearchBehaviour;
+import org.alfresco.module.org_alfresco_module_rm.model.rma.aspect.FrozenAspect;
+import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.admin.RepositoryState;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorker;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Update record schedule job execution unit test.
+ *
+ * @since 3.4
+ */
+public class UpdateRecordScheduleJobExecuterUnitTest extends BaseUnitTest
+{
+    /** attribute keys */
+    private static final String ATTRIBUTE_CONTEXT = "rm.updateRecordSchedule";
+    private static final String ATTRIBUTE_REQUEST = "request";
+    private static final String ATTRIBUTE_HIGH_WATER_MARK = "highWaterMark";
+
+    /** mocked records management query DAO */
+    @Mock RecordsManagementQueryDAO mockedRecordsManagementQueryDAO;
+
+    /** mocked qname DAO */
+    @Mock QNameDAO mockedQnameDAO;
+
+    /** mocked attribute service */
+    @Mock AttributeService mockedAttributeService;
+
+    /** mocked frozen aspect */
+    @Mock FrozenAspect mockedFrozenAspect;
+
+    /** mocked records management search behaviour */
+    @Mock RecordsManagementSearchBehaviour mockedRecordsManagementSearchBehaviour;
+
+    /** mocked repository state */
+    @Mock RepositoryState mockedRepositoryState;
+
+    /** update record schedule job executer, updating each page of record folders in the calling thread */
+    private UpdateRecordScheduleJobExecuter executer = new UpdateRecordScheduleJobExecuter()
+    {
+        @Override
+        protected BatchProcessor<NodeRef> createBatchProcessor(List<NodeRef> recordFolders)
+        {
+            return mockBatchProcessor(recordFolders);
+        }
+    };
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest#before()
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    @Before
+    public void before() throws Exception
+    {
+        super.before();
+
+        // transactions are run straight away
+        doAnswer(invocation -> ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute())
+            .when(mockedRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+
+        executer.setNodeService(mockedNodeService);
+        executer.setDispositionService(mockedDispositionService);
+        executer.setRecordService(mockedRecordService);
+        executer.setRecordsManagementQueryDAO(mockedRecordsManagementQueryDAO);
+        executer.setQnameDAO(mockedQnameDAO);
+        executer.setAttributeService(mockedAttributeService);
+        executer.setFrozenAspect(mockedFrozenAspect);
+        executer.setRecordsManagementSearchBehaviour(mockedRecordsManagementSearchBehaviour);
+        executer.setRetryingTransactionHelper(mockedRetryingTransactionHelper);
+        executer.setRepositoryState(mockedRepositoryState);
+        executer.setMetrics(new RecordsManagementJobMetrics());
+        executer.setPageSize(2);
+    }
+
+    /**
+     * Clear the user the workers run as.
+     */
+    @After
+    public void after()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * Given an update has been requested for more record folders than there are
+     * When the job runs
+     * Then the record folders are read a page at a time after the last node id read, each folder is marked as
+     * processed and the request is removed once they have all been read
+     */
+    @Test
+    public void recordFoldersReadAPageAtATime()
+    {
+        NodeRef folder1 = generateNodeRef(TYPE_RECORD_FOLDER);
+        NodeRef folder2 = generateNodeRef(TYPE_RECORD_FOLDER);
+        NodeRef folder3 = generateNodeRef(TYPE_RECORD_FOLDER);
+        requestUpdate(10, null);
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(Long.MIN_VALUE, 2)).thenReturn(page(1, folder1, folder2));
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(2L, 2)).thenReturn(page(3, folder3));
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(3L, 2)).thenReturn(page(4));
+
+        executer.executeImpl();
+
+        verify(mockedNodeService).addAspect(folder1, ASPECT_DISPOSITION_PROCESSED, null);
+        verify(mockedNodeService).addAspect(folder2, ASPECT_DISPOSITION_PROCESSED, null);
+        verify(mockedNodeService).addAspect(folder3, ASPECT_DISPOSITION_PROCESSED, null);
+        verify(mockedAttributeService).setAttribute(8, ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+        verify(mockedAttributeService).setAttribute(2L, ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        verify(mockedAttributeService).setAttribute(7, ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+        verify(mockedAttributeService).setAttribute(3L, ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        verify(mockedAttributeService).removeAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+        verify(mockedAttributeService).removeAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        assertEquals(3, executer.getMetrics().getLastRunItemsScanned());
+        assertEquals(3, executer.getMetrics().getLastRunItemsProcessed());
+        assertEquals(0, executer.getMetrics().getLastRunFailures());
+    }
+
+    /**
+     * Given an update that was interrupted
+     * When the job runs
+     * Then the record folders are read after the high-water mark, and no more are read than were requested
+     */
+    @Test
+    public void updateResumesAfterHighWaterMark()
+    {
+        NodeRef folder = generateNodeRef(TYPE_RECORD_FOLDER);
+        requestUpdate(1, 5L);
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(5L, 1)).thenReturn(page(6, folder));
+
+        executer.executeImpl();
+
+        verify(mockedNodeService).addAspect(folder, ASPECT_DISPOSITION_PROCESSED, null);
+        verify(mockedRecordsManagementQueryDAO, times(1)).getNextRecordFoldersWithSchedules(anyLong(), anyInt());
+        verify(mockedAttributeService).removeAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+        verify(mockedAttributeService).setAttribute(6L, ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+    }
+
+    /**
+     * Given a record folder that fails to update
+     * When the job runs
+     * Then the folders after it are still updated, but the high-water mark is kept before it so the next update
+     * requested retries it
+     */
+    @Test
+    public void failedRecordFolderHoldsHighWaterMark()
+    {
+        NodeRef folder1 = generateNodeRef(TYPE_RECORD_FOLDER);
+        NodeRef folder2 = generateNodeRef(TYPE_RECORD_FOLDER);
+        NodeRef folder3 = generateNodeRef(TYPE_RECORD_FOLDER);
+        executer.setPageSize(1);
+        requestUpdate(10, null);
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(Long.MIN_VALUE, 1)).thenReturn(page(1, folder1));
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(1L, 1)).thenReturn(page(2, folder2));
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(2L, 1)).thenReturn(page(3, folder3));
+        when(mockedRecordsManagementQueryDAO.getNextRecordFoldersWithSchedules(3L, 1)).thenReturn(page(4));
+        doThrow(new RuntimeException()).when(mockedNodeService).addAspect(folder2, ASPECT_DISPOSITION_PROCESSED, null);
+
+        executer.executeImpl();
+
+        verify(mockedNodeService).addAspect(folder3, ASPECT_DISPOSITION_PROCESSED, null);
+        verify(mockedAttributeService, times(2)).setAttribute(1L, ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        verify(mockedAttributeService, never()).setAttribute(2L, ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        verify(mockedAttributeService, never()).setAttribute(3L, ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        verify(mockedAttributeService, never()).removeAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK);
+        verify(mockedAttributeService).removeAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+        assertEquals(2, executer.getMetrics().getLastRunItemsProcessed());
+        assertEquals(1, executer.getMetrics().getLastRunFailures());
+    }
+
+    /**
+     * Given no update has been requested
+     * When the job runs
+     * Then no record folders are read
+     */
+    @Test
+    public void nothingDoneUntilRequested()
+    {
+        requestUpdate(null, null);
+
+        executer.executeImpl();
+
+        verify(mockedRecordsManagementQueryDAO, never()).getNextRecordFoldersWithSchedules(anyLong(), anyInt());
+        verify(mockedAttributeService, never()).removeAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+    }
+
+    /**
+     * Given the repository has bootstrapped
+     * When the job is executed
+     * Then its work is not enclosed in a read-write transaction
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executedWithoutEnclosingTransaction()
+    {
+        requestUpdate(null, null);
+
+        executer.execute();
+
+        verify(mockedAttributeService).getAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST);
+        verify(mockedRetryingTransactionHelper, never()).doInTransaction(any(RetryingTransactionCallback.class), eq(false), anyBoolean());
+    }
+
+    /**
+     * Helper method to set the update request and high-water mark.
+     */
+    private void requestUpdate(Integer request, Long highWaterMark)
+    {
+        when(mockedAttributeService.getAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_REQUEST)).thenReturn(request);
+        when(mockedAttributeService.getAttribute(ATTRIBUTE_CONTEXT, ATTRIBUTE_HIGH_WATER_MARK)).thenReturn(highWaterMark);
+    }
+
+    /**
+     * Helper method to build a page of record folders with consecutive node ids.
+     */
+    private List<Pair<Long, NodeRef>> page(long firstNodeId, NodeRef... recordFolders)
+    {
+        if (recordFolders.length == 0)
+        {
+            return Collections.emptyList();
+        }
+        List<Pair<Long, NodeRef>> page = new ArrayList<>(recordFolders.length);
+        for (int i = 0; i < recordFolders.length; i++)
+        {
+            page.add(new Pair<>(firstNodeId + i, recordFolders[i]));
+        }
+        return page;
+    }
+
+    /**
+     * Helper method to mock a batch processor that runs the worker over the items in the calling thread, counting
+     * the items that fail.
+     */
+    @SuppressWarnings("unchecked")
+    private BatchProcessor<NodeRef> mockBatchProcessor(final List<NodeRef> items)
+    {
+        BatchProcessor<NodeRef> batchProcessor = mock(BatchProcessor.class);
+        final int[] errors = new int[1];
+        doAnswer(invocation ->
+        {
+            BatchProcessWorker<NodeRef> worker = (BatchProcessWorker<NodeRef>) invocation.getArguments()[0];
+            for (NodeRef item : items)
+            {
+                worker.beforeProcess();
+                try
+                {
+                    worker.process(item);
+                }
+                catch (Throwable e)
+                {
+                    errors[0]++;
+                }
+                finally
+                {
+                    worker.afterProcess();
+                }
+            }
+            return items.size() - errors[0];
+        }).when(batchProcessor).process(any(BatchProcessWorker.class), anyBoolean());
+        when(batchProcessor.getTotalErrors()).thenAnswer(invocation -> errors[0]);
+        return batchProcessor;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.jscript.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.module.org_alfresco_module_rm.role.Role;
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+/**
+ * JSON conversion component unit test.
+ *
+ * @since 3.4
+ */
+public class JSONConversionComponentUnitTest extends BaseUnitTest
+{
+    /** transaction resource keys */
+    private static final String KEY_FILE_PLAN_VALUES = "rm.jsonConversionComponent.filePlanValues";
+    private static final String KEY_VISIBLE_FOR_USER = "rm.jsonConversionComponent.visibleForUser";
+
+    /** mocked node bulk loader */
+    @Mock NodeBulkLoader mockedNodeBulkLoader;
+
+    /** JSON conversion component */
+    @InjectMocks JSONConversionComponent jsonConversionComponent;
+
+    /**
+     * @see org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest#before()
+     */
+    @Override
+    @Before
+    public void before() throws Exception
+    {
+        super.before();
+
+        jsonConversionComponent.setNodeService(mockedNodeService);
+        jsonConversionComponent.setFileFolderService(mockedFileFolderService);
+        jsonConversionComponent.setFilePlanService(mockedFilePlanService);
+        jsonConversionComponent.setFilePlanRoleService(mockedFilePlanRoleService);
+        jsonConversionComponent.setNodeBulkLoader(mockedNodeBulkLoader);
+        jsonConversionComponent.setTransactionalResourceHelper(mockedTransactionalResourceHelper);
+
+        // the values memoised for a request
+        doReturn(new HashMap<>()).when(mockedTransactionalResourceHelper).getMap(KEY_FILE_PLAN_VALUES);
+        doReturn(new HashMap<>()).when(mockedTransactionalResourceHelper).getMap(KEY_VISIBLE_FOR_USER);
+    }
+
+    /**
+     * Clear the current user.
+     */
+    @After
+    public void after()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * Given the nodes of a file plan are converted in a request
+     * When the file plan values are got for each node
+     * Then the file plan's unfiled container is only read once, and each file plan has its own values
+     */
+    @Test
+    public void filePlanValuesWorkedOutOncePerFilePlan()
+    {
+        NodeRef otherFilePlan = generateNodeRef(TYPE_FILE_PLAN);
+        NodeRef unfiledContainer = generateNodeRef(TYPE_UNFILED_RECORD_CONTAINER);
+        NodeRef otherUnfiledContainer = generateNodeRef(TYPE_UNFILED_RECORD_CONTAINER);
+        when(mockedFilePlanService.getUnfiledContainer(filePlan)).thenReturn(unfiledContainer);
+        when(mockedFilePlanService.getUnfiledContainer(otherFilePlan)).thenReturn(otherUnfiledContainer);
+        FileInfo fileInfo = mock(FileInfo.class);
+        when(fileInfo.getType()).thenReturn(TYPE_UNFILED_RECORD_CONTAINER);
+        when(mockedFileFolderService.getFileInfo(unfiledContainer)).thenReturn(fileInfo);
+        when(mockedFileFolderService.getFileInfo(otherUnfiledContainer)).thenReturn(fileInfo);
+
+        Map<String, Object> values = jsonConversionComponent.getFilePlanValues(filePlan, false);
+        assertSame(values, jsonConversionComponent.getFilePlanValues(filePlan, false));
+        Map<String, Object> otherValues = jsonConversionComponent.getFilePlanValues(otherFilePlan, false);
+
+        assertEquals(unfiledContainer.toString(), values.get("unfiledRecordContainer"));
+        assertEquals(otherUnfiledContainer.toString(), otherValues.get("unfiledRecordContainer"));
+        assertEquals(TYPE_UNFILED_RECORD_CONTAINER.toString(), values.get("type"));
+        verify(mockedFilePlanService, times(1)).getUnfiledContainer(filePlan);
+        verify(mockedNodeService, times(1)).getProperties(unfiledContainer);
+        verify(mockedFileFolderService, times(1)).getFileInfo(unfiledContainer);
+    }
+
+    /**
+     * Given the nodes of a request are converted for a user
+     * When the visibility for the user is checked for each node
+     * Then the user's roles are only read once
+     */
+    @Test
+    public void visibilityWorkedOutOncePerUser()
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser("user");
+        when(mockedFilePlanService.getFilePlans()).thenReturn(Collections.singleton(filePlan));
+        when(mockedFilePlanRoleService.getRolesByUser(filePlan, "user")).thenReturn(Collections.singleton(mock(Role.class)));
+
+        assertTrue(jsonConversionComponent.isVisibleForCurrentUser());
+        assertTrue(jsonConversionComponent.isVisibleForCurrentUser());
+
+        verify(mockedFilePlanRoleService, times(1)).getRolesByUser(filePlan, "user");
+    }
+
+    /**
+     * Given a page of nodes
+     * When it is pre-fetched
+     * Then the nodes are loaded together, and nothing is loaded for an empty page
+     */
+    @Test
+    public void pagePrefetchedInBulk()
+    {
+        NodeRef record1 = generateNodeRef(TYPE_CONTENT);
+        NodeRef record2 = generateNodeRef(TYPE_CONTENT);
+
+        jsonConversionComponent.prefetch(Collections.<NodeRef>emptyList());
+        verify(mockedNodeBulkLoader, never()).cacheNodes(anyListOf(NodeRef.class));
+
+        jsonConversionComponent.prefetch(Arrays.asList(record1, record2));
+        verify(mockedNodeBulkLoader).cacheNodes(Arrays.asList(record1, record2));
+    }
+}
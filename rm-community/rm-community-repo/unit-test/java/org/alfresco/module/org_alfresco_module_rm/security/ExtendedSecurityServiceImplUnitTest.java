@@ -35,6 +35,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anySet;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -45,7 +46,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -59,10 +62,12 @@ import org.alfresco.module.org_alfresco_module_rm.role.FilePlanRoleService;
 import org.alfresco.module.org_alfresco_module_rm.test.util.AlfMock;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.security.authority.RMAuthority;
 import org.alfresco.repo.security.permissions.impl.AccessPermissionImpl;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
@@ -103,6 +108,8 @@ public class ExtendedSecurityServiceImplUnitTest
     @Mock private PagingResults<String> mockedWritePagingResults;
     @Mock private ApplicationContext mockedApplicationContext;
     @Mock private ChildAssociationRef mockedChildAssociationRef;
+    @Mock private AttributeService mockedAttributeService;
+    @Mock private SimpleCache<String, String> mockedIprGroupCache;
     
     /** test component */
     @InjectMocks private ExtendedSecurityServiceImpl extendedSecurityService;
@@ -522,6 +529,112 @@ public class ExtendedSecurityServiceImplUnitTest
         
     }
     
+    /**
+     * Given a node with no previous IPR groups assigned
+     * And IPR groups matching the authorities are recorded in the index
+     * When I add some read and write authorities
+     * Then the indexed IPR groups are used without searching the existing groups
+     */
+    @Test public void addExtendedSecurityWithIndexedGroups()
+    {
+        // group names
+        String readGroup = GROUP_PREFIX + readGroupPrefix + "0";
+        String writeGroup = GROUP_PREFIX + writeGroupPrefix + "0";
+
+        // setup index
+        when(mockedIprGroupCache.get(extendedSecurityService.getIPRGroupIndexKey(READER_GROUP_PREFIX, READERS)))
+            .thenReturn(readGroup);
+        when(mockedAttributeService.getAttribute(anyString(), eq(extendedSecurityService.getIPRGroupIndexKey(WRITER_GROUP_PREFIX, WRITERS))))
+            .thenReturn(writeGroup);
+
+        // setup exact match
+        when(mockedAuthorityService.authorityExists(readGroup))
+            .thenReturn(true);
+        when(mockedAuthorityService.authorityExists(writeGroup))
+            .thenReturn(true);
+        when(mockedAuthorityService.getContainedAuthorities(null, readGroup, true))
+            .thenReturn(READERS);
+        when(mockedAuthorityService.getContainedAuthorities(null, writeGroup, true))
+            .thenReturn(WRITERS);
+
+        // add extended security
+        extendedSecurityService.set(nodeRef, READERS, WRITERS);
+
+        // verify the existing groups are not searched and no groups are created
+        verify(mockedAuthorityService, never()).getAuthorities(any(AuthorityType.class), anyString(), anyString(), anyBoolean(), anyBoolean(), any(PagingRequest.class));
+        verify(mockedAuthorityService, never()).createAuthority(any(AuthorityType.class), anyString(), anyString(), anySet());
+
+        // verify the write group read from the persistent index is cached
+        verify(mockedIprGroupCache).put(extendedSecurityService.getIPRGroupIndexKey(WRITER_GROUP_PREFIX, WRITERS), writeGroup);
+
+        // verify permissions are assigned to node
+        verify(mockedPermissionService).setPermission(nodeRef, readGroup, RMPermissionModel.READ_RECORDS, true);
+        verify(mockedPermissionService).setPermission(nodeRef, writeGroup, RMPermissionModel.FILING, true);
+    }
+
+    /**
+     * Given a node with no previous IPR groups assigned
+     * And the index refers to IPR groups that no longer exist
+     * When I add some read and write authorities
+     * Then new IPR groups are created
+     * And the index is updated to refer to them
+     */
+    @Test public void addExtendedSecurityWithStaleIndexedGroups()
+    {
+        // group names
+        String readGroup = extendedSecurityService.getIPRGroupShortName(READER_GROUP_PREFIX, READERS, 0);
+        String writeGroup = extendedSecurityService.getIPRGroupShortName(WRITER_GROUP_PREFIX, WRITERS, 0);
+        String readIndexKey = extendedSecurityService.getIPRGroupIndexKey(READER_GROUP_PREFIX, READERS);
+        String writeIndexKey = extendedSecurityService.getIPRGroupIndexKey(WRITER_GROUP_PREFIX, WRITERS);
+
+        // setup stale index
+        when(mockedIprGroupCache.get(readIndexKey))
+            .thenReturn(GROUP_PREFIX + "deletedReadGroup");
+        when(mockedIprGroupCache.get(writeIndexKey))
+            .thenReturn(GROUP_PREFIX + "deletedWriteGroup");
+
+        // setup query results
+        when(mockedReadPagingResults.getPage())
+            .thenReturn(Collections.emptyList());
+        when(mockedAuthorityService.getAuthorities(
+                    eq(AuthorityType.GROUP),
+                    eq(RMAuthority.ZONE_APP_RM),
+                    any(String.class),
+                    eq(false),
+                    eq(false),
+                    any(PagingRequest.class)))
+            .thenReturn(mockedReadPagingResults);
+
+        // add extended security
+        extendedSecurityService.set(nodeRef, READERS, WRITERS);
+
+        // verify groups created
+        verify(mockedAuthorityService).createAuthority(AuthorityType.GROUP, readGroup, readGroup, Collections.singleton(RMAuthority.ZONE_APP_RM));
+        verify(mockedAuthorityService).createAuthority(AuthorityType.GROUP, writeGroup, writeGroup, Collections.singleton(RMAuthority.ZONE_APP_RM));
+
+        // verify index updated
+        verify(mockedAttributeService).setAttribute(GROUP_PREFIX + readGroup, "rm.iprGroupIndex", readIndexKey);
+        verify(mockedAttributeService).setAttribute(GROUP_PREFIX + writeGroup, "rm.iprGroupIndex", writeIndexKey);
+        verify(mockedIprGroupCache).put(readIndexKey, GROUP_PREFIX + readGroup);
+        verify(mockedIprGroupCache).put(writeIndexKey, GROUP_PREFIX + writeGroup);
+    }
+
+    /**
+     * Given a set of authorities
+     * When I get the IPR group index key for the same authorities in a different order
+     * Then the index key is the same
+     */
+    @Test public void iprGroupIndexKeyIndependentOfOrder()
+    {
+        Set<String> ordered = new LinkedHashSet<>(Arrays.asList(USER, GROUP, USER_W));
+        Set<String> reversed = new LinkedHashSet<>(Arrays.asList(USER_W, GROUP, USER));
+
+        assertEquals(extendedSecurityService.getIPRGroupIndexKey(READER_GROUP_PREFIX, ordered),
+                     extendedSecurityService.getIPRGroupIndexKey(READER_GROUP_PREFIX, reversed));
+        assertFalse(extendedSecurityService.getIPRGroupIndexKey(READER_GROUP_PREFIX, ordered)
+                     .equals(extendedSecurityService.getIPRGroupIndexKey(WRITER_GROUP_PREFIX, ordered)));
+    }
+
     /**
      * Given a node with no previous IPR groups assigned
      * And existing IPR groups matches existing has, but not exact match
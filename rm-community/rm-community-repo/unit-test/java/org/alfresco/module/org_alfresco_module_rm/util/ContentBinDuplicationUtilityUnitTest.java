@@ -28,26 +28,43 @@
 package org.alfresco.module.org_alfresco_module_rm.util;
 
 import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.ASPECT_ARCHIVED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -83,6 +100,9 @@ public class ContentBinDuplicationUtilityUnitTest
     @InjectMocks
     private ContentBinDuplicationUtility contentBinDuplicationUtility;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setUp()
     {
@@ -102,6 +122,80 @@ public class ContentBinDuplicationUtilityUnitTest
         checkBehaviours(1);
     }
 
+    /**
+     * Tests that content held in a file is duplicated through the writer's channel rather than streamed
+     */
+    @Test
+    public void testContentFileIsTransferred() throws Exception
+    {
+        byte[] content = "some record content".getBytes(StandardCharsets.UTF_8);
+        File source = temporaryFolder.newFile();
+        Files.write(source.toPath(), content);
+        File target = temporaryFolder.newFile();
+
+        when(mockContentService.getReader(NODE_REF, ContentModel.PROP_CONTENT)).thenReturn(new FileContentReader(source));
+        when(mockContentService.getWriter(NODE_REF, ContentModel.PROP_CONTENT, true)).thenReturn(mockContentWriter);
+        when(mockContentWriter.getWritableChannel()).thenReturn(FileChannel.open(target.toPath(), StandardOpenOption.WRITE));
+
+        contentBinDuplicationUtility.duplicate(NODE_REF);
+
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        verify(mockContentWriter, never()).putContent(any(ContentReader.class));
+        assertEquals(1, contentBinDuplicationUtility.getDuplications());
+        assertEquals(content.length, contentBinDuplicationUtility.getBytesTransferred());
+        assertEquals(0, contentBinDuplicationUtility.getBytesStreamed());
+        checkBehaviours(1);
+    }
+
+    /**
+     * Tests that a transfer that makes no progress fails rather than spinning
+     */
+    @Test(expected = ContentIOException.class)
+    public void testTransferWithoutProgressFails() throws Exception
+    {
+        File source = temporaryFolder.newFile();
+        Files.write(source.toPath(), "some record content".getBytes(StandardCharsets.UTF_8));
+        WritableByteChannel target = mock(WritableByteChannel.class);
+        when(target.isOpen()).thenReturn(true);
+        when(target.write(any(ByteBuffer.class))).thenReturn(0);
+
+        when(mockContentService.getReader(NODE_REF, ContentModel.PROP_CONTENT)).thenReturn(new FileContentReader(source));
+        when(mockContentService.getWriter(NODE_REF, ContentModel.PROP_CONTENT, true)).thenReturn(mockContentWriter);
+        when(mockContentWriter.getWritableChannel()).thenReturn(target);
+
+        try
+        {
+            contentBinDuplicationUtility.duplicate(NODE_REF);
+        }
+        finally
+        {
+            verify(target, atLeastOnce()).write(any(ByteBuffer.class));
+            assertEquals(0, contentBinDuplicationUtility.getDuplications());
+        }
+    }
+
+    /**
+     * Tests that content held in a file is streamed when channel transfer is disabled
+     */
+    @Test
+    public void testContentFileIsStreamedWhenChannelTransferDisabled() throws Exception
+    {
+        File source = temporaryFolder.newFile();
+        FileContentReader reader = new FileContentReader(source);
+
+        when(mockContentService.getReader(NODE_REF, ContentModel.PROP_CONTENT)).thenReturn(reader);
+        when(mockContentService.getWriter(NODE_REF, ContentModel.PROP_CONTENT, true)).thenReturn(mockContentWriter);
+        when(mockContentWriter.getSize()).thenReturn(10L);
+        contentBinDuplicationUtility.setChannelTransferEnabled(false);
+
+        contentBinDuplicationUtility.duplicate(NODE_REF);
+
+        verify(mockContentWriter, times(1)).putContent(reader);
+        verify(mockContentWriter, never()).getWritableChannel();
+        assertEquals(0, contentBinDuplicationUtility.getBytesTransferred());
+        assertEquals(10, contentBinDuplicationUtility.getBytesStreamed());
+    }
+
     /**
      * Test content duplication doesn't happen when node has no content
      */
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.util;
+
+import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.ASPECT_FILE_PLAN_COMPONENT;
+import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.ASPECT_RECORD;
+import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.TYPE_HOLD;
+import static org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel.TYPE_RECORD_FOLDER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.fileplan.FilePlanComponentKind;
+import org.alfresco.module.org_alfresco_module_rm.test.util.AlfMock;
+import org.alfresco.repo.dictionary.DictionaryDAO;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit test class for FilePlanComponentKindTable
+ *
+ * @since 3.4
+ */
+public class FilePlanComponentKindTableUnitTest
+{
+    @InjectMocks
+    private FilePlanComponentKindTable filePlanComponentKindTable;
+
+    @Mock
+    private DictionaryService mockedDictionaryService;
+
+    @Mock
+    private DictionaryDAO mockedDictionaryDAO;
+
+    /** custom sub-type of record folder */
+    private QName customFolderType;
+
+    private Set<QName> filePlanComponent;
+    private Set<QName> record;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        customFolderType = AlfMock.generateQName();
+        when(mockedDictionaryService.isSubClass(customFolderType, TYPE_RECORD_FOLDER)).thenReturn(true);
+        when(mockedDictionaryService.getAllTypes()).thenReturn(Arrays.asList(customFolderType, ContentModel.TYPE_CONTENT));
+
+        filePlanComponent = Collections.singleton(ASPECT_FILE_PLAN_COMPONENT);
+        record = new HashSet<>(Arrays.asList(ASPECT_FILE_PLAN_COMPONENT, ASPECT_RECORD));
+    }
+
+    /** test that the kind is resolved from the type and whether the node is a record */
+    @Test
+    public void testKindFromTypeAndAspects()
+    {
+        assertEquals(FilePlanComponentKind.RECORD_FOLDER, filePlanComponentKindTable.getFilePlanComponentKind(customFolderType, filePlanComponent));
+        assertEquals(FilePlanComponentKind.RECORD_FOLDER, filePlanComponentKindTable.getFilePlanComponentKind(customFolderType, record));
+        assertEquals(FilePlanComponentKind.RECORD, filePlanComponentKindTable.getFilePlanComponentKind(ContentModel.TYPE_CONTENT, record));
+        assertEquals(FilePlanComponentKind.FILE_PLAN_COMPONENT, filePlanComponentKindTable.getFilePlanComponentKind(ContentModel.TYPE_CONTENT, filePlanComponent));
+        assertEquals(FilePlanComponentKind.HOLD, filePlanComponentKindTable.getFilePlanComponentKind(TYPE_HOLD, filePlanComponent));
+    }
+
+    /** test that nodes without the file plan component aspect have no kind */
+    @Test
+    public void testNotFilePlanComponent()
+    {
+        assertNull(filePlanComponentKindTable.getFilePlanComponentKind(customFolderType, Collections.<QName>emptySet()));
+    }
+
+    /** test that the table is built once and rebuilt when the dictionary is reloaded */
+    @Test
+    public void testTableRebuiltAfterDictionaryInit()
+    {
+        filePlanComponentKindTable.getFilePlanComponentKind(customFolderType, filePlanComponent);
+        filePlanComponentKindTable.getFilePlanComponentKind(ContentModel.TYPE_CONTENT, record);
+        verify(mockedDictionaryService, times(1)).getAllTypes();
+        verify(mockedDictionaryService, times(1)).isSubClass(customFolderType, TYPE_RECORD_FOLDER);
+
+        filePlanComponentKindTable.afterDictionaryInit();
+        filePlanComponentKindTable.getFilePlanComponentKind(customFolderType, filePlanComponent);
+        verify(mockedDictionaryService, times(2)).getAllTypes();
+        verify(mockedDictionaryService, times(2)).isSubClass(customFolderType, TYPE_RECORD_FOLDER);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.module.org_alfresco_module_rm.model.RecordsManagementModel;
+import org.alfresco.module.org_alfresco_module_rm.query.RecordsManagementQueryDAO;
+import org.alfresco.module.org_alfresco_module_rm.util.UniqueNameAllocator.NamePattern;
+import org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unique name allocator unit test
+ *
+ * @since 3.4
+ */
+public class UniqueNameAllocatorUnitTest
+{
+    private static final NodeRef PARENT = new NodeRef("workspace://SpacesStore/parent");
+
+    @Mock private RecordsManagementQueryDAO mockedRecordsManagementQueryDAO;
+    @Mock private AttributeService mockedAttributeService;
+    @Mock private TransactionService mockedTransactionService;
+    @Mock private RetryingTransactionHelper mockedRetryingTransactionHelper;
+    @Mock private PolicyComponent mockedPolicyComponent;
+
+    @InjectMocks private UniqueNameAllocator uniqueNameAllocator;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void before()
+    {
+        MockitoAnnotations.initMocks(this);
+
+        when(mockedTransactionService.getRetryingTransactionHelper()).thenReturn(mockedRetryingTransactionHelper);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+            }
+        }).when(mockedRetryingTransactionHelper).doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean());
+    }
+
+    /**
+     * Given many children already named after a clashing name
+     * When a unique name is allocated
+     * Then the counter after the largest in use is used, found with a single query
+     */
+    @Test
+    public void nextCounterAfterLargestInUse()
+    {
+        Set<String> existing = new HashSet<>();
+        for (int counter = 1; counter <= 1000; counter++)
+        {
+            existing.add("scan-" + counter + ".pdf");
+        }
+        existing.add("scan-notes.pdf");
+        existing.add("SCAN-1500.PDF");
+        mockExistingNames("scan-", ".pdf", existing);
+
+        assertEquals("scan-1501.pdf", uniqueNameAllocator.allocateUniqueName(PARENT, "scan.pdf"));
+        verify(mockedRecordsManagementQueryDAO, times(1)).getChildrenStringPropertyValues(PARENT, ContentModel.PROP_NAME, "scan-", ".pdf");
+        verify(mockedAttributeService).setAttribute(1501, "rm.uniqueNameAllocator", PARENT, "scan-*.pdf");
+    }
+
+    /**
+     * Given a counter has been reserved by a concurrent request that hasn't created its node yet
+     * When a unique name is allocated
+     * Then the counter after the reserved one is used
+     */
+    @Test
+    public void nextCounterAfterReserved()
+    {
+        mockExistingNames("scan-", ".pdf", new HashSet<>(Arrays.asList("scan-1.pdf")));
+        when(mockedAttributeService.getAttribute("rm.uniqueNameAllocator", PARENT, "scan-*.pdf")).thenReturn(7);
+
+        assertEquals("scan-8.pdf", uniqueNameAllocator.allocateUniqueName(PARENT, "scan.pdf"));
+    }
+
+    /**
+     * Given counters have been reserved for the children of a container
+     * When the container is deleted
+     * Then its counters are removed
+     */
+    @Test
+    public void countersRemovedWithParent()
+    {
+        uniqueNameAllocator.init();
+        verify(mockedPolicyComponent).bindClassBehaviour(eq(BeforeDeleteNodePolicy.QNAME),
+                    eq(RecordsManagementModel.TYPE_RECORDS_MANAGEMENT_CONTAINER), any(JavaBehaviour.class));
+        verify(mockedPolicyComponent).bindClassBehaviour(eq(BeforeDeleteNodePolicy.QNAME),
+                    eq(RecordsManagementModel.TYPE_RECORD_FOLDER), any(JavaBehaviour.class));
+
+        uniqueNameAllocator.beforeDeleteNode(PARENT);
+
+        verify(mockedAttributeService).removeAttributes("rm.uniqueNameAllocator", PARENT);
+    }
+
+    /**
+     * Given names with and without extensions
+     * When the name pattern is created
+     * Then the counter is placed as it was before unique names were allocated in bulk
+     */
+    @Test
+    public void namePatterns()
+    {
+        assertEquals("scan-3.pdf", new NamePattern("scan.pdf").getName(3));
+        assertEquals("3.txt", new NamePattern(".txt").getName(3));
+        assertEquals("readme-3", new NamePattern("readme").getName(3));
+        assertEquals("archive.tar-3.gz", new NamePattern("archive.tar.gz").getName(3));
+
+        NamePattern pattern = new NamePattern("readme");
+        assertEquals(12, pattern.getCounter("README-12"));
+        assertEquals(0, pattern.getCounter("readme-"));
+        assertEquals(0, pattern.getCounter("readme-1a"));
+        assertEquals(0, pattern.getCounter("readme-12345678901"));
+    }
+
+    private void mockExistingNames(String prefix, String suffix, Set<String> names)
+    {
+        when(mockedRecordsManagementQueryDAO.getChildrenStringPropertyValues(PARENT, ContentModel.PROP_NAME, prefix, suffix))
+            .thenReturn(names);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Alfresco Records Management Module
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.module.org_alfresco_module_rm.vital;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.module.org_alfresco_module_rm.test.util.BaseUnitTest;
+import org.alfresco.module.org_alfresco_module_rm.vital.ReviewDueQueue.DuePage;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Review due queue unit test
+ *
+ * @since 3.4
+ */
+public class ReviewDueQueueUnitTest extends BaseUnitTest
+{
+    private static final String QUEUE_CONTEXT = "rm.reviewDueQueue";
+    private static final String NOTIFIED_CONTEXT = "rm.reviewDueQueue.notified";
+
+    private static final long ONE_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final int PAGE_SIZE = 10;
+
+    @Mock private AttributeService mockedAttributeService;
+
+    /** queue under test */
+    @InjectMocks private ReviewDueQueue reviewDueQueue;
+
+    /** vital record */
+    private NodeRef record;
+
+    @Before
+    @Override
+    public void before() throws Exception
+    {
+        super.before();
+
+        record = generateNodeRef();
+        doReturn(true).when(mockedNodeService).hasAspect(record, ASPECT_VITAL_RECORD);
+    }
+
+    /**
+     * Given a vital record
+     * When its review as of date is set to a date in the future
+     * Then it is queued under the day it becomes due, and any earlier notification is forgotten
+     */
+    @Test
+    public void recordQueuedUnderDueDay()
+    {
+        Date reviewAsOf = new Date(System.currentTimeMillis() + 3 * ONE_DAY);
+
+        reviewDueQueue.onUpdateProperties(record, Collections.<QName, Serializable>emptyMap(), reviewProperties(reviewAsOf));
+
+        verify(mockedAttributeService).setAttribute(reviewAsOf, QUEUE_CONTEXT, ReviewDueQueue.getDay(reviewAsOf), record);
+        verify(mockedAttributeService).removeAttribute(NOTIFIED_CONTEXT, record);
+    }
+
+    /**
+     * Given a vital record
+     * When its review as of date is set to a date in the past
+     * Then it is queued under the current day
+     */
+    @Test
+    public void overdueRecordQueuedUnderCurrentDay()
+    {
+        Date reviewAsOf = new Date(System.currentTimeMillis() - 3 * ONE_DAY);
+
+        reviewDueQueue.onUpdateProperties(record, Collections.<QName, Serializable>emptyMap(), reviewProperties(reviewAsOf));
+
+        verify(mockedAttributeService).setAttribute(reviewAsOf, QUEUE_CONTEXT, ReviewDueQueue.getDay(new Date()), record);
+    }
+
+    /**
+     * Given a vital record
+     * When its properties are updated without changing its review as of date
+     * Then it is not queued again
+     */
+    @Test
+    public void unchangedReviewAsOfNotQueued()
+    {
+        Date reviewAsOf = new Date();
+
+        reviewDueQueue.onUpdateProperties(record, reviewProperties(reviewAsOf), reviewProperties(reviewAsOf));
+
+        verify(mockedAttributeService, never()).setAttribute(reviewAsOf, QUEUE_CONTEXT, ReviewDueQueue.getDay(reviewAsOf), record);
+    }
+
+    /**
+     * Given a queued record that is due for review
+     * When the due records of its day are requested
+     * Then it is returned
+     */
+    @Test
+    public void dueRecordReturned()
+    {
+        Date reviewAsOf = new Date(System.currentTimeMillis() - ONE_DAY);
+        long day = ReviewDueQueue.getDay(reviewAsOf);
+        queue(day, reviewAsOf);
+        doReturn(reviewAsOf).when(mockedNodeService).getProperty(record, PROP_REVIEW_AS_OF);
+
+        assertEquals(Collections.singletonList(record), reviewDueQueue.getDueRecords(day, new Date(), 0, PAGE_SIZE).getRecords());
+    }
+
+    /**
+     * Given a queued record that has since been given another review as of date
+     * When the due records of its day are requested
+     * Then it is not returned and its entry is removed
+     */
+    @Test
+    public void reviewedRecordRemoved()
+    {
+        Date reviewAsOf = new Date(System.currentTimeMillis() - ONE_DAY);
+        long day = ReviewDueQueue.getDay(reviewAsOf);
+        queue(day, reviewAsOf);
+        doReturn(new Date(System.currentTimeMillis() + ONE_DAY)).when(mockedNodeService).getProperty(record, PROP_REVIEW_AS_OF);
+
+        assertTrue(reviewDueQueue.getDueRecords(day, new Date(), 0, PAGE_SIZE).getRecords().isEmpty());
+        verify(mockedAttributeService).removeAttribute(QUEUE_CONTEXT, day, record);
+    }
+
+    /**
+     * Given a queued record that has already been notified for its review as of date
+     * When the due records of its day are requested
+     * Then it is not returned and its entry is removed
+     */
+    @Test
+    public void notifiedRecordRemoved()
+    {
+        Date reviewAsOf = new Date(System.currentTimeMillis() - ONE_DAY);
+        long day = ReviewDueQueue.getDay(reviewAsOf);
+        queue(day, reviewAsOf);
+        doReturn(reviewAsOf).when(mockedNodeService).getProperty(record, PROP_REVIEW_AS_OF);
+        doReturn(reviewAsOf).when(mockedAttributeService).getAttribute(NOTIFIED_CONTEXT, record);
+
+        assertTrue(reviewDueQueue.getDueRecords(day, new Date(), 0, PAGE_SIZE).getRecords().isEmpty());
+        verify(mockedAttributeService).removeAttribute(QUEUE_CONTEXT, day, record);
+    }
+
+    /**
+     * Given a queued record that is not due yet
+     * When the due records of its day are requested
+     * Then it is not returned and stays queued
+     */
+    @Test
+    public void recordNotDueYetStaysQueued()
+    {
+        Date reviewAsOf = new Date(System.currentTimeMillis() + ONE_DAY);
+        long day = ReviewDueQueue.getDay(reviewAsOf);
+        queue(day, reviewAsOf);
+        doReturn(reviewAsOf).when(mockedNodeService).getProperty(record, PROP_REVIEW_AS_OF);
+
+        List<NodeRef> records = reviewDueQueue.getDueRecords(day, new Date(), 0, PAGE_SIZE).getRecords();
+
+        assertTrue(records.isEmpty());
+        verify(mockedAttributeService, never()).removeAttribute(QUEUE_CONTEXT, day, record);
+    }
+
+    /**
+     * Given a day with a record not due yet followed by two records that are due
+     * When the due records of the day are requested a page of two entries at a time
+     * Then the first page returns the first due record and counts the record not due yet as retained
+     * And the second page passes over the entries left queued and returns the second due record
+     */
+    @Test
+    public void dueRecordsReadAPageAtATime()
+    {
+        Date now = new Date();
+        final Date notDue = new Date(now.getTime() + 1000);
+        final Date due = new Date(now.getTime() - 1000);
+        final long day = ReviewDueQueue.getDay(now);
+        final NodeRef first = generateNodeRef();
+        final NodeRef second = generateNodeRef();
+        for (NodeRef node : Arrays.asList(record, first, second))
+        {
+            doReturn(true).when(mockedNodeService).hasAspect(node, ASPECT_VITAL_RECORD);
+        }
+        doReturn(notDue).when(mockedNodeService).getProperty(record, PROP_REVIEW_AS_OF);
+        doReturn(due).when(mockedNodeService).getProperty(first, PROP_REVIEW_AS_OF);
+        doReturn(due).when(mockedNodeService).getProperty(second, PROP_REVIEW_AS_OF);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                AttributeQueryCallback callback = (AttributeQueryCallback) invocation.getArguments()[0];
+                if (callback.handleAttribute(1L, notDue, new Serializable[] { QUEUE_CONTEXT, day, record }) &&
+                    callback.handleAttribute(2L, due, new Serializable[] { QUEUE_CONTEXT, day, first }))
+                {
+                    callback.handleAttribute(3L, due, new Serializable[] { QUEUE_CONTEXT, day, second });
+                }
+                return null;
+            }
+        }).when(mockedAttributeService).getAttributes(any(AttributeQueryCallback.class), eq(QUEUE_CONTEXT), eq(day));
+
+        DuePage firstPage = reviewDueQueue.getDueRecords(day, now, 0, 2);
+        assertEquals(Collections.singletonList(first), firstPage.getRecords());
+        assertEquals(1, firstPage.getRetainedCount());
+        assertFalse(firstPage.isLast());
+
+        // the first due record stays queued as if it failed to be notified
+        DuePage secondPage = reviewDueQueue.getDueRecords(day, now, 2, 2);
+        assertEquals(Collections.singletonList(second), secondPage.getRecords());
+        assertEquals(0, secondPage.getRetainedCount());
+        assertTrue(secondPage.isLast());
+    }
+
+    /**
+     * @param reviewAsOf    review as of date
+     * @return {@link Map}  properties holding the review as of date
+     */
+    private Map<QName, Serializable> reviewProperties(Date reviewAsOf)
+    {
+        return Collections.<QName, Serializable>singletonMap(PROP_REVIEW_AS_OF, reviewAsOf);
+    }
+
+    /**
+     * Queues the record in the mocked attribute service.
+     *
+     * @param day           day the record is queued under
+     * @param reviewAsOf    review as of date the record is queued for
+     */
+    private void queue(final long day, final Date reviewAsOf)
+    {
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                AttributeQueryCallback callback = (AttributeQueryCallback) invocation.getArguments()[0];
+                callback.handleAttribute(1L, reviewAsOf, new Serializable[] { QUEUE_CONTEXT, day, record });
+                return null;
+            }
+        }).when(mockedAttributeService).getAttributes(any(AttributeQueryCallback.class), eq(QUEUE_CONTEXT), eq(day));
+    }
+}